@@ -82,6 +82,10 @@ public class MapConfig implements MapSettings {
 
     private boolean ignoreMissingLightData = false;
 
+    private boolean skipHiddenBlocks = true;
+
+    private boolean skipUnchangedTiles = true;
+
     @Nullable private ConfigurationNode markerSets = null;
 
     // hidden config fields
@@ -25,12 +25,17 @@
 package de.bluecolored.bluemap.common.config;
 
 import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.common.web.RateLimitingRequestHandler;
+import de.bluecolored.bluemap.common.web.http.HttpRequestHandler;
+import de.bluecolored.bluemap.common.web.http.HttpServer;
+import de.bluecolored.bluemap.common.web.http.RateLimiter;
 import org.spongepowered.configurate.objectmapping.ConfigSerializable;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings({"FieldMayBeFinal", "FieldCanBeLocal"})
 @DebugDump
@@ -43,6 +48,14 @@ public class WebserverConfig {
     private String ip = "0.0.0.0";
     private int port = 8100;
 
+    private int maxConnections = 1000;
+    private int idleTimeout = 30;
+    private int readTimeout = 10;
+    private int maxKeepAliveRequests = 1000;
+    private boolean h2c = false;
+
+    private RateLimitConfig rateLimit = new RateLimitConfig();
+
     private LogConfig log = new LogConfig();
 
     public boolean isEnabled() {
@@ -71,10 +84,97 @@ public int getPort() {
         return port;
     }
 
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public int getMaxKeepAliveRequests() {
+        return maxKeepAliveRequests;
+    }
+
+    public boolean isH2c() {
+        return h2c;
+    }
+
+    /**
+     * Applies the connection-settings of this config to the server
+     */
+    public void applyTo(HttpServer server) {
+        server.setMaxConnections(maxConnections);
+        server.setIdleTimeout(TimeUnit.SECONDS.toMillis(idleTimeout));
+        server.setReadTimeout(TimeUnit.SECONDS.toMillis(readTimeout));
+        server.setMaxKeepAliveRequests(maxKeepAliveRequests);
+        server.setHttp2(h2c);
+    }
+
+    public RateLimitConfig getRateLimit() {
+        return rateLimit;
+    }
+
     public LogConfig getLog() {
         return log;
     }
 
+    @DebugDump
+    @ConfigSerializable
+    public static class RateLimitConfig {
+
+        private boolean enabled = false;
+        private String proxyHeader = "";
+
+        private double requestsPerSecond = 100;
+        private int requestsBurst = 1000;
+
+        private double liveRequestsPerSecond = 5;
+        private int liveRequestsBurst = 30;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public String getProxyHeader() {
+            return proxyHeader;
+        }
+
+        public double getRequestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        public int getRequestsBurst() {
+            return requestsBurst;
+        }
+
+        public double getLiveRequestsPerSecond() {
+            return liveRequestsPerSecond;
+        }
+
+        public int getLiveRequestsBurst() {
+            return liveRequestsBurst;
+        }
+
+        /**
+         * Wraps the request-handler into a {@link RateLimitingRequestHandler} if rate-limiting is enabled
+         */
+        public HttpRequestHandler applyTo(HttpRequestHandler requestHandler) {
+            if (!enabled) return requestHandler;
+            return new RateLimitingRequestHandler(
+                    requestHandler,
+                    new RateLimiter(requestsPerSecond, requestsBurst),
+                    new RateLimiter(liveRequestsPerSecond, liveRequestsBurst),
+                    proxyHeader
+            );
+        }
+
+    }
+
     @DebugDump
     @ConfigSerializable
     public static class LogConfig {
@@ -40,6 +40,10 @@ public class FileConfig extends StorageConfig implements FileStorageSettings {
 
     private Compression compression = Compression.GZIP;
 
+    private boolean packTiles = false;
+
+    private boolean deduplicateTiles = false;
+
     @Override
     public Path getRoot() {
         return root;
@@ -50,4 +54,14 @@ public Compression getCompression() {
         return compression;
     }
 
+    @Override
+    public boolean isPackTiles() {
+        return packTiles;
+    }
+
+    @Override
+    public boolean isDeduplicateTiles() {
+        return deduplicateTiles;
+    }
+
 }
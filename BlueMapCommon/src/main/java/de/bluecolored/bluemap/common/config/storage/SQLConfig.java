@@ -48,6 +48,8 @@ public class SQLConfig extends StorageConfig implements SQLStorageSettings {
 
     @DebugDump private Compression compression = Compression.GZIP;
 
+    @DebugDump private boolean deduplicateTiles = false;
+
     @DebugDump private transient URL driverJarURL = null;
 
     @DebugDump private int maxConnections = -1;
@@ -88,4 +90,9 @@ public Compression getCompression() {
         return compression;
     }
 
+    @Override
+    public boolean isDeduplicateTiles() {
+        return deduplicateTiles;
+    }
+
 }
@@ -27,6 +27,8 @@
 import de.bluecolored.bluemap.api.debug.DebugDump;
 import de.bluecolored.bluemap.common.config.ConfigurationException;
 import de.bluecolored.bluemap.core.storage.Storage;
+import de.bluecolored.bluemap.core.storage.WriteBehindStorage;
+import de.bluecolored.bluemap.core.storage.sql.SQLiteStorage;
 import de.bluecolored.bluemap.core.util.Key;
 import org.spongepowered.configurate.objectmapping.ConfigSerializable;
 
@@ -39,6 +41,10 @@ public class StorageConfig {
 
     private Key storageType = StorageType.FILE.getKey();
 
+    private boolean asyncWrites = false;
+    private int asyncWriteThreads = 2;
+    private int asyncWriteBufferSize = 64;
+
     public Key getStorageTypeKey() {
         return storageType;
     }
@@ -62,7 +68,26 @@ public Storage createStorage() throws Exception {
         if (this.getClass().equals(StorageConfig.class))
             throw new UnsupportedOperationException("Can not create a Storage from the StorageConfig superclass.");
 
-        return getStorageType().getStorageFactory(this.getClass()).provide(this);
+        Storage storage = getStorageType().getStorageFactory(this.getClass()).provide(this);
+
+        // sqlite already hands all tile-writes to its own single writer-thread that commits them in batches,
+        // a few more writer-threads in front of it would only break those batches up into tiny ones
+        if (asyncWrites && !(storage instanceof SQLiteStorage))
+            storage = new WriteBehindStorage(storage, asyncWriteThreads, asyncWriteBufferSize * 1024L * 1024L);
+
+        return storage;
+    }
+
+    public boolean isAsyncWrites() {
+        return asyncWrites;
+    }
+
+    public int getAsyncWriteThreads() {
+        return asyncWriteThreads;
+    }
+
+    public int getAsyncWriteBufferSize() {
+        return asyncWriteBufferSize;
     }
 
 }
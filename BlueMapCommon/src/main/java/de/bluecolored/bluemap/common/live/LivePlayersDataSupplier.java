@@ -26,73 +26,78 @@
 
 import com.google.gson.stream.JsonWriter;
 import de.bluecolored.bluemap.common.config.PluginConfig;
-import de.bluecolored.bluemap.common.serverinterface.Player;
-import de.bluecolored.bluemap.common.serverinterface.Server;
 import de.bluecolored.bluemap.common.serverinterface.ServerWorld;
 import de.bluecolored.bluemap.core.logger.Logger;
 
 import java.io.IOException;
 import java.io.StringWriter;
-import java.util.UUID;
-import java.util.function.Predicate;
 import java.util.function.Supplier;
 
+/**
+ * Supplies the live player-data of one map as json.<br>
+ * <br>
+ * The json is only serialized when the shared snapshot-supplier hands out a new {@link LivePlayersSnapshot},
+ * otherwise calls to {@link #get()} just return the last serialized data. As long as the data does not change, the same
+ * String-instance is returned, so consumers can cache anything they derive from it (like the encoded bytes).
+ */
 public class LivePlayersDataSupplier implements Supplier<String> {
 
-    private final Server server;
     private final PluginConfig config;
     private final ServerWorld world;
-    private final Predicate<UUID> playerFilter;
+    private final Supplier<LivePlayersSnapshot> snapshotSupplier;
+
+    private LivePlayersSnapshot snapshot;
+    private String data;
 
-    public LivePlayersDataSupplier(Server server, PluginConfig config, ServerWorld world, Predicate<UUID> playerFilter) {
-        this.server = server;
+    public LivePlayersDataSupplier(PluginConfig config, ServerWorld world, Supplier<LivePlayersSnapshot> snapshotSupplier) {
         this.config = config;
         this.world = world;
-        this.playerFilter = playerFilter;
+        this.snapshotSupplier = snapshotSupplier;
+
+        this.snapshot = null;
+        this.data = null;
     }
 
     @Override
-    public String get() {
+    public synchronized String get() {
+        LivePlayersSnapshot snapshot = snapshotSupplier.get();
+        if (snapshot != this.snapshot) {
+            String data = serialize(snapshot);
+            if (!data.equals(this.data)) this.data = data;
+            this.snapshot = snapshot;
+        }
+        return data;
+    }
+
+    private String serialize(LivePlayersSnapshot snapshot) {
         try (StringWriter jsonString = new StringWriter();
             JsonWriter json = new JsonWriter(jsonString)) {
 
             json.beginObject();
             json.name("players").beginArray();
 
-            if (config.isLivePlayerMarkers()) {
-                for (Player player : this.server.getOnlinePlayers()) {
-                    boolean isCorrectWorld = player.getWorld().equals(this.world);
-
-                    if (config.isHideInvisible() && player.isInvisible()) continue;
-                    if (config.isHideVanished() && player.isVanished()) continue;
-                    if (config.isHideSneaking() && player.isSneaking()) continue;
-                    if (config.getHiddenGameModes().contains(player.getGamemode().getId())) continue;
-                    if (config.isHideDifferentWorld() && !isCorrectWorld) continue;
-                    if (
-                            player.getSkyLight() < config.getHideBelowSkyLight() &&
-                            player.getBlockLight() < config.getHideBelowBlockLight()
-                    ) continue;
-                    if (!this.playerFilter.test(player.getUuid())) continue;
-
-                    json.beginObject();
-                    json.name("uuid").value(player.getUuid().toString());
-                    json.name("name").value(player.getName().toPlainString());
-                    json.name("foreign").value(!isCorrectWorld);
-
-                    json.name("position").beginObject();
-                    json.name("x").value(player.getPosition().getX());
-                    json.name("y").value(player.getPosition().getY());
-                    json.name("z").value(player.getPosition().getZ());
-                    json.endObject();
-
-                    json.name("rotation").beginObject();
-                    json.name("pitch").value(player.getRotation().getX());
-                    json.name("yaw").value(player.getRotation().getY());
-                    json.name("roll").value(player.getRotation().getZ());
-                    json.endObject();
-
-                    json.endObject();
-                }
+            for (LivePlayersSnapshot.PlayerData player : snapshot.getPlayers()) {
+                boolean isCorrectWorld = player.getWorld().equals(this.world);
+                if (config.isHideDifferentWorld() && !isCorrectWorld) continue;
+
+                json.beginObject();
+                json.name("uuid").value(player.getUuid().toString());
+                json.name("name").value(player.getName());
+                json.name("foreign").value(!isCorrectWorld);
+
+                json.name("position").beginObject();
+                json.name("x").value(player.getPosition().getX());
+                json.name("y").value(player.getPosition().getY());
+                json.name("z").value(player.getPosition().getZ());
+                json.endObject();
+
+                json.name("rotation").beginObject();
+                json.name("pitch").value(player.getRotation().getX());
+                json.name("yaw").value(player.getRotation().getY());
+                json.name("roll").value(player.getRotation().getZ());
+                json.endObject();
+
+                json.endObject();
             }
 
             json.endArray();
@@ -0,0 +1,130 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.live;
+
+import com.flowpowered.math.vector.Vector3d;
+import de.bluecolored.bluemap.common.config.PluginConfig;
+import de.bluecolored.bluemap.common.serverinterface.Player;
+import de.bluecolored.bluemap.common.serverinterface.Server;
+import de.bluecolored.bluemap.common.serverinterface.ServerWorld;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * An immutable snapshot of all players that can be shown on the live-maps.<br>
+ * It is collected by the {@link LivePlayersSnapshotSupplier} and then shared by the {@link LivePlayersDataSupplier}s of all maps,
+ * so the online players are only iterated and filtered once, no matter how many maps there are.
+ */
+public class LivePlayersSnapshot {
+
+    public static final LivePlayersSnapshot EMPTY = new LivePlayersSnapshot(Collections.emptyList());
+
+    private final List<PlayerData> players;
+
+    private LivePlayersSnapshot(List<PlayerData> players) {
+        this.players = players;
+    }
+
+    public List<PlayerData> getPlayers() {
+        return players;
+    }
+
+    /**
+     * Collects the current state of all online players that are not hidden by the config or the player-filter.<br>
+     * Players in a different world are still included, because they might be shown as foreign players on other maps.
+     */
+    public static LivePlayersSnapshot collect(Server server, PluginConfig config, Predicate<UUID> playerFilter) {
+        if (!config.isLivePlayerMarkers()) return EMPTY;
+
+        List<PlayerData> players = new ArrayList<>();
+        for (Player player : server.getOnlinePlayers()) {
+            if (config.isHideInvisible() && player.isInvisible()) continue;
+            if (config.isHideVanished() && player.isVanished()) continue;
+            if (config.isHideSneaking() && player.isSneaking()) continue;
+            if (config.getHiddenGameModes().contains(player.getGamemode().getId())) continue;
+            if (
+                    player.getSkyLight() < config.getHideBelowSkyLight() &&
+                    player.getBlockLight() < config.getHideBelowBlockLight()
+            ) continue;
+            if (!playerFilter.test(player.getUuid())) continue;
+
+            players.add(new PlayerData(
+                    player.getUuid(),
+                    player.getName().toPlainString(),
+                    player.getWorld(),
+                    player.getPosition(),
+                    player.getRotation()
+            ));
+        }
+
+        return new LivePlayersSnapshot(Collections.unmodifiableList(players));
+    }
+
+    public static class PlayerData {
+
+        private final UUID uuid;
+        private final String name;
+        private final ServerWorld world;
+        private final Vector3d position;
+        private final Vector3d rotation;
+
+        private PlayerData(UUID uuid, String name, ServerWorld world, Vector3d position, Vector3d rotation) {
+            this.uuid = uuid;
+            this.name = name;
+            this.world = world;
+            this.position = position;
+            this.rotation = rotation;
+        }
+
+        public UUID getUuid() {
+            return uuid;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ServerWorld getWorld() {
+            return world;
+        }
+
+        public Vector3d getPosition() {
+            return position;
+        }
+
+        /**
+         * x -> pitch, y -> yaw, z -> roll
+         */
+        public Vector3d getRotation() {
+            return rotation;
+        }
+
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.live;
+
+import de.bluecolored.bluemap.common.config.PluginConfig;
+import de.bluecolored.bluemap.common.serverinterface.Server;
+
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Supplies a {@link LivePlayersSnapshot} that is collected lazily on the first request of each update-interval.<br>
+ * All requests within the same interval get the same snapshot, so the players are collected at most once per interval
+ * no matter how many maps and clients there are, and not at all while nobody asks for them.
+ */
+public class LivePlayersSnapshotSupplier implements Supplier<LivePlayersSnapshot> {
+
+    private final Server server;
+    private final PluginConfig config;
+    private final Predicate<UUID> playerFilter;
+    private final long updateInterval;
+
+    private LivePlayersSnapshot snapshot;
+    private long updateTime;
+
+    /**
+     * @param updateInterval The time in milliseconds a collected snapshot is reused
+     */
+    public LivePlayersSnapshotSupplier(Server server, PluginConfig config, Predicate<UUID> playerFilter, long updateInterval) {
+        this.server = server;
+        this.config = config;
+        this.playerFilter = playerFilter;
+        this.updateInterval = updateInterval;
+
+        this.snapshot = null;
+        this.updateTime = 0;
+    }
+
+    @Override
+    public synchronized LivePlayersSnapshot get() {
+        long now = System.currentTimeMillis();
+        if (snapshot == null || now - updateTime >= updateInterval) {
+            snapshot = LivePlayersSnapshot.collect(server, config, playerFilter);
+            updateTime = now;
+        }
+        return snapshot;
+    }
+
+}
@@ -32,6 +32,7 @@
 import de.bluecolored.bluemap.common.api.BlueMapAPIImpl;
 import de.bluecolored.bluemap.common.config.*;
 import de.bluecolored.bluemap.common.live.LivePlayersDataSupplier;
+import de.bluecolored.bluemap.common.live.LivePlayersSnapshotSupplier;
 import de.bluecolored.bluemap.common.plugin.skins.PlayerSkinUpdater;
 import de.bluecolored.bluemap.common.rendermanager.MapUpdateTask;
 import de.bluecolored.bluemap.common.rendermanager.RenderManager;
@@ -77,6 +78,7 @@ public class Plugin implements ServerEventListener {
     public static final String PLUGIN_NAME = "BlueMap";
 
     private static final String DEBUG_FILE_LOG_NAME = "file-debug-log";
+    private static final long LIVE_PLAYERS_UPDATE_INTERVAL = TimeUnit.SECONDS.toMillis(1);
 
     private final InterruptableReentrantLock loadingLock = new InterruptableReentrantLock();
 
@@ -96,6 +98,7 @@ public class Plugin implements ServerEventListener {
     private Timer daemonTimer;
 
     private Map<String, RegionFileWatchService> regionFileWatchServices;
+    private Map<String, LivePlayersDataSupplier> livePlayersDataSuppliers;
 
     private PlayerSkinUpdater skinUpdater;
 
@@ -180,6 +183,20 @@ private void load(@Nullable ResourcePack preloadedResourcePack) throws IOExcepti
                 //load maps
                 Map<String, BmMap> maps = blueMap.getOrLoadMaps();
 
+                //create live-player data suppliers, they share one snapshot that is only collected when requested
+                LivePlayersSnapshotSupplier livePlayersSnapshotSupplier = new LivePlayersSnapshotSupplier(
+                        serverInterface,
+                        pluginConfig,
+                        Predicate.not(pluginState::isPlayerHidden),
+                        LIVE_PLAYERS_UPDATE_INTERVAL
+                );
+                livePlayersDataSuppliers = new HashMap<>();
+                for (BmMap map : maps.values()) {
+                    ServerWorld world = serverInterface.getServerWorld(map.getWorld()).orElse(null);
+                    if (world == null) continue;
+                    livePlayersDataSuppliers.put(map.getId(), new LivePlayersDataSupplier(pluginConfig, world, livePlayersSnapshotSupplier));
+                }
+
                 //create and start webserver
                 if (webserverConfig.isEnabled()) {
                     Path webroot = webserverConfig.getWebroot();
@@ -198,7 +215,7 @@ private void load(@Nullable ResourcePack preloadedResourcePack) throws IOExcepti
                         MapRequestHandler mapRequestHandler;
                         BmMap map = maps.get(id);
                         if (map != null) {
-                            mapRequestHandler = new MapRequestHandler(map, serverInterface, pluginConfig, Predicate.not(pluginState::isPlayerHidden));
+                            mapRequestHandler = new MapRequestHandler(map, livePlayersDataSuppliers.get(id));
                         } else {
                             Storage storage = blueMap.getOrLoadStorage(mapConfig.getStorage());
                             mapRequestHandler = new MapRequestHandler(id, storage);
@@ -224,10 +241,11 @@ private void load(@Nullable ResourcePack preloadedResourcePack) throws IOExcepti
 
                     try {
                         webServer = new HttpServer(new LoggingRequestHandler(
-                                routingRequestHandler,
+                                webserverConfig.getRateLimit().applyTo(routingRequestHandler),
                                 webserverConfig.getLog().getFormat(),
                                 webLogger
                         ));
+                        webserverConfig.applyTo(webServer);
                         webServer.bind(new InetSocketAddress(
                                 webserverConfig.resolveIp(),
                                 webserverConfig.getPort()
@@ -451,6 +469,7 @@ public void unload(boolean keepWebserver) {
                     }
                 }
                 blueMap = null;
+                livePlayersDataSuppliers = null;
 
                 // remove file-logger
                 Logger.global.remove(DEBUG_FILE_LOG_NAME);
@@ -528,16 +547,13 @@ public void saveMarkerStates() {
     public void savePlayerStates() {
         if (blueMap == null) return;
 
+        var livePlayersDataSuppliers = this.livePlayersDataSuppliers;
+        if (livePlayersDataSuppliers == null) return;
+
         var maps = blueMap.getMaps();
         for (BmMap map : maps.values()) {
-            var serverWorld = serverInterface.getServerWorld(map.getWorld()).orElse(null);
-            if (serverWorld == null) continue;
-            var dataSupplier = new LivePlayersDataSupplier(
-                    serverInterface,
-                    getBlueMap().getConfig().getPluginConfig(),
-                    serverWorld,
-                    Predicate.not(pluginState::isPlayerHidden)
-            );
+            var dataSupplier = livePlayersDataSuppliers.get(map.getId());
+            if (dataSupplier == null) continue;
             try (
                     OutputStream out = map.getStorage().writeMeta(map.getId(), BmMap.META_FILE_PLAYERS);
                     Writer writer = new OutputStreamWriter(out)
@@ -52,6 +52,7 @@
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.map.BmMap;
 import de.bluecolored.bluemap.core.map.MapRenderState;
+import de.bluecolored.bluemap.core.storage.Compression;
 import de.bluecolored.bluemap.core.storage.Storage;
 import de.bluecolored.bluemap.core.world.Chunk;
 import de.bluecolored.bluemap.core.world.World;
@@ -183,6 +184,12 @@ public void init() {
                         .executes(this::purgeCommand))
                 .build();
 
+        LiteralCommandNode<S> dictionaryCommand = literal("dictionary")
+                .requires(requirements("bluemap.dictionary"))
+                .then(argument("map", StringArgumentType.string()).suggests(new MapSuggestionProvider<>(plugin))
+                        .executes(this::dictionaryCommand))
+                .build();
+
         LiteralCommandNode<S> cancelCommand = literal("cancel")
                 .requires(requirements("bluemap.cancel"))
                 .executes(this::cancelCommand)
@@ -228,6 +235,7 @@ public void init() {
         baseCommand.addChild(updateCommand);
         baseCommand.addChild(cancelCommand);
         baseCommand.addChild(purgeCommand);
+        baseCommand.addChild(dictionaryCommand);
         baseCommand.addChild(worldsCommand);
         baseCommand.addChild(mapsCommand);
         baseCommand.addChild(storagesCommand);
@@ -755,7 +763,7 @@ public int updateCommand(CommandContext<S> context, boolean force) {
                 }
 
                 for (BmMap map : maps) {
-                    MapUpdateTask updateTask = new MapUpdateTask(map, center, radius);
+                    MapUpdateTask updateTask = new MapUpdateTask(map, center, radius, force);
                     plugin.getRenderManager().scheduleRenderTask(updateTask);
 
                     if (force) {
@@ -850,6 +858,27 @@ public int purgeCommand(CommandContext<S> context) {
         return 1;
     }
 
+    public int dictionaryCommand(CommandContext<S> context) {
+        CommandSource source = commandSourceInterface.apply(context.getSource());
+
+        // parse map argument
+        String mapString = context.getArgument("map", String.class);
+        BmMap map = parseMap(mapString).orElse(null);
+
+        if (map == null) {
+            source.sendMessage(Text.of(TextColor.RED, "There is no ", helper.mapHelperHover(), " with this id: ", TextColor.WHITE, mapString));
+            return 0;
+        }
+
+        MapTileDictionaryTask dictionaryTask = new MapTileDictionaryTask(map);
+        plugin.getRenderManager().scheduleRenderTaskNext(dictionaryTask);
+
+        source.sendMessage(Text.of(TextColor.GREEN, "Created new Task to train a tile-dictionary for map '" + map.getId() + "'"));
+        source.sendMessage(Text.of(TextColor.GRAY, "The dictionary is only used by storages with the '" +
+                Compression.DEFLATE_DICTIONARY.getTypeId() + "' compression, and only for tiles that are rendered afterwards."));
+        return 1;
+    }
+
     public int worldsCommand(CommandContext<S> context) {
         CommandSource source = commandSourceInterface.apply(context.getSource());
 
@@ -67,6 +67,10 @@ public void doWork() throws Exception {
         } finally {
             // reset renderstate
             map.getRenderState().reset();
+
+            // forget all tile-hashes, the tiles are no longer present
+            map.getTileHashIndex().clear();
+            map.getTileExistenceIndex().clear();
         }
     }
 
@@ -0,0 +1,149 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.rendermanager;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.map.BmMap;
+import de.bluecolored.bluemap.core.storage.CompressedInputStream;
+import de.bluecolored.bluemap.core.storage.Storage;
+import de.bluecolored.bluemap.core.storage.TileDictionary;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Trains a new {@link TileDictionary} on a random sample of the hires-tiles of a map.<br>
+ * Only tiles that are written after the training use the new dictionary.
+ */
+public class MapTileDictionaryTask implements RenderTask {
+
+    private static final int MAX_SAMPLES = 2000;
+    private static final long MAX_SAMPLE_BYTES = 16 * 1024 * 1024;
+
+    private final BmMap map;
+
+    private volatile double progress;
+    private volatile boolean hasMoreWork;
+    private volatile boolean cancelled;
+
+    public MapTileDictionaryTask(BmMap map) {
+        this.map = Objects.requireNonNull(map);
+        this.progress = 0d;
+        this.hasMoreWork = true;
+        this.cancelled = false;
+    }
+
+    @Override
+    public void doWork() throws Exception {
+        synchronized (this) {
+            if (!this.hasMoreWork) return;
+            this.hasMoreWork = false;
+        }
+        if (this.cancelled) return;
+
+        Storage storage = map.getStorage();
+
+        // pick random tiles (reservoir-sampling)
+        Random random = new Random();
+        List<Vector2i> tiles = new ArrayList<>();
+        int[] tileCount = {0};
+        storage.collectMapTiles(map.getId(), 0, tile -> {
+            int index = tileCount[0]++;
+            if (index < MAX_SAMPLES) {
+                tiles.add(tile);
+            } else {
+                index = random.nextInt(index + 1);
+                if (index < MAX_SAMPLES) tiles.set(index, tile);
+            }
+        });
+
+        List<byte[]> samples = new ArrayList<>();
+        long sampleBytes = 0;
+        for (int i = 0; i < tiles.size() && sampleBytes < MAX_SAMPLE_BYTES; i++) {
+            if (this.cancelled) return;
+
+            Optional<CompressedInputStream> optIn = storage.readMapTile(map.getId(), 0, tiles.get(i));
+            if (optIn.isEmpty()) continue;
+
+            byte[] sample;
+            try (InputStream in = optIn.get().decompress()) {
+                sample = in.readAllBytes();
+            }
+
+            samples.add(sample);
+            sampleBytes += sample.length;
+            this.progress = (double) i / tiles.size();
+        }
+
+        if (samples.isEmpty()) {
+            Logger.global.logWarning("Map '" + map.getId() + "' has no hires-tiles to train a tile-dictionary on, render the map first.");
+            return;
+        }
+
+        TileDictionary dictionary = TileDictionary.train(samples, TileDictionary.MAX_SIZE);
+        storage.writeTileDictionary(map.getId(), dictionary);
+
+        Logger.global.logInfo("Trained new tile-dictionary '" + dictionary.getIdString() + "' for map '" + map.getId() +
+                "' on " + samples.size() + " tiles.");
+    }
+
+    @Override
+    public boolean hasMoreWork() {
+        return this.hasMoreWork && !this.cancelled;
+    }
+
+    @Override
+    @DebugDump
+    public double estimateProgress() {
+        return this.progress;
+    }
+
+    @Override
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    @Override
+    public boolean contains(RenderTask task) {
+        if (task == this) return true;
+        if (task instanceof MapTileDictionaryTask) {
+            return map.equals(((MapTileDictionaryTask) task).map);
+        }
+
+        return false;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Train tile-dictionary for map " + map.getId();
+    }
+
+}
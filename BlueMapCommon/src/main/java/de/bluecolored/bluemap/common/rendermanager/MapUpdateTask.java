@@ -34,6 +34,7 @@
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -42,6 +43,8 @@ public class MapUpdateTask extends CombinedRenderTask<RenderTask> {
 
     private final BmMap map;
     private final Collection<Vector2i> regions;
+    private final boolean force;
+    private final AtomicBoolean tileHashesCleared;
 
     public MapUpdateTask(BmMap map) {
         this(map, getRegions(map));
@@ -67,6 +70,18 @@ public MapUpdateTask(BmMap map, Collection<Vector2i> regions, boolean force) {
         super("Update map '" + map.getId() + "'", createTasks(map, regions, force));
         this.map = map;
         this.regions = Collections.unmodifiableCollection(new ArrayList<>(regions));
+        this.force = force;
+        this.tileHashesCleared = new AtomicBoolean(false);
+    }
+
+    @Override
+    public void doWork() throws Exception {
+        // a forced update has to write all tiles again, even if the tile-hashes claim that they did not change
+        // (e.g. because the tiles have been deleted from the storage or can no longer be found with a changed compression)
+        if (force && tileHashesCleared.compareAndSet(false, true))
+            map.getTileHashIndex().clear();
+
+        super.doWork();
     }
 
     public BmMap getMap() {
@@ -25,7 +25,6 @@
 package de.bluecolored.bluemap.common.rendermanager;
 
 import com.flowpowered.math.vector.Vector2i;
-import com.flowpowered.math.vector.Vector2l;
 import de.bluecolored.bluemap.api.debug.DebugDump;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.map.BmMap;
@@ -71,7 +70,7 @@ public WorldRegionRenderTask(BmMap map, Vector2i worldRegion, boolean force) {
     }
 
     private synchronized void init() {
-        Set<Vector2l> tileSet = new HashSet<>();
+        Set<Vector2i> tileSet = new HashSet<>();
         startTime = System.currentTimeMillis();
 
         // collect chunks
@@ -96,7 +95,7 @@ private synchronized void init() {
 
             for (int x = tileMin.getX(); x <= tileMax.getX(); x++) {
                 for (int z = tileMin.getY(); z <= tileMax.getY(); z++) {
-                    tileSet.add(new Vector2l(x, z));
+                    tileSet.add(new Vector2i(x, z));
                 }
             }
 
@@ -106,8 +105,7 @@ private synchronized void init() {
 
         this.tileCount = tileSet.size();
         this.tiles = tileSet.stream()
-                .sorted(WorldRegionRenderTask::compareVec2L) //sort with longs to avoid overflow (comparison uses distanceSquared)
-                .map(Vector2l::toInt) // back to ints
+                .sorted(hilbertCurveComparator(tileSet))
                 .filter(boundsTileFilter)
                 .filter(map.getTileFilter())
                 .collect(Collectors.toCollection(ArrayDeque::new));
@@ -243,20 +241,88 @@ public int hashCode() {
         return worldRegion.hashCode();
     }
 
+    /**
+     * Orders the region-tasks in a square spiral around the center-region.<br>
+     * This way consecutive regions are (almost always) neighbors, which share chunks at their borders and lowres-tiles,
+     * so those are more likely to still be cached when the next region is rendered.
+     */
     public static Comparator<WorldRegionRenderTask> defaultComparator(final Vector2i centerRegion) {
         return (task1, task2) -> {
-            // use long to compare to avoid overflow (comparison uses distanceSquared)
-            Vector2l task1Rel = new Vector2l(task1.worldRegion.getX() - centerRegion.getX(), task1.worldRegion.getY() - centerRegion.getY());
-            Vector2l task2Rel = new Vector2l(task2.worldRegion.getX() - centerRegion.getX(), task2.worldRegion.getY() - centerRegion.getY());
-            return compareVec2L(task1Rel, task2Rel);
+            // use long to avoid overflow
+            long dx1 = (long) task1.worldRegion.getX() - centerRegion.getX();
+            long dz1 = (long) task1.worldRegion.getY() - centerRegion.getY();
+            long dx2 = (long) task2.worldRegion.getX() - centerRegion.getX();
+            long dz2 = (long) task2.worldRegion.getY() - centerRegion.getY();
+
+            long ring1 = Math.max(Math.abs(dx1), Math.abs(dz1));
+            long ring2 = Math.max(Math.abs(dx2), Math.abs(dz2));
+            if (ring1 != ring2) return Long.compare(ring1, ring2);
+
+            return Long.compare(spiralRingIndex(ring1, dx1, dz1), spiralRingIndex(ring2, dx2, dz2));
         };
     }
 
     /**
-     * Comparison method that doesn't overflow that easily
+     * The position of a cell on the perimeter of the ring (a square with the given radius) walking clockwise,
+     * starting at the corner -ring, -ring
+     */
+    private static long spiralRingIndex(long ring, long dx, long dz) {
+        if (dz == -ring && dx < ring) return dx + ring;
+        if (dx == ring && dz < ring) return 2 * ring + dz + ring;
+        if (dz == ring && dx > -ring) return 4 * ring + ring - dx;
+        return 6 * ring + ring - dz;
+    }
+
+    /**
+     * Creates a comparator that orders all tiles of the given set along a hilbert-curve.<br>
+     * Consecutive tiles are then always neighbors, and tiles that are rendered close in time are close in space,
+     * so they are sharing the same chunks and lowres-tiles.
      */
-    private static int compareVec2L(Vector2l v1, Vector2l v2) {
-        return Long.signum(v1.lengthSquared() - v2.lengthSquared());
+    private static Comparator<Vector2i> hilbertCurveComparator(Collection<Vector2i> tiles) {
+        int minX = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (Vector2i tile : tiles) {
+            minX = Math.min(minX, tile.getX());
+            minZ = Math.min(minZ, tile.getY());
+            maxX = Math.max(maxX, tile.getX());
+            maxZ = Math.max(maxZ, tile.getY());
+        }
+
+        int size = 1;
+        while (size <= maxX - minX || size <= maxZ - minZ) size <<= 1;
+
+        final int curveSize = size, curveMinX = minX, curveMinZ = minZ;
+        return Comparator.comparingLong(tile -> hilbertIndex(
+                curveSize,
+                tile.getX() - curveMinX,
+                tile.getY() - curveMinZ
+        ));
+    }
+
+    /**
+     * Calculates the index of the cell x, y along a hilbert-curve filling a square with the given size (a power of 2)
+     */
+    private static long hilbertIndex(int size, int x, int y) {
+        long index = 0;
+        int rx, ry, t;
+        for (int s = size >> 1; s > 0; s >>= 1) {
+            rx = (x & s) != 0 ? 1 : 0;
+            ry = (y & s) != 0 ? 1 : 0;
+            index += (long) s * s * ((3 * rx) ^ ry);
+
+            // rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = size - 1 - x;
+                    y = size - 1 - y;
+                }
+
+                t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return index;
     }
 
 }
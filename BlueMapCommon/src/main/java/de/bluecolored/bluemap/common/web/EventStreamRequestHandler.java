@@ -0,0 +1,151 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web;
+
+import de.bluecolored.bluemap.common.web.http.*;
+import de.bluecolored.bluemap.core.logger.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Pushes the data of a supplier as server-sent events to all subscribed clients.<br>
+ * <br>
+ * While there are subscribers, the data is requested and serialized once per update-interval and the same frame
+ * is handed to all subscribers. Frames are only sent if the data changed, otherwise a keep-alive comment is sent
+ * from time to time so that closed connections are noticed.
+ */
+public class EventStreamRequestHandler implements HttpRequestHandler {
+
+    private static final long KEEP_ALIVE_INTERVAL = TimeUnit.SECONDS.toMillis(15);
+    private static final byte[] KEEP_ALIVE_FRAME = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final Supplier<String> dataSupplier;
+    private final long updateInterval;
+
+    private final Set<HttpEventStream> subscribers;
+    private TimerTask updateTask;
+
+    private String lastData;
+    private byte[] lastFrame;
+    private long lastFrameTime;
+
+    /**
+     * @param updateInterval The interval in milliseconds in which the data is checked for changes
+     */
+    public EventStreamRequestHandler(Supplier<String> dataSupplier, long updateInterval) {
+        this.dataSupplier = dataSupplier;
+        this.updateInterval = updateInterval;
+
+        this.subscribers = ConcurrentHashMap.newKeySet();
+        this.updateTask = null;
+    }
+
+    @Override
+    public HttpResponse handle(HttpRequest request) {
+        HttpEventStream stream = new HttpEventStream();
+        stream.setCloseListener(() -> unsubscribe(stream));
+        subscribe(stream);
+
+        HttpResponse response = new HttpResponse(HttpStatusCode.OK);
+        response.addHeader("Cache-Control", "no-cache");
+        response.addHeader("Content-Type", "text/event-stream");
+        response.addHeader("X-Accel-Buffering", "no"); // tell reverse-proxies not to buffer the stream
+        response.setData(stream);
+        return response;
+    }
+
+    private synchronized void subscribe(HttpEventStream stream) {
+        subscribers.add(stream);
+
+        // send the current state right away
+        if (lastFrame != null) stream.send(lastFrame);
+
+        if (updateTask == null) {
+            updateTask = new TimerTask() {
+                @Override
+                public void run() {
+                    update();
+                }
+            };
+            UpdateTimer.TIMER.scheduleAtFixedRate(updateTask, 0, updateInterval);
+        }
+    }
+
+    private synchronized void unsubscribe(HttpEventStream stream) {
+        subscribers.remove(stream);
+
+        // stop updating while nobody is listening
+        if (subscribers.isEmpty() && updateTask != null) {
+            updateTask.cancel();
+            updateTask = null;
+            lastData = null;
+            lastFrame = null;
+        }
+    }
+
+    private synchronized void update() {
+        try {
+            String data = dataSupplier.get();
+            long now = System.currentTimeMillis();
+
+            if (!data.equals(lastData)) {
+                byte[] frame = toFrame(data);
+                for (HttpEventStream subscriber : subscribers) {
+                    subscriber.send(frame);
+                }
+
+                lastData = data;
+                lastFrame = frame;
+                lastFrameTime = now;
+            } else if (now - lastFrameTime >= KEEP_ALIVE_INTERVAL) {
+                for (HttpEventStream subscriber : subscribers) {
+                    subscriber.sendIfIdle(KEEP_ALIVE_FRAME);
+                }
+
+                lastFrameTime = now;
+            }
+        } catch (Exception ex) {
+            Logger.global.logError("Failed to update event-stream", ex);
+        }
+    }
+
+    private static byte[] toFrame(String data) {
+        return ("data: " + data.replace("\n", "\ndata: ") + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lazily creates the timer-thread shared by all event-streams.
+     */
+    private static class UpdateTimer {
+        private static final Timer TIMER = new Timer("BlueMap-EventStreamTimer", true);
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web;
+
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.storage.Compression;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A size-limited in-memory cache of files, that also holds a gzip-compressed version of the files that compress well.<br>
+ * <br>
+ * Files are only loaded (and compressed) explicitly with {@link #load(Path, long, long, boolean)}, looking up a file
+ * with {@link #get(Path, long, long)} never reads it. Entries are validated against the size and last-modified time
+ * of the file on every access, and a changed file is removed from the cache.
+ * If the cache is full, the least recently used entries are removed.
+ */
+@DebugDump
+public class FileCache {
+
+    // only keep the compressed data if it saves at least 10%
+    private static final double MAX_COMPRESSION_RATIO = 0.9;
+
+    private final long maxSize;
+    private final long maxFileSize;
+
+    private final LinkedHashMap<Path, Entry> entries;
+    private long size;
+
+    /**
+     * @param maxSize The maximum amount of bytes all entries of this cache can hold together
+     * @param maxFileSize The maximum size of a file that is cached
+     */
+    public FileCache(long maxSize, long maxFileSize) {
+        this.maxSize = maxSize;
+        this.maxFileSize = maxFileSize;
+
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.size = 0;
+    }
+
+    /**
+     * Returns the cached entry for the file, if it is cached and has not changed.
+     * @param length The current size of the file
+     * @param lastModified The current last-modified time of the file
+     * @return The entry, or null if the file is not cached
+     */
+    public synchronized @Nullable Entry get(Path file, long length, long lastModified) {
+        Entry entry = entries.get(file);
+        if (entry == null) return null;
+
+        if (entry.data.length != length || entry.lastModified != lastModified) {
+            entries.remove(file);
+            size -= entry.getSize();
+            return null;
+        }
+
+        return entry;
+    }
+
+    /**
+     * Reads the file (and compresses it) and adds it to the cache.
+     * @param length The current size of the file
+     * @param lastModified The current last-modified time of the file
+     * @param compressible Whether a compressed version of the file should be created
+     * @return The entry, or null if the file can not be cached
+     */
+    public @Nullable Entry load(Path file, long length, long lastModified, boolean compressible) throws IOException {
+        if (length > maxFileSize) return null;
+
+        byte[] data = Files.readAllBytes(file);
+
+        // the file has been changed while reading it
+        if (data.length != length) return null;
+
+        byte[] gzipData = compressible ? compress(data) : null;
+        Entry entry = new Entry(data, gzipData, lastModified);
+
+        synchronized (this) {
+            Entry previous = entries.put(file, entry);
+            if (previous != null) size -= previous.getSize();
+            size += entry.getSize();
+
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (size > maxSize && iterator.hasNext()) {
+                Entry eldest = iterator.next();
+                size -= eldest.getSize();
+                iterator.remove();
+            }
+        }
+
+        return entry;
+    }
+
+    public synchronized void invalidate(Path file) {
+        Entry entry = entries.remove(file);
+        if (entry != null) size -= entry.getSize();
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        size = 0;
+    }
+
+    public synchronized long getFreeSpace() {
+        return maxSize - size;
+    }
+
+    private static @Nullable byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream byteOut = new ByteArrayOutputStream(data.length / 2);
+        try (OutputStream out = Compression.GZIP.compress(byteOut)) {
+            out.write(data);
+        }
+
+        if (byteOut.size() > data.length * MAX_COMPRESSION_RATIO) return null;
+        return byteOut.toByteArray();
+    }
+
+    public static class Entry {
+
+        private final byte[] data;
+        private final @Nullable byte[] gzipData;
+        private final long lastModified;
+
+        private Entry(byte[] data, @Nullable byte[] gzipData, long lastModified) {
+            this.data = data;
+            this.gzipData = gzipData;
+            this.lastModified = lastModified;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        /**
+         * The gzip-compressed data, or null if the data is not compressed
+         */
+        public @Nullable byte[] getGzipData() {
+            return gzipData;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        private long getSize() {
+            return data.length + (gzipData != null ? gzipData.length : 0);
+        }
+
+    }
+
+}
@@ -26,13 +26,16 @@
 
 import de.bluecolored.bluemap.api.debug.DebugDump;
 import de.bluecolored.bluemap.common.web.http.*;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.storage.Compression;
 import org.apache.commons.lang3.time.DateFormatUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.nio.file.InvalidPathException;
-import java.nio.file.Path;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.Locale;
@@ -42,15 +45,22 @@
 @DebugDump
 public class FileRequestHandler implements HttpRequestHandler {
 
+    private static final long CACHE_SIZE = 32 * 1024 * 1024; // 32 MiB
+    private static final long MAX_CACHED_FILE_SIZE = 8 * 1024 * 1024; // 8 MiB
+
     private final Path webRoot;
+    private final FileCache fileCache;
 
     public FileRequestHandler(Path webRoot) {
         this.webRoot = webRoot.normalize();
+        this.fileCache = new FileCache(CACHE_SIZE, MAX_CACHED_FILE_SIZE);
+
+        preloadCache();
     }
 
     @Override
     public HttpResponse handle(HttpRequest request) {
-        if (!request.getMethod().equalsIgnoreCase("GET"))
+        if (!request.getMethod().equalsIgnoreCase("GET") && !request.getMethod().equalsIgnoreCase("HEAD"))
             return new HttpResponse(HttpStatusCode.BAD_REQUEST);
         return generateResponse(request);
     }
@@ -102,24 +112,44 @@ private HttpResponse generateResponse(HttpRequest request) {
             return new HttpResponse(HttpStatusCode.FORBIDDEN);
         }
 
-        // check modified
+        long length = file.length();
         long lastModified = file.lastModified();
-        HttpHeader modHeader = request.getHeader("If-Modified-Since");
-        if (modHeader != null){
-            try {
-                long since = stringToTimestamp(modHeader.getValue());
-                if (since + 1000 >= lastModified){
-                    return new HttpResponse(HttpStatusCode.NOT_MODIFIED);
-                }
-            } catch (IllegalArgumentException ignored){}
+
+        //get content type
+        String filetype = file.getName();
+        int pointIndex = filetype.lastIndexOf('.');
+        if (pointIndex >= 0) filetype = filetype.substring(pointIndex + 1);
+        String contentType = toContentType(filetype);
+
+        //use the cached data if possible, and its compressed version if the client accepts it
+        //files that are not cached are streamed from disk, so the request never waits for reading or compressing a whole file
+        FileCache.Entry cacheEntry = fileCache.get(file.toPath().normalize(), length, lastModified);
+
+        byte[] data = null;
+        boolean gzip = false;
+        if (cacheEntry != null) {
+            gzip = cacheEntry.getGzipData() != null &&
+                    request.hasHeaderValue("Accept-Encoding", Compression.GZIP.getTypeId());
+            data = gzip ? cacheEntry.getGzipData() : cacheEntry.getData();
         }
 
-        //check ETag
-        String eTag = Long.toHexString(file.length()) + Integer.toHexString(file.hashCode()) + Long.toHexString(lastModified);
+        // check e-tag and modified-since, If-Modified-Since is ignored if If-None-Match is present
+        String eTag = "\"" + Long.toHexString(length) + Integer.toHexString(file.hashCode()) + Long.toHexString(lastModified) +
+                (gzip ? "-" + Compression.GZIP.getTypeId() : "") + "\"";
         HttpHeader etagHeader = request.getHeader("If-None-Match");
         if (etagHeader != null){
-            if(etagHeader.getValue().equals(eTag)) {
-                return new HttpResponse(HttpStatusCode.NOT_MODIFIED);
+            if(etagHeader.matchesETag(eTag)) {
+                return notModified(eTag);
+            }
+        } else {
+            HttpHeader modHeader = request.getHeader("If-Modified-Since");
+            if (modHeader != null){
+                try {
+                    long since = stringToTimestamp(modHeader.getValue());
+                    if (since + 1000 >= lastModified){
+                        return notModified(eTag);
+                    }
+                } catch (IllegalArgumentException ignored){}
             }
         }
 
@@ -129,23 +159,96 @@ private HttpResponse generateResponse(HttpRequest request) {
         if (lastModified > 0) response.addHeader("Last-Modified", timestampToString(lastModified));
         response.addHeader("Cache-Control", "public");
         response.addHeader("Cache-Control", "max-age=" + TimeUnit.DAYS.toSeconds(1));
-
-        //add content type header
-        String filetype = file.getName();
-        int pointIndex = filetype.lastIndexOf('.');
-        if (pointIndex >= 0) filetype = filetype.substring(pointIndex + 1);
-        String contentType = toContentType(filetype);
+        response.addHeader("Accept-Ranges", "bytes");
+        if (cacheEntry != null && cacheEntry.getGzipData() != null) response.addHeader("Vary", "Accept-Encoding");
+        if (gzip) response.addHeader("Content-Encoding", Compression.GZIP.getTypeId());
         response.addHeader("Content-Type", contentType);
 
+        //check range
+        long bodyLength = data != null ? data.length : length;
+        long start = 0, count = bodyLength;
+        ByteRange range = ByteRange.fromRequest(request, eTag, bodyLength);
+        if (range != null) {
+            range.applyTo(response, bodyLength);
+            if (!range.isSatisfiable()) return response;
+
+            start = range.getFirst();
+            count = range.getLength();
+        }
+
+        //don't open the file for HEAD requests
+        if (request.getMethod().equalsIgnoreCase("HEAD")) {
+            response.setContentLength(count);
+            return response;
+        }
+
         //send response
+        if (data != null) {
+            response.setData(new ByteArrayInputStream(data, (int) start, (int) count), count);
+            return response;
+        }
+
         try {
-            response.setData(new FileInputStream(file));
+            FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            fileChannel.position(start);
+            response.setData(fileChannel, count);
             return response;
-        } catch (FileNotFoundException e) {
+        } catch (NoSuchFileException e) {
             return new HttpResponse(HttpStatusCode.NOT_FOUND);
+        } catch (IOException e) {
+            Logger.global.logError("Failed to read file for web-request.", e);
+            return new HttpResponse(HttpStatusCode.INTERNAL_SERVER_ERROR);
         }
     }
 
+    /**
+     * Loads (and compresses) the files of the web-root into the cache, until the cache is full.
+     * The map-data is skipped since it is served by the map-handlers, and it would quickly fill up the cache anyway.
+     */
+    private void preloadCache() {
+        Path mapsFolder = webRoot.resolve("maps");
+        try {
+            Files.walkFileTree(webRoot, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (dir.equals(mapsFolder)) return FileVisitResult.SKIP_SUBTREE;
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (file.getFileName().toString().endsWith(".php")) return FileVisitResult.CONTINUE;
+                    if (attrs.size() > fileCache.getFreeSpace()) return FileVisitResult.CONTINUE;
+
+                    String filetype = file.getFileName().toString();
+                    int pointIndex = filetype.lastIndexOf('.');
+                    if (pointIndex >= 0) filetype = filetype.substring(pointIndex + 1);
+
+                    fileCache.load(file.normalize(), attrs.size(), attrs.lastModifiedTime().toMillis(),
+                            isCompressible(filetype));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ex) {
+            Logger.global.logWarning("Failed to preload the files of the web-root: " + ex);
+        }
+    }
+
+    public FileCache getFileCache() {
+        return fileCache;
+    }
+
+    private static HttpResponse notModified(String eTag) {
+        HttpResponse response = new HttpResponse(HttpStatusCode.NOT_MODIFIED);
+        response.addHeader("ETag", eTag);
+        return response;
+    }
+
     private static String timestampToString(long time){
         return DateFormatUtils.format(time, "EEE, dd MMM yyy HH:mm:ss 'GMT'", TimeZone.getTimeZone("GMT"), Locale.ENGLISH);
     }
@@ -180,6 +283,26 @@ private static long stringToTimestamp(String timeString) throws IllegalArgumentE
         }
     }
 
+    /**
+     * Only known text-formats are compressed, unknown file-types are served as text/plain but might already be compressed
+     */
+    private static boolean isCompressible(String fileEnding) {
+        switch (fileEnding) {
+            case "json" :
+            case "svg" :
+            case "css" :
+            case "js" :
+            case "html" :
+            case "htm" :
+            case "shtml" :
+            case "xml" :
+            case "txt" :
+                return true;
+            default:
+                return false;
+        }
+    }
+
     private static String toContentType(String fileEnding) {
         String contentType = "text/plain";
         switch (fileEnding) {
@@ -29,11 +29,18 @@
 import de.bluecolored.bluemap.common.web.http.HttpResponse;
 import de.bluecolored.bluemap.common.web.http.HttpStatusCode;
 
+import java.nio.charset.StandardCharsets;
 import java.util.function.Supplier;
 
+/**
+ * Responds with the json-data of a supplier.<br>
+ * The data is only encoded again if the supplier returns a different String-instance than before,
+ * otherwise the same (immutable) byte-array is sent for all requests.
+ */
 public class JsonDataRequestHandler implements HttpRequestHandler {
 
     private final Supplier<String> dataSupplier;
+    private volatile EncodedData encodedData;
 
     public JsonDataRequestHandler(Supplier<String> dataSupplier) {
         this.dataSupplier = dataSupplier;
@@ -44,8 +51,29 @@ public HttpResponse handle(HttpRequest request) {
         HttpResponse response = new HttpResponse(HttpStatusCode.OK);
         response.addHeader("Cache-Control", "no-cache");
         response.addHeader("Content-Type", "application/json");
-        response.setData(dataSupplier.get());
+        response.setData(encode(dataSupplier.get()));
         return response;
     }
 
+    private byte[] encode(String data) {
+        EncodedData encodedData = this.encodedData;
+        if (encodedData == null || encodedData.source != data) {
+            encodedData = new EncodedData(data, data.getBytes(StandardCharsets.UTF_8));
+            this.encodedData = encodedData;
+        }
+        return encodedData.data;
+    }
+
+    private static class EncodedData {
+
+        private final String source;
+        private final byte[] data;
+
+        private EncodedData(String source, byte[] data) {
+            this.source = source;
+            this.data = data;
+        }
+
+    }
+
 }
@@ -24,25 +24,25 @@
  */
 package de.bluecolored.bluemap.common.web;
 
-import de.bluecolored.bluemap.common.config.PluginConfig;
 import de.bluecolored.bluemap.common.live.LiveMarkersDataSupplier;
 import de.bluecolored.bluemap.common.live.LivePlayersDataSupplier;
-import de.bluecolored.bluemap.common.serverinterface.Server;
-import de.bluecolored.bluemap.common.serverinterface.ServerWorld;
 import de.bluecolored.bluemap.core.map.BmMap;
+import de.bluecolored.bluemap.core.map.TileChangeLog;
 import de.bluecolored.bluemap.core.storage.Storage;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.UUID;
-import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 public class MapRequestHandler extends RoutingRequestHandler {
 
-    public MapRequestHandler(BmMap map, Server serverInterface, PluginConfig pluginConfig, Predicate<UUID> playerFilter) {
-        this(map.getId(), map.getStorage(),
-                createPlayersDataSupplier(map, serverInterface, pluginConfig, playerFilter),
-                new LiveMarkersDataSupplier(map.getMarkerSets()));
+    /**
+     * @param livePlayersDataSupplier The supplier of the live player-data, it collects the players at most once per update-tick
+     */
+    public MapRequestHandler(BmMap map, @Nullable LivePlayersDataSupplier livePlayersDataSupplier) {
+        this(new MapStorageRequestHandler(map),
+                livePlayersDataSupplier,
+                new LiveMarkersDataSupplier(map.getMarkerSets()),
+                map.getTileChangeLog());
     }
 
     public MapRequestHandler(String mapId, Storage mapStorage) {
@@ -52,13 +52,29 @@ public MapRequestHandler(String mapId, Storage mapStorage) {
     public MapRequestHandler(String mapId, Storage mapStorage,
                              @Nullable Supplier<String> livePlayersDataSupplier,
                              @Nullable Supplier<String> liveMarkerDataSupplier) {
+        this(new MapStorageRequestHandler(mapId, mapStorage),
+                livePlayersDataSupplier != null ? new CachedRateLimitDataSupplier(livePlayersDataSupplier, 1000) : null,
+                liveMarkerDataSupplier,
+                null);
+    }
+
+    /**
+     * @param livePlayersDataSupplier A supplier that is cheap to call, because it is called for every request
+     */
+    private MapRequestHandler(MapStorageRequestHandler mapStorageRequestHandler,
+                              @Nullable Supplier<String> livePlayersDataSupplier,
+                              @Nullable Supplier<String> liveMarkerDataSupplier,
+                              @Nullable TileChangeLog tileChangeLog) {
 
-        register(".*", new MapStorageRequestHandler(mapId, mapStorage));
+        register(".*", mapStorageRequestHandler);
+
+        if (tileChangeLog != null) {
+            register("changes", "", new TileChangesRequestHandler(tileChangeLog));
+        }
 
         if (livePlayersDataSupplier != null) {
-            register("live/players\\.json", "", new JsonDataRequestHandler(
-                    new CachedRateLimitDataSupplier(livePlayersDataSupplier,1000)
-            ));
+            register("live/players\\.json", "", new JsonDataRequestHandler(livePlayersDataSupplier));
+            register("live/players/events", "", new EventStreamRequestHandler(livePlayersDataSupplier, 1000));
         }
 
         if (liveMarkerDataSupplier != null) {
@@ -68,10 +84,4 @@ public MapRequestHandler(String mapId, Storage mapStorage,
         }
     }
 
-    private static @Nullable LivePlayersDataSupplier createPlayersDataSupplier(BmMap map, Server serverInterface, PluginConfig pluginConfig, Predicate<UUID> playerFilter) {
-        ServerWorld world = serverInterface.getServerWorld(map.getWorld()).orElse(null);
-        if (world == null) return null;
-        return new LivePlayersDataSupplier(serverInterface, pluginConfig, world, playerFilter);
-    }
-
 }
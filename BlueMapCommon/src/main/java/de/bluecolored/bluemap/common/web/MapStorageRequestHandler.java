@@ -30,12 +30,16 @@
 import de.bluecolored.bluemap.common.web.http.*;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.map.BmMap;
+import de.bluecolored.bluemap.core.map.TileExistenceIndex;
 import de.bluecolored.bluemap.core.storage.CompressedInputStream;
 import de.bluecolored.bluemap.core.storage.Compression;
+import de.bluecolored.bluemap.core.storage.MetaInfo;
 import de.bluecolored.bluemap.core.storage.Storage;
 import de.bluecolored.bluemap.core.storage.TileInfo;
+import de.bluecolored.bluemap.core.util.Tristate;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.time.DateFormatUtils;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.util.*;
@@ -50,16 +54,24 @@ public class MapStorageRequestHandler implements HttpRequestHandler {
 
     private final String mapId;
     private final Storage mapStorage;
-
+    @Nullable private final TileExistenceIndex tileExistenceIndex;
 
     public MapStorageRequestHandler(BmMap map) {
-        this.mapId = map.getId();
-        this.mapStorage = map.getStorage();
+        this(map.getId(), map.getStorage(), map.getTileExistenceIndex());
     }
 
+    /**
+     * Creates a handler without a {@link TileExistenceIndex}, since the tiles might be written by a different process
+     * and every request needs to check the storage.
+     */
     public MapStorageRequestHandler(String mapId, Storage mapStorage) {
+        this(mapId, mapStorage, null);
+    }
+
+    public MapStorageRequestHandler(String mapId, Storage mapStorage, @Nullable TileExistenceIndex tileExistenceIndex) {
         this.mapId = mapId;
         this.mapStorage = mapStorage;
+        this.tileExistenceIndex = tileExistenceIndex;
     }
 
     @Override
@@ -78,33 +90,39 @@ public HttpResponse handle(HttpRequest request) {
                 int lod = Integer.parseInt(tileMatcher.group(1));
                 int x = Integer.parseInt(tileMatcher.group(2).replace("/", ""));
                 int z = Integer.parseInt(tileMatcher.group(3).replace("/", ""));
-                Optional<TileInfo> optTileInfo = mapStorage.readMapTileInfo(mapId, lod, new Vector2i(x, z));
+                Vector2i tile = new Vector2i(x, z);
+
+                // answer requests for tiles that have not been rendered without asking the storage
+                if (tileExistenceIndex != null && tileExistenceIndex.contains(lod, tile) == Tristate.FALSE)
+                    return new HttpResponse(HttpStatusCode.NO_CONTENT);
+
+                Optional<TileInfo> optTileInfo = mapStorage.readMapTileInfo(mapId, lod, tile);
 
                 if (optTileInfo.isPresent()) {
                     TileInfo tileInfo = optTileInfo.get();
+                    String contentType = lod == 0 ? "application/octet-stream" : "image/png";
+                    Compression contentEncoding = selectContentEncoding(tileInfo.getCompression(), contentType, request);
 
-                    // check e-tag
-                    String eTag = calculateETag(path, tileInfo);
+                    // check e-tag and modified-since, If-Modified-Since is ignored if If-None-Match is present
+                    String eTag = calculateETag(path, tileInfo, contentEncoding);
+                    long lastModified = tileInfo.getLastModified();
                     HttpHeader etagHeader = request.getHeader("If-None-Match");
                     if (etagHeader != null){
-                        if(etagHeader.getValue().equals(eTag)) {
-                            return new HttpResponse(HttpStatusCode.NOT_MODIFIED);
+                        if(etagHeader.matchesETag(eTag)) {
+                            return notModified(eTag);
+                        }
+                    } else {
+                        HttpHeader modHeader = request.getHeader("If-Modified-Since");
+                        if (modHeader != null){
+                            try {
+                                long since = stringToTimestamp(modHeader.getValue());
+                                if (since + 1000 >= lastModified){
+                                    return notModified(eTag);
+                                }
+                            } catch (IllegalArgumentException ignored){}
                         }
                     }
 
-                    // check modified-since
-                    long lastModified = tileInfo.getLastModified();
-                    HttpHeader modHeader = request.getHeader("If-Modified-Since");
-                    if (modHeader != null){
-                        try {
-                            long since = stringToTimestamp(modHeader.getValue());
-                            if (since + 1000 >= lastModified){
-                                return new HttpResponse(HttpStatusCode.NOT_MODIFIED);
-                            }
-                        } catch (IllegalArgumentException ignored){}
-                    }
-
-                    CompressedInputStream compressedIn = tileInfo.readMapTile();
                     HttpResponse response = new HttpResponse(HttpStatusCode.OK);
                     response.addHeader("ETag", eTag);
                     if (lastModified > 0)
@@ -112,24 +130,30 @@ public HttpResponse handle(HttpRequest request) {
 
                     response.addHeader("Cache-Control", "public");
                     response.addHeader("Cache-Control", "max-age=" + TimeUnit.DAYS.toSeconds(1));
+                    response.addHeader("Vary", "Accept-Encoding");
+                    response.addHeader("Content-Type", contentType);
 
-                    if (lod == 0) response.addHeader("Content-Type", "application/octet-stream");
-                    else response.addHeader("Content-Type", "image/png");
-
-                    writeToResponse(compressedIn, response, request);
+                    writeToResponse(tileInfo::readMapTile, tileInfo.getCompression(), tileInfo.getSize(),
+                            contentEncoding, eTag, response, request);
                     return response;
                 }
             }
 
             // provide meta-data
-            Optional<InputStream> optIn = mapStorage.readMeta(mapId, path);
-            if (optIn.isPresent()) {
-                CompressedInputStream compressedIn = new CompressedInputStream(optIn.get(), Compression.NONE);
+            Optional<MetaInfo> optMetaInfo = mapStorage.readMetaInfo(mapId, path);
+            if (optMetaInfo.isPresent()) {
+                MetaInfo metaInfo = optMetaInfo.get();
+                String contentType = ContentTypeRegistry.fromFileName(path);
+                Compression contentEncoding = selectContentEncoding(Compression.NONE, contentType, request);
+
                 HttpResponse response = new HttpResponse(HttpStatusCode.OK);
                 response.addHeader("Cache-Control", "public");
                 response.addHeader("Cache-Control", "max-age=" + TimeUnit.DAYS.toSeconds(1));
-                response.addHeader("Content-Type", ContentTypeRegistry.fromFileName(path));
-                writeToResponse(compressedIn, response, request);
+                response.addHeader("Vary", "Accept-Encoding");
+                response.addHeader("Content-Type", contentType);
+
+                writeToResponse(() -> new CompressedInputStream(metaInfo.readMeta(), Compression.NONE),
+                        Compression.NONE, metaInfo.getSize(), contentEncoding, null, response, request);
                 return response;
             }
 
@@ -142,35 +166,112 @@ public HttpResponse handle(HttpRequest request) {
         return new HttpResponse(HttpStatusCode.NO_CONTENT);
     }
 
-    private String calculateETag(String path, TileInfo tileInfo) {
-        return Long.toHexString(tileInfo.getSize()) + Integer.toHexString(path.hashCode()) + Long.toHexString(tileInfo.getLastModified());
+    /**
+     * Creates a strong entity-tag for the tile, the content-encoding is part of it since
+     * every encoding is a different representation.
+     */
+    private String calculateETag(String path, TileInfo tileInfo, Compression contentEncoding) {
+        String eTag = Long.toHexString(tileInfo.getSize()) + Integer.toHexString(path.hashCode()) + Long.toHexString(tileInfo.getLastModified());
+        if (contentEncoding != Compression.NONE) eTag += "-" + contentEncoding.getTypeId();
+        return "\"" + eTag + "\"";
     }
 
-    private void writeToResponse(CompressedInputStream data, HttpResponse response, HttpRequest request) throws IOException {
-        Compression compression = data.getCompression();
+    /**
+     * Selects the content-encoding that is used to send data that is stored with the given compression.
+     */
+    private Compression selectContentEncoding(Compression compression, String contentType, HttpRequest request) {
         if (
                 compression != Compression.NONE &&
                 request.hasHeaderValue("Accept-Encoding", compression.getTypeId())
         ) {
-            response.addHeader("Content-Encoding", compression.getTypeId());
-            response.setData(data);
-        } else if (
+            return compression;
+        }
+
+        if (
                 compression != Compression.GZIP &&
-                !response.hasHeaderValue("Content-Type", "image/png") &&
+                !"image/png".equals(contentType) &&
                 request.hasHeaderValue("Accept-Encoding", Compression.GZIP.getTypeId())
         ) {
-            response.addHeader("Content-Encoding", Compression.GZIP.getTypeId());
+            return Compression.GZIP;
+        }
+
+        return Compression.NONE;
+    }
+
+    /**
+     * @param size The size of the stored data as reported by the storage
+     * @param eTag The strong entity-tag of the data, or null if it has none
+     */
+    private void writeToResponse(
+            DataSupplier dataSupplier, Compression compression, long size,
+            Compression contentEncoding, @Nullable String eTag,
+            HttpResponse response, HttpRequest request
+    ) throws IOException {
+        boolean head = request.getMethod().equalsIgnoreCase("HEAD");
+        if (contentEncoding != Compression.NONE)
+            response.addHeader("Content-Encoding", contentEncoding.getTypeId());
+
+        // the stored data can be sent as is
+        if (contentEncoding == compression) {
+            writeRangeToResponse(dataSupplier, size, eTag, head, response, request);
+            return;
+        }
+
+        // the length of re-compressed data is only known after reading all of it
+        if (head) return;
+
+        CompressedInputStream data = dataSupplier.get();
+        if (contentEncoding == Compression.GZIP) {
             ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
             try (OutputStream os = Compression.GZIP.compress(byteOut)) {
                 IOUtils.copyLarge(data.decompress(), os);
             }
             byte[] compressedData = byteOut.toByteArray();
-            response.setData(new ByteArrayInputStream(compressedData));
+            writeRangeToResponse(() -> new CompressedInputStream(new ByteArrayInputStream(compressedData), Compression.GZIP),
+                    compressedData.length, eTag, false, response, request);
         } else {
-            response.setData(new BufferedInputStream(data.decompress()));
+            response.setData(data.decompress());
         }
     }
 
+    private void writeRangeToResponse(
+            DataSupplier dataSupplier, long size, @Nullable String eTag, boolean head,
+            HttpResponse response, HttpRequest request
+    ) throws IOException {
+        response.addHeader("Accept-Ranges", "bytes");
+
+        long start = 0, count = size;
+        ByteRange range = ByteRange.fromRequest(request, eTag, size);
+        if (range != null) {
+            range.applyTo(response, size);
+            if (!range.isSatisfiable()) return;
+
+            start = range.getFirst();
+            count = range.getLength();
+        }
+
+        // don't read the data for HEAD requests
+        if (head) {
+            response.setContentLength(count);
+            return;
+        }
+
+        InputStream data = dataSupplier.get();
+        try {
+            IOUtils.skipFully(data, start);
+        } catch (IOException ex) {
+            data.close();
+            throw ex;
+        }
+        response.setData(data, count);
+    }
+
+    private static HttpResponse notModified(String eTag) {
+        HttpResponse response = new HttpResponse(HttpStatusCode.NOT_MODIFIED);
+        response.addHeader("ETag", eTag);
+        return response;
+    }
+
     private static String timestampToString(long time){
         return DateFormatUtils.format(time, "EEE, dd MMM yyy HH:mm:ss 'GMT'", TimeZone.getTimeZone("GMT"), Locale.ENGLISH);
     }
@@ -205,4 +306,9 @@ private static long stringToTimestamp(String timeString) throws IllegalArgumentE
         }
     }
 
+    @FunctionalInterface
+    private interface DataSupplier {
+        CompressedInputStream get() throws IOException;
+    }
+
 }
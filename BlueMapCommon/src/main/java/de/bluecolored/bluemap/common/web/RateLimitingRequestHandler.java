@@ -0,0 +1,104 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web;
+
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.common.web.http.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetAddress;
+import java.util.List;
+
+/**
+ * Limits the requests of each client with a {@link RateLimiter}, requests above the limit are answered with
+ * 429 (Too Many Requests).<br>
+ * <br>
+ * Requests for live-data are limited separately from all other requests (mostly map-tiles),
+ * so a client that loads a lot of tiles still gets its player-updates.
+ */
+@DebugDump
+public class RateLimitingRequestHandler implements HttpRequestHandler {
+
+    private final HttpRequestHandler delegate;
+    private final RateLimiter limiter;
+    private final RateLimiter liveDataLimiter;
+    private final @Nullable String proxyHeader;
+
+    /**
+     * @param proxyHeader The header (e.g. X-Forwarded-For) that a trusted reverse-proxy uses to tell the address of the client,
+     *                    or null if the address of the connection should be used (requests from loopback-addresses are
+     *                    then not limited at all)
+     */
+    public RateLimitingRequestHandler(HttpRequestHandler delegate, RateLimiter limiter, RateLimiter liveDataLimiter, @Nullable String proxyHeader) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+        this.liveDataLimiter = liveDataLimiter;
+        this.proxyHeader = proxyHeader == null || proxyHeader.isEmpty() ? null : proxyHeader;
+    }
+
+    @Override
+    public HttpResponse handle(HttpRequest request) {
+        // without a proxy-header, requests from a loopback-address are most likely forwarded by a local
+        // reverse-proxy and limiting them would make all clients share the same bucket
+        if (proxyHeader == null && isLoopback(request)) return delegate.handle(request);
+
+        RateLimiter limiter = isLiveDataRequest(request) ? liveDataLimiter : this.limiter;
+
+        long retryAfter = limiter.tryAcquire(getClientAddress(request));
+        if (retryAfter > 0) {
+            HttpResponse response = new HttpResponse(HttpStatusCode.TOO_MANY_REQUESTS);
+            response.addHeader("Retry-After", String.valueOf((retryAfter + 999) / 1000));
+            response.addHeader("Cache-Control", "no-cache");
+            return response;
+        }
+
+        return delegate.handle(request);
+    }
+
+    private String getClientAddress(HttpRequest request) {
+        if (proxyHeader != null) {
+            HttpHeader header = request.getHeader(proxyHeader);
+            if (header != null) {
+                // the last address is the one that has been added by the (trusted) proxy,
+                // all others could have been sent by the client itself
+                List<String> values = header.getValues();
+                if (!values.isEmpty()) return values.get(values.size() - 1);
+            }
+        }
+
+        InetAddress source = request.getSource();
+        return source != null ? source.getHostAddress() : "";
+    }
+
+    private static boolean isLoopback(HttpRequest request) {
+        InetAddress source = request.getSource();
+        return source != null && source.isLoopbackAddress();
+    }
+
+    private static boolean isLiveDataRequest(HttpRequest request) {
+        return request.getPath().contains("/live/");
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web;
+
+import com.flowpowered.math.vector.Vector3i;
+import com.google.gson.stream.JsonWriter;
+import de.bluecolored.bluemap.common.web.http.HttpRequest;
+import de.bluecolored.bluemap.common.web.http.HttpRequestHandler;
+import de.bluecolored.bluemap.common.web.http.HttpResponse;
+import de.bluecolored.bluemap.common.web.http.HttpStatusCode;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.map.TileChangeLog;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Answers which tiles of a map have been written since the sequence-number given with the <code>since</code> parameter,
+ * so the webapp only needs to reload those tiles instead of all of them.<br>
+ * <br>
+ * If the log can not tell (it has been recreated), <code>complete</code> is false and the client should reload everything.
+ * If only some changes have been dropped from the log, their lods are listed as <code>incomplete</code> and the client
+ * should reload all tiles of those lods.
+ */
+public class TileChangesRequestHandler implements HttpRequestHandler {
+
+    private final TileChangeLog tileChangeLog;
+
+    public TileChangesRequestHandler(TileChangeLog tileChangeLog) {
+        this.tileChangeLog = tileChangeLog;
+    }
+
+    @Override
+    public HttpResponse handle(HttpRequest request) {
+        String sinceParam = request.getGETParams().get("since");
+
+        long since;
+        try {
+            since = sinceParam != null ? Long.parseLong(sinceParam) : -1;
+        } catch (NumberFormatException ex) {
+            return new HttpResponse(HttpStatusCode.BAD_REQUEST);
+        }
+
+        List<Change> changes = new ArrayList<>();
+        Collection<Integer> incompleteLods = List.of();
+        long nextSequence;
+        boolean complete;
+        synchronized (tileChangeLog) {
+            nextSequence = tileChangeLog.getNextSequence();
+            complete = sinceParam == null || tileChangeLog.collectChanges(since, (lod, x, z, timestamp) ->
+                    changes.add(new Change(new Vector3i(x, z, lod), timestamp))
+            );
+            if (complete && sinceParam != null) incompleteLods = tileChangeLog.getIncompleteLods(since);
+        }
+
+        HttpResponse response = new HttpResponse(HttpStatusCode.OK);
+        response.addHeader("Cache-Control", "no-cache");
+        response.addHeader("Content-Type", "application/json");
+        response.setData(writeJson(nextSequence, complete, incompleteLods, changes));
+        return response;
+    }
+
+    private String writeJson(long nextSequence, boolean complete, Collection<Integer> incompleteLods, List<Change> changes) {
+        try (StringWriter jsonString = new StringWriter();
+             JsonWriter json = new JsonWriter(jsonString)) {
+
+            json.beginObject();
+            json.name("epoch").value(tileChangeLog.getEpoch());
+            json.name("seq").value(nextSequence);
+            json.name("complete").value(complete);
+
+            json.name("incomplete").beginArray();
+            for (int lod : incompleteLods) json.value(lod);
+            json.endArray();
+
+            json.name("changes").beginArray();
+            for (Change change : changes) {
+                Vector3i tile = change.tile;
+                json.beginArray();
+                json.value(tile.getZ());
+                json.value(tile.getX());
+                json.value(tile.getY());
+                json.value(change.timestamp);
+                json.endArray();
+            }
+            json.endArray();
+
+            json.endObject();
+
+            json.flush();
+            return jsonString.toString();
+        } catch (IOException ex) {
+            Logger.global.logError("Failed to write tile-changes json!", ex);
+            return "BlueMap - Exception handling this request";
+        }
+    }
+
+    private static class Change {
+
+        private final Vector3i tile;
+        private final long timestamp;
+
+        private Change(Vector3i tile, long timestamp) {
+            this.tile = tile;
+            this.timestamp = timestamp;
+        }
+
+    }
+
+}
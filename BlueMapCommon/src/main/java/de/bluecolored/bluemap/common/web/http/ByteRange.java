@@ -0,0 +1,123 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web.http;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+
+/**
+ * A single byte-range of a representation, as requested with a Range-header.<br>
+ * Only single ranges are supported, requests for multiple ranges are answered with the full representation.
+ */
+public class ByteRange {
+
+    private static final ByteRange NOT_SATISFIABLE = new ByteRange(0, -1);
+
+    private final long first, last;
+
+    private ByteRange(long first, long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    public long getFirst() {
+        return first;
+    }
+
+    public long getLast() {
+        return last;
+    }
+
+    public long getLength() {
+        return last - first + 1;
+    }
+
+    public boolean isSatisfiable() {
+        return this != NOT_SATISFIABLE;
+    }
+
+    /**
+     * Sets the status-code and the Content-Range header of the response for this range.
+     * @param length The length of the full representation
+     */
+    public void applyTo(HttpResponse response, long length) {
+        if (!isSatisfiable()) {
+            response.setStatusCode(HttpStatusCode.RANGE_NOT_SATISFIABLE);
+            response.addHeader("Content-Range", "bytes */" + length);
+            return;
+        }
+
+        response.setStatusCode(HttpStatusCode.PARTIAL_CONTENT);
+        response.addHeader("Content-Range", "bytes " + first + "-" + last + "/" + length);
+    }
+
+    /**
+     * Returns the range requested by the Range-header of the request.<br>
+     * Returns null if the full representation should be sent instead, which is the case if there is no (valid)
+     * Range-header, if multiple ranges are requested or if the If-Range header does not match the entity-tag.
+     * @param eTag The (strong) entity-tag of the representation, or null if it has none
+     * @param length The length of the full representation
+     */
+    public static @Nullable ByteRange fromRequest(HttpRequest request, @Nullable String eTag, long length) {
+        HttpHeader rangeHeader = request.getHeader("Range");
+        if (rangeHeader == null) return null;
+
+        // If-Range needs a strong match, dates are not supported and lead to the full representation
+        HttpHeader ifRangeHeader = request.getHeader("If-Range");
+        if (ifRangeHeader != null && (eTag == null || !ifRangeHeader.getValue().trim().equals(eTag))) return null;
+
+        String value = rangeHeader.getValue().trim();
+        if (!value.toLowerCase(Locale.ROOT).startsWith("bytes=")) return null;
+        value = value.substring(6).trim();
+        if (value.indexOf(',') >= 0) return null;
+
+        int separator = value.indexOf('-');
+        if (separator < 0) return null;
+
+        try {
+            String firstString = value.substring(0, separator).trim();
+            String lastString = value.substring(separator + 1).trim();
+
+            // suffix-range: the last n bytes
+            if (firstString.isEmpty()) {
+                long suffixLength = Long.parseLong(lastString);
+                if (suffixLength < 0) return null;
+                if (suffixLength == 0 || length == 0) return NOT_SATISFIABLE;
+                return new ByteRange(Math.max(length - suffixLength, 0), length - 1);
+            }
+
+            long first = Long.parseLong(firstString);
+            long last = lastString.isEmpty() ? Long.MAX_VALUE : Long.parseLong(lastString);
+            if (first < 0 || last < first) return null;
+            if (first >= length) return NOT_SATISFIABLE;
+
+            return new ByteRange(first, Math.min(last, length - 1));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+}
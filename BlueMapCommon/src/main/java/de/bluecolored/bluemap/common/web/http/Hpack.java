@@ -0,0 +1,352 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web.http;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The parts of the HPACK header-compression (RFC 7541) that are shared by the {@link HpackDecoder} and {@link HpackEncoder}.
+ */
+final class Hpack {
+
+    static final int DEFAULT_TABLE_SIZE = 4096;
+
+    static final HttpHeader[] STATIC_TABLE = {
+            new HttpHeader(":authority", ""),
+            new HttpHeader(":method", "GET"),
+            new HttpHeader(":method", "POST"),
+            new HttpHeader(":path", "/"),
+            new HttpHeader(":path", "/index.html"),
+            new HttpHeader(":scheme", "http"),
+            new HttpHeader(":scheme", "https"),
+            new HttpHeader(":status", "200"),
+            new HttpHeader(":status", "204"),
+            new HttpHeader(":status", "206"),
+            new HttpHeader(":status", "304"),
+            new HttpHeader(":status", "400"),
+            new HttpHeader(":status", "404"),
+            new HttpHeader(":status", "500"),
+            new HttpHeader("accept-charset", ""),
+            new HttpHeader("accept-encoding", "gzip, deflate"),
+            new HttpHeader("accept-language", ""),
+            new HttpHeader("accept-ranges", ""),
+            new HttpHeader("accept", ""),
+            new HttpHeader("access-control-allow-origin", ""),
+            new HttpHeader("age", ""),
+            new HttpHeader("allow", ""),
+            new HttpHeader("authorization", ""),
+            new HttpHeader("cache-control", ""),
+            new HttpHeader("content-disposition", ""),
+            new HttpHeader("content-encoding", ""),
+            new HttpHeader("content-language", ""),
+            new HttpHeader("content-length", ""),
+            new HttpHeader("content-location", ""),
+            new HttpHeader("content-range", ""),
+            new HttpHeader("content-type", ""),
+            new HttpHeader("cookie", ""),
+            new HttpHeader("date", ""),
+            new HttpHeader("etag", ""),
+            new HttpHeader("expect", ""),
+            new HttpHeader("expires", ""),
+            new HttpHeader("from", ""),
+            new HttpHeader("host", ""),
+            new HttpHeader("if-match", ""),
+            new HttpHeader("if-modified-since", ""),
+            new HttpHeader("if-none-match", ""),
+            new HttpHeader("if-range", ""),
+            new HttpHeader("if-unmodified-since", ""),
+            new HttpHeader("last-modified", ""),
+            new HttpHeader("link", ""),
+            new HttpHeader("location", ""),
+            new HttpHeader("max-forwards", ""),
+            new HttpHeader("proxy-authenticate", ""),
+            new HttpHeader("proxy-authorization", ""),
+            new HttpHeader("range", ""),
+            new HttpHeader("referer", ""),
+            new HttpHeader("refresh", ""),
+            new HttpHeader("retry-after", ""),
+            new HttpHeader("server", ""),
+            new HttpHeader("set-cookie", ""),
+            new HttpHeader("strict-transport-security", ""),
+            new HttpHeader("transfer-encoding", ""),
+            new HttpHeader("user-agent", ""),
+            new HttpHeader("vary", ""),
+            new HttpHeader("via", ""),
+            new HttpHeader("www-authenticate", "")
+    };
+
+    // the length of the huffman-code of each symbol (256 = EOS),
+    // the codes themselves are canonical: ordered by length and then by symbol
+    private static final int[] HUFFMAN_CODE_LENGTHS = {
+            13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+            28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+            6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+            5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+            13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+            15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+            6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+            20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+            24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+            22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+            21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+            26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+            19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+            20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+            26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+            30
+    };
+
+    private static final int HUFFMAN_EOS = 256;
+
+    // nodes of the huffman decoding-tree: the children of node n are at 2n and 2n+1,
+    // a negative value -(symbol + 1) is a leaf and 0 is the root
+    private static final int[] HUFFMAN_TREE = buildHuffmanTree();
+
+    private static final Map<String, Integer> STATIC_NAME_INDEX = new HashMap<>();
+    private static final Map<String, Integer> STATIC_FIELD_INDEX = new HashMap<>();
+    static {
+        for (int i = STATIC_TABLE.length - 1; i >= 0; i--) {
+            HttpHeader header = STATIC_TABLE[i];
+            STATIC_NAME_INDEX.put(header.getKey(), i + 1);
+            if (!header.getValue().isEmpty())
+                STATIC_FIELD_INDEX.put(header.getKey() + '\0' + header.getValue(), i + 1);
+        }
+    }
+
+    private Hpack() {}
+
+    /**
+     * Returns the index of the static-table entry with the given name and value, or 0 if there is none
+     */
+    static int staticIndexOf(String name, String value) {
+        return STATIC_FIELD_INDEX.getOrDefault(name + '\0' + value, 0);
+    }
+
+    /**
+     * Returns the index of the first static-table entry with the given name, or 0 if there is none
+     */
+    static int staticIndexOfName(String name) {
+        return STATIC_NAME_INDEX.getOrDefault(name, 0);
+    }
+
+    /**
+     * Decodes an integer with the given prefix-length, the first byte has already been read from the buffer.
+     */
+    static int decodeInt(ByteBuffer buffer, int firstByte, int prefixBits) throws Http2Exception {
+        int max = (1 << prefixBits) - 1;
+        int value = firstByte & max;
+        if (value < max) return value;
+
+        int shift = 0, b;
+        do {
+            if (!buffer.hasRemaining()) throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Incomplete integer");
+            if (shift > 21) throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Integer too large");
+
+            b = buffer.get() & 0xFF;
+            value += (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        if (value < 0) throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Integer too large");
+        return value;
+    }
+
+    static void encodeInt(ByteArrayOutputStream out, int flags, int prefixBits, int value) {
+        int max = (1 << prefixBits) - 1;
+        if (value < max) {
+            out.write(flags | value);
+            return;
+        }
+
+        out.write(flags | max);
+        value -= max;
+        while (value >= 0x80) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static String decodeString(ByteBuffer buffer) throws Http2Exception {
+        if (!buffer.hasRemaining()) throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Incomplete string");
+
+        int firstByte = buffer.get() & 0xFF;
+        int length = decodeInt(buffer, firstByte, 7);
+        if (length > buffer.remaining()) throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Incomplete string");
+
+        if ((firstByte & 0x80) != 0) return decodeHuffman(buffer, length);
+
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.ISO_8859_1);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Encodes the string as a literal (without huffman-coding)
+     */
+    static void encodeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+        encodeInt(out, 0, 7, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String decodeHuffman(ByteBuffer buffer, int length) throws Http2Exception {
+        StringBuilder value = new StringBuilder(length * 8 / 5);
+
+        int node = 0, depth = 0;
+        boolean padding = true; // all bits since the last symbol have been 1
+        for (int i = 0; i < length; i++) {
+            int b = buffer.get() & 0xFF;
+            for (int bit = 7; bit >= 0; bit--) {
+                int v = (b >>> bit) & 1;
+                int next = HUFFMAN_TREE[2 * node + v];
+
+                if (next < 0) {
+                    int symbol = -next - 1;
+                    if (symbol == HUFFMAN_EOS) throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "EOS in huffman-string");
+
+                    value.append((char) symbol);
+                    node = 0;
+                    depth = 0;
+                    padding = true;
+                } else {
+                    node = next;
+                    depth++;
+                    if (v == 0) padding = false;
+                }
+            }
+        }
+
+        if (depth > 7 || !padding) throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Invalid huffman-string padding");
+        return value.toString();
+    }
+
+    private static int[] buildHuffmanTree() {
+        Integer[] symbols = new Integer[HUFFMAN_CODE_LENGTHS.length];
+        for (int i = 0; i < symbols.length; i++) symbols[i] = i;
+        Arrays.sort(symbols, Comparator.<Integer>comparingInt(s -> HUFFMAN_CODE_LENGTHS[s]).thenComparingInt(s -> s));
+
+        int[] tree = new int[2 * (symbols.length - 1)];
+        int nodeCount = 1;
+
+        int code = 0, previousLength = 0;
+        for (int symbol : symbols) {
+            int length = HUFFMAN_CODE_LENGTHS[symbol];
+            code <<= length - previousLength;
+            previousLength = length;
+
+            int node = 0;
+            for (int bit = length - 1; bit > 0; bit--) {
+                int child = 2 * node + ((code >>> bit) & 1);
+                if (tree[child] == 0) tree[child] = nodeCount++;
+                node = tree[child];
+            }
+            tree[2 * node + (code & 1)] = -(symbol + 1);
+
+            code++;
+        }
+
+        return tree;
+    }
+
+    /**
+     * The dynamic table of an HPACK en- or decoder, the newest entry has the index 0.
+     */
+    static class DynamicTable {
+
+        private static final int ENTRY_OVERHEAD = 32;
+
+        private final List<HttpHeader> entries; // oldest first
+        private int size;
+        private int maxSize;
+
+        DynamicTable(int maxSize) {
+            this.entries = new ArrayList<>();
+            this.size = 0;
+            this.maxSize = maxSize;
+        }
+
+        HttpHeader get(int index) {
+            if (index < 0 || index >= entries.size()) return null;
+            return entries.get(entries.size() - 1 - index);
+        }
+
+        int length() {
+            return entries.size();
+        }
+
+        void add(HttpHeader header) {
+            int entrySize = sizeOf(header);
+            evict(maxSize - entrySize);
+
+            // an entry larger than the table just empties the table
+            if (entrySize > maxSize) return;
+
+            entries.add(header);
+            size += entrySize;
+        }
+
+        void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+            evict(maxSize);
+        }
+
+        /**
+         * Returns the index of the entry with the given name and value (or -1),
+         * or if there is none, <code>-(index + 2)</code> of an entry with the given name
+         */
+        int indexOf(String name, String value) {
+            int nameIndex = -1;
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                HttpHeader entry = entries.get(i);
+                if (!entry.getKey().equals(name)) continue;
+
+                int index = entries.size() - 1 - i;
+                if (entry.getValue().equals(value)) return index;
+                if (nameIndex == -1) nameIndex = -(index + 2);
+            }
+            return nameIndex;
+        }
+
+        private void evict(int targetSize) {
+            int evicted = 0;
+            while (size > targetSize && evicted < entries.size()) {
+                size -= sizeOf(entries.get(evicted));
+                evicted++;
+            }
+            if (evicted > 0) entries.subList(0, evicted).clear();
+        }
+
+        static int sizeOf(HttpHeader header) {
+            return header.getKey().length() + header.getValue().length() + ENTRY_OVERHEAD;
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web.http;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes HPACK (RFC 7541) compressed header-blocks of one HTTP/2 connection.<br>
+ * The decoder holds the dynamic table of the connection, so all header-blocks need to be decoded in the order
+ * they have been received, even if the stream they belong to is discarded.
+ */
+class HpackDecoder {
+
+    private final Hpack.DynamicTable dynamicTable;
+    private final int maxHeaderListSize;
+
+    HpackDecoder(int maxHeaderListSize) {
+        this.dynamicTable = new Hpack.DynamicTable(Hpack.DEFAULT_TABLE_SIZE);
+        this.maxHeaderListSize = maxHeaderListSize;
+    }
+
+    /**
+     * Decodes a complete header-block.
+     * @throws Http2Exception (connection-error) if the block can not be decoded
+     */
+    List<HttpHeader> decode(ByteBuffer block) throws Http2Exception {
+        List<HttpHeader> headers = new ArrayList<>();
+        int headerListSize = 0;
+        boolean blockStart = true;
+
+        while (block.hasRemaining()) {
+            int b = block.get() & 0xFF;
+
+            // dynamic table size update
+            if ((b & 0xE0) == 0x20) {
+                if (!blockStart) throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Table size update after a header field");
+
+                int maxSize = Hpack.decodeInt(block, b, 5);
+                if (maxSize > Hpack.DEFAULT_TABLE_SIZE) throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Table size update exceeds the limit");
+                dynamicTable.setMaxSize(maxSize);
+                continue;
+            }
+            blockStart = false;
+
+            HttpHeader header;
+            if ((b & 0x80) != 0) {
+                // indexed header field
+                header = getIndexed(Hpack.decodeInt(block, b, 7));
+            } else if ((b & 0x40) != 0) {
+                // literal header field with incremental indexing
+                header = readLiteral(block, Hpack.decodeInt(block, b, 6));
+                dynamicTable.add(header);
+            } else {
+                // literal header field without indexing / never indexed
+                header = readLiteral(block, Hpack.decodeInt(block, b, 4));
+            }
+
+            headerListSize += Hpack.DynamicTable.sizeOf(header);
+            if (headerListSize > maxHeaderListSize) throw new Http2Exception(Http2Exception.ENHANCE_YOUR_CALM, "Header list too large");
+
+            headers.add(header);
+        }
+
+        return headers;
+    }
+
+    private HttpHeader readLiteral(ByteBuffer block, int nameIndex) throws Http2Exception {
+        String name = nameIndex == 0 ? Hpack.decodeString(block) : getIndexed(nameIndex).getKey();
+        String value = Hpack.decodeString(block);
+        return new HttpHeader(name, value);
+    }
+
+    private HttpHeader getIndexed(int index) throws Http2Exception {
+        if (index <= 0) throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Invalid header index: " + index);
+        if (index <= Hpack.STATIC_TABLE.length) return Hpack.STATIC_TABLE[index - 1];
+
+        HttpHeader header = dynamicTable.get(index - Hpack.STATIC_TABLE.length - 1);
+        if (header == null) throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Invalid header index: " + index);
+        return header;
+    }
+
+}
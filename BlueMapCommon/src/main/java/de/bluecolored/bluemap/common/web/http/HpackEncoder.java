@@ -0,0 +1,98 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web.http;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Set;
+
+/**
+ * Encodes header-blocks with HPACK (RFC 7541) for one HTTP/2 connection.<br>
+ * Header-fields are referenced from the static or dynamic table where possible, values that change with
+ * (almost) every response are sent as literals without indexing so they don't push the reusable entries out of the table.
+ * Literals are not huffman-coded, this would save little on the few headers that are actually sent as literals.
+ */
+class HpackEncoder {
+
+    private static final Set<String> NOT_INDEXED = Set.of(
+            "content-length",
+            "content-range",
+            "etag",
+            "last-modified",
+            "location",
+            "retry-after",
+            "date"
+    );
+
+    private final Hpack.DynamicTable dynamicTable;
+    private int pendingTableSize = -1;
+
+    HpackEncoder() {
+        this.dynamicTable = new Hpack.DynamicTable(Hpack.DEFAULT_TABLE_SIZE);
+    }
+
+    /**
+     * Sets the SETTINGS_HEADER_TABLE_SIZE that the peer announced, the table-size update is sent with the next header-block.
+     */
+    void setMaxTableSize(int maxTableSize) {
+        pendingTableSize = Math.min(maxTableSize, Hpack.DEFAULT_TABLE_SIZE);
+    }
+
+    /**
+     * Encodes a header-field, the name needs to be lower-case.
+     */
+    void encode(ByteArrayOutputStream out, String name, String value) {
+        if (pendingTableSize >= 0) {
+            dynamicTable.setMaxSize(pendingTableSize);
+            Hpack.encodeInt(out, 0x20, 5, pendingTableSize);
+            pendingTableSize = -1;
+        }
+
+        int staticIndex = Hpack.staticIndexOf(name, value);
+        if (staticIndex > 0) {
+            Hpack.encodeInt(out, 0x80, 7, staticIndex);
+            return;
+        }
+
+        int dynamicIndex = dynamicTable.indexOf(name, value);
+        if (dynamicIndex >= 0) {
+            Hpack.encodeInt(out, 0x80, 7, dynamicIndex + Hpack.STATIC_TABLE.length + 1);
+            return;
+        }
+
+        int nameIndex = Hpack.staticIndexOfName(name);
+        if (nameIndex == 0 && dynamicIndex < -1) nameIndex = -dynamicIndex - 2 + Hpack.STATIC_TABLE.length + 1;
+
+        if (NOT_INDEXED.contains(name)) {
+            Hpack.encodeInt(out, 0x00, 4, nameIndex);
+        } else {
+            Hpack.encodeInt(out, 0x40, 6, nameIndex);
+            dynamicTable.add(new HttpHeader(name, value));
+        }
+
+        if (nameIndex == 0) Hpack.encodeString(out, name);
+        Hpack.encodeString(out, value);
+    }
+
+}
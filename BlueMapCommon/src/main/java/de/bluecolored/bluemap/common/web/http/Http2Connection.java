@@ -0,0 +1,921 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web.http;
+
+import de.bluecolored.bluemap.core.logger.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * A cleartext HTTP/2 connection (RFC 9113), that multiplexes many requests as streams over one tcp-connection.<br>
+ * <br>
+ * A connection starts out as a {@link HttpConnection} and is handed over to this class once the client sent the
+ * HTTP/2 connection-preface ("prior knowledge"). Each stream is turned into a {@link HttpRequest} and handled by the
+ * same {@link HttpRequestHandler} as HTTP/1.1 requests. The responses of all streams are sent interleaved frame by frame,
+ * so one large response does not hold up the others.
+ */
+public class Http2Connection implements SelectionConsumer {
+
+    // the first part of the preface "PRI * HTTP/2.0\r\n\r\n" has already been parsed as an HTTP/1 request
+    private static final byte[] PREFACE_END = "SM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final int
+            FRAME_DATA = 0x0,
+            FRAME_HEADERS = 0x1,
+            FRAME_PRIORITY = 0x2,
+            FRAME_RST_STREAM = 0x3,
+            FRAME_SETTINGS = 0x4,
+            FRAME_PUSH_PROMISE = 0x5,
+            FRAME_PING = 0x6,
+            FRAME_GOAWAY = 0x7,
+            FRAME_WINDOW_UPDATE = 0x8,
+            FRAME_CONTINUATION = 0x9;
+
+    private static final int
+            FLAG_END_STREAM = 0x1,
+            FLAG_ACK = 0x1,
+            FLAG_END_HEADERS = 0x4,
+            FLAG_PADDED = 0x8,
+            FLAG_PRIORITY = 0x20;
+
+    private static final int
+            SETTINGS_HEADER_TABLE_SIZE = 0x1,
+            SETTINGS_ENABLE_PUSH = 0x2,
+            SETTINGS_MAX_CONCURRENT_STREAMS = 0x3,
+            SETTINGS_INITIAL_WINDOW_SIZE = 0x4,
+            SETTINGS_MAX_FRAME_SIZE = 0x5,
+            SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+    private static final int FRAME_HEADER_SIZE = 9;
+    private static final int DEFAULT_FRAME_SIZE = 16384;
+    private static final int MAX_FRAME_SIZE = 16777215;
+    private static final int DEFAULT_WINDOW_SIZE = 65535;
+    private static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+    private static final int MAX_CONCURRENT_STREAMS = 100;
+    private static final int MAX_HEADER_LIST_SIZE = 16 * 1024;
+    private static final int MAX_BODY_SIZE = 1024 * 1024;
+    private static final int MAX_BUFFERED_BODY_SIZE = 4 * 1024 * 1024; // the connection receive-window
+    private static final int MAX_DATA_PER_SELECTION = 256 * 1024; // 256 KiB
+    private static final int MAX_WRITE_BUFFERS = 64;
+
+    private static final Set<String> CONNECTION_HEADERS = Set.of(
+            "connection",
+            "keep-alive",
+            "proxy-connection",
+            "transfer-encoding",
+            "upgrade"
+    );
+
+    private final HttpRequestHandler requestHandler;
+    private final Executor responseHandlerExecutor;
+    private final InetAddress source;
+    private final long idleTimeout, readTimeout;
+
+    private final HpackDecoder hpackDecoder;
+    private final HpackEncoder hpackEncoder;
+
+    // receiving
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+    private boolean prefaceReceived = false;
+    private boolean settingsReceived = false;
+    private final ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+    private int headerBlockStreamId = 0;
+    private boolean headerBlockEndStream = false;
+    private long connectionReceiveWindow = MAX_BUFFERED_BODY_SIZE;
+
+    // streams
+    private final Map<Integer, Stream> streams = new HashMap<>();
+    private int lastStreamId = 0;
+    private final Queue<Stream> readyStreams = new ConcurrentLinkedQueue<>();
+    private final Deque<Stream> sendingStreams = new ArrayDeque<>();
+
+    // sending
+    private final Deque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private final ByteBuffer[] writeBuffers = new ByteBuffer[MAX_WRITE_BUFFERS];
+    private ByteBuffer dataBuffer; // response-data is read into this buffer first, so frames are only allocated for actual data
+    private boolean settingsSent = false;
+    private boolean goAway = false;
+    private long connectionSendWindow = DEFAULT_WINDOW_SIZE;
+    private int peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+    private int peerMaxFrameSize = DEFAULT_FRAME_SIZE;
+    private boolean moreToSend = false;
+
+    private volatile SelectionKey selectionKey;
+    private volatile long lastActivity;
+
+    /**
+     * @param bufferedData The bytes that have already been received after the first part of the connection-preface
+     * @param idleTimeout The time in milliseconds after which the connection is closed if there are no open streams (0 = no timeout)
+     * @param readTimeout The time in milliseconds after which the connection is closed
+     *                    if no progress is made while receiving a frame or sending data (0 = no timeout)
+     */
+    public Http2Connection(HttpRequestHandler requestHandler, Executor responseHandlerExecutor, InetAddress source,
+                           ByteBuffer bufferedData, long idleTimeout, long readTimeout) {
+        this.requestHandler = requestHandler;
+        this.responseHandlerExecutor = responseHandlerExecutor;
+        this.source = source;
+        this.idleTimeout = idleTimeout;
+        this.readTimeout = readTimeout;
+
+        this.hpackDecoder = new HpackDecoder(MAX_HEADER_LIST_SIZE);
+        this.hpackEncoder = new HpackEncoder();
+
+        this.readBuffer.put(bufferedData);
+        this.lastActivity = System.currentTimeMillis();
+    }
+
+    @Override
+    public void accept(SelectionKey selectionKey) {
+        if (!selectionKey.isValid()) return;
+
+        SelectableChannel selChannel = selectionKey.channel();
+
+        if (!(selChannel instanceof SocketChannel)) return;
+        SocketChannel channel = (SocketChannel) selChannel;
+
+        this.selectionKey = selectionKey;
+
+        try {
+            if (!process(channel, channel)) {
+                close(channel);
+                return;
+            }
+
+            if (!writeQueue.isEmpty()) {
+                selectionKey.interestOps(SelectionKey.OP_WRITE);
+            } else if (moreToSend) {
+                selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } else {
+                selectionKey.interestOps(SelectionKey.OP_READ);
+            }
+
+            // a stream might have been signalled while we were setting the interest-ops
+            if (!readyStreams.isEmpty())
+                selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
+
+        } catch (Http2Exception e) {
+            Logger.global.logDebug("HTTP/2 connection-error: " + e);
+            queueGoAway(e.getErrorCode(), e.getMessage());
+            try {
+                flush(channel);
+            } catch (IOException ignore) {}
+            close(channel);
+        } catch (IOException e) {
+            Logger.global.logDebug("Failed to process selection: " + e);
+            close(channel);
+        }
+    }
+
+    /**
+     * Reads and handles the available frames, and writes as much as possible of what there is to send.
+     * @return false if the connection should be closed
+     * @throws Http2Exception if there has been a connection-error, the GOAWAY frame is queued but not yet written
+     */
+    boolean process(ReadableByteChannel in, GatheringByteChannel out) throws IOException {
+        lastActivity = System.currentTimeMillis();
+
+        if (!settingsSent) {
+            ByteBuffer settings = ByteBuffer.allocate(12);
+            settings.putShort((short) SETTINGS_MAX_CONCURRENT_STREAMS).putInt(MAX_CONCURRENT_STREAMS);
+            settings.putShort((short) SETTINGS_MAX_HEADER_LIST_SIZE).putInt(MAX_HEADER_LIST_SIZE);
+            queueFrame(FRAME_SETTINGS, 0, 0, settings.array());
+            queueWindowUpdate(0, MAX_BUFFERED_BODY_SIZE - DEFAULT_WINDOW_SIZE);
+            settingsSent = true;
+        }
+
+        // only read new frames if the client is also receiving, so it can't make us queue up frames endlessly
+        if (flush(out)) {
+            if (!readFrames(in)) return false;
+        }
+
+        // streams that got a response or new data on another thread
+        Stream ready;
+        while ((ready = readyStreams.poll()) != null) {
+            if (ready.queued || ready.closed || ready.response == null) continue;
+            ready.queued = true;
+            sendingStreams.add(ready);
+        }
+
+        moreToSend = false;
+        if (flush(out)) {
+            moreToSend = sendFrames();
+            flush(out);
+        }
+
+        return !goAway || !streams.isEmpty() || !writeQueue.isEmpty();
+    }
+
+    /**
+     * Reads available bytes from the channel and handles all complete frames.
+     * @return false if the channel has been closed by the client
+     */
+    private boolean readFrames(ReadableByteChannel channel) throws IOException {
+        int read = channel.read(readBuffer);
+        if (read == -1) return false;
+
+        readBuffer.flip();
+        try {
+            if (!prefaceReceived) {
+                if (readBuffer.remaining() < PREFACE_END.length) return true;
+                for (byte b : PREFACE_END) {
+                    if (readBuffer.get() != b) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid connection-preface");
+                }
+                prefaceReceived = true;
+            }
+
+            while (readBuffer.remaining() >= FRAME_HEADER_SIZE) {
+                int position = readBuffer.position();
+                int length = (readBuffer.get(position) & 0xFF) << 16 |
+                        (readBuffer.get(position + 1) & 0xFF) << 8 |
+                        (readBuffer.get(position + 2) & 0xFF);
+                if (length > DEFAULT_FRAME_SIZE) throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Frame too large");
+                if (readBuffer.remaining() < FRAME_HEADER_SIZE + length) break;
+
+                int type = readBuffer.get(position + 3) & 0xFF;
+                int flags = readBuffer.get(position + 4) & 0xFF;
+                int streamId = readBuffer.getInt(position + 5) & 0x7FFFFFFF;
+
+                readBuffer.position(position + FRAME_HEADER_SIZE);
+                ByteBuffer payload = readBuffer.slice();
+                payload.limit(length);
+                readBuffer.position(position + FRAME_HEADER_SIZE + length);
+
+                handleFrame(type, flags, streamId, payload);
+            }
+        } finally {
+            readBuffer.compact();
+        }
+
+        return true;
+    }
+
+    private void handleFrame(int type, int flags, int streamId, ByteBuffer payload) throws Http2Exception {
+        if (headerBlockStreamId != 0 && (type != FRAME_CONTINUATION || streamId != headerBlockStreamId))
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Expected CONTINUATION frame");
+        if (!settingsReceived && type != FRAME_SETTINGS)
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Expected SETTINGS frame");
+
+        switch (type) {
+            case FRAME_DATA: handleData(flags, streamId, payload); break;
+            case FRAME_HEADERS: handleHeaders(flags, streamId, payload); break;
+            case FRAME_PRIORITY: handlePriority(streamId, payload); break;
+            case FRAME_RST_STREAM: handleRstStream(streamId, payload); break;
+            case FRAME_SETTINGS: handleSettings(flags, streamId, payload); break;
+            case FRAME_PING: handlePing(flags, streamId, payload); break;
+            case FRAME_GOAWAY: handleGoAway(streamId); break;
+            case FRAME_WINDOW_UPDATE: handleWindowUpdate(streamId, payload); break;
+            case FRAME_CONTINUATION: handleContinuation(flags, streamId, payload); break;
+            case FRAME_PUSH_PROMISE: throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Clients can not push");
+            default: break; // unknown frames are ignored
+        }
+    }
+
+    private void handleData(int flags, int streamId, ByteBuffer payload) throws Http2Exception {
+        if (streamId == 0) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "DATA frame on stream 0");
+
+        int frameLength = payload.remaining();
+        connectionReceiveWindow -= frameLength;
+        if (connectionReceiveWindow < 0) throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Flow-control window exceeded");
+
+        stripPadding(flags, payload);
+
+        Stream stream = streams.get(streamId);
+        if (stream == null || stream.endStreamReceived) {
+            if (streamId > lastStreamId) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "DATA frame on idle stream");
+            releaseReceiveWindow(frameLength);
+            resetStream(streamId, Http2Exception.STREAM_CLOSED);
+            return;
+        }
+
+        // the connection-window is only released once the body has been handed to the request-handler (or discarded),
+        // so all bodies buffered on this connection together are limited by its size
+        stream.bufferedLength += frameLength;
+
+        if (payload.hasRemaining()) {
+            if (stream.body == null) stream.body = new ByteArrayOutputStream();
+            if (stream.body.size() + payload.remaining() > MAX_BODY_SIZE) {
+                resetStream(streamId, Http2Exception.CANCEL);
+                return;
+            }
+            stream.body.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        }
+
+        if ((flags & FLAG_END_STREAM) != 0) {
+            stream.endStreamReceived = true;
+            dispatch(stream);
+        } else if (frameLength > 0) {
+            // the stream-window can be released right away, the body-size of a stream is limited anyway
+            queueWindowUpdate(streamId, frameLength);
+        }
+    }
+
+    private void handleHeaders(int flags, int streamId, ByteBuffer payload) throws Http2Exception {
+        if (streamId == 0) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "HEADERS frame on stream 0");
+
+        stripPadding(flags, payload);
+        if ((flags & FLAG_PRIORITY) != 0) {
+            if (payload.remaining() < 5) throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "HEADERS frame too small");
+            payload.position(payload.position() + 5); // priorities are ignored
+        }
+
+        headerBlock.reset();
+        headerBlockEndStream = (flags & FLAG_END_STREAM) != 0;
+        appendHeaderBlock(payload);
+
+        if ((flags & FLAG_END_HEADERS) != 0) {
+            handleHeaderBlock(streamId);
+        } else {
+            headerBlockStreamId = streamId;
+        }
+    }
+
+    private void handleContinuation(int flags, int streamId, ByteBuffer payload) throws Http2Exception {
+        if (streamId == 0 || streamId != headerBlockStreamId)
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Unexpected CONTINUATION frame");
+
+        appendHeaderBlock(payload);
+
+        if ((flags & FLAG_END_HEADERS) != 0) {
+            headerBlockStreamId = 0;
+            handleHeaderBlock(streamId);
+        }
+    }
+
+    private void appendHeaderBlock(ByteBuffer fragment) throws Http2Exception {
+        // the compressed block can't be (much) larger than the decoded header-list
+        if (headerBlock.size() + fragment.remaining() > MAX_HEADER_LIST_SIZE * 2)
+            throw new Http2Exception(Http2Exception.ENHANCE_YOUR_CALM, "Header block too large");
+        headerBlock.write(fragment.array(), fragment.arrayOffset() + fragment.position(), fragment.remaining());
+    }
+
+    private void handleHeaderBlock(int streamId) throws Http2Exception {
+        // always decode the block to keep the hpack-state in sync, even if the stream is rejected
+        List<HttpHeader> headers = hpackDecoder.decode(ByteBuffer.wrap(headerBlock.toByteArray()));
+        boolean endStream = headerBlockEndStream;
+
+        Stream stream = streams.get(streamId);
+        if (stream != null) {
+            // trailers, they are ignored
+            if (stream.endStreamReceived) {
+                resetStream(streamId, Http2Exception.STREAM_CLOSED);
+            } else if (!endStream) {
+                resetStream(streamId, Http2Exception.PROTOCOL_ERROR);
+            } else {
+                stream.endStreamReceived = true;
+                dispatch(stream);
+            }
+            return;
+        }
+
+        if (streamId % 2 == 0) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid stream-id");
+        if (streamId <= lastStreamId) throw new Http2Exception(Http2Exception.STREAM_CLOSED, "HEADERS frame on closed stream");
+        lastStreamId = streamId;
+
+        if (goAway) return;
+        if (streams.size() >= MAX_CONCURRENT_STREAMS) {
+            resetStream(streamId, Http2Exception.REFUSED_STREAM);
+            return;
+        }
+
+        HttpRequest request = createRequest(headers);
+        if (request == null) {
+            resetStream(streamId, Http2Exception.PROTOCOL_ERROR);
+            return;
+        }
+
+        stream = new Stream(streamId, request, peerInitialWindowSize);
+        streams.put(streamId, stream);
+
+        if (endStream) {
+            stream.endStreamReceived = true;
+            dispatch(stream);
+        }
+    }
+
+    /**
+     * Creates the request from the decoded headers of a stream.
+     * @return the request or null if the headers are malformed
+     */
+    private HttpRequest createRequest(List<HttpHeader> headers) {
+        HttpRequest request = new HttpRequest(source);
+        String method = null, path = null, authority = null, cookie = null;
+
+        boolean pseudoHeaders = true;
+        for (HttpHeader header : headers) {
+            String name = header.getKey();
+
+            if (name.startsWith(":")) {
+                if (!pseudoHeaders) return null;
+
+                switch (name) {
+                    case ":method": method = header.getValue(); break;
+                    case ":path": path = header.getValue(); break;
+                    case ":authority": authority = header.getValue(); break;
+                    case ":scheme": break;
+                    default: return null;
+                }
+                continue;
+            }
+
+            pseudoHeaders = false;
+            if (!name.equals(name.toLowerCase(Locale.ROOT)) || CONNECTION_HEADERS.contains(name)) return null;
+
+            // cookies can be split into multiple header-fields, they need to be joined with "; " instead of ","
+            if (name.equals("cookie")) {
+                cookie = cookie == null ? header.getValue() : cookie + "; " + header.getValue();
+                continue;
+            }
+
+            request.addHeader(name, header.getValue());
+        }
+        if (cookie != null) request.addHeader("cookie", cookie);
+
+        if (method == null || path == null || path.isEmpty()) return null;
+
+        request.setMethod(method);
+        request.setAddress(path);
+        request.setVersion("HTTP/2.0");
+        if (authority != null && request.getHeader("host") == null) request.addHeader("host", authority);
+
+        return request;
+    }
+
+    private void handlePriority(int streamId, ByteBuffer payload) throws Http2Exception {
+        if (streamId == 0) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "PRIORITY frame on stream 0");
+        if (payload.remaining() != 5) resetStream(streamId, Http2Exception.FRAME_SIZE_ERROR);
+    }
+
+    private void handleRstStream(int streamId, ByteBuffer payload) throws Http2Exception {
+        if (streamId == 0) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "RST_STREAM frame on stream 0");
+        if (payload.remaining() != 4) throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Invalid RST_STREAM frame");
+        if (streamId > lastStreamId) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "RST_STREAM frame on idle stream");
+
+        Stream stream = streams.get(streamId);
+        if (stream != null) closeStream(stream);
+    }
+
+    private void handleSettings(int flags, int streamId, ByteBuffer payload) throws Http2Exception {
+        if (streamId != 0) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "SETTINGS frame on a stream");
+
+        if ((flags & FLAG_ACK) != 0) {
+            if (payload.hasRemaining()) throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Invalid SETTINGS acknowledgement");
+            return;
+        }
+
+        if (payload.remaining() % 6 != 0) throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Invalid SETTINGS frame");
+
+        while (payload.hasRemaining()) {
+            int id = payload.getShort() & 0xFFFF;
+            long value = payload.getInt() & 0xFFFFFFFFL;
+
+            switch (id) {
+                case SETTINGS_HEADER_TABLE_SIZE:
+                    hpackEncoder.setMaxTableSize((int) Math.min(value, Integer.MAX_VALUE));
+                    break;
+                case SETTINGS_ENABLE_PUSH:
+                    if (value > 1) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid SETTINGS_ENABLE_PUSH");
+                    break;
+                case SETTINGS_INITIAL_WINDOW_SIZE:
+                    if (value > MAX_WINDOW_SIZE) throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Invalid SETTINGS_INITIAL_WINDOW_SIZE");
+                    int delta = (int) value - peerInitialWindowSize;
+                    peerInitialWindowSize = (int) value;
+                    for (Stream stream : streams.values()) {
+                        stream.sendWindow += delta;
+                        if (stream.sendWindow > MAX_WINDOW_SIZE)
+                            throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Flow-control window too large");
+                    }
+                    break;
+                case SETTINGS_MAX_FRAME_SIZE:
+                    if (value < DEFAULT_FRAME_SIZE || value > MAX_FRAME_SIZE)
+                        throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid SETTINGS_MAX_FRAME_SIZE");
+                    peerMaxFrameSize = (int) value;
+                    break;
+                case SETTINGS_MAX_CONCURRENT_STREAMS:
+                case SETTINGS_MAX_HEADER_LIST_SIZE:
+                default:
+                    break; // we don't push and our headers are small
+            }
+        }
+
+        settingsReceived = true;
+        queueFrame(FRAME_SETTINGS, FLAG_ACK, 0, new byte[0]);
+    }
+
+    private void handlePing(int flags, int streamId, ByteBuffer payload) throws Http2Exception {
+        if (streamId != 0) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "PING frame on a stream");
+        if (payload.remaining() != 8) throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Invalid PING frame");
+        if ((flags & FLAG_ACK) != 0) return;
+
+        byte[] data = new byte[8];
+        payload.get(data);
+        queueFrame(FRAME_PING, FLAG_ACK, 0, data);
+    }
+
+    private void handleGoAway(int streamId) throws Http2Exception {
+        if (streamId != 0) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "GOAWAY frame on a stream");
+
+        // finish the open streams, then close the connection
+        goAway = true;
+    }
+
+    private void handleWindowUpdate(int streamId, ByteBuffer payload) throws Http2Exception {
+        if (payload.remaining() != 4) throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Invalid WINDOW_UPDATE frame");
+        int increment = payload.getInt() & 0x7FFFFFFF;
+
+        if (streamId == 0) {
+            if (increment == 0) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid window increment");
+            connectionSendWindow += increment;
+            if (connectionSendWindow > MAX_WINDOW_SIZE) throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Flow-control window too large");
+            return;
+        }
+
+        if (streamId > lastStreamId) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "WINDOW_UPDATE frame on idle stream");
+
+        Stream stream = streams.get(streamId);
+        if (stream == null) return;
+
+        if (increment == 0) {
+            resetStream(streamId, Http2Exception.PROTOCOL_ERROR);
+            return;
+        }
+
+        stream.sendWindow += increment;
+        if (stream.sendWindow > MAX_WINDOW_SIZE) resetStream(streamId, Http2Exception.FLOW_CONTROL_ERROR);
+    }
+
+    private static void stripPadding(int flags, ByteBuffer payload) throws Http2Exception {
+        if ((flags & FLAG_PADDED) == 0) return;
+
+        if (!payload.hasRemaining()) throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Missing padding-length");
+        int padding = payload.get() & 0xFF;
+        if (padding > payload.remaining()) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Padding exceeds the frame");
+        payload.limit(payload.limit() - padding);
+    }
+
+    private void dispatch(Stream stream) {
+        HttpRequest request = stream.request;
+        if (stream.body != null) {
+            request.setData(stream.body.toByteArray());
+            stream.body = null;
+        }
+        releaseReceiveWindow(stream.bufferedLength);
+        stream.bufferedLength = 0;
+
+        boolean headRequest = "HEAD".equalsIgnoreCase(request.getMethod());
+
+        CompletableFuture.supplyAsync(
+                () -> requestHandler.handle(request),
+                responseHandlerExecutor
+        ).exceptionally(ex -> {
+            Logger.global.logError("Failed to handle request", ex);
+            return new HttpResponse(HttpStatusCode.INTERNAL_SERVER_ERROR);
+        }).thenAccept(response -> {
+            if (headRequest) response.setOmitBody(true);
+
+            stream.response = response;
+            if (stream.closed) {
+                closeResponse(response);
+                return;
+            }
+
+            // the response might have been created on a different thread, so wake up the selector
+            signal(stream);
+
+            // streamed data might become available on a different thread as well
+            response.setDataListener(() -> signal(stream));
+        });
+    }
+
+    private void signal(Stream stream) {
+        readyStreams.add(stream);
+
+        SelectionKey selectionKey = this.selectionKey;
+        if (selectionKey == null || !selectionKey.isValid()) return;
+        selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
+        selectionKey.selector().wakeup();
+    }
+
+    /**
+     * Queues the next frames of the streams that have something to send, one frame per stream in turns.
+     * @return true if there is more to send right away
+     */
+    private boolean sendFrames() {
+        int budget = MAX_DATA_PER_SELECTION;
+        int blocked = 0;
+
+        while (!sendingStreams.isEmpty() && blocked < sendingStreams.size()) {
+            if (budget <= 0) return true;
+
+            Stream stream = sendingStreams.poll();
+
+            int sent;
+            try {
+                sent = sendNext(stream);
+            } catch (IOException e) {
+                Logger.global.logDebug("Failed to send response: " + e);
+                resetStream(stream.id, Http2Exception.INTERNAL_ERROR);
+                continue;
+            }
+
+            // blocked by flow-control, retry once the client sent a WINDOW_UPDATE
+            if (sent < 0) {
+                sendingStreams.add(stream);
+                blocked++;
+                continue;
+            }
+
+            blocked = 0;
+            budget -= sent;
+
+            if (stream.sendComplete) {
+                closeStream(stream);
+            } else if (stream.waitingForData) {
+                stream.queued = false;
+            } else {
+                sendingStreams.add(stream);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Queues the next frame(s) of the stream.
+     * @return the amount of bytes queued or -1 if the stream is blocked by flow-control
+     */
+    private int sendNext(Stream stream) throws IOException {
+        HttpResponse response = stream.response;
+
+        if (!stream.headersSent) return sendHeaders(stream, response);
+
+        // larger frames than the default are never sent, even if the peer allows them
+        int length = (int) Math.min(Math.min(Math.min(peerMaxFrameSize, DEFAULT_FRAME_SIZE), connectionSendWindow), stream.sendWindow);
+        if (stream.contentLength >= 0) length = (int) Math.min(length, stream.contentLength - stream.dataSent);
+        if (length <= 0) return -1;
+
+        if (dataBuffer == null) dataBuffer = ByteBuffer.allocate(DEFAULT_FRAME_SIZE);
+        dataBuffer.clear().limit(length);
+
+        ReadableByteChannel data = response.getDataChannel();
+        boolean end = false;
+        int read = 0, r;
+        while (dataBuffer.hasRemaining()) {
+            r = data.read(dataBuffer);
+            if (r == -1) end = true;
+            if (r <= 0) break;
+            read += r;
+        }
+
+        stream.dataSent += read;
+        if (stream.contentLength >= 0) {
+            if (stream.dataSent >= stream.contentLength) end = true;
+            else if (end) throw new IOException("Response-data ended before the announced content-length was reached!");
+        }
+
+        // a non-blocking channel (e.g. an event-stream) has currently nothing to send
+        stream.waitingForData = read == 0 && !end;
+        if (stream.waitingForData) return 0;
+
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + read);
+        putFrameHeader(frame, 0, read, FRAME_DATA, end ? FLAG_END_STREAM : 0, stream.id);
+        frame.position(FRAME_HEADER_SIZE);
+        frame.put(dataBuffer.flip());
+        frame.flip();
+        writeQueue.add(frame);
+
+        connectionSendWindow -= read;
+        stream.sendWindow -= read;
+        stream.sendComplete = end;
+
+        return FRAME_HEADER_SIZE + read;
+    }
+
+    private int sendHeaders(Stream stream, HttpResponse response) {
+        int status = response.getStatusCode().getCode();
+        boolean hasBody = response.hasData() && !response.isOmitBody();
+
+        long contentLength = response.getContentLength();
+        if (contentLength < 0 && !response.hasData() && !response.isOmitBody() && status != 204 && status != 304)
+            contentLength = 0;
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        hpackEncoder.encode(block, ":status", Integer.toString(status));
+        for (HttpHeader header : response.getHeaders().values()) {
+            String name = header.getKey().toLowerCase(Locale.ROOT);
+            if (CONNECTION_HEADERS.contains(name) || name.equals("content-length")) continue;
+            hpackEncoder.encode(block, name, header.getValue());
+        }
+        if (contentLength >= 0) hpackEncoder.encode(block, "content-length", Long.toString(contentLength));
+
+        boolean endStream = !hasBody || contentLength == 0;
+        byte[] blockData = block.toByteArray();
+
+        // split the header-block into a HEADERS frame and CONTINUATION frames if needed
+        int sent = 0, offset = 0;
+        do {
+            int length = Math.min(blockData.length - offset, peerMaxFrameSize);
+            boolean last = offset + length == blockData.length;
+
+            int type = offset == 0 ? FRAME_HEADERS : FRAME_CONTINUATION;
+            int flags = (last ? FLAG_END_HEADERS : 0) | (offset == 0 && endStream ? FLAG_END_STREAM : 0);
+            queueFrame(type, flags, stream.id, blockData, offset, length);
+
+            sent += FRAME_HEADER_SIZE + length;
+            offset += length;
+        } while (offset < blockData.length);
+
+        stream.headersSent = true;
+        stream.contentLength = hasBody ? contentLength : -1;
+        stream.sendComplete = endStream;
+        return sent;
+    }
+
+    private void resetStream(int streamId, int errorCode) {
+        queueFrame(FRAME_RST_STREAM, 0, streamId, ByteBuffer.allocate(4).putInt(errorCode).array());
+
+        Stream stream = streams.get(streamId);
+        if (stream != null) closeStream(stream);
+    }
+
+    private void closeStream(Stream stream) {
+        streams.remove(stream.id);
+        stream.closed = true;
+        if (stream.queued) sendingStreams.remove(stream);
+
+        // the body will never be handled, so the client can use that part of the window again
+        stream.body = null;
+        releaseReceiveWindow(stream.bufferedLength);
+        stream.bufferedLength = 0;
+
+        HttpResponse response = stream.response;
+        if (response != null) closeResponse(response);
+    }
+
+    private void releaseReceiveWindow(int length) {
+        if (length <= 0) return;
+        connectionReceiveWindow += length;
+        queueWindowUpdate(0, length);
+    }
+
+    private void queueWindowUpdate(int streamId, int increment) {
+        queueFrame(FRAME_WINDOW_UPDATE, 0, streamId, ByteBuffer.allocate(4).putInt(increment).array());
+    }
+
+    private void queueGoAway(int errorCode, String message) {
+        byte[] debugData = message != null ? message.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        ByteBuffer payload = ByteBuffer.allocate(8 + debugData.length);
+        payload.putInt(lastStreamId).putInt(errorCode).put(debugData);
+        queueFrame(FRAME_GOAWAY, 0, 0, payload.array());
+        goAway = true;
+    }
+
+    private void queueFrame(int type, int flags, int streamId, byte[] payload) {
+        queueFrame(type, flags, streamId, payload, 0, payload.length);
+    }
+
+    private void queueFrame(int type, int flags, int streamId, byte[] payload, int offset, int length) {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + length);
+        putFrameHeader(frame, 0, length, type, flags, streamId);
+        frame.position(FRAME_HEADER_SIZE);
+        frame.put(payload, offset, length);
+        frame.flip();
+        writeQueue.add(frame);
+    }
+
+    private static void putFrameHeader(ByteBuffer buffer, int position, int length, int type, int flags, int streamId) {
+        buffer.put(position, (byte) (length >>> 16));
+        buffer.put(position + 1, (byte) (length >>> 8));
+        buffer.put(position + 2, (byte) length);
+        buffer.put(position + 3, (byte) type);
+        buffer.put(position + 4, (byte) flags);
+        buffer.putInt(position + 5, streamId);
+    }
+
+    /**
+     * Writes as much of the queued frames to the channel as possible, using gathering writes.
+     * @return true if all queued frames have been written
+     */
+    private boolean flush(GatheringByteChannel channel) throws IOException {
+        while (!writeQueue.isEmpty()) {
+            int count = 0;
+            for (ByteBuffer buffer : writeQueue) {
+                if (count >= MAX_WRITE_BUFFERS) break;
+                writeBuffers[count++] = buffer;
+            }
+
+            channel.write(writeBuffers, 0, count);
+            Arrays.fill(writeBuffers, 0, count, null);
+
+            int written = 0;
+            while (!writeQueue.isEmpty() && !writeQueue.peek().hasRemaining()) {
+                writeQueue.poll();
+                written++;
+            }
+
+            // the channel could not take all buffers
+            if (written < count) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void checkTimeout(SelectionKey selectionKey, long now) {
+        long timeout;
+        if (!writeQueue.isEmpty() || !sendingStreams.isEmpty() || readBuffer.position() > 0 || headerBlockStreamId != 0) {
+            timeout = readTimeout;
+        } else if (streams.isEmpty()) {
+            timeout = idleTimeout;
+        } else {
+            return; // requests are still being processed or responses are waiting for data
+        }
+
+        if (timeout <= 0 || now - lastActivity <= timeout) return;
+
+        Logger.global.logDebug("Failed to process selection: Connection timed out");
+        close((SocketChannel) selectionKey.channel());
+    }
+
+    private void close(SocketChannel channel) {
+        for (Stream stream : streams.values()) {
+            stream.closed = true;
+            HttpResponse response = stream.response;
+            if (response != null) closeResponse(response);
+        }
+        streams.clear();
+        sendingStreams.clear();
+        writeQueue.clear();
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Logger.global.logWarning("Failed to close channel" + e);
+        }
+    }
+
+    private static void closeResponse(HttpResponse response) {
+        try {
+            response.close();
+        } catch (IOException e) {
+            Logger.global.logWarning("Failed to close response: " + e);
+        }
+    }
+
+    private class Stream {
+
+        private final int id;
+        private final HttpRequest request;
+        private ByteArrayOutputStream body;
+        private int bufferedLength = 0;
+        private boolean endStreamReceived = false;
+
+        private volatile HttpResponse response;
+        private volatile boolean closed = false;
+        private boolean queued = false;
+        private boolean headersSent = false;
+        private boolean waitingForData = false;
+        private boolean sendComplete = false;
+        private long contentLength = -1;
+        private long dataSent = 0;
+        private long sendWindow;
+
+        private Stream(int id, HttpRequest request, int sendWindow) {
+            this.id = id;
+            this.request = request;
+            this.sendWindow = sendWindow;
+        }
+
+    }
+
+}
@@ -36,22 +36,60 @@
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 public class HttpConnection implements SelectionConsumer {
 
     private final HttpRequestHandler requestHandler;
     private final Executor responseHandlerExecutor;
+    private final long idleTimeout, readTimeout;
+    private final int maxRequests;
+    private final boolean http2;
+
     private HttpRequest request;
     private CompletableFuture<HttpResponse> futureResponse;
-    private HttpResponse response;
+    private volatile HttpResponse response;
+
+    private boolean receiving = false;
+    private boolean closeAfterResponse = false;
+    private int requestCount = 0;
+    private volatile long lastActivity;
+    private volatile boolean dataAvailable = false;
 
     public HttpConnection(HttpRequestHandler requestHandler) {
         this(requestHandler, Runnable::run); //run synchronously
     }
 
     public HttpConnection(HttpRequestHandler requestHandler, Executor responseHandlerExecutor) {
+        this(requestHandler, responseHandlerExecutor, 0, 0, 0);
+    }
+
+    /**
+     * @param idleTimeout The time in milliseconds after which a connection is closed if it is not receiving a request (0 = no timeout)
+     * @param readTimeout The time in milliseconds after which a connection is closed
+     *                    if no progress is made while receiving a request or sending a response (0 = no timeout)
+     * @param maxRequests The maximum amount of requests that are handled on one (keep-alive) connection (0 = no limit)
+     */
+    public HttpConnection(HttpRequestHandler requestHandler, Executor responseHandlerExecutor, long idleTimeout, long readTimeout, int maxRequests) {
+        this(requestHandler, responseHandlerExecutor, idleTimeout, readTimeout, maxRequests, false);
+    }
+
+    /**
+     * @param idleTimeout The time in milliseconds after which a connection is closed if it is not receiving a request (0 = no timeout)
+     * @param readTimeout The time in milliseconds after which a connection is closed
+     *                    if no progress is made while receiving a request or sending a response (0 = no timeout)
+     * @param maxRequests The maximum amount of requests that are handled on one (keep-alive) connection (0 = no limit)
+     * @param http2 If true, the connection is handed over to a {@link Http2Connection} if the client starts with the
+     *              HTTP/2 connection-preface (cleartext HTTP/2 with prior knowledge)
+     */
+    public HttpConnection(HttpRequestHandler requestHandler, Executor responseHandlerExecutor, long idleTimeout, long readTimeout, int maxRequests, boolean http2) {
         this.requestHandler = requestHandler;
         this.responseHandlerExecutor = responseHandlerExecutor;
+        this.idleTimeout = idleTimeout;
+        this.readTimeout = readTimeout;
+        this.maxRequests = maxRequests;
+        this.http2 = http2;
+        this.lastActivity = System.currentTimeMillis();
     }
 
     @Override
@@ -64,76 +102,173 @@ public void accept(SelectionKey selectionKey) {
         SocketChannel channel = (SocketChannel) selChannel;
 
         try {
+            lastActivity = System.currentTimeMillis();
 
-            if (request == null) {
-                SocketAddress remote = channel.getRemoteAddress();
-                InetAddress remoteInet = null;
-                if (remote instanceof InetSocketAddress)
-                    remoteInet = ((InetSocketAddress) remote).getAddress();
+            if (futureResponse == null) {
+                if (request == null) {
+                    SocketAddress remote = channel.getRemoteAddress();
+                    InetAddress remoteInet = null;
+                    if (remote instanceof InetSocketAddress)
+                        remoteInet = ((InetSocketAddress) remote).getAddress();
 
-                request = new HttpRequest(remoteInet);
-            }
+                    request = new HttpRequest(remoteInet);
+                }
 
-            // receive request
-            if (!request.write(channel)) {
-                if (!selectionKey.isValid()) return;
-                selectionKey.interestOps(SelectionKey.OP_READ);
-                return;
-            }
+                // receive request
+                receiving = true;
+                if (!request.write(channel)) {
+                    if (!selectionKey.isValid()) return; // closed by the client
+                    selectionKey.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+                receiving = false;
 
-            // process request
-            if (futureResponse == null) {
+                // the HTTP/2 connection-preface starts with what looks like an HTTP/1 request: "PRI * HTTP/2.0"
+                if (http2 && requestCount == 0 && isHttp2Preface(request)) {
+                    Http2Connection http2Connection = new Http2Connection(
+                            requestHandler, responseHandlerExecutor,
+                            request.getSource(), request.removeBufferedData(),
+                            idleTimeout, readTimeout
+                    );
+                    selectionKey.attach(http2Connection);
+                    http2Connection.accept(selectionKey);
+                    return;
+                }
+
+                requestCount++;
+                closeAfterResponse =
+                        request.hasHeaderValue("Connection", "close") ||
+                        (maxRequests > 0 && requestCount >= maxRequests) ||
+                        ("HTTP/1.0".equals(request.getVersion()) && !request.hasHeaderValue("Connection", "keep-alive"));
+
+                // don't read anything else and don't wait for the channel to become writable until the response is ready
+                selectionKey.interestOps(0);
+
+                boolean headRequest = "HEAD".equalsIgnoreCase(request.getMethod());
+
+                // process request
                 futureResponse = CompletableFuture.supplyAsync(
                         () -> requestHandler.handle(request),
                         responseHandlerExecutor
-                );
+                ).exceptionally(ex -> {
+                    Logger.global.logError("Failed to handle request", ex);
+                    return new HttpResponse(HttpStatusCode.INTERNAL_SERVER_ERROR);
+                });
                 futureResponse.thenAccept(response -> {
-                    try {
-                        response.read(channel); // do an initial read to trigger response sending intent
-                        this.response = response;
-                    } catch (IOException e) {
-                        handleIOException(channel, e);
+                    if (headRequest) response.setOmitBody(true);
+
+                    if (closeAfterResponse) {
+                        response.addHeader("Connection", "close");
+                    } else if (idleTimeout > 0) {
+                        response.addHeader("Keep-Alive", "timeout=" + TimeUnit.MILLISECONDS.toSeconds(idleTimeout));
                     }
+
+                    this.response = response;
+
+                    // the response might have been created on a different thread, so wake up the selector
+                    if (!selectionKey.isValid()) return;
+                    selectionKey.interestOps(SelectionKey.OP_WRITE);
+                    selectionKey.selector().wakeup();
+
+                    // streamed data might become available on a different thread as well
+                    response.setDataListener(() -> {
+                        dataAvailable = true;
+                        if (!selectionKey.isValid()) return;
+                        selectionKey.interestOps(SelectionKey.OP_WRITE);
+                        selectionKey.selector().wakeup();
+                    });
                 });
             }
 
+            HttpResponse response = this.response;
             if (response == null) return;
             if (!selectionKey.isValid()) return;
 
             // send response
-            if (!response.read(channel)){
-                selectionKey.interestOps(SelectionKey.OP_WRITE);
+            dataAvailable = false;
+            if (!response.read(channel)) {
+                if (response.isWaitingForData()) {
+                    // don't wait for the channel to become writable until there is new data
+                    selectionKey.interestOps(0);
+                    if (dataAvailable) selectionKey.interestOps(SelectionKey.OP_WRITE);
+                } else {
+                    selectionKey.interestOps(SelectionKey.OP_WRITE);
+                }
+                return;
+            }
+
+            response.close();
+            if (closeAfterResponse) {
+                channel.close();
                 return;
             }
 
             // reset to accept new request
             request.clear();
-            response.close();
             futureResponse = null;
-            response = null;
-            selectionKey.interestOps(SelectionKey.OP_READ);
+            this.response = null;
+
+            // a pipelined request might already be buffered, it is handled in the next selection-round
+            // (the channel is usually writable right away) so other connections get their turn in between
+            if (request.hasBufferedData()) {
+                selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } else {
+                selectionKey.interestOps(SelectionKey.OP_READ);
+            }
 
         } catch (IOException e) {
             handleIOException(channel, e);
+        } catch (RuntimeException e) {
+            Logger.global.logError("Unexpected error while processing a connection", e);
+            handleIOException(channel, new IOException(e));
+        }
+    }
+
+    private static boolean isHttp2Preface(HttpRequest request) {
+        return
+                "PRI".equals(request.getMethod()) &&
+                "*".equals(request.getAddress()) &&
+                "HTTP/2.0".equals(request.getVersion()) &&
+                request.getHeaders().isEmpty();
+    }
+
+    @Override
+    public void checkTimeout(SelectionKey selectionKey, long now) {
+        HttpResponse response = this.response;
+        long timeout;
+        if (response != null && response.isWaitingForData()) {
+            return; // a streamed response is waiting for new data
+        } else if (response != null || receiving) {
+            timeout = readTimeout;
+        } else if (futureResponse == null) {
+            timeout = idleTimeout;
+        } else {
+            return; // the request is still being processed
         }
+
+        if (timeout <= 0 || now - lastActivity <= timeout) return;
+
+        Channel channel = selectionKey.channel();
+        handleIOException(channel, new IOException("Connection timed out"));
     }
 
     private void handleIOException(Channel channel, IOException e) {
-        request.clear();
+        if (request != null) request.clear();
 
+        HttpResponse response = this.response;
         if (response != null) {
             try {
                 response.close();
             } catch (IOException e2) {
                 Logger.global.logWarning("Failed to close response: " + e2);
             }
-            response = null;
+            this.response = null;
         }
 
         if (futureResponse != null) {
-            futureResponse.thenAccept(response -> {
+            futureResponse.thenAccept(futureResponse -> {
                 try {
-                    response.close();
+                    futureResponse.close();
                 } catch (IOException e2) {
                     Logger.global.logWarning("Failed to close response: " + e2);
                 }
@@ -0,0 +1,125 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web.http;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Response-data for a stream of server-sent events that is kept open until either side closes it.<br>
+ * <br>
+ * Frames can be sent from any thread, and are read by the connection whenever it is able to write.
+ * If a client can not keep up, only the most recent frame is kept and older unsent frames are dropped.
+ * A frame that is already partially sent is always completed first, so the client never receives a broken frame.
+ */
+public class HttpEventStream implements ReadableByteChannel {
+
+    private final AtomicReference<byte[]> nextFrame = new AtomicReference<>();
+    private ByteBuffer currentFrame = null;
+
+    private volatile boolean open = true;
+    private volatile Runnable dataListener = null;
+    private volatile Runnable closeListener = null;
+
+    /**
+     * Queues a complete, already serialized frame to be sent, replacing a queued frame that has not been sent yet.
+     * The byte-array is not copied, so it can be shared between multiple streams but must not be modified afterwards.
+     */
+    public void send(byte[] frame) {
+        if (!open) return;
+        nextFrame.set(frame);
+
+        Runnable dataListener = this.dataListener;
+        if (dataListener != null) dataListener.run();
+    }
+
+    /**
+     * Queues a frame only if there is no other frame queued, e.g. for keep-alive comments that should never
+     * replace actual data.
+     */
+    public void sendIfIdle(byte[] frame) {
+        if (!open) return;
+        if (!nextFrame.compareAndSet(null, frame)) return;
+
+        Runnable dataListener = this.dataListener;
+        if (dataListener != null) dataListener.run();
+    }
+
+    /**
+     * Reads the available frame-data into the buffer.
+     * @return the number of bytes read, 0 if there is currently nothing to send or -1 if the stream is closed
+     */
+    @Override
+    public int read(ByteBuffer dst) {
+        if (currentFrame == null || !currentFrame.hasRemaining()) {
+            byte[] frame = nextFrame.getAndSet(null);
+            if (frame == null) {
+                currentFrame = null;
+                return open ? 0 : -1;
+            }
+            currentFrame = ByteBuffer.wrap(frame);
+        }
+
+        int length = Math.min(dst.remaining(), currentFrame.remaining());
+        int limit = currentFrame.limit();
+        currentFrame.limit(currentFrame.position() + length);
+        dst.put(currentFrame);
+        currentFrame.limit(limit);
+        return length;
+    }
+
+    /**
+     * Sets a listener that is called (on the sending thread) whenever a new frame has been queued.
+     */
+    public void setDataListener(Runnable dataListener) {
+        this.dataListener = dataListener;
+    }
+
+    /**
+     * Sets a listener that is called once when this stream gets closed.
+     */
+    public void setCloseListener(Runnable closeListener) {
+        this.closeListener = closeListener;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!open) return;
+        open = false;
+
+        Runnable closeListener = this.closeListener;
+        if (closeListener != null) closeListener.run();
+
+        Runnable dataListener = this.dataListener;
+        if (dataListener != null) dataListener.run();
+    }
+
+}
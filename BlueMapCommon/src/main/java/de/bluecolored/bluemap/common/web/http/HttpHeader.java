@@ -68,4 +68,21 @@ public boolean contains(String value) {
         return valuesLC.contains(value);
     }
 
+    /**
+     * Checks if this header (e.g. If-None-Match) contains the given entity-tag or "*".<br>
+     * Uses the weak comparison, so W/"a" matches "a".
+     */
+    public boolean matchesETag(String eTag) {
+        String opaqueTag = stripWeakPrefix(eTag);
+        for (String v : getValues()) {
+            if (v.equals("*") || stripWeakPrefix(v).equals(opaqueTag)) return true;
+        }
+
+        return false;
+    }
+
+    private static String stripWeakPrefix(String eTag) {
+        return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+    }
+
 }
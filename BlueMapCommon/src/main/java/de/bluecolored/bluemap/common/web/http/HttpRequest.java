@@ -30,21 +30,42 @@
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/**
+ * A http-request that is parsed incrementally from the bytes received on a connection.<br>
+ * <br>
+ * The bytes are read into a buffer that is reused for all requests of the connection, the request-line and headers
+ * are parsed directly from that buffer once a complete line has been received. Bytes that are received after the end
+ * of a request are kept in the buffer, so pipelined requests are parsed after {@link #clear()}.
+ */
 public class HttpRequest {
 
-    private static final Pattern REQUEST_PATTERN = Pattern.compile("^(\\w+) (\\S+) (.+)$");
+    private static final int MAX_HEADER_SIZE = 8 * 1024;
+    private static final int MAX_HEADER_COUNT = 100;
+    private static final int MAX_BODY_SIZE = 1024 * 1024;
+
+    private enum State {
+        REQUEST_LINE,
+        HEADERS,
+        BODY,
+        CHUNK_SIZE,
+        CHUNK_DATA,
+        CHUNK_DATA_END,
+        TRAILER,
+        COMPLETE
+    }
 
     // reading helper
-    private final ByteBuffer byteBuffer = ByteBuffer.allocate(1024);
-    private final StringBuffer lineBuffer = new StringBuffer();
+    private final ByteBuffer byteBuffer = ByteBuffer.allocate(MAX_HEADER_SIZE);
+    private State state = State.REQUEST_LINE;
+    private int headerSize = 0;
+    private int chunkRemaining = 0;
+    private byte[] body = null;
+    private int bodyLength = 0;
 
     private boolean complete = false;
-    private boolean headerComplete = false;
-    private final List<String> headerLines = new ArrayList<>(20);
 
     // request data
     private final InetAddress source;
@@ -61,9 +82,16 @@ public HttpRequest(InetAddress source) {
         this.source = source;
     }
 
+    /**
+     * Reads available bytes from the channel and continues parsing the request.
+     * @return true if the request is complete
+     */
     public boolean write(ReadableByteChannel channel) throws IOException {
         if (complete) return true;
 
+        // there might be enough data left in the buffer from a previous read (pipelined requests)
+        if (byteBuffer.position() > 0 && parse()) return true;
+
         int read = channel.read(byteBuffer);
         if (read == 0) return false;
         if (read == -1) {
@@ -71,90 +99,194 @@ public boolean write(ReadableByteChannel channel) throws IOException {
             return false;
         }
 
+        return parse();
+    }
+
+    /**
+     * Parses as much of the buffered data as possible.
+     * @return true if the request is complete
+     */
+    private boolean parse() throws IOException {
         byteBuffer.flip();
         try {
+            while (state != State.COMPLETE) {
+                if (!parseNext()) break;
+            }
+        } finally {
+            byteBuffer.compact();
+        }
 
-            // read headers
-            while (!headerComplete) {
-                if (!writeLine()) return false;
-                String line = lineBuffer.toString().stripTrailing();
-                lineBuffer.setLength(0);
+        if (state != State.COMPLETE) {
+            // a line did not fit into the buffer
+            if (!byteBuffer.hasRemaining()) throw new IOException("Invalid HTTP Request: Header too large");
+            return false;
+        }
 
-                if (line.isEmpty()) {
-                    headerComplete = true;
-                    parseHeaders();
+        if (body != null) data = bodyLength == body.length ? body : Arrays.copyOf(body, bodyLength);
+        complete = true;
+        return true;
+    }
+
+    /**
+     * Parses the next part of the request from the buffer.
+     * @return false if more data is needed
+     */
+    private boolean parseNext() throws IOException {
+        switch (state) {
+            case BODY:
+            case CHUNK_DATA:
+                int length = Math.min(byteBuffer.remaining(), state == State.BODY ? body.length - bodyLength : chunkRemaining);
+                if (length == 0 && (state == State.BODY ? bodyLength < body.length : chunkRemaining > 0)) return false;
+                byteBuffer.get(body, bodyLength, length);
+                bodyLength += length;
+
+                if (state == State.BODY) {
+                    if (bodyLength == body.length) state = State.COMPLETE;
                 } else {
-                    headerLines.add(line);
+                    chunkRemaining -= length;
+                    if (chunkRemaining == 0) state = State.CHUNK_DATA_END;
                 }
-            }
+                return true;
+            default:
+                break;
+        }
 
-            if (hasHeaderValue("transfer-encoding", "chunked")) {
-                writeChunkedBody();
-            } else {
-                HttpHeader contentLengthHeader = getHeader("content-length");
-                int contentLength = 0;
-                if (contentLengthHeader != null) {
-                    try {
-                        contentLength = Integer.parseInt(contentLengthHeader.getValue().trim());
-                    } catch (NumberFormatException ex) {
-                        throw new IOException("Invalid HTTP Request: content-length is not a number", ex);
-                    }
-                }
+        String line = readLine();
+        if (line == null) return false;
 
-                if (contentLength > 0) {
-                    writeBody(contentLength);
+        switch (state) {
+            case REQUEST_LINE:
+                if (line.isEmpty()) return true; // ignore empty lines in front of a request
+                parseRequestLine(line);
+                state = State.HEADERS;
+                break;
+            case HEADERS:
+                if (line.isEmpty()) {
+                    startBody();
+                } else {
+                    parseHeader(line);
                 }
-            }
+                break;
+            case CHUNK_SIZE:
+                int chunkSize = parseChunkSize(line);
+                if (chunkSize == 0) {
+                    state = State.TRAILER;
+                } else {
+                    if (chunkSize > MAX_BODY_SIZE - bodyLength) throw new IOException("Invalid HTTP Request: Body too large");
+                    ensureBodyCapacity((long) bodyLength + chunkSize);
+                    chunkRemaining = chunkSize;
+                    state = State.CHUNK_DATA;
+                }
+                break;
+            case CHUNK_DATA_END:
+                if (!line.isEmpty()) throw new IOException("Invalid HTTP Request: Chunk not terminated");
+                state = State.CHUNK_SIZE;
+                break;
+            case TRAILER:
+                // trailing headers are ignored
+                if (line.isEmpty()) state = State.COMPLETE;
+                break;
+            default:
+                throw new IllegalStateException("Unexpected state: " + state);
+        }
 
-            complete = true;
-            return true;
+        return true;
+    }
 
-        } finally {
-            byteBuffer.compact();
+    /**
+     * Reads a line (without the line-break) from the buffer.
+     * @return the line or null if the buffer does not contain a complete line
+     */
+    private String readLine() throws IOException {
+        byte[] array = byteBuffer.array();
+        int offset = byteBuffer.arrayOffset();
+        int start = byteBuffer.position(), limit = byteBuffer.limit();
+
+        int end = start;
+        while (end < limit && array[offset + end] != '\n') end++;
+        if (end == limit) return null;
+
+        byteBuffer.position(end + 1);
+
+        if (state == State.REQUEST_LINE || state == State.HEADERS) {
+            headerSize += end + 1 - start;
+            if (headerSize > MAX_HEADER_SIZE) throw new IOException("Invalid HTTP Request: Header too large");
         }
-    }
 
-    private void writeChunkedBody() {
-        // TODO
+        if (end > start && array[offset + end - 1] == '\r') end--;
+        return new String(array, offset + start, end - start, StandardCharsets.ISO_8859_1);
     }
 
-    private void writeBody(int length) {
-        // TODO
+    private void parseRequestLine(String line) throws IOException {
+        int methodEnd = line.indexOf(' ');
+        int addressEnd = methodEnd < 0 ? -1 : line.indexOf(' ', methodEnd + 1);
+        if (methodEnd <= 0 || addressEnd <= methodEnd + 1 || addressEnd == line.length() - 1)
+            throw new IOException("Invalid HTTP Request: Request-Pattern not matching");
+
+        method = line.substring(0, methodEnd);
+        address = line.substring(methodEnd + 1, addressEnd);
+        version = line.substring(addressEnd + 1);
     }
 
-    private void parseHeaders() throws IOException {
-        if (headerLines.isEmpty()) throw new IOException("Invalid HTTP Request: No Header");
+    private void parseHeader(String line) throws IOException {
+        int separator = line.indexOf(':');
+        if (separator <= 0) return;
 
-        Matcher m = REQUEST_PATTERN.matcher(headerLines.get(0));
-        if (!m.find()) throw new IOException("Invalid HTTP Request: Request-Pattern not matching");
+        if (headers.size() >= MAX_HEADER_COUNT) throw new IOException("Invalid HTTP Request: Too many headers");
 
-        method = m.group(1);
-        if (method == null) throw new IOException("Invalid HTTP Request: Request-Pattern not matching (method)");
+        addHeader(line.substring(0, separator).trim(), line.substring(separator + 1));
+    }
 
-        address = m.group(2);
-        if (address == null) throw new IOException("Invalid HTTP Request: Request-Pattern not matching (address)");
+    private void startBody() throws IOException {
+        if (hasHeaderValue("transfer-encoding", "chunked")) {
+            ensureBodyCapacity(0);
+            state = State.CHUNK_SIZE;
+            return;
+        }
 
-        version = m.group(3);
-        if (version == null) throw new IOException("Invalid HTTP Request: Request-Pattern not matching (version)");
+        HttpHeader contentLengthHeader = getHeader("content-length");
+        int contentLength = 0;
+        if (contentLengthHeader != null) {
+            try {
+                contentLength = Integer.parseInt(contentLengthHeader.getValue().trim());
+            } catch (NumberFormatException ex) {
+                throw new IOException("Invalid HTTP Request: content-length is not a number", ex);
+            }
+        }
 
-        headers.clear();
-        for (int i = 1; i < headerLines.size(); i++) {
-            String line = headerLines.get(i);
-            if (line.trim().isEmpty()) continue;
+        if (contentLength < 0) throw new IOException("Invalid HTTP Request: content-length is negative");
+        if (contentLength > MAX_BODY_SIZE) throw new IOException("Invalid HTTP Request: Body too large");
 
-            String[] kv = line.split(":", 2);
-            if (kv.length < 2) continue;
+        if (contentLength == 0) {
+            state = State.COMPLETE;
+            return;
+        }
+
+        body = new byte[contentLength];
+        state = State.BODY;
+    }
+
+    private int parseChunkSize(String line) throws IOException {
+        int extension = line.indexOf(';');
+        String size = (extension >= 0 ? line.substring(0, extension) : line).trim();
 
-            headers.put(kv[0].trim().toLowerCase(Locale.ROOT), new HttpHeader(kv[0], kv[1]));
+        try {
+            int chunkSize = Integer.parseInt(size, 16);
+            if (chunkSize < 0) throw new IOException("Invalid HTTP Request: Invalid chunk-size");
+            return chunkSize;
+        } catch (NumberFormatException ex) {
+            throw new IOException("Invalid HTTP Request: Invalid chunk-size", ex);
         }
     }
 
-    private boolean writeLine() {
-        while (lineBuffer.length() <= 0 || lineBuffer.charAt(lineBuffer.length() - 1) != '\n'){
-            if (!byteBuffer.hasRemaining()) return false;
-            lineBuffer.append((char) byteBuffer.get());
+    private void ensureBodyCapacity(long capacity) throws IOException {
+        if (capacity < 0 || capacity > MAX_BODY_SIZE) throw new IOException("Invalid HTTP Request: Body too large");
+
+        if (body == null) {
+            body = new byte[(int) Math.max(capacity, 1024)];
+        } else if (body.length < capacity) {
+            body = Arrays.copyOf(body, (int) Math.min(Math.max(capacity, body.length * 2L), MAX_BODY_SIZE));
         }
-        return true;
     }
 
     public InetAddress getSource() {
@@ -196,6 +328,18 @@ public HttpHeader getHeader(String header) {
         return this.headers.get(header.toLowerCase(Locale.ROOT));
     }
 
+    /**
+     * Adds a header to this request, a header that is added multiple times is combined into one comma-separated header.
+     */
+    public void addHeader(String key, String value) {
+        String keyLC = key.toLowerCase(Locale.ROOT);
+
+        HttpHeader existing = headers.get(keyLC);
+        if (existing != null) value = existing.getValue() + "," + value;
+
+        headers.put(keyLC, new HttpHeader(key, value));
+    }
+
     public boolean hasHeaderValue(String key, String value) {
         HttpHeader header = getHeader(key);
         if (header == null) return false;
@@ -206,6 +350,10 @@ public byte[] getData() {
         return data;
     }
 
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
     public InputStream getDataStream() {
         return new ByteArrayInputStream(data);
     }
@@ -259,13 +407,37 @@ public boolean isComplete() {
         return complete;
     }
 
-    public void clear() {
+    /**
+     * Returns true if there is already (a part of) the next request received, e.g. from pipelined requests.
+     */
+    public boolean hasBufferedData() {
+        return byteBuffer.position() > 0;
+    }
+
+    /**
+     * Removes and returns all bytes that have been received after the end of this request,
+     * e.g. when the connection switches to a different protocol.
+     */
+    ByteBuffer removeBufferedData() {
+        byteBuffer.flip();
+        ByteBuffer data = ByteBuffer.allocate(byteBuffer.remaining());
+        data.put(byteBuffer).flip();
         byteBuffer.clear();
-        lineBuffer.setLength(0);
+        return data;
+    }
+
+    /**
+     * Resets this request to receive the next request on the same connection.<br>
+     * Data that has already been received for the next request is kept.
+     */
+    public void clear() {
+        state = State.REQUEST_LINE;
+        headerSize = 0;
+        chunkRemaining = 0;
+        body = null;
+        bodyLength = 0;
 
         complete = false;
-        headerComplete = false;
-        headerLines.clear();
 
         method = null;
         address = null;
@@ -27,6 +27,7 @@
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
@@ -36,19 +37,27 @@
 
 public class HttpResponse implements Closeable {
 
+    private static final ByteBufferPool BUFFER_POOL = new ByteBufferPool(64 * 1024, 64);
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
     private static final byte[] CHUNK_SUFFIX = "\r\n".getBytes(StandardCharsets.UTF_8);
+    private static final int MAX_DATA_PER_READ = 256 * 1024; // 256 KiB
 
     private String version;
     private HttpStatusCode statusCode;
     private final Map<String, HttpHeader> headers;
     private ReadableByteChannel data;
+    private long contentLength = -1;
+    private boolean omitBody = false;
 
+    private final ByteBuffer[] writeBuffers = new ByteBuffer[4];
     private ByteBuffer headerData;
+    private ByteBuffer chunkPrefix, chunkSuffix;
     private ByteBuffer dataBuffer;
+    private long dataRead = 0;
     private boolean complete = false;
-    private boolean headerComplete = false;
     private boolean dataChannelComplete = false;
     private boolean dataComplete = false;
+    private boolean waitingForData = false;
 
     public HttpResponse(HttpStatusCode statusCode) {
         this.version = "HTTP/1.1";
@@ -57,74 +66,133 @@ public HttpResponse(HttpStatusCode statusCode) {
         this.headers = new HashMap<>();
     }
 
+    /**
+     * Writes as much of this response to the channel as possible without blocking, but not much more than
+     * {@link #MAX_DATA_PER_READ} bytes of the body, so a fast client can't hold up the other connections.<br>
+     * The status-line and headers are sent together with the first part of the body in one gathering write.
+     * If the length of the body is known it is sent as is, otherwise it is sent with chunked transfer-encoding.
+     * @return true if the response has been sent completely
+     */
     public synchronized boolean read(WritableByteChannel channel) throws IOException {
         if (complete) return true;
 
-        // send headers
-        if (!headerComplete) {
-            if (headerData == null) writeHeaderData();
-            if (headerData.hasRemaining()) {
-                channel.write(headerData);
+        if (headerData == null) {
+            writeHeaderData();
+            chunkPrefix = EMPTY_BUFFER;
+            chunkSuffix = EMPTY_BUFFER;
+            dataComplete = !hasData() || omitBody;
+            dataBuffer = dataComplete ? EMPTY_BUFFER : BUFFER_POOL.acquire().flip();
+        }
+
+        int dataSent = 0;
+        while (true) {
+            if (!dataBuffer.hasRemaining() && !dataComplete) {
+                if (dataSent >= MAX_DATA_PER_READ) return false;
+                fillDataBuffer();
+                dataSent += dataBuffer.remaining();
             }
 
-            if (headerData.hasRemaining()) return false;
-            headerComplete = true;
-            headerData = null; // free ram
-        }
+            writeBuffers[0] = headerData;
+            writeBuffers[1] = chunkPrefix;
+            writeBuffers[2] = dataBuffer;
+            writeBuffers[3] = chunkSuffix;
+            if (!write(channel, writeBuffers)) return false;
 
-        if (!hasData()){
-            complete = true;
-            return true;
+            if (dataComplete) break;
+            if (waitingForData) return false;
         }
 
-        // send data chunked
-        if (dataBuffer == null) dataBuffer = ByteBuffer.allocate(1024 + 200).flip(); // 200 extra bytes
-        while (true) {
-            if (dataBuffer.hasRemaining()) channel.write(dataBuffer);
-            if (dataBuffer.hasRemaining()) return false;
-            if (dataComplete) break; // nothing more to do
-
-            // fill data buffer from channel
-            dataBuffer.clear();
-            dataBuffer.position(100); // keep 100 space in front
-            dataBuffer.limit(1124); // keep 100 space at the end
-
-            int readTotal = 0;
-            if (!dataChannelComplete) {
-                int read = 0;
-                while (dataBuffer.hasRemaining() && (read = data.read(dataBuffer)) != -1) {
-                    readTotal += read;
-                }
-
-                if (read == -1) dataChannelComplete = true;
+        complete = true;
+        releaseBuffers();
+        return true;
+    }
+
+    /**
+     * Reads the next part of the body into the data-buffer and prepares the chunk-prefix and -suffix if needed.
+     */
+    private void fillDataBuffer() throws IOException {
+        dataBuffer.clear();
+
+        // don't read more than the announced content-length
+        if (contentLength >= 0 && contentLength - dataRead < dataBuffer.capacity())
+            dataBuffer.limit((int) (contentLength - dataRead));
+
+        int readTotal = 0;
+        if (!dataChannelComplete) {
+            int read = 0;
+            while (dataBuffer.hasRemaining() && (read = data.read(dataBuffer)) > 0) {
+                readTotal += read;
             }
 
-            if (readTotal == 0) dataComplete = true;
+            if (read == -1) dataChannelComplete = true;
+        }
 
-            byte[] chunkPrefix = (Integer.toHexString(readTotal) + "\r\n")
-                    .getBytes(StandardCharsets.UTF_8);
+        dataBuffer.flip();
+        dataRead += readTotal;
 
-            dataBuffer.limit(dataBuffer.capacity());
-            dataBuffer.put(CHUNK_SUFFIX);
-            dataBuffer.limit(dataBuffer.position());
+        // a non-blocking channel (e.g. an event-stream) has currently nothing to send
+        waitingForData = readTotal == 0 && !dataChannelComplete;
 
-            int startPos = 100 - chunkPrefix.length;
-            dataBuffer.position(startPos);
-            dataBuffer.put(chunkPrefix);
-            dataBuffer.position(startPos);
+        if (contentLength >= 0) {
+            if (dataRead >= contentLength) dataComplete = true;
+            else if (dataChannelComplete) throw new IOException("Response-data ended before the announced content-length was reached!");
+            return;
         }
 
-        complete = true;
+        if (waitingForData) {
+            chunkPrefix = EMPTY_BUFFER;
+            chunkSuffix = EMPTY_BUFFER;
+            return;
+        }
+
+        // an empty chunk terminates the body
+        if (readTotal == 0) dataComplete = true;
+
+        chunkPrefix = ByteBuffer.wrap((Integer.toHexString(readTotal) + "\r\n").getBytes(StandardCharsets.UTF_8));
+        chunkSuffix = ByteBuffer.wrap(CHUNK_SUFFIX);
+    }
+
+    /**
+     * Writes the buffers to the channel, using a single gathering write if the channel supports it.
+     * @return true if all buffers have been written completely
+     */
+    private static boolean write(WritableByteChannel channel, ByteBuffer[] buffers) throws IOException {
+        if (channel instanceof GatheringByteChannel) {
+            ((GatheringByteChannel) channel).write(buffers);
+        } else {
+            for (ByteBuffer buffer : buffers) {
+                if (buffer.hasRemaining()) channel.write(buffer);
+                if (buffer.hasRemaining()) break;
+            }
+        }
+
+        for (ByteBuffer buffer : buffers) {
+            if (buffer.hasRemaining()) return false;
+        }
         return true;
     }
 
+    private void releaseBuffers() {
+        if (dataBuffer != null && dataBuffer != EMPTY_BUFFER) BUFFER_POOL.release(dataBuffer);
+        dataBuffer = EMPTY_BUFFER;
+        headerData = EMPTY_BUFFER;
+        chunkPrefix = EMPTY_BUFFER;
+        chunkSuffix = EMPTY_BUFFER;
+        writeBuffers[0] = writeBuffers[1] = writeBuffers[2] = writeBuffers[3] = null;
+    }
+
     private void writeHeaderData() {
         ByteArrayOutputStream headerDataOut = new ByteArrayOutputStream();
 
-        if (hasData()){
-            headers.put("Transfer-Encoding", new HttpHeader("Transfer-Encoding", "chunked"));
+        if (omitBody) {
+            if (contentLength >= 0)
+                headers.put("content-length", new HttpHeader("Content-Length", Long.toString(contentLength)));
+        } else if (!hasData()) {
+            headers.put("content-length", new HttpHeader("Content-Length", "0"));
+        } else if (contentLength >= 0) {
+            headers.put("content-length", new HttpHeader("Content-Length", Long.toString(contentLength)));
         } else {
-            headers.put("Content-Length", new HttpHeader("Content-Length", "0"));
+            headers.put("transfer-encoding", new HttpHeader("Transfer-Encoding", "chunked"));
         }
 
         headerDataOut.writeBytes((version + " " + statusCode.getCode() + " " + statusCode.getMessage() + "\r\n")
@@ -136,9 +204,7 @@ private void writeHeaderData() {
         headerDataOut.writeBytes(("\r\n")
                 .getBytes(StandardCharsets.UTF_8));
 
-        headerData = ByteBuffer.allocate(headerDataOut.size())
-                .put(headerDataOut.toByteArray())
-                .flip();
+        headerData = ByteBuffer.wrap(headerDataOut.toByteArray());
     }
 
     public void addHeader(String key, String value){
@@ -153,15 +219,88 @@ public void addHeader(String key, String value){
     }
 
     public void setData(ReadableByteChannel channel){
+        setData(channel, -1);
+    }
+
+    /**
+     * Sets the data of this response.
+     * @param contentLength The exact amount of bytes that the channel provides, or -1 if unknown.
+     *                      If the length is known, the data is sent with a Content-Length header instead of being chunked.
+     */
+    public void setData(ReadableByteChannel channel, long contentLength){
         this.data = channel;
+        this.contentLength = contentLength;
     }
 
     public void setData(InputStream dataStream){
-        this.data = Channels.newChannel(dataStream);
+        setData(dataStream, -1);
+    }
+
+    /**
+     * Sets the data of this response.
+     * @param contentLength The exact amount of bytes that the stream provides, or -1 if unknown.
+     *                      If the length is known, the data is sent with a Content-Length header instead of being chunked.
+     */
+    public void setData(InputStream dataStream, long contentLength){
+        setData(Channels.newChannel(dataStream), contentLength);
+    }
+
+    public void setData(byte[] data){
+        setData(new ByteArrayInputStream(data), data.length);
     }
 
     public void setData(String data){
-        setData(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+        setData(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sets the length of the body without providing the data, for responses that are sent without a body.
+     * @see #setOmitBody(boolean)
+     */
+    public void setContentLength(long contentLength) {
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * If set to true, the headers (including the Content-Length) are sent as if the body was present,
+     * but the body itself is not sent. This is used for responses to HEAD requests.
+     */
+    public void setOmitBody(boolean omitBody) {
+        this.omitBody = omitBody;
+    }
+
+    public boolean isOmitBody() {
+        return omitBody;
+    }
+
+    /**
+     * Returns true if the last call to {@link #read(WritableByteChannel)} stopped because the data-channel
+     * had currently nothing to provide, rather than because the target-channel could not take more data.
+     */
+    public boolean isWaitingForData() {
+        return waitingForData;
+    }
+
+    /**
+     * Sets a listener that is called when new data becomes available, if the data of this response is an
+     * {@link HttpEventStream}.
+     */
+    public void setDataListener(Runnable listener) {
+        if (data instanceof HttpEventStream) ((HttpEventStream) data).setDataListener(listener);
+    }
+
+    /**
+     * Returns the channel providing the body of this response, for connections that send the body themselves.
+     */
+    ReadableByteChannel getDataChannel() {
+        return data;
+    }
+
+    /**
+     * Returns the length of the body, or -1 if it is unknown.
+     */
+    long getContentLength() {
+        return contentLength;
     }
 
     public boolean hasData() {
@@ -173,7 +312,8 @@ public boolean isComplete() {
     }
 
     @Override
-    public void close() throws IOException {
+    public synchronized void close() throws IOException {
+        releaseBuffers();
         if (data != null) data.close();
     }
 
@@ -33,17 +33,51 @@ public class HttpServer extends Server {
 
     private final HttpRequestHandler requestHandler;
 
+    private long idleTimeout = 0;
+    private long readTimeout = 0;
+    private int maxKeepAliveRequests = 0;
+    private boolean http2 = false;
+
     public HttpServer(HttpRequestHandler requestHandler) throws IOException {
         this.requestHandler = requestHandler;
     }
 
     @Override
     public SelectionConsumer createConnectionHandler() {
-        return new HttpConnection(requestHandler);
+        return new HttpConnection(requestHandler, Runnable::run, idleTimeout, readTimeout, maxKeepAliveRequests, http2);
 
         // Enable async request handling ...
         // TODO: maybe find a better/separate executor than using bluemap's common thread-pool
         //return new HttpConnection(requestHandler, BlueMap.THREAD_POOL);
     }
 
+    /**
+     * Sets the time in milliseconds after which a connection is closed if it is not receiving a request (0 = no timeout)
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds after which a connection is closed if no progress is made
+     * while receiving a request or sending a response (0 = no timeout)
+     */
+    public void setReadTimeout(long readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Sets the maximum amount of requests that are handled on one keep-alive connection before it is closed (0 = no limit)
+     */
+    public void setMaxKeepAliveRequests(int maxKeepAliveRequests) {
+        this.maxKeepAliveRequests = maxKeepAliveRequests;
+    }
+
+    /**
+     * Sets whether clients can use cleartext HTTP/2 (h2c) with prior knowledge on the same port as HTTP/1.1
+     */
+    public void setHttp2(boolean http2) {
+        this.http2 = http2;
+    }
+
 }
@@ -31,6 +31,7 @@ public enum HttpStatusCode {
 
     OK (200, "OK"),
     NO_CONTENT (204, "No Content"),
+    PARTIAL_CONTENT (206, "Partial Content"),
 
     MOVED_PERMANENTLY (301, "Moved Permanently"),
     FOUND (302, "Found"),
@@ -41,6 +42,8 @@ public enum HttpStatusCode {
     UNAUTHORIZED (401, "Unauthorized"),
     FORBIDDEN (403, "Forbidden"),
     NOT_FOUND (404, "Not Found"),
+    RANGE_NOT_SATISFIABLE (416, "Range Not Satisfiable"),
+    TOO_MANY_REQUESTS (429, "Too Many Requests"),
 
     INTERNAL_SERVER_ERROR (500, "Internal Server Error"),
     NOT_IMPLEMENTED (501, "Not Implemented"),
@@ -0,0 +1,119 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web.http;
+
+import de.bluecolored.bluemap.api.debug.DebugDump;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token-bucket rate-limiter with a separate bucket for each key (e.g. each client-address).<br>
+ * <br>
+ * Each bucket holds up to <code>burst</code> tokens and is refilled with <code>rate</code> tokens per second.
+ * Buckets that have been refilled completely are the same as new ones, so they are removed from time to time.
+ */
+@DebugDump
+public class RateLimiter {
+
+    private static final long CLEANUP_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    private final double rate;
+    private final double burst;
+
+    private final Map<String, Bucket> buckets;
+    private volatile long lastCleanup;
+
+    /**
+     * @param rate The amount of tokens that are added to each bucket per second
+     * @param burst The maximum amount of tokens a bucket can hold
+     */
+    public RateLimiter(double rate, double burst) {
+        if (rate <= 0) throw new IllegalArgumentException("rate must be greater than 0");
+        if (burst < 1) throw new IllegalArgumentException("burst must be at least 1");
+
+        this.rate = rate;
+        this.burst = burst;
+
+        this.buckets = new ConcurrentHashMap<>();
+        this.lastCleanup = System.nanoTime();
+    }
+
+    /**
+     * Tries to take a token from the bucket of the given key.
+     * @return 0 if a token has been taken, otherwise the time in milliseconds until the next token is available
+     */
+    public long tryAcquire(String key) {
+        return tryAcquire(key, System.nanoTime());
+    }
+
+    /**
+     * Same as {@link #tryAcquire(String)}, but with an explicit time (in nanoseconds, as from {@link System#nanoTime()})
+     */
+    long tryAcquire(String key, long now) {
+        if (now - lastCleanup > CLEANUP_INTERVAL) cleanup(now);
+
+        Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(burst, now));
+        synchronized (bucket) {
+            bucket.refill(now);
+
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                return 0;
+            }
+
+            return Math.max(1, (long) Math.ceil((1 - bucket.tokens) / rate * 1000));
+        }
+    }
+
+    private void cleanup(long now) {
+        lastCleanup = now;
+        buckets.values().removeIf(bucket -> {
+            synchronized (bucket) {
+                bucket.refill(now);
+                return bucket.tokens >= burst;
+            }
+        });
+    }
+
+    private class Bucket {
+
+        private double tokens;
+        private long lastRefill;
+
+        private Bucket(double tokens, long lastRefill) {
+            this.tokens = tokens;
+            this.lastRefill = lastRefill;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+        }
+
+    }
+
+}
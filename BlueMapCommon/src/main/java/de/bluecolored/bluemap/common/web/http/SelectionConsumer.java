@@ -27,4 +27,12 @@
 import java.nio.channels.SelectionKey;
 import java.util.function.Consumer;
 
-public interface SelectionConsumer extends Consumer<SelectionKey> {}
+public interface SelectionConsumer extends Consumer<SelectionKey> {
+
+    /**
+     * Called regularly by the {@link Server} for each registered channel,
+     * to give the consumer a chance to close the channel if it timed out.
+     */
+    default void checkTimeout(SelectionKey selectionKey, long now) {}
+
+}
@@ -34,12 +34,18 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 public abstract class Server extends Thread implements Closeable, Runnable {
 
+    private static final long TIMEOUT_CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
     private final Selector selector;
     private final Collection<ServerSocketChannel> server;
 
+    private int maxConnections = Integer.MAX_VALUE;
+    private long lastTimeoutCheck = 0;
+
     public Server() throws IOException {
         this.selector = Selector.open();
         this.server = new ArrayList<>();
@@ -75,17 +81,44 @@ public void run() {
         Logger.global.logInfo("WebServer started.");
         while (this.selector.isOpen()) {
             try {
-                this.selector.select(this::selection);
+                this.selector.select(this::selection, TIMEOUT_CHECK_INTERVAL);
+                checkTimeouts();
             } catch (IOException e) {
                 Logger.global.logDebug("Failed to select channel: " + e);
             } catch (ClosedSelectorException ignore) {}
         }
     }
 
+    private void checkTimeouts() {
+        long now = System.currentTimeMillis();
+        if (now - lastTimeoutCheck < TIMEOUT_CHECK_INTERVAL) return;
+        lastTimeoutCheck = now;
+
+        for (SelectionKey selectionKey : selector.keys()) {
+            if (!selectionKey.isValid()) continue;
+
+            Object attachment = selectionKey.attachment();
+            if (attachment instanceof SelectionConsumer) {
+                ((SelectionConsumer) attachment).checkTimeout(selectionKey, now);
+            }
+        }
+    }
+
     private void selection(SelectionKey selectionKey) {
         Object attachment = selectionKey.attachment();
         if (attachment instanceof SelectionConsumer) {
-            ((SelectionConsumer) attachment).accept(selectionKey);
+            try {
+                ((SelectionConsumer) attachment).accept(selectionKey);
+            } catch (RuntimeException e) {
+                // never let a single broken connection take down the whole selector-thread
+                Logger.global.logError("Unexpected error while processing a connection", e);
+                selectionKey.cancel();
+                try {
+                    selectionKey.channel().close();
+                } catch (IOException e2) {
+                    Logger.global.logWarning("Failed to close channel: " + e2);
+                }
+            }
         }
     }
 
@@ -95,13 +128,32 @@ private void accept(SelectionKey selectionKey) {
             ServerSocketChannel serverSocketChannel = (ServerSocketChannel) selectionKey.channel();
             SocketChannel channel = serverSocketChannel.accept();
             if (channel == null) return;
+
+            // the selector holds one key for each server-socket and each open connection
+            if (selector.keys().size() - server.size() >= maxConnections) {
+                Logger.global.logDebug("Rejected connection from " + channel.getRemoteAddress() + ": Too many open connections!");
+                channel.close();
+                return;
+            }
+
             channel.configureBlocking(false);
-            channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, createConnectionHandler());
+            channel.register(selector, SelectionKey.OP_READ, createConnectionHandler());
         } catch (IOException e) {
             Logger.global.logDebug("Failed to accept connection: " + e);
         }
     }
 
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the maximum amount of connections that can be open at the same time, new connections above this limit are closed immediately.
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections > 0 ? maxConnections : Integer.MAX_VALUE;
+    }
+
     @Override
     public void close() throws IOException {
         IOException exception = null;
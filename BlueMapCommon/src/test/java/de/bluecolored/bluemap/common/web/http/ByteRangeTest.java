@@ -0,0 +1,125 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ByteRangeTest {
+
+    @Test
+    public void testSingleRange() {
+        ByteRange range = ByteRange.fromRequest(request("bytes=10-19"), null, 100);
+        assertNotNull(range);
+        assertTrue(range.isSatisfiable());
+        assertEquals(10, range.getFirst());
+        assertEquals(19, range.getLast());
+        assertEquals(10, range.getLength());
+
+        HttpResponse response = new HttpResponse(HttpStatusCode.OK);
+        range.applyTo(response, 100);
+        assertEquals(HttpStatusCode.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 10-19/100", response.getHeader("Content-Range").getValue());
+    }
+
+    @Test
+    public void testOpenAndSuffixRanges() {
+        ByteRange open = ByteRange.fromRequest(request("bytes=90-"), null, 100);
+        assertNotNull(open);
+        assertEquals(90, open.getFirst());
+        assertEquals(99, open.getLast());
+
+        ByteRange clamped = ByteRange.fromRequest(request("bytes=50-1000"), null, 100);
+        assertNotNull(clamped);
+        assertEquals(99, clamped.getLast());
+
+        ByteRange suffix = ByteRange.fromRequest(request("bytes=-30"), null, 100);
+        assertNotNull(suffix);
+        assertEquals(70, suffix.getFirst());
+        assertEquals(99, suffix.getLast());
+
+        ByteRange largeSuffix = ByteRange.fromRequest(request("bytes=-300"), null, 100);
+        assertNotNull(largeSuffix);
+        assertEquals(0, largeSuffix.getFirst());
+        assertEquals(100, largeSuffix.getLength());
+    }
+
+    @Test
+    public void testMultipleRanges() {
+        // multiple ranges are answered with the full representation
+        assertNull(ByteRange.fromRequest(request("bytes=0-9,20-29"), null, 100));
+        assertNull(ByteRange.fromRequest(request("bytes=0-9, -10"), null, 100));
+    }
+
+    @Test
+    public void testInvalidRanges() {
+        assertNull(ByteRange.fromRequest(request("items=0-9"), null, 100));
+        assertNull(ByteRange.fromRequest(request("bytes=9"), null, 100));
+        assertNull(ByteRange.fromRequest(request("bytes=-"), null, 100));
+        assertNull(ByteRange.fromRequest(request("bytes=a-b"), null, 100));
+        assertNull(ByteRange.fromRequest(request("bytes=20-10"), null, 100));
+        assertNull(ByteRange.fromRequest(request("bytes=--5"), null, 100));
+        assertNull(ByteRange.fromRequest(new HttpRequest(InetAddress.getLoopbackAddress()), null, 100));
+    }
+
+    @Test
+    public void testUnsatisfiableRanges() {
+        ByteRange range = ByteRange.fromRequest(request("bytes=100-200"), null, 100);
+        assertNotNull(range);
+        assertFalse(range.isSatisfiable());
+
+        HttpResponse response = new HttpResponse(HttpStatusCode.OK);
+        range.applyTo(response, 100);
+        assertEquals(HttpStatusCode.RANGE_NOT_SATISFIABLE, response.getStatusCode());
+        assertEquals("bytes */100", response.getHeader("Content-Range").getValue());
+
+        ByteRange emptySuffix = ByteRange.fromRequest(request("bytes=-0"), null, 100);
+        assertNotNull(emptySuffix);
+        assertFalse(emptySuffix.isSatisfiable());
+
+        ByteRange emptyRepresentation = ByteRange.fromRequest(request("bytes=-10"), null, 0);
+        assertNotNull(emptyRepresentation);
+        assertFalse(emptyRepresentation.isSatisfiable());
+    }
+
+    @Test
+    public void testIfRange() {
+        HttpRequest request = request("bytes=0-9");
+        request.addHeader("If-Range", "\"abc\"");
+        assertNotNull(ByteRange.fromRequest(request, "\"abc\"", 100));
+        assertNull(ByteRange.fromRequest(request, "\"def\"", 100));
+        assertNull(ByteRange.fromRequest(request, null, 100));
+    }
+
+    private static HttpRequest request(String range) {
+        HttpRequest request = new HttpRequest(InetAddress.getLoopbackAddress());
+        request.addHeader("Range", range);
+        return request;
+    }
+
+}
@@ -0,0 +1,274 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the HPACK en- and decoder, mostly with the examples from RFC 7541 Appendix C
+ */
+public class HpackTest {
+
+    private static final int MAX_HEADER_LIST_SIZE = 16 * 1024;
+
+    @Test
+    public void testIntegers() throws Http2Exception {
+        // C.1.1 - C.1.3
+        assertArrayEquals(bytes("0a"), encodeInt(0x00, 5, 10));
+        assertArrayEquals(bytes("1f9a0a"), encodeInt(0x00, 5, 1337));
+        assertArrayEquals(bytes("2a"), encodeInt(0x00, 8, 42));
+
+        assertEquals(10, decodeInt(bytes("0a"), 5));
+        assertEquals(1337, decodeInt(bytes("1f9a0a"), 5));
+        assertEquals(42, decodeInt(bytes("2a"), 8));
+
+        assertThrows(Http2Exception.class, () -> decodeInt(bytes("1f9a"), 5));
+        assertThrows(Http2Exception.class, () -> decodeInt(bytes("1fffffffff0f"), 5));
+    }
+
+    @Test
+    public void testLiteralFields() throws Http2Exception {
+        // C.2.1: literal with indexing
+        HpackDecoder decoder = new HpackDecoder(MAX_HEADER_LIST_SIZE);
+        assertHeaders(decoder, "400a637573746f6d2d6b65790d637573746f6d2d686561646572",
+                "custom-key: custom-header");
+        assertHeaders(decoder, "be", "custom-key: custom-header");
+
+        // C.2.2: literal without indexing
+        HpackDecoder notIndexedDecoder = new HpackDecoder(MAX_HEADER_LIST_SIZE);
+        assertHeaders(notIndexedDecoder, "040c2f73616d706c652f70617468", ":path: /sample/path");
+        assertThrows(Http2Exception.class, () -> notIndexedDecoder.decode(ByteBuffer.wrap(bytes("be"))));
+
+        // C.2.3: literal never indexed
+        HpackDecoder neverIndexedDecoder = new HpackDecoder(MAX_HEADER_LIST_SIZE);
+        assertHeaders(neverIndexedDecoder, "100870617373776f726406736563726574", "password: secret");
+        assertThrows(Http2Exception.class, () -> neverIndexedDecoder.decode(ByteBuffer.wrap(bytes("be"))));
+
+        // C.2.4: indexed
+        assertHeaders(new HpackDecoder(MAX_HEADER_LIST_SIZE), "82", ":method: GET");
+    }
+
+    @Test
+    public void testRequestsWithoutHuffman() throws Http2Exception {
+        // C.3
+        HpackDecoder decoder = new HpackDecoder(MAX_HEADER_LIST_SIZE);
+        assertHeaders(decoder, "828684410f7777772e6578616d706c652e636f6d",
+                ":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com");
+        assertHeaders(decoder, "828684be58086e6f2d6361636865",
+                ":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com", "cache-control: no-cache");
+        assertHeaders(decoder, "828785bf400a637573746f6d2d6b65790c637573746f6d2d76616c7565",
+                ":method: GET", ":scheme: https", ":path: /index.html", ":authority: www.example.com", "custom-key: custom-value");
+
+        // the dynamic table now holds (newest first) custom-key, cache-control and :authority
+        assertHeaders(decoder, "bebfc0",
+                "custom-key: custom-value", "cache-control: no-cache", ":authority: www.example.com");
+        assertThrows(Http2Exception.class, () -> decoder.decode(ByteBuffer.wrap(bytes("c1"))));
+    }
+
+    @Test
+    public void testRequestsWithHuffman() throws Http2Exception {
+        // C.4
+        HpackDecoder decoder = new HpackDecoder(MAX_HEADER_LIST_SIZE);
+        assertHeaders(decoder, "828684418cf1e3c2e5f23a6ba0ab90f4ff",
+                ":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com");
+        assertHeaders(decoder, "828684be5886a8eb10649cbf",
+                ":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com", "cache-control: no-cache");
+        assertHeaders(decoder, "828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf",
+                ":method: GET", ":scheme: https", ":path: /index.html", ":authority: www.example.com", "custom-key: custom-value");
+    }
+
+    @Test
+    public void testResponsesWithoutHuffman() throws Http2Exception {
+        // C.5, with a table-size update to the 256 bytes the example uses
+        HpackDecoder decoder = new HpackDecoder(MAX_HEADER_LIST_SIZE);
+        assertHeaders(decoder, "3fe101" +
+                        "4803333032580770726976617465611d4d6f6e2c203231204f637420323031332032303a31333a323120474d54" +
+                        "6e1768747470733a2f2f7777772e6578616d706c652e636f6d",
+                ":status: 302", "cache-control: private", "date: Mon, 21 Oct 2013 20:13:21 GMT",
+                "location: https://www.example.com");
+
+        // ":status: 307" evicts ":status: 302"
+        assertHeaders(decoder, "4803333037c1c0bf",
+                ":status: 307", "cache-control: private", "date: Mon, 21 Oct 2013 20:13:21 GMT",
+                "location: https://www.example.com");
+
+        assertHeaders(decoder, "88c1611d4d6f6e2c203231204f637420323031332032303a31333a323220474d54c05a04677a6970" +
+                        "7738666f6f3d4153444a4b48514b425a584f5157454f50495541585157454f49553b206d61782d6167653d33" +
+                        "3630303b2076657273696f6e3d31",
+                ":status: 200", "cache-control: private", "date: Mon, 21 Oct 2013 20:13:22 GMT",
+                "location: https://www.example.com", "content-encoding: gzip",
+                "set-cookie: foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1");
+
+        // only set-cookie, content-encoding and date are left in the table
+        assertHeaders(decoder, "bfc0",
+                "content-encoding: gzip", "date: Mon, 21 Oct 2013 20:13:22 GMT");
+        assertThrows(Http2Exception.class, () -> decoder.decode(ByteBuffer.wrap(bytes("c1"))));
+    }
+
+    @Test
+    public void testResponsesWithHuffman() throws Http2Exception {
+        // C.6, with a table-size update to the 256 bytes the example uses
+        HpackDecoder decoder = new HpackDecoder(MAX_HEADER_LIST_SIZE);
+        assertHeaders(decoder, "3fe101" +
+                        "488264025885aec3771a4b6196d07abe941054d444a8200595040b8166e082a62d1bff6e919d29ad171863c78f0b97c8e9ae82ae43d3",
+                ":status: 302", "cache-control: private", "date: Mon, 21 Oct 2013 20:13:21 GMT",
+                "location: https://www.example.com");
+        assertHeaders(decoder, "4883640effc1c0bf",
+                ":status: 307", "cache-control: private", "date: Mon, 21 Oct 2013 20:13:21 GMT",
+                "location: https://www.example.com");
+        assertHeaders(decoder, "88c16196d07abe941054d444a8200595040b8166e084a62d1bffc05a839bd9ab77ad94e7821dd7f2e6c7b335dfdf" +
+                        "cd5b3960d5af27087f3672c1ab270fb5291f9587316065c003ed4ee5b1063d5007",
+                ":status: 200", "cache-control: private", "date: Mon, 21 Oct 2013 20:13:22 GMT",
+                "location: https://www.example.com", "content-encoding: gzip",
+                "set-cookie: foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1");
+        assertThrows(Http2Exception.class, () -> decoder.decode(ByteBuffer.wrap(bytes("c1"))));
+    }
+
+    @Test
+    public void testInvalidBlocks() {
+        HpackDecoder decoder = new HpackDecoder(MAX_HEADER_LIST_SIZE);
+
+        // index 0 and unknown indices
+        assertThrows(Http2Exception.class, () -> decoder.decode(ByteBuffer.wrap(bytes("80"))));
+        assertThrows(Http2Exception.class, () -> decoder.decode(ByteBuffer.wrap(bytes("ff00"))));
+
+        // table-size update above the limit, or after a header-field
+        assertThrows(Http2Exception.class, () -> decoder.decode(ByteBuffer.wrap(bytes("3fe21f"))));
+        assertThrows(Http2Exception.class, () -> decoder.decode(ByteBuffer.wrap(bytes("823fe101"))));
+
+        // truncated string
+        assertThrows(Http2Exception.class, () -> decoder.decode(ByteBuffer.wrap(bytes("400a6375"))));
+
+        // huffman: EOS-symbol and padding that is longer than 7 bits or not all ones (followed by an empty value)
+        assertThrows(Http2Exception.class, () -> decoder.decode(ByteBuffer.wrap(bytes("0084ffffffff00"))));
+        assertThrows(Http2Exception.class, () -> decoder.decode(ByteBuffer.wrap(bytes("008227ff00"))));
+        assertThrows(Http2Exception.class, () -> decoder.decode(ByteBuffer.wrap(bytes("00812000"))));
+
+        // header-list too large
+        HpackDecoder smallDecoder = new HpackDecoder(40);
+        assertThrows(Http2Exception.class, () -> smallDecoder.decode(ByteBuffer.wrap(bytes("8282"))));
+    }
+
+    @Test
+    public void testDynamicTableEviction() {
+        Hpack.DynamicTable table = new Hpack.DynamicTable(100);
+        table.add(new HttpHeader("a", "1")); // 34 bytes
+        table.add(new HttpHeader("b", "2"));
+        assertEquals(2, table.length());
+
+        // the third entry needs room, so the oldest entry is evicted
+        table.add(new HttpHeader("c", "3"));
+        assertEquals(2, table.length());
+        assertEquals("c", table.get(0).getKey());
+        assertEquals("b", table.get(1).getKey());
+        assertNull(table.get(2));
+
+        assertEquals(1, table.indexOf("b", "2"));
+        assertEquals(-2, table.indexOf("c", "4"));
+        assertEquals(-1, table.indexOf("a", "1"));
+
+        // shrinking the table evicts entries until they fit
+        table.setMaxSize(40);
+        assertEquals(1, table.length());
+        assertEquals("c", table.get(0).getKey());
+
+        // an entry larger than the table empties it
+        table.add(new HttpHeader("d", "x".repeat(100)));
+        assertEquals(0, table.length());
+    }
+
+    @Test
+    public void testEncoderRoundTrip() throws Http2Exception {
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder(MAX_HEADER_LIST_SIZE);
+
+        String[][] headers = {
+                {":status", "200"},
+                {"content-type", "application/json"},
+                {"cache-control", "no-cache"},
+                {"etag", "\"abc\""},
+                {"x-custom", "value"}
+        };
+
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        for (String[] header : headers) encoder.encode(first, header[0], header[1]);
+        assertEquals(toStrings(headers), toStrings(decoder.decode(ByteBuffer.wrap(first.toByteArray()))));
+
+        // repeated headers are referenced from the dynamic table, except for those that are not indexed
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        for (String[] header : headers) encoder.encode(second, header[0], header[1]);
+        assertTrue(second.size() < first.size());
+        assertEquals(toStrings(headers), toStrings(decoder.decode(ByteBuffer.wrap(second.toByteArray()))));
+
+        // a smaller table-size announced by the peer is signalled at the start of the next block
+        encoder.setMaxTableSize(0);
+        ByteArrayOutputStream third = new ByteArrayOutputStream();
+        encoder.encode(third, "x-custom", "value");
+        assertEquals(0x20, third.toByteArray()[0] & 0xFF);
+        assertEquals(List.of("x-custom: value"), toStrings(decoder.decode(ByteBuffer.wrap(third.toByteArray()))));
+    }
+
+    private static void assertHeaders(HpackDecoder decoder, String hex, String... expected) throws Http2Exception {
+        assertEquals(List.of(expected), toStrings(decoder.decode(ByteBuffer.wrap(bytes(hex)))));
+    }
+
+    private static List<String> toStrings(List<HttpHeader> headers) {
+        List<String> strings = new ArrayList<>();
+        for (HttpHeader header : headers) strings.add(header.getKey() + ": " + header.getValue());
+        return strings;
+    }
+
+    private static List<String> toStrings(String[][] headers) {
+        List<String> strings = new ArrayList<>();
+        for (String[] header : headers) strings.add(header[0] + ": " + header[1]);
+        return strings;
+    }
+
+    private static byte[] encodeInt(int flags, int prefixBits, int value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Hpack.encodeInt(out, flags, prefixBits, value);
+        return out.toByteArray();
+    }
+
+    private static int decodeInt(byte[] data, int prefixBits) throws Http2Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        return Hpack.decodeInt(buffer, buffer.get() & 0xFF, prefixBits);
+    }
+
+    private static byte[] bytes(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        return bytes;
+    }
+
+}
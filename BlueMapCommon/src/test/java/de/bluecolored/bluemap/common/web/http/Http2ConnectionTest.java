@@ -0,0 +1,454 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Http2ConnectionTest {
+
+    private static final int
+            DATA = 0x0,
+            HEADERS = 0x1,
+            RST_STREAM = 0x3,
+            SETTINGS = 0x4,
+            PING = 0x6,
+            WINDOW_UPDATE = 0x8,
+            CONTINUATION = 0x9;
+
+    private static final int
+            END_STREAM = 0x1,
+            ACK = 0x1,
+            END_HEADERS = 0x4,
+            PADDED = 0x8;
+
+    private static final int CONNECTION_WINDOW = 4 * 1024 * 1024;
+
+    @Test
+    public void testHandshake() throws IOException {
+        Client client = new Client(request -> new HttpResponse(HttpStatusCode.OK));
+        List<Frame> frames = client.send(frame(SETTINGS, 0, 0));
+
+        assertEquals(3, frames.size());
+        assertEquals(SETTINGS, frames.get(0).type);
+        assertEquals(0, frames.get(0).flags);
+
+        // the connection-window is raised right away
+        assertEquals(WINDOW_UPDATE, frames.get(1).type);
+        assertEquals(0, frames.get(1).streamId);
+        assertEquals(CONNECTION_WINDOW - 65535, frames.get(1).getInt());
+
+        assertEquals(SETTINGS, frames.get(2).type);
+        assertEquals(ACK, frames.get(2).flags);
+
+        frames = client.send(frame(PING, 0, 0, bytes("01234567")));
+        assertEquals(1, frames.size());
+        assertEquals(PING, frames.get(0).type);
+        assertEquals(ACK, frames.get(0).flags);
+        assertEquals("01234567", frames.get(0).getString());
+    }
+
+    @Test
+    public void testFramesSplitAcrossReads() throws IOException {
+        Client client = new Client(request -> new HttpResponse(HttpStatusCode.OK));
+        client.send(frame(SETTINGS, 0, 0));
+
+        // an unknown frame-type is ignored
+        byte[] data = concat(frame(0xFA, 0, 0, bytes("ignored")), frame(PING, 0, 0, bytes("abcdefgh")));
+        for (int i = 0; i < data.length - 1; i++) {
+            assertTrue(client.send(new byte[]{ data[i] }).isEmpty());
+        }
+
+        List<Frame> frames = client.send(new byte[]{ data[data.length - 1] });
+        assertEquals(1, frames.size());
+        assertEquals(PING, frames.get(0).type);
+        assertEquals("abcdefgh", frames.get(0).getString());
+    }
+
+    @Test
+    public void testConnectionErrors() throws IOException {
+        // the first frame needs to be a SETTINGS frame
+        assertConnectionError(Http2Exception.PROTOCOL_ERROR, frame(PING, 0, 0, bytes("01234567")));
+
+        // frames larger than the default max-frame-size
+        assertConnectionError(Http2Exception.FRAME_SIZE_ERROR, frame(SETTINGS, 0, 0), frame(PING, 0, 0, new byte[16385]));
+
+        assertConnectionError(Http2Exception.PROTOCOL_ERROR, frame(SETTINGS, 0, 0), frame(DATA, 0, 0, bytes("data")));
+        assertConnectionError(Http2Exception.PROTOCOL_ERROR, frame(SETTINGS, 0, 0), frame(DATA, 0, 1, bytes("data")));
+        assertConnectionError(Http2Exception.FRAME_SIZE_ERROR, frame(SETTINGS, 0, 0), frame(PING, 0, 0, bytes("0123")));
+        assertConnectionError(Http2Exception.PROTOCOL_ERROR, frame(SETTINGS, 0, 0),
+                frame(HEADERS, END_HEADERS | END_STREAM, 2, headerBlock(":method", "GET", ":path", "/")));
+        assertConnectionError(Http2Exception.PROTOCOL_ERROR, frame(SETTINGS, 0, 0),
+                frame(HEADERS, END_STREAM | PADDED, 1, concat(new byte[]{ 100 }, headerBlock(":method", "GET"))));
+
+        // a header-block needs to be continued before any other frame
+        assertConnectionError(Http2Exception.PROTOCOL_ERROR, frame(SETTINGS, 0, 0),
+                frame(HEADERS, END_STREAM, 1, headerBlock(":method", "GET")), frame(PING, 0, 0, bytes("01234567")));
+    }
+
+    @Test
+    public void testRequestAndResponse() throws IOException {
+        List<HttpRequest> requests = new ArrayList<>();
+        Client client = new Client(request -> {
+            requests.add(request);
+            HttpResponse response = new HttpResponse(HttpStatusCode.OK);
+            response.addHeader("Content-Type", "text/plain");
+            response.setData("hello");
+            return response;
+        });
+        client.send(frame(SETTINGS, 0, 0));
+
+        byte[] block = headerBlock(
+                ":method", "GET", ":scheme", "http", ":path", "/test?x=1", ":authority", "localhost",
+                "cookie", "a=1", "accept", "*/*", "cookie", "b=2"
+        );
+        List<Frame> frames = client.send(
+                frame(HEADERS, END_STREAM, 1, block, 0, 10),
+                frame(CONTINUATION, END_HEADERS, 1, block, 10, block.length - 10)
+        );
+
+        assertEquals(1, requests.size());
+        HttpRequest request = requests.get(0);
+        assertEquals("GET", request.getMethod());
+        assertEquals("/test", request.getPath());
+        assertEquals("1", request.getGETParams().get("x"));
+        assertEquals("HTTP/2.0", request.getVersion());
+        assertEquals("localhost", request.getHeader("host").getValue());
+        assertEquals("a=1; b=2", request.getHeader("cookie").getValue());
+
+        assertEquals(2, frames.size());
+        assertEquals(HEADERS, frames.get(0).type);
+        assertEquals(1, frames.get(0).streamId);
+        assertEquals(END_HEADERS, frames.get(0).flags);
+        List<HttpHeader> headers = new HpackDecoder(16 * 1024).decode(ByteBuffer.wrap(frames.get(0).payload));
+        assertEquals(":status", headers.get(0).getKey());
+        assertEquals("200", headers.get(0).getValue());
+        assertTrue(headers.stream().anyMatch(header -> header.getKey().equals("content-length") && header.getValue().equals("5")));
+
+        assertEquals(DATA, frames.get(1).type);
+        assertEquals(END_STREAM, frames.get(1).flags);
+        assertEquals("hello", frames.get(1).getString());
+    }
+
+    @Test
+    public void testMalformedRequests() throws IOException {
+        Client client = new Client(request -> fail());
+        client.send(frame(SETTINGS, 0, 0));
+
+        // connection-specific headers and pseudo-headers after regular headers are not allowed
+        assertStreamReset(client.send(frame(HEADERS, END_HEADERS | END_STREAM, 1,
+                headerBlock(":method", "GET", ":path", "/", "connection", "close"))), 1);
+        assertStreamReset(client.send(frame(HEADERS, END_HEADERS | END_STREAM, 3,
+                headerBlock(":method", "GET", "accept", "*/*", ":path", "/"))), 3);
+        assertStreamReset(client.send(frame(HEADERS, END_HEADERS | END_STREAM, 5,
+                headerBlock(":method", "GET"))), 5);
+    }
+
+    @Test
+    public void testResponseFlowControl() throws IOException {
+        byte[] body = new byte[100000];
+        Client client = new Client(request -> {
+            HttpResponse response = new HttpResponse(HttpStatusCode.OK);
+            response.setData(body);
+            return response;
+        });
+        client.send(frame(SETTINGS, 0, 0));
+
+        List<Frame> frames = client.send(frame(HEADERS, END_HEADERS | END_STREAM, 1, headerBlock(":method", "GET", ":path", "/")));
+        assertEquals(HEADERS, frames.get(0).type);
+        assertEquals(65535, dataLength(frames, 1));
+        assertFalse(hasEndStream(frames));
+
+        // the stream-window alone is not enough, the connection-window is exhausted as well
+        frames = client.send(frame(WINDOW_UPDATE, 0, 1, intBytes(100000)));
+        assertEquals(0, dataLength(frames, 1));
+
+        frames = client.send(frame(WINDOW_UPDATE, 0, 0, intBytes(100000)));
+        assertEquals(100000 - 65535, dataLength(frames, 1));
+        assertTrue(hasEndStream(frames));
+    }
+
+    @Test
+    public void testLargePeerFrameSize() throws IOException {
+        byte[] body = new byte[50000];
+        Client client = new Client(request -> {
+            HttpResponse response = new HttpResponse(HttpStatusCode.OK);
+            response.setData(body);
+            return response;
+        });
+
+        // SETTINGS_MAX_FRAME_SIZE = 16 MiB - 1
+        client.send(frame(SETTINGS, 0, 0, new byte[]{ 0x00, 0x05 }, intBytes(16 * 1024 * 1024 - 1)));
+
+        List<Frame> frames = client.send(frame(HEADERS, END_HEADERS | END_STREAM, 1, headerBlock(":method", "GET", ":path", "/")));
+        assertEquals(50000, dataLength(frames, 1));
+        assertTrue(hasEndStream(frames));
+        for (Frame frame : frames) {
+            if (frame.type == DATA) assertTrue(frame.payload.length <= 16384);
+        }
+    }
+
+    @Test
+    public void testRequestBodyFlowControl() throws IOException {
+        List<HttpRequest> requests = new ArrayList<>();
+        Client client = new Client(request -> {
+            requests.add(request);
+            return new HttpResponse(HttpStatusCode.NO_CONTENT);
+        });
+        client.send(frame(SETTINGS, 0, 0));
+
+        client.send(frame(HEADERS, END_HEADERS, 1, headerBlock(":method", "POST", ":path", "/")));
+        List<Frame> frames = client.send(frame(DATA, 0, 1, new byte[1000]));
+
+        // only the stream-window is released while the body is still buffered
+        assertEquals(1, frames.size());
+        assertEquals(WINDOW_UPDATE, frames.get(0).type);
+        assertEquals(1, frames.get(0).streamId);
+        assertEquals(1000, frames.get(0).getInt());
+
+        // padding counts against the window as well
+        frames = client.send(frame(DATA, END_STREAM | PADDED, 1, concat(new byte[]{ 10 }, new byte[500], new byte[10])));
+        assertEquals(1, requests.size());
+        assertEquals(500 + 1000, requests.get(0).getData().length);
+
+        Frame windowUpdate = frames.stream()
+                .filter(frame -> frame.type == WINDOW_UPDATE)
+                .findFirst().orElseThrow();
+        assertEquals(0, windowUpdate.streamId);
+        assertEquals(1000 + 511, windowUpdate.getInt());
+    }
+
+    @Test
+    public void testRequestBodyTooLarge() throws IOException {
+        Client client = new Client(request -> fail());
+        client.send(frame(SETTINGS, 0, 0));
+        client.send(frame(HEADERS, END_HEADERS, 1, headerBlock(":method", "POST", ":path", "/")));
+
+        byte[] chunk = new byte[16384];
+        for (int i = 0; i < 64; i++) client.send(frame(DATA, 0, 1, chunk));
+
+        // the stream is reset and its buffered data is released from the connection-window
+        List<Frame> frames = client.send(frame(DATA, 0, 1, new byte[1]));
+        assertStreamReset(frames, 1);
+        Frame windowUpdate = frames.stream()
+                .filter(frame -> frame.type == WINDOW_UPDATE && frame.streamId == 0)
+                .findFirst().orElseThrow();
+        assertEquals(1024 * 1024 + 1, windowUpdate.getInt());
+    }
+
+    @Test
+    public void testBufferedBodiesLimit() throws IOException {
+        Client client = new Client(request -> fail());
+        client.send(frame(SETTINGS, 0, 0));
+
+        // four unfinished bodies of 1 MiB fill the connection-window
+        byte[] chunk = new byte[16384];
+        for (int stream = 1; stream <= 7; stream += 2) {
+            client.send(frame(HEADERS, END_HEADERS, stream, headerBlock(":method", "POST", ":path", "/")));
+            for (int i = 0; i < 64; i++) client.send(frame(DATA, 0, stream, chunk));
+        }
+
+        client.send(frame(HEADERS, END_HEADERS, 9, headerBlock(":method", "POST", ":path", "/")));
+        Http2Exception ex = assertThrows(Http2Exception.class, () -> client.send(frame(DATA, 0, 9, new byte[1])));
+        assertEquals(Http2Exception.FLOW_CONTROL_ERROR, ex.getErrorCode());
+    }
+
+    private static void assertConnectionError(int errorCode, byte[]... frames) {
+        Client client = new Client(request -> new HttpResponse(HttpStatusCode.OK));
+        Http2Exception ex = assertThrows(Http2Exception.class, () -> client.send(frames));
+        assertEquals(errorCode, ex.getErrorCode());
+    }
+
+    private static void assertStreamReset(List<Frame> frames, int streamId) {
+        assertTrue(frames.stream().anyMatch(frame -> frame.type == RST_STREAM && frame.streamId == streamId));
+    }
+
+    private static int dataLength(List<Frame> frames, int streamId) {
+        int length = 0;
+        for (Frame frame : frames) {
+            if (frame.type == DATA && frame.streamId == streamId) length += frame.payload.length;
+        }
+        return length;
+    }
+
+    private static boolean hasEndStream(List<Frame> frames) {
+        return frames.stream().anyMatch(frame -> frame.type == DATA && (frame.flags & END_STREAM) != 0);
+    }
+
+    private static byte[] headerBlock(String... headers) {
+        HpackEncoder encoder = new HpackEncoder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < headers.length; i += 2) encoder.encode(out, headers[i], headers[i + 1]);
+        return out.toByteArray();
+    }
+
+    private static byte[] frame(int type, int flags, int streamId, byte[]... payload) {
+        byte[] data = concat(payload);
+        return frame(type, flags, streamId, data, 0, data.length);
+    }
+
+    private static byte[] frame(int type, int flags, int streamId, byte[] payload, int offset, int length) {
+        ByteBuffer frame = ByteBuffer.allocate(9 + length);
+        frame.put((byte) (length >>> 16)).put((byte) (length >>> 8)).put((byte) length);
+        frame.put((byte) type).put((byte) flags).putInt(streamId);
+        frame.put(payload, offset, length);
+        return frame.array();
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] array : arrays) out.write(array, 0, array.length);
+        return out.toByteArray();
+    }
+
+    private static byte[] intBytes(int value) {
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static class Frame {
+
+        private final int type, flags, streamId;
+        private final byte[] payload;
+
+        private Frame(int type, int flags, int streamId, byte[] payload) {
+            this.type = type;
+            this.flags = flags;
+            this.streamId = streamId;
+            this.payload = payload;
+        }
+
+        private int getInt() {
+            return ByteBuffer.wrap(payload).getInt();
+        }
+
+        private String getString() {
+            return new String(payload, StandardCharsets.ISO_8859_1);
+        }
+
+    }
+
+    /**
+     * Drives a connection with in-memory channels, requests are handled synchronously
+     */
+    private static class Client implements ReadableByteChannel, GatheringByteChannel {
+
+        private final Http2Connection connection;
+        private final Deque<ByteBuffer> input = new ArrayDeque<>();
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        private Client(HttpRequestHandler requestHandler) {
+            this.connection = new Http2Connection(requestHandler, Runnable::run, InetAddress.getLoopbackAddress(),
+                    ByteBuffer.wrap(bytes("SM\r\n\r\n")), 0, 0);
+        }
+
+        /**
+         * Sends the frames to the connection and returns all frames it sent back
+         */
+        private List<Frame> send(byte[]... frames) throws IOException {
+            for (byte[] frame : frames) input.add(ByteBuffer.wrap(frame));
+
+            do {
+                assertTrue(connection.process(this, this));
+            } while (!input.isEmpty());
+
+            ByteBuffer data = ByteBuffer.wrap(output.toByteArray());
+            output.reset();
+
+            List<Frame> result = new ArrayList<>();
+            while (data.hasRemaining()) {
+                int length = (data.get() & 0xFF) << 16 | (data.get() & 0xFF) << 8 | (data.get() & 0xFF);
+                int type = data.get() & 0xFF;
+                int flags = data.get() & 0xFF;
+                int streamId = data.getInt() & 0x7FFFFFFF;
+                byte[] payload = new byte[length];
+                data.get(payload);
+                result.add(new Frame(type, flags, streamId, payload));
+            }
+            return result;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            int read = 0;
+            while (dst.hasRemaining() && !input.isEmpty()) {
+                ByteBuffer part = input.peek();
+                int length = Math.min(dst.remaining(), part.remaining());
+                ByteBuffer slice = part.slice();
+                slice.limit(length);
+                dst.put(slice);
+                part.position(part.position() + length);
+                if (!part.hasRemaining()) input.poll();
+                read += length;
+            }
+            return read;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            while (src.hasRemaining()) output.write(src.get());
+            return length;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            long written = 0;
+            for (int i = offset; i < offset + length; i++) written += write(srcs[i]);
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {}
+
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpEventStreamTest {
+
+    @Test
+    public void testSendAndRead() {
+        HttpEventStream stream = new HttpEventStream();
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        assertEquals(0, stream.read(buffer));
+
+        stream.send(bytes("data: 1\n\n"));
+        assertEquals("data: 1\n\n", readAll(stream, buffer));
+        assertEquals(0, stream.read(buffer));
+    }
+
+    @Test
+    public void testOnlyLatestFrameIsKept() {
+        HttpEventStream stream = new HttpEventStream();
+        stream.send(bytes("data: 1\n\n"));
+        stream.send(bytes("data: 2\n\n"));
+
+        assertEquals("data: 2\n\n", readAll(stream, ByteBuffer.allocate(64)));
+    }
+
+    @Test
+    public void testPartialFrameIsCompletedFirst() {
+        HttpEventStream stream = new HttpEventStream();
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+
+        stream.send(bytes("data: 1\n\n"));
+        assertEquals(4, stream.read(buffer));
+        assertEquals("data", string(buffer));
+
+        // a new frame does not interrupt the one that is already partially sent
+        stream.send(bytes("data: 2\n\n"));
+        stream.send(bytes("data: 3\n\n"));
+        assertEquals(": 1\n\ndata: 3\n\n", readAll(stream, buffer));
+    }
+
+    @Test
+    public void testSendIfIdle() {
+        HttpEventStream stream = new HttpEventStream();
+        stream.send(bytes("data: 1\n\n"));
+        stream.sendIfIdle(bytes(":\n\n"));
+        assertEquals("data: 1\n\n", readAll(stream, ByteBuffer.allocate(64)));
+
+        stream.sendIfIdle(bytes(":\n\n"));
+        assertEquals(":\n\n", readAll(stream, ByteBuffer.allocate(64)));
+    }
+
+    @Test
+    public void testListenersAndClose() {
+        HttpEventStream stream = new HttpEventStream();
+        AtomicInteger dataCalls = new AtomicInteger(), closeCalls = new AtomicInteger();
+        stream.setDataListener(dataCalls::incrementAndGet);
+        stream.setCloseListener(closeCalls::incrementAndGet);
+
+        stream.send(bytes("data: 1\n\n"));
+        assertEquals(1, dataCalls.get());
+
+        stream.close();
+        stream.close();
+        assertFalse(stream.isOpen());
+        assertEquals(1, closeCalls.get());
+        assertEquals(2, dataCalls.get());
+
+        // frames sent after closing are ignored, but a queued frame is still delivered before the end of the stream
+        stream.send(bytes("data: 2\n\n"));
+        assertEquals(2, dataCalls.get());
+
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        assertEquals("data: 1\n\n", readAll(stream, buffer));
+        assertEquals(-1, stream.read(buffer));
+    }
+
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer buffer) {
+        buffer.flip();
+        String string = StandardCharsets.UTF_8.decode(buffer).toString();
+        buffer.clear();
+        return string;
+    }
+
+    private static String readAll(HttpEventStream stream, ByteBuffer buffer) {
+        StringBuilder result = new StringBuilder();
+        while (stream.read(buffer) > 0) result.append(string(buffer));
+        buffer.clear();
+        return result.toString();
+    }
+
+}
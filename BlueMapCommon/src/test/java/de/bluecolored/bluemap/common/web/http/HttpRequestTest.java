@@ -0,0 +1,248 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpRequestTest {
+
+    @Test
+    public void testSimpleRequest() throws IOException {
+        HttpRequest request = newRequest();
+        FakeChannel channel = new FakeChannel("GET /maps/world/settings.json?a=1&b HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+        assertTrue(request.write(channel));
+        assertEquals("GET", request.getMethod());
+        assertEquals("/maps/world/settings.json", request.getPath());
+        assertEquals("1", request.getGETParams().get("a"));
+        assertEquals("", request.getGETParams().get("b"));
+        assertEquals("HTTP/1.1", request.getVersion());
+        assertEquals("localhost", request.getHeader("HOST").getValue().trim());
+        assertFalse(request.hasBufferedData());
+    }
+
+    @Test
+    public void testSplitRequest() throws IOException {
+        String raw = "GET /index.html HTTP/1.1\r\nHost: localhost\r\nAccept: */*\r\n\r\n";
+        HttpRequest request = newRequest();
+        FakeChannel channel = new FakeChannel();
+
+        // feed the request one byte at a time
+        for (int i = 0; i < raw.length() - 1; i++) {
+            channel.add(raw.substring(i, i + 1));
+            assertFalse(request.write(channel));
+        }
+
+        channel.add(raw.substring(raw.length() - 1));
+        assertTrue(request.write(channel));
+        assertEquals("/index.html", request.getPath());
+        assertEquals("*/*", request.getHeader("accept").getValue().trim());
+    }
+
+    @Test
+    public void testPipelinedRequests() throws IOException {
+        HttpRequest request = newRequest();
+        FakeChannel channel = new FakeChannel(
+                "GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n" +
+                "POST /second HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc" +
+                "GET /third HTTP/1.1\r\n"
+        );
+
+        assertTrue(request.write(channel));
+        assertEquals("/first", request.getPath());
+        assertTrue(request.hasBufferedData());
+
+        request.clear();
+        assertTrue(request.write(channel));
+        assertEquals("POST", request.getMethod());
+        assertEquals("/second", request.getPath());
+        assertEquals("abc", new String(request.getData(), StandardCharsets.UTF_8));
+        assertNull(request.getHeader("host"));
+
+        // the third request is incomplete until the rest arrives
+        request.clear();
+        assertFalse(request.write(channel));
+        channel.add("Host: localhost\r\n\r\n");
+        assertTrue(request.write(channel));
+        assertEquals("/third", request.getPath());
+    }
+
+    @Test
+    public void testContentLengthBody() throws IOException {
+        HttpRequest request = newRequest();
+        FakeChannel channel = new FakeChannel("POST /data HTTP/1.1\r\nContent-Length: 11\r\n\r\nhello");
+
+        assertFalse(request.write(channel));
+        channel.add(" wor");
+        assertFalse(request.write(channel));
+        channel.add("ld");
+        assertTrue(request.write(channel));
+        assertEquals("hello world", new String(request.getData(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testChunkedBody() throws IOException {
+        HttpRequest request = newRequest();
+        FakeChannel channel = new FakeChannel(
+                "POST /data HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n" +
+                "5\r\nhello\r\n6;ext=1\r\n wor"
+        );
+
+        assertFalse(request.write(channel));
+        channel.add("ld\r\n0\r\nTrailer: ignored\r\n\r\n");
+        assertTrue(request.write(channel));
+        assertEquals("hello world", new String(request.getData(), StandardCharsets.UTF_8));
+        assertNull(request.getHeader("trailer"));
+    }
+
+    @Test
+    public void testHeaderTooLarge() {
+        HttpRequest request = newRequest();
+        FakeChannel channel = new FakeChannel("GET / HTTP/1.1\r\nX-Large: " + "a".repeat(8 * 1024) + "\r\n\r\n");
+        assertThrows(IOException.class, () -> {
+            while (channel.hasData()) request.write(channel);
+        });
+    }
+
+    @Test
+    public void testTooManyHeaders() {
+        StringBuilder raw = new StringBuilder("GET / HTTP/1.1\r\n");
+        for (int i = 0; i <= 100; i++)
+            raw.append("X-").append(i).append(": v\r\n");
+        raw.append("\r\n");
+
+        HttpRequest request = newRequest();
+        FakeChannel channel = new FakeChannel(raw.toString());
+        assertThrows(IOException.class, () -> {
+            while (channel.hasData()) request.write(channel);
+        });
+    }
+
+    @Test
+    public void testInvalidBodies() {
+        assertThrows(IOException.class, () -> newRequest()
+                .write(new FakeChannel("POST / HTTP/1.1\r\nContent-Length: abc\r\n\r\n")));
+        assertThrows(IOException.class, () -> newRequest()
+                .write(new FakeChannel("POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n")));
+        assertThrows(IOException.class, () -> newRequest()
+                .write(new FakeChannel("POST / HTTP/1.1\r\nContent-Length: " + (1024 * 1024 + 1) + "\r\n\r\n")));
+        assertThrows(IOException.class, () -> newRequest()
+                .write(new FakeChannel("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\nxyz\r\n")));
+        assertThrows(IOException.class, () -> newRequest()
+                .write(new FakeChannel("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabcX\r\n")));
+    }
+
+    @Test
+    public void testChunkSizeOverflow() {
+        // bodyLength + chunkSize would overflow an int
+        assertThrows(IOException.class, () -> newRequest()
+                .write(new FakeChannel("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n7fffffff\r\n")));
+
+        HttpRequest request = newRequest();
+        FakeChannel channel = new FakeChannel("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n" +
+                "fffff\r\n" + "a".repeat(0xfffff) + "\r\n2\r\n");
+        assertThrows(IOException.class, () -> {
+            while (channel.hasData()) request.write(channel);
+        });
+    }
+
+    @Test
+    public void testInvalidRequestLine() {
+        assertThrows(IOException.class, () -> newRequest().write(new FakeChannel("INVALID\r\n\r\n")));
+    }
+
+    @Test
+    public void testClosedChannel() throws IOException {
+        HttpRequest request = newRequest();
+        FakeChannel channel = new FakeChannel("GET / HTTP/1.1\r\n");
+        channel.close = true;
+
+        assertFalse(request.write(channel));
+        assertFalse(request.write(channel));
+        assertFalse(channel.isOpen());
+        assertFalse(request.isComplete());
+    }
+
+    private static HttpRequest newRequest() {
+        return new HttpRequest(InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * A channel that hands out the queued parts one read at a time
+     */
+    private static class FakeChannel implements ReadableByteChannel {
+
+        private final Deque<ByteBuffer> parts = new ArrayDeque<>();
+        private boolean open = true, close = false;
+
+        FakeChannel(String... parts) {
+            for (String part : parts) add(part);
+        }
+
+        void add(String part) {
+            parts.add(ByteBuffer.wrap(part.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        boolean hasData() {
+            return !parts.isEmpty();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            ByteBuffer part = parts.peek();
+            if (part == null) return close ? -1 : 0;
+
+            int length = Math.min(dst.remaining(), part.remaining());
+            ByteBuffer slice = part.slice();
+            slice.limit(length);
+            dst.put(slice);
+            part.position(part.position() + length);
+            if (!part.hasRemaining()) parts.poll();
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testBurst() {
+        RateLimiter limiter = new RateLimiter(2, 5);
+        long now = 1000 * SECOND;
+
+        for (int i = 0; i < 5; i++)
+            assertEquals(0, limiter.tryAcquire("a", now));
+
+        // empty bucket: the next token is available in half a second
+        assertEquals(500, limiter.tryAcquire("a", now));
+
+        // other keys have their own bucket
+        assertEquals(0, limiter.tryAcquire("b", now));
+    }
+
+    @Test
+    public void testRefill() {
+        RateLimiter limiter = new RateLimiter(2, 5);
+        long now = 1000 * SECOND;
+
+        for (int i = 0; i < 5; i++) limiter.tryAcquire("a", now);
+        assertTrue(limiter.tryAcquire("a", now) > 0);
+
+        // a quarter second refills half a token
+        now += SECOND / 4;
+        assertEquals(250, limiter.tryAcquire("a", now));
+
+        // another quarter second completes the token
+        now += SECOND / 4;
+        assertEquals(0, limiter.tryAcquire("a", now));
+        assertTrue(limiter.tryAcquire("a", now) > 0);
+
+        // refilling never exceeds the burst-size
+        now += 60 * SECOND;
+        for (int i = 0; i < 5; i++)
+            assertEquals(0, limiter.tryAcquire("a", now));
+        assertTrue(limiter.tryAcquire("a", now) > 0);
+    }
+
+    @Test
+    public void testCleanupKeepsPartialBuckets() {
+        RateLimiter limiter = new RateLimiter(0.001, 2);
+        long now = System.nanoTime();
+
+        limiter.tryAcquire("a", now);
+        limiter.tryAcquire("a", now);
+
+        // a cleanup runs after a minute, but the bucket is still far from full and must not be reset
+        now += TimeUnit.MINUTES.toNanos(2);
+        assertTrue(limiter.tryAcquire("a", now) > 0);
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(1, 0.5));
+    }
+
+}
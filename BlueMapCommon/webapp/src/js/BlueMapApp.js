@@ -373,7 +373,7 @@ export class BlueMapApp {
         this.playerMarkerManager.setAutoUpdateInterval(0);
         return this.playerMarkerManager.update()
             .then(() => {
-                this.playerMarkerManager.setAutoUpdateInterval(1000);
+                this.playerMarkerManager.connectEventStream(map.data.dataUrl + "live/players/events", 1000);
             })
             .catch(e => {
                 alert(this.events, e, "warning");
@@ -94,6 +94,8 @@ export class Map {
 		this.hiresTileManager = null;
 		/** @type {TileManager[]} */
 		this.lowresTileManager = null;
+
+		this.tileChangesWatch = null;
 	}
 
 	/**
@@ -131,6 +133,8 @@ export class Map {
 				}
 
                 alert(this.events, `Map '${this.data.id}' is loaded.`, "fine");
+
+				this.watchTileChanges();
             });
 	}
 
@@ -367,7 +371,115 @@ export class Map {
 		});
 	}
 
+	/**
+	 * Periodically asks the server which tiles have changed and only reloads those tiles.
+	 * Stops if the server does not provide this (e.g. if the map is hosted as static files).
+	 * If the server can not tell which tiles of a lod changed, all tiles of that lod are reloaded, but with an
+	 * increasing delay while this keeps happening (e.g. during a full render).
+	 * @param interval {number} the time in milliseconds between two requests
+	 * @param maxReloadDelay {number} the maximum time in milliseconds between two reloads of all tiles of a lod
+	 */
+	watchTileChanges(interval = 10000, maxReloadDelay = 300000) {
+		this.stopWatchingTileChanges();
+
+		const watch = {
+			epoch: null, seq: null, timeout: null,
+			pendingReloads: new Set(), nextReload: 0, reloadDelay: interval, minReloadDelay: interval, maxReloadDelay
+		};
+		this.tileChangesWatch = watch;
+
+		const update = () => {
+			let url = `${this.data.dataUrl}changes`;
+			if (watch.seq !== null) url += `?since=${watch.seq}`;
+
+			let loader = new FileLoader();
+			loader.setResponseType("json");
+			loader.load(url,
+				changes => {
+					if (this.tileChangesWatch !== watch) return;
+					if (!changes) {
+						this.stopWatchingTileChanges();
+						return;
+					}
+
+					this.applyTileChanges(watch, changes);
+					watch.timeout = setTimeout(update, interval);
+				},
+				() => {},
+				() => {
+					if (this.tileChangesWatch !== watch) return;
+
+					// if it never worked, the server doesn't support it
+					if (watch.epoch === null) this.stopWatchingTileChanges();
+					else watch.timeout = setTimeout(update, interval);
+				}
+			);
+		};
+
+		update();
+	}
+
+	stopWatchingTileChanges() {
+		if (this.tileChangesWatch) clearTimeout(this.tileChangesWatch.timeout);
+		this.tileChangesWatch = null;
+	}
+
+	/**
+	 * @param watch {{epoch: number, seq: number, pendingReloads: Set<number>, nextReload: number, reloadDelay: number, minReloadDelay: number, maxReloadDelay: number}}
+	 * @param changes {{epoch: number, seq: number, complete: boolean, incomplete: number[], changes: number[][]}}
+	 */
+	applyTileChanges(watch, changes) {
+		if (watch.epoch !== null) {
+			let incompleteLods;
+			if (watch.epoch !== changes.epoch || !changes.complete) {
+				// we don't know which tiles changed, so we need to reload all of them
+				incompleteLods = [0];
+				if (this.lowresTileManager) this.lowresTileManager.forEach((tileManager, i) => incompleteLods.push(i + 1));
+			} else {
+				incompleteLods = changes.incomplete || [];
+				for (let [lod, x, z, timestamp] of changes.changes) {
+					let tileManager = this.getTileManager(lod);
+					if (tileManager) tileManager.refreshTile(x, z, timestamp);
+				}
+			}
+
+			if (incompleteLods.length > 0) {
+				incompleteLods.forEach(lod => watch.pendingReloads.add(lod));
+			} else if (watch.pendingReloads.size === 0) {
+				watch.reloadDelay = watch.minReloadDelay;
+			}
+
+			// reloading everything is expensive, so don't do it more often than the (growing) reload-delay allows
+			let now = Date.now();
+			if (watch.pendingReloads.size > 0 && now >= watch.nextReload) {
+				let cacheHash = generateCacheHash();
+				watch.pendingReloads.forEach(lod => {
+					let tileManager = this.getTileManager(lod);
+					if (tileManager) tileManager.refreshAllTiles(cacheHash);
+				});
+				watch.pendingReloads.clear();
+
+				watch.nextReload = now + watch.reloadDelay;
+				watch.reloadDelay = Math.min(watch.reloadDelay * 2, watch.maxReloadDelay);
+			}
+		}
+
+		watch.epoch = changes.epoch;
+		watch.seq = changes.seq;
+	}
+
+	/**
+	 * @param lod {number}
+	 * @returns {TileManager | null}
+	 */
+	getTileManager(lod) {
+		if (lod === 0) return this.hiresTileManager;
+		return this.lowresTileManager?.[lod - 1] || null;
+	}
+
 	unload() {
+		this.stopWatchingTileChanges();
+
 		if (this.hiresTileManager) this.hiresTileManager.unload();
 		this.hiresTileManager = null;
 
@@ -48,16 +48,17 @@ export class Tile {
 
     /**
      * @param tileLoader {TileLoader}
+     * @param cacheHash {number?}
      * @returns {Promise<void>}
      */
-    load(tileLoader) {
+    load(tileLoader, cacheHash = undefined) {
         if (this.loading) return Promise.reject("tile is already loading!");
         this.loading = true;
 
         this.unload();
 
         this.unloaded = false;
-        return tileLoader.load(this.x, this.z, () => this.unloaded)
+        return tileLoader.load(this.x, this.z, () => this.unloaded, cacheHash)
             .then(model => {
                 if (this.unloaded){
                     Tile.disposeModel(model);
@@ -56,11 +56,11 @@ export class TileLoader {
         this.bufferGeometryLoader = new PRBMLoader();
     }
 
-    load = (tileX, tileZ, cancelCheck = () => false) => {
+    load = (tileX, tileZ, cancelCheck = () => false, cacheHash = this.tileCacheHash) => {
         let tileUrl = this.tilePath + pathFromCoords(tileX, tileZ) + '.prbm';
 
         return new Promise((resolve, reject) => {
-            this.fileLoader.load(tileUrl + '?' + this.tileCacheHash,
+            this.fileLoader.load(tileUrl + '?' + cacheHash,
                 async data => {
 
                     await this.loadBlocker();
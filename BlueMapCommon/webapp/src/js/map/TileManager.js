@@ -61,6 +61,9 @@ export class TileManager {
         //map of loaded tiles
         this.tiles = new Map();
 
+        //map of tiles that changed since the tileLoader's cache-hash, to the cache-hash they need to be loaded with
+        this.refreshedTiles = new Map();
+
         // a canvas that keeps track of the loaded tiles, used for shaders
         this.tileMap = new TileMap(TileManager.tileMapSize, TileManager.tileMapSize);
 
@@ -107,6 +110,64 @@ export class TileManager {
     unload() {
         this.unloaded = true;
         this.removeAllTiles();
+        this.refreshedTiles.clear();
+    }
+
+    /**
+     * Reloads a single tile (if it is loaded) bypassing the browser-cache with the given cache-hash.
+     * The old tile stays visible until the new one has been loaded.
+     * @param x {number}
+     * @param z {number}
+     * @param cacheHash {number}
+     */
+    refreshTile(x, z, cacheHash) {
+        if (this.unloaded) return;
+
+        let tileHash = hashTile(x, z);
+        this.refreshedTiles.set(tileHash, cacheHash);
+
+        let oldTile = this.tiles.get(tileHash);
+        if (oldTile === undefined) return;
+
+        // a tile that is still loading might get the old data, so just drop it and let it load again
+        if (!oldTile.loaded) {
+            oldTile.unload();
+            this.tiles.delete(tileHash);
+            this.loadCloseTiles();
+            return;
+        }
+
+        let tile = new Tile(x, z, tile => {
+            oldTile.unload();
+            this.handleLoadedTile(tile);
+        }, this.handleUnloadedTile);
+        this.tiles.set(tileHash, tile);
+
+        tile.load(this.tileLoader, cacheHash)
+            .catch(error => {})
+            .finally(() => {
+                if (tile.unloaded) {
+                    // the new tile has been removed while loading
+                    oldTile.unload();
+                } else if (!tile.loaded && this.tiles.get(tileHash) === tile) {
+                    // loading failed, keep the old tile
+                    tile.unload();
+                    this.tiles.set(tileHash, oldTile);
+                }
+            });
+    }
+
+    /**
+     * Reloads all loaded tiles bypassing the browser-cache with the given cache-hash.
+     * @param cacheHash {number}
+     */
+    refreshAllTiles(cacheHash) {
+        if (this.unloaded) return;
+
+        this.tileLoader.tileCacheHash = cacheHash;
+
+        Array.from(this.tiles.values()).forEach(tile => this.refreshTile(tile.x, tile.z, cacheHash));
+        this.refreshedTiles.clear();
     }
 
     removeFarTiles() {
@@ -192,7 +253,7 @@ export class TileManager {
 
         tile = new Tile(x, z, this.handleLoadedTile, this.handleUnloadedTile);
         this.tiles.set(tileHash, tile);
-        tile.load(this.tileLoader)
+        tile.load(this.tileLoader, this.refreshedTiles.get(tileHash))
             .then(() => {
                 dispatchEvent(this.events, "bluemapTileLoaded", {
                     tileManager: this,
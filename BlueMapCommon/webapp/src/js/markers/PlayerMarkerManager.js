@@ -40,6 +40,63 @@ export class PlayerMarkerManager extends MarkerManager {
         super(root, fileUrl, events);
 
         this.playerheadsUrl = playerheadsUrl;
+
+        /** @type {EventSource | null} */
+        this.eventSource = null;
+    }
+
+    /**
+     * Receives the player-data from a server-sent event-stream instead of polling the player-file.
+     * Until the stream is connected, or if it is not available (e.g. on a static webserver), the player-file is polled
+     * with the given interval.
+     * @param eventStreamUrl {string}
+     * @param fallbackUpdateInterval {number}
+     */
+    connectEventStream(eventStreamUrl, fallbackUpdateInterval) {
+        this.disconnectEventStream();
+        this.setAutoUpdateInterval(fallbackUpdateInterval);
+
+        if (typeof EventSource === "undefined") return;
+
+        let connected = false;
+        const eventSource = new EventSource(eventStreamUrl);
+        eventSource.onopen = () => {
+            connected = true;
+            this.setAutoUpdateInterval(0);
+        };
+        eventSource.onmessage = event => {
+            if (this.disposed) return;
+            try {
+                this.updateFromData(JSON.parse(event.data));
+            } catch (e) {
+                console.warn("Failed to parse player-data from event-stream!", e);
+            }
+        };
+        eventSource.onerror = () => {
+            if (this.disposed) return;
+
+            // poll while the browser reconnects the stream on its own (only if it was connected before)
+            this.setAutoUpdateInterval(fallbackUpdateInterval);
+            if (connected && eventSource.readyState !== EventSource.CLOSED) return;
+
+            if (this.eventSource === eventSource) this.disconnectEventStream();
+        };
+
+        this.eventSource = eventSource;
+    }
+
+    disconnectEventStream() {
+        if (!this.eventSource) return;
+        this.eventSource.close();
+        this.eventSource = null;
+    }
+
+    /**
+     * @override
+     */
+    dispose() {
+        this.disconnectEventStream();
+        super.dispose();
     }
 
     /**
@@ -37,6 +37,7 @@
 import de.bluecolored.bluemap.core.resources.adapter.ResourcesGson;
 import de.bluecolored.bluemap.core.resources.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.storage.Storage;
+import de.bluecolored.bluemap.core.storage.WriteBehindStorage;
 import de.bluecolored.bluemap.core.util.Grid;
 import de.bluecolored.bluemap.core.world.World;
 
@@ -54,9 +55,12 @@ public class BmMap {
     public static final String META_FILE_SETTINGS = "settings.json";
     public static final String META_FILE_TEXTURES = "textures.json";
     public static final String META_FILE_RENDER_STATE = ".rstate";
+    public static final String META_FILE_TILE_HASHES = ".thashes";
     public static final String META_FILE_MARKERS = "live/markers.json";
     public static final String META_FILE_PLAYERS = "live/players.json";
 
+    private static final int TILE_CHANGE_LOG_SIZE = 16384;
+
     private static final Gson GSON = ResourcesGson.addAdapter(new GsonBuilder())
             .setFieldNamingPolicy(FieldNamingPolicy.IDENTITY)
             .registerTypeAdapter(BmMap.class, new MapSettingsSerializer())
@@ -70,6 +74,9 @@ public class BmMap {
 
     private final ResourcePack resourcePack;
     private final MapRenderState renderState;
+    private final TileHashIndex tileHashIndex;
+    private final TileExistenceIndex tileExistenceIndex;
+    private final TileChangeLog tileChangeLog;
     private final TextureGallery textureGallery;
 
     private final HiresModelManager hiresModelManager;
@@ -93,6 +100,16 @@ public BmMap(String id, String name, World world, Storage storage, ResourcePack
         this.renderState = new MapRenderState();
         loadRenderState();
 
+        this.tileHashIndex = new TileHashIndex();
+        if (settings.isSkipUnchangedTiles()) loadTileHashIndex();
+
+        this.tileExistenceIndex = new TileExistenceIndex(storage, id, settings.getLodCount() + 1);
+
+        // a tile that failed to be written asynchronously must not be skipped as "unchanged" on the next render
+        if (storage instanceof WriteBehindStorage)
+            ((WriteBehindStorage) storage).setWriteFailureListener(id, tileHashIndex::remove);
+        this.tileChangeLog = new TileChangeLog(TILE_CHANGE_LOG_SIZE);
+
         this.textureGallery = loadTextureGallery();
         this.textureGallery.put(resourcePack);
         saveTextureGallery();
@@ -102,14 +119,20 @@ public BmMap(String id, String name, World world, Storage storage, ResourcePack
                 this.resourcePack,
                 this.textureGallery,
                 settings,
-                new Grid(settings.getHiresTileSize(), 2)
+                new Grid(settings.getHiresTileSize(), 2),
+                settings.isSkipUnchangedTiles() ? tileHashIndex : null,
+                tileExistenceIndex,
+                tileChangeLog
         );
 
         this.lowresTileManager = new LowresTileManager(
                 storage.mapStorage(id),
                 new Grid(settings.getLowresTileSize()),
                 settings.getLodCount(),
-                settings.getLodFactor()
+                settings.getLodFactor(),
+                settings.isSkipUnchangedTiles() ? tileHashIndex : null,
+                tileExistenceIndex,
+                tileChangeLog
         );
 
         this.tileFilter = t -> true;
@@ -138,7 +161,18 @@ public void renderTile(Vector2i tile) {
 
     public synchronized void save() {
         lowresTileManager.save();
-        saveRenderState();
+
+        // make sure all written tiles are stored before saving the render-state that claims they are rendered
+        boolean flushed = true;
+        try {
+            storage.flush();
+        } catch (IOException ex) {
+            flushed = false;
+            Logger.global.logError("Failed to flush pending tile-writes for map '" + getId() + "'", ex);
+        }
+
+        if (flushed) saveRenderState();
+        saveTileHashIndex();
         saveMarkerState();
         savePlayerState();
         saveMapSettings();
@@ -171,6 +205,29 @@ public synchronized void saveRenderState() {
         }
     }
 
+    private void loadTileHashIndex() throws IOException {
+        Optional<InputStream> tileHashData = storage.readMeta(id, META_FILE_TILE_HASHES);
+        if (tileHashData.isPresent()) {
+            try (InputStream in = tileHashData.get()){
+                if (!this.tileHashIndex.load(in, storage.getTileFormat()))
+                    Logger.global.logInfo("Discarded the tile-hashes of map '" + getId() + "', since they have been stored for a different tile-format.");
+            } catch (IOException ex) {
+                this.tileHashIndex.clear();
+                Logger.global.logWarning("Failed to load tile-hashes for map '" + getId() + "': " + ex);
+            }
+        }
+    }
+
+    public synchronized void saveTileHashIndex() {
+        if (!mapSettings.isSkipUnchangedTiles()) return;
+
+        try (OutputStream out = storage.writeMeta(id, META_FILE_TILE_HASHES)) {
+            this.tileHashIndex.save(out, storage.getTileFormat());
+        } catch (IOException ex){
+            Logger.global.logError("Failed to save tile-hashes for map: '" + this.id + "'!", ex);
+        }
+    }
+
     private TextureGallery loadTextureGallery() throws IOException {
         TextureGallery gallery = null;
         Optional<InputStream> texturesData = storage.readMeta(id, META_FILE_TEXTURES);
@@ -253,6 +310,18 @@ public MapRenderState getRenderState() {
         return renderState;
     }
 
+    public TileHashIndex getTileHashIndex() {
+        return tileHashIndex;
+    }
+
+    public TileExistenceIndex getTileExistenceIndex() {
+        return tileExistenceIndex;
+    }
+
+    public TileChangeLog getTileChangeLog() {
+        return tileChangeLog;
+    }
+
     public HiresModelManager getHiresModelManager() {
         return hiresModelManager;
     }
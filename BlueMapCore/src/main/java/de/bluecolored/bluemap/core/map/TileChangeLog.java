@@ -0,0 +1,152 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import com.flowpowered.math.vector.Vector2i;
+import com.flowpowered.math.vector.Vector3i;
+import de.bluecolored.bluemap.api.debug.DebugDump;
+
+import java.util.*;
+
+/**
+ * A bounded in-memory log of the tiles of a map that have been written while the map is loaded,
+ * so that clients can ask which tiles changed since they last checked.<br>
+ * <br>
+ * Every write gets a sequence-number, and the log only keeps the latest write of each tile. If more than
+ * <code>capacity</code> different tiles have been written, the oldest ones are dropped from the log and their lod is
+ * incomplete for all sequence-numbers up to the dropped one.
+ * Since the sequence starts over whenever the map is loaded, each log has an epoch to tell them apart.
+ */
+@DebugDump
+public class TileChangeLog {
+
+    private final long epoch;
+    private final int capacity;
+
+    private final Map<Vector3i, Change> changesByTile;
+    private final TreeMap<Long, Change> changesBySequence;
+    private final Map<Integer, Long> droppedSequences;
+    private long nextSequence;
+
+    public TileChangeLog(int capacity) {
+        this.epoch = System.currentTimeMillis();
+        this.capacity = capacity;
+
+        this.changesByTile = new HashMap<>();
+        this.changesBySequence = new TreeMap<>();
+        this.droppedSequences = new HashMap<>();
+        this.nextSequence = 0;
+    }
+
+    public synchronized void add(int lod, Vector2i tile) {
+        Change change = new Change(lod, tile.getX(), tile.getY(), nextSequence++, System.currentTimeMillis());
+
+        Change previous = changesByTile.put(change.getKey(), change);
+        if (previous != null) changesBySequence.remove(previous.sequence);
+        changesBySequence.put(change.sequence, change);
+
+        if (changesBySequence.size() > capacity) {
+            Change dropped = changesBySequence.pollFirstEntry().getValue();
+            changesByTile.remove(dropped.getKey());
+            droppedSequences.merge(dropped.lod, dropped.sequence, Math::max);
+        }
+    }
+
+    /**
+     * Passes the latest change of each tile that has been written at or after the sequence-number <code>since</code>
+     * to the consumer, oldest first.<br>
+     * Changes of lods that are incomplete for this sequence-number (see {@link #getIncompleteLods(long)}) are skipped.
+     * @return false if <code>since</code> is not a sequence-number of this log, in which case nothing is passed to the
+     * consumer
+     */
+    public synchronized boolean collectChanges(long since, ChangeConsumer consumer) {
+        if (since < 0 || since > nextSequence) return false;
+
+        for (Change change : changesBySequence.tailMap(since, true).values()) {
+            if (!isComplete(change.lod, since)) continue;
+            consumer.accept(change.lod, change.x, change.z, change.timestamp);
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the lods for which some changes since the given sequence-number have already been dropped from the log.
+     * Clients need to reload all tiles of those lods.
+     */
+    public synchronized Collection<Integer> getIncompleteLods(long since) {
+        List<Integer> lods = new ArrayList<>();
+        for (Map.Entry<Integer, Long> entry : droppedSequences.entrySet()) {
+            if (entry.getValue() >= since) lods.add(entry.getKey());
+        }
+        Collections.sort(lods);
+        return lods;
+    }
+
+    private boolean isComplete(int lod, long since) {
+        Long droppedSequence = droppedSequences.get(lod);
+        return droppedSequence == null || droppedSequence < since;
+    }
+
+    /**
+     * The sequence-number that the next write will get.
+     * Passing this to {@link #collectChanges(long, ChangeConsumer)} later returns all changes after this call.
+     */
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * The time this log has been created, together with the sequence-number this identifies a change.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    @FunctionalInterface
+    public interface ChangeConsumer {
+        void accept(int lod, int x, int z, long timestamp);
+    }
+
+    private static class Change {
+
+        private final int lod, x, z;
+        private final long sequence, timestamp;
+
+        private Change(int lod, int x, int z, long sequence, long timestamp) {
+            this.lod = lod;
+            this.x = x;
+            this.z = z;
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+        }
+
+        private Vector3i getKey() {
+            return new Vector3i(x, z, lod);
+        }
+
+    }
+
+}
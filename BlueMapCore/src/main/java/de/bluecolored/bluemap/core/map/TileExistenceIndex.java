@@ -0,0 +1,156 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.storage.Storage;
+import de.bluecolored.bluemap.core.util.Tristate;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An in-memory index of all tiles of a map that exist in the storage, so requests for tiles that don't exist
+ * can be answered without querying the storage.<br>
+ * <br>
+ * The tiles of each lod are stored as bitmaps of 64x64 tiles, only bitmaps containing at least one tile are allocated.
+ * The index is built from the storage in the background when it is first used,
+ * and is kept up to date by recording all tiles that are written while the map is loaded.
+ * The index may report tiles as present that don't exist (e.g. if writing a tile failed), but never the other way around.
+ */
+@DebugDump
+public class TileExistenceIndex {
+
+    private static final int BLOCK_BITS = 6;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    private final Storage storage;
+    private final String mapId;
+    private final ConcurrentHashMap<Long, AtomicLongArray>[] layers;
+
+    private final AtomicBoolean building;
+    private volatile boolean ready;
+
+    /**
+     * @param lodCount The number of all lods of the map, including the hires-lod (0)
+     */
+    @SuppressWarnings("unchecked")
+    public TileExistenceIndex(Storage storage, String mapId, int lodCount) {
+        this.storage = storage;
+        this.mapId = mapId;
+
+        this.layers = new ConcurrentHashMap[lodCount];
+        for (int i = 0; i < lodCount; i++)
+            this.layers[i] = new ConcurrentHashMap<>();
+
+        this.building = new AtomicBoolean(false);
+        this.ready = false;
+    }
+
+    /**
+     * Checks if the given tile exists.<br>
+     * Returns {@link Tristate#UNDEFINED} if this is not known (yet), in this case the storage needs to be checked.
+     * If the index has not been built yet, this starts building the index in the background.
+     */
+    public Tristate contains(int lod, Vector2i tile) {
+        if (!ready) {
+            build();
+            return Tristate.UNDEFINED;
+        }
+
+        if (lod < 0 || lod >= layers.length) return Tristate.UNDEFINED;
+
+        AtomicLongArray block = layers[lod].get(getBlockKey(tile));
+        if (block == null) return Tristate.FALSE;
+
+        int bit = getBitIndex(tile);
+        return (block.get(bit >> 6) & (1L << bit)) != 0 ? Tristate.TRUE : Tristate.FALSE;
+    }
+
+    /**
+     * Records that the given tile has been written to the storage
+     */
+    public void add(int lod, Vector2i tile) {
+        if (lod < 0 || lod >= layers.length) return;
+
+        AtomicLongArray block = layers[lod].computeIfAbsent(getBlockKey(tile), key -> new AtomicLongArray(BLOCK_SIZE * BLOCK_SIZE / 64));
+
+        int bit = getBitIndex(tile);
+        long mask = 1L << bit;
+        if ((block.get(bit >> 6) & mask) != 0) return;
+        block.accumulateAndGet(bit >> 6, mask, (a, b) -> a | b);
+    }
+
+    /**
+     * Removes all tiles from the index, e.g. after the map has been purged
+     */
+    public void clear() {
+        for (ConcurrentHashMap<Long, AtomicLongArray> layer : layers)
+            layer.clear();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Starts building the index from all tiles that are present in the storage asynchronously,
+     * if it is not already built or being built.
+     */
+    public void build() {
+        if (!building.compareAndSet(false, true)) return;
+
+        CompletableFuture.runAsync(() -> {
+            try {
+                for (int lod = 0; lod < layers.length; lod++) {
+                    final int l = lod;
+                    storage.collectMapTiles(mapId, lod, tile -> add(l, tile));
+                }
+
+                ready = true;
+                Logger.global.logDebug("Tile-index for map '" + mapId + "' is ready.");
+            } catch (IOException | RuntimeException ex) {
+                // the index stays unusable and all requests are answered by the storage
+                Logger.global.logError("Failed to build tile-index for map '" + mapId + "'!", ex);
+            }
+        }, BlueMap.THREAD_POOL);
+    }
+
+    private static long getBlockKey(Vector2i tile) {
+        return (long) (tile.getX() >> BLOCK_BITS) << 32 | ((tile.getY() >> BLOCK_BITS) & 0xFFFFFFFFL);
+    }
+
+    private static int getBitIndex(Vector2i tile) {
+        return (tile.getY() & BLOCK_MASK) << BLOCK_BITS | (tile.getX() & BLOCK_MASK);
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import net.jpountz.xxhash.XXHash64;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Remembers a (xxHash64) hash of the data of every tile that has been written for a map,
+ * so writing a tile can be skipped if its data did not change.<br>
+ * <br>
+ * The hashes are stored in a compact open-addressing hash-table, using about 16-32 bytes per tile.<br>
+ * <br>
+ * The hashes are taken from the uncompressed tile-data, so they are saved together with the tile-format of the storage
+ * and discarded on load if the format changed, since the tiles would then no longer be found with the new format.
+ */
+@DebugDump
+public class TileHashIndex {
+
+    private static final XXHash64 XX_HASH = XXHashFactory.fastestInstance().hash64();
+    private static final long HASH_SEED = 0;
+
+    private static final int COORDINATE_BITS = 28;
+    private static final int COORDINATE_LIMIT = 1 << (COORDINATE_BITS - 1);
+    private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+    private static final long EMPTY = 0; // never a valid key, since lod + 1 is stored in the key
+
+    // older files started directly with the (never negative) size
+    private static final int FILE_FORMAT_MARKER = -1;
+
+    private long[] keys;
+    private long[] hashes;
+    private int size;
+
+    public TileHashIndex() {
+        clear();
+    }
+
+    /**
+     * Updates the stored hash of the given tile to the hash of the given data.
+     * @return true if the data changed (or the tile is not yet known), false if the data is identical to the last update
+     */
+    public boolean update(int lod, Vector2i tile, byte[] data) {
+        long hash = XX_HASH.hash(data, 0, data.length, HASH_SEED);
+
+        long key = toKey(lod, tile);
+        if (key == EMPTY) return true;
+
+        synchronized (this) {
+            return put(key, hash);
+        }
+    }
+
+    /**
+     * Removes the stored hash of the given tile, so the next update of this tile will be treated as changed.
+     */
+    public synchronized void remove(int lod, Vector2i tile) {
+        long key = toKey(lod, tile);
+        if (key == EMPTY) return;
+
+        int index = indexOf(key);
+        if (keys[index] != key) return;
+
+        // backward-shift deletion to keep all probe-sequences intact
+        int mask = keys.length - 1;
+        int next = index;
+        while (true) {
+            next = (next + 1) & mask;
+            if (keys[next] == EMPTY) break;
+
+            int ideal = mix(keys[next]) & mask;
+            if (((next - ideal) & mask) >= ((next - index) & mask)) {
+                keys[index] = keys[next];
+                hashes[index] = hashes[next];
+                index = next;
+            }
+        }
+
+        keys[index] = EMPTY;
+        hashes[index] = 0;
+        size--;
+    }
+
+    public synchronized void clear() {
+        keys = new long[1024];
+        hashes = new long[1024];
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Saves all hashes, together with the tile-format of the storage that the tiles have been written to.
+     * @see de.bluecolored.bluemap.core.storage.Storage#getTileFormat()
+     */
+    public synchronized void save(OutputStream out, String tileFormat) throws IOException {
+        try (
+                DataOutputStream dOut = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(out)))
+        ) {
+            dOut.writeInt(FILE_FORMAT_MARKER);
+            dOut.writeUTF(tileFormat);
+            dOut.writeInt(size);
+
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == EMPTY) continue;
+                dOut.writeLong(keys[i]);
+                dOut.writeLong(hashes[i]);
+            }
+
+            dOut.flush();
+        }
+    }
+
+    /**
+     * Replaces all hashes with the saved ones.<br>
+     * If the hashes were saved for a different tile-format (or by an older version), they are discarded and the index
+     * stays empty, so all tiles are written (once) again.
+     * @return false if the saved hashes have been discarded
+     */
+    public synchronized boolean load(InputStream in, String tileFormat) throws IOException {
+        clear();
+
+        try (
+                DataInputStream dIn = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)))
+        ) {
+            if (dIn.readInt() != FILE_FORMAT_MARKER) return false;
+            if (!dIn.readUTF().equals(tileFormat)) return false;
+
+            int size = dIn.readInt();
+
+            for (int i = 0; i < size; i++) {
+                long key = dIn.readLong();
+                long hash = dIn.readLong();
+                if (key != EMPTY) put(key, hash);
+            }
+        } catch (EOFException ignore){} // ignoring a sudden end of stream, since it is save to only read as many as we can
+
+        return true;
+    }
+
+    private boolean put(long key, long hash) {
+        int index = indexOf(key);
+        if (keys[index] == key) {
+            if (hashes[index] == hash) return false;
+            hashes[index] = hash;
+            return true;
+        }
+
+        keys[index] = key;
+        hashes[index] = hash;
+        if (++size * 4 > keys.length * 3) grow();
+        return true;
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (keys[index] != EMPTY && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldHashes = hashes;
+
+        keys = new long[oldKeys.length * 2];
+        hashes = new long[oldHashes.length * 2];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int index = indexOf(oldKeys[i]);
+            keys[index] = oldKeys[i];
+            hashes[index] = oldHashes[i];
+        }
+    }
+
+    private static int mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * Packs lod and tile-position into a single long, or returns {@link #EMPTY} if the tile can not be packed.
+     */
+    private static long toKey(int lod, Vector2i tile) {
+        int x = tile.getX(), z = tile.getY();
+        if (
+                lod < 0 || lod > 0xFE ||
+                x < -COORDINATE_LIMIT || x >= COORDINATE_LIMIT ||
+                z < -COORDINATE_LIMIT || z >= COORDINATE_LIMIT
+        ) return EMPTY;
+
+        return (long) (lod + 1) << (COORDINATE_BITS * 2) |
+                (x & COORDINATE_MASK) << COORDINATE_BITS |
+                (z & COORDINATE_MASK);
+    }
+
+}
@@ -28,13 +28,18 @@
 import com.flowpowered.math.vector.Vector3i;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.map.TextureGallery;
+import de.bluecolored.bluemap.core.map.TileChangeLog;
+import de.bluecolored.bluemap.core.map.TileExistenceIndex;
+import de.bluecolored.bluemap.core.map.TileHashIndex;
 import de.bluecolored.bluemap.core.map.TileMetaConsumer;
 import de.bluecolored.bluemap.core.resources.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.storage.Storage;
 import de.bluecolored.bluemap.core.util.Grid;
 import de.bluecolored.bluemap.core.world.World;
 import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -42,23 +47,48 @@ public class HiresModelManager {
 
     private final Storage.TileStorage storage;
     private final HiresModelRenderer renderer;
+    private final TileMetaRenderer tileMetaRenderer;
+    @Nullable private final TileHashIndex tileHashIndex;
+    @Nullable private final TileExistenceIndex tileExistenceIndex;
+    @Nullable private final TileChangeLog tileChangeLog;
 
     @Getter
     private final Grid tileGrid;
 
     public HiresModelManager(Storage.TileStorage storage, ResourcePack resourcePack, TextureGallery textureGallery, RenderSettings renderSettings, Grid tileGrid) {
-        this(storage, new HiresModelRenderer(resourcePack, textureGallery, renderSettings), tileGrid);
+        this(storage, resourcePack, textureGallery, renderSettings, tileGrid, null, null, null);
     }
 
-    public HiresModelManager(Storage.TileStorage storage, HiresModelRenderer renderer, Grid tileGrid) {
+    public HiresModelManager(Storage.TileStorage storage, ResourcePack resourcePack, TextureGallery textureGallery, RenderSettings renderSettings, Grid tileGrid,
+                             @Nullable TileHashIndex tileHashIndex, @Nullable TileExistenceIndex tileExistenceIndex,
+                             @Nullable TileChangeLog tileChangeLog) {
+        this(
+                storage,
+                new HiresModelRenderer(resourcePack, textureGallery, renderSettings),
+                new TileMetaRenderer(resourcePack, renderSettings),
+                tileGrid,
+                tileHashIndex,
+                tileExistenceIndex,
+                tileChangeLog
+        );
+    }
+
+    public HiresModelManager(Storage.TileStorage storage, HiresModelRenderer renderer, TileMetaRenderer tileMetaRenderer, Grid tileGrid,
+                             @Nullable TileHashIndex tileHashIndex, @Nullable TileExistenceIndex tileExistenceIndex,
+                             @Nullable TileChangeLog tileChangeLog) {
         this.storage = storage;
         this.renderer = renderer;
+        this.tileMetaRenderer = tileMetaRenderer;
+        this.tileHashIndex = tileHashIndex;
+        this.tileExistenceIndex = tileExistenceIndex;
+        this.tileChangeLog = tileChangeLog;
 
         this.tileGrid = tileGrid;
     }
 
     /**
-     * Renders the given world tile with the provided render-settings
+     * Renders the given world tile with the provided render-settings.<br>
+     * If the tile is not saved, only the tile-meta (for the lowres-layer) is calculated and no model is built.
      */
     public void render(World world, Vector2i tile, TileMetaConsumer tileMetaConsumer, boolean save) {
         Vector2i tileMin = tileGrid.getCellMin(tile);
@@ -67,25 +97,40 @@ public void render(World world, Vector2i tile, TileMetaConsumer tileMetaConsumer
         Vector3i modelMin = new Vector3i(tileMin.getX(), Integer.MIN_VALUE, tileMin.getY());
         Vector3i modelMax = new Vector3i(tileMax.getX(), Integer.MAX_VALUE, tileMax.getY());
 
+        if (!save) {
+            tileMetaRenderer.render(world, modelMin, modelMax, tileMetaConsumer);
+            return;
+        }
+
         TileModel model = TileModel.instancePool().claimInstance();
 
         renderer.render(world, modelMin, modelMax, model, tileMetaConsumer);
 
-        if (save){
-            model.sort();
-            save(model, tile);
-        }
+        model.sort();
+        save(model, tile);
 
         TileModel.instancePool().recycleInstance(model);
     }
 
     private void save(final TileModel model, Vector2i tile) {
-        try (
-                OutputStream out = storage.write(tile);
-                PRBMWriter modelWriter = new PRBMWriter(out)
-        ) {
-            modelWriter.write(model);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (PRBMWriter modelWriter = new PRBMWriter(bytes)) {
+                modelWriter.write(model);
+            }
+            byte[] data = bytes.toByteArray();
+
+            // skip writing the tile if it did not change
+            if (tileHashIndex != null && !tileHashIndex.update(0, tile, data)) return;
+
+            try (OutputStream out = storage.write(tile)) {
+                out.write(data);
+            }
+
+            if (tileExistenceIndex != null) tileExistenceIndex.add(0, tile);
+            if (tileChangeLog != null) tileChangeLog.add(0, tile);
         } catch (IOException e){
+            if (tileHashIndex != null) tileHashIndex.remove(0, tile);
             Logger.global.logError("Failed to save hires model: " + tile, e);
         }
     }
@@ -30,20 +30,29 @@
 import de.bluecolored.bluemap.core.map.hires.blockmodel.BlockStateModelFactory;
 import de.bluecolored.bluemap.core.resources.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.util.math.Color;
+import de.bluecolored.bluemap.core.world.BlockState;
 import de.bluecolored.bluemap.core.world.Chunk;
 import de.bluecolored.bluemap.core.world.block.BlockNeighborhood;
 import de.bluecolored.bluemap.core.world.World;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
 public class HiresModelRenderer {
 
     private final ResourcePack resourcePack;
     private final TextureGallery textureGallery;
     private final RenderSettings renderSettings;
 
+    private final Predicate<BlockState> isCulling;
+
     public HiresModelRenderer(ResourcePack resourcePack, TextureGallery textureGallery, RenderSettings renderSettings) {
         this.resourcePack = resourcePack;
         this.textureGallery = textureGallery;
         this.renderSettings = renderSettings;
+
+        this.isCulling = blockState -> resourcePack.getBlockProperties(blockState).isCulling();
     }
 
     public void render(World world, Vector3i modelMin, Vector3i modelMax, TileModel model) {
@@ -58,7 +67,13 @@ public void render(World world, Vector3i modelMin, Vector3i modelMax, TileModel
         // create new for each tile-render since the factory is not threadsafe
         BlockStateModelFactory modelFactory = new BlockStateModelFactory(resourcePack, textureGallery, renderSettings);
 
-        int maxHeight, minY, maxY;
+        boolean skipHiddenBlocks = renderSettings.isSkipHiddenBlocks();
+
+        // per-render cache since the renderer itself is shared between threads
+        Map<Chunk, Integer> cullingFloors = skipHiddenBlocks ? new IdentityHashMap<>() : null;
+
+        int maxHeight, minY, maxY, hiddenFloorY, hiddenCaveY;
+        boolean aboveCulling;
         double topBlockLight;
         Color columnColor = new Color(), blockColor = new Color();
         BlockNeighborhood<?> block = new BlockNeighborhood<>(resourcePack, renderSettings, world, 0, 0, 0);
@@ -78,8 +93,29 @@ public void render(World world, Vector3i modelMin, Vector3i modelMax, TileModel
                     minY = Math.max(min.getY(), chunk.getMinY(x, z));
                     maxY = Math.min(max.getY(), chunk.getMaxY(x, z));
 
+                    hiddenFloorY = Integer.MIN_VALUE;
+                    hiddenCaveY = Integer.MIN_VALUE;
+                    aboveCulling = false;
+
+                    if (skipHiddenBlocks) {
+                        // everything above the world-surface heightmap is air
+                        if (chunk.hasWorldSurfaceHeights())
+                            maxY = Math.min(maxY, chunk.getWorldSurfaceY(x, z));
+
+                        hiddenFloorY = getHiddenFloorY(world, chunk, x, z, min.getY(), cullingFloors);
+                        hiddenCaveY = renderSettings.getRemoveCavesBelowY();
+                        if (chunk.hasOceanFloorHeights())
+                            hiddenCaveY = Math.min(hiddenCaveY, chunk.getOceanFloorY(x, z) + renderSettings.getCaveDetectionOceanFloor());
+                    }
+
                     for (y = maxY; y >= minY; y--) {
+                        // all blocks from here on down are fully enclosed by culling blocks and would be removed as caves,
+                        // so none of their faces can end up in the model
+                        if (aboveCulling && y <= hiddenFloorY && y < hiddenCaveY) break;
+
                         block.set(x, y, z);
+                        if (hiddenFloorY >= minY) aboveCulling = block.getProperties().isCulling();
+
                         if (!block.isInsideRenderBounds()) continue;
 
                         blockModel.initialize();
@@ -100,8 +136,6 @@ public void render(World world, Vector3i modelMin, Vector3i modelMax, TileModel
                             if (maxHeight < y) maxHeight = y;
                             columnColor.underlay(blockColor.premultiplied());
                         }
-
-                        //if (blockColor.a > 0.999 && block.getProperties().isCulling()) break;
                     }
                 }
 
@@ -109,4 +143,49 @@ public void render(World world, Vector3i modelMin, Vector3i modelMax, TileModel
             }
         }
     }
+
+    /**
+     * Returns the highest y-level at and below which all blocks of the column and its four horizontal neighbors
+     * are known to be culling (based on the sections of the involved chunks).
+     */
+    private int getHiddenFloorY(World world, Chunk chunk, int x, int z, int minY, Map<Chunk, Integer> cullingFloors) {
+        if (renderSettings.isRenderEdges()) {
+            // blocks outside the render-bounds are treated as air, so the blocks at the edges are not enclosed
+            if (minY > chunk.getMinY(x, z)) return Integer.MIN_VALUE;
+            if (
+                    !renderSettings.isInsideRenderBoundaries(x - 1, z) ||
+                    !renderSettings.isInsideRenderBoundaries(x + 1, z) ||
+                    !renderSettings.isInsideRenderBoundaries(x, z - 1) ||
+                    !renderSettings.isInsideRenderBoundaries(x, z + 1)
+            ) return Integer.MIN_VALUE;
+        }
+
+        int floorY = getCullingFloorY(chunk, x, z, cullingFloors);
+
+        // neighbor columns in adjacent chunks
+        int lx = x & 0xF, lz = z & 0xF;
+        if (lx == 0) floorY = Math.min(floorY, getCullingFloorY(world.getChunkAtBlock(x - 1, z), x - 1, z, cullingFloors));
+        if (lx == 15) floorY = Math.min(floorY, getCullingFloorY(world.getChunkAtBlock(x + 1, z), x + 1, z, cullingFloors));
+        if (lz == 0) floorY = Math.min(floorY, getCullingFloorY(world.getChunkAtBlock(x, z - 1), x, z - 1, cullingFloors));
+        if (lz == 15) floorY = Math.min(floorY, getCullingFloorY(world.getChunkAtBlock(x, z + 1), x, z + 1, cullingFloors));
+
+        return floorY;
+    }
+
+    /**
+     * Returns the y-level of the top of the highest section, below which (including this section) all sections of the
+     * chunk only contain culling blocks.
+     */
+    private int getCullingFloorY(Chunk chunk, int x, int z, Map<Chunk, Integer> cullingFloors) {
+        Integer floorY = cullingFloors.get(chunk);
+        if (floorY != null) return floorY;
+
+        int sectionY = chunk.getMinY(x, z) >> 4;
+        int maxSectionY = chunk.getMaxY(x, z) >> 4;
+        while (sectionY <= maxSectionY && chunk.isSectionMatching(sectionY, isCulling)) sectionY++;
+
+        floorY = sectionY * 16 - 1;
+        cullingFloors.put(chunk, floorY);
+        return floorY;
+    }
 }
@@ -81,6 +81,14 @@ default boolean isIgnoreMissingLightData() {
         return false;
     }
 
+    /**
+     * If the world-surface heightmap and the sections of the chunks should be used to skip blocks that are
+     * above the surface or fully enclosed by culling blocks (and would be removed as "caves") when rendering a column.
+     */
+    default boolean isSkipHiddenBlocks() {
+        return true;
+    }
+
     default boolean isInsideRenderBoundaries(int x, int z) {
         Vector3i min = getMinPos();
         Vector3i max = getMaxPos();
@@ -0,0 +1,359 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.hires;
+
+import com.flowpowered.math.vector.Vector3i;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.map.TileMetaConsumer;
+import de.bluecolored.bluemap.core.resources.BlockColorCalculatorFactory;
+import de.bluecolored.bluemap.core.resources.ResourcePath;
+import de.bluecolored.bluemap.core.resources.resourcepack.ResourcePack;
+import de.bluecolored.bluemap.core.resources.resourcepack.blockmodel.BlockModel;
+import de.bluecolored.bluemap.core.resources.resourcepack.blockmodel.Element;
+import de.bluecolored.bluemap.core.resources.resourcepack.blockmodel.Face;
+import de.bluecolored.bluemap.core.resources.resourcepack.blockmodel.TextureVariable;
+import de.bluecolored.bluemap.core.resources.resourcepack.blockstate.Variant;
+import de.bluecolored.bluemap.core.resources.resourcepack.texture.Texture;
+import de.bluecolored.bluemap.core.util.Direction;
+import de.bluecolored.bluemap.core.util.math.Color;
+import de.bluecolored.bluemap.core.util.math.VectorM3f;
+import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.Chunk;
+import de.bluecolored.bluemap.core.world.World;
+import de.bluecolored.bluemap.core.world.block.BlockNeighborhood;
+import de.bluecolored.bluemap.core.world.block.ExtendedBlock;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Calculates only the color, height and block-light of each block-column (the data needed for the lowres-layer)
+ * without building any hires-geometry.<br>
+ * The colors of all upwards facing faces of the models are precomputed once for each {@link BlockState}, so
+ * for each block only tinting, light, face-culling and cave-removal are applied, using the same rules as the
+ * {@link de.bluecolored.bluemap.core.map.hires.blockmodel.ResourceModelBuilder}.<br>
+ * <br>
+ * The result matches the tile-meta calculated by the {@link HiresModelRenderer} closely, but not exactly:
+ * models are evaluated as if they were at position 0, 0, 0 (so random variants are ignored) and the columns are
+ * only traversed until they are fully opaque.
+ */
+public class TileMetaRenderer {
+
+    private static final BlockState WATERLOGGED_BLOCKSTATE = new BlockState("minecraft:water");
+    private static final float OPAQUE_ALPHA = 0.999f;
+
+    private final ResourcePack resourcePack;
+    private final RenderSettings renderSettings;
+
+    private final LoadingCache<BlockState, TopFaces> topFacesCache;
+
+    public TileMetaRenderer(ResourcePack resourcePack, RenderSettings renderSettings) {
+        this.resourcePack = resourcePack;
+        this.renderSettings = renderSettings;
+
+        this.topFacesCache = Caffeine.newBuilder()
+                .executor(BlueMap.THREAD_POOL)
+                .maximumSize(10000)
+                .build(this::loadTopFaces);
+    }
+
+    public void render(World world, Vector3i modelMin, Vector3i modelMax, TileMetaConsumer tileMetaConsumer) {
+        Vector3i min = modelMin.max(renderSettings.getMinPos());
+        Vector3i max = modelMax.min(renderSettings.getMaxPos());
+
+        // create new for each tile-render since the color-renderer is not threadsafe
+        BlockColorRenderer blockColorRenderer = new BlockColorRenderer();
+
+        int maxHeight, minY, maxY;
+        double topBlockLight;
+        Color columnColor = new Color(), blockColor = new Color();
+        BlockNeighborhood<?> block = new BlockNeighborhood<>(resourcePack, renderSettings, world, 0, 0, 0);
+
+        int x, y, z;
+        for (x = min.getX(); x <= max.getX(); x++){
+            for (z = min.getZ(); z <= max.getZ(); z++){
+
+                maxHeight = 0;
+                topBlockLight = 0;
+
+                columnColor.set(0, 0, 0, 0, true);
+
+                if (renderSettings.isInsideRenderBoundaries(x, z)) {
+                    Chunk chunk = world.getChunkAtBlock(x, z);
+                    minY = Math.max(min.getY(), chunk.getMinY(x, z));
+                    maxY = Math.min(max.getY(), chunk.getMaxY(x, z));
+
+                    // everything above the world-surface heightmap is air
+                    if (renderSettings.isSkipHiddenBlocks() && chunk.hasWorldSurfaceHeights())
+                        maxY = Math.min(maxY, chunk.getWorldSurfaceY(x, z));
+
+                    for (y = maxY; y >= minY; y--) {
+                        block.set(x, y, z);
+                        if (!block.isInsideRenderBounds()) continue;
+
+                        blockColorRenderer.render(block, blockColor);
+
+                        //update topBlockLight
+                        topBlockLight = Math.max(topBlockLight, block.getBlockLightLevel() * (1 - columnColor.a));
+
+                        //update color and height (only if not 100% translucent)
+                        if (blockColor.a > 0) {
+                            if (maxHeight < y) maxHeight = y;
+                            columnColor.underlay(blockColor.premultiplied());
+                        }
+
+                        // nothing below can change the result anymore
+                        if (columnColor.a >= OPAQUE_ALPHA) break;
+                    }
+                }
+
+                tileMetaConsumer.set(x, z, columnColor, maxHeight, (int) topBlockLight);
+            }
+        }
+    }
+
+    private class BlockColorRenderer {
+
+        private final BlockColorCalculatorFactory.BlockColorCalculator blockColorCalculator =
+                resourcePack.getColorCalculatorFactory().createCalculator();
+
+        private final Color waterloggedColor = new Color();
+        private final Color variantColor = new Color();
+        private final Color faceColor = new Color();
+        private final Color tintColor = new Color();
+
+        public void render(BlockNeighborhood<?> block, Color blockColor) {
+            blockColor.set(0, 0, 0, 0, true);
+
+            BlockState blockState = block.getBlockState();
+            if (blockState.isAir()) return;
+
+            renderState(block, blockState, blockColor);
+
+            // add water if block is waterlogged
+            if (blockState.isWaterlogged() || block.getProperties().isAlwaysWaterlogged()) {
+                renderState(block, WATERLOGGED_BLOCKSTATE, waterloggedColor);
+                blockColor.set(waterloggedColor.overlay(blockColor.premultiplied()));
+            }
+        }
+
+        private void renderState(BlockNeighborhood<?> block, BlockState blockState, Color blockColor) {
+            blockColor.set(0, 0, 0, 0, true);
+
+            TopFaces topFaces = topFacesCache.get(blockState);
+            if (topFaces.isEmpty()) return;
+
+            int sunLight = block.getSunLightLevel();
+            int blockLight = block.getBlockLightLevel();
+            boolean caveRemoved = block.isRemoveIfCave();
+
+            if (topFaces.liquid != null) {
+                // filter out blocks that are in a "cave" that should not be rendered
+                if (caveRemoved && (renderSettings.isCaveDetectionUsesBlockLight() ? Math.max(blockLight, sunLight) : sunLight) == 0)
+                    return;
+
+                if (isSameLiquid(blockState, block.getNeighborBlock(0, 1, 0))) return;
+
+                blockColor.set(topFaces.liquid);
+                if (blockState.isWater()) {
+                    blockColor.multiply(blockColorCalculator.getWaterAverageColor(block, tintColor));
+                }
+
+                float combinedLight = Math.max(sunLight, blockLight) / 15f;
+                combinedLight = (renderSettings.getAmbientLight() + combinedLight) / (renderSettings.getAmbientLight() + 1f);
+                blockColor.r *= combinedLight;
+                blockColor.g *= combinedLight;
+                blockColor.b *= combinedLight;
+                return;
+            }
+
+            boolean tintCalculated = false;
+            float blockColorOpacity = 0, variantColorOpacity;
+
+            for (TopFace[] variant : topFaces.variants) {
+                variantColor.set(0, 0, 0, 0, true);
+                variantColorOpacity = 0;
+
+                for (TopFace face : variant) {
+                    // same culling and light rules as the ResourceModelBuilder
+                    if (face.cullface != null) {
+                        if (block.isNeighborCulling(face.cullface.getX(), face.cullface.getY(), face.cullface.getZ())) continue;
+                        if (
+                                block.getProperties().getCullingIdentical() &&
+                                block.getNeighborBlock(face.cullface.getX(), face.cullface.getY(), face.cullface.getZ())
+                                        .getBlockState().equals(block.getBlockState())
+                        ) continue;
+                    }
+
+                    ExtendedBlock<?> facedBlockNeighbor = block.getNeighborBlock(face.facing.getX(), face.facing.getY(), face.facing.getZ());
+                    int faceSunLight = Math.max(sunLight, facedBlockNeighbor.getSunLightLevel());
+                    int faceBlockLight = Math.max(blockLight, facedBlockNeighbor.getBlockLightLevel());
+
+                    // filter out faces that are in a "cave" that should not be rendered
+                    if (caveRemoved && (renderSettings.isCaveDetectionUsesBlockLight() ? Math.max(faceBlockLight, faceSunLight) : faceSunLight) == 0)
+                        continue;
+
+                    float combinedLight = Math.max(faceSunLight / 15f, faceBlockLight / 15f);
+                    combinedLight = (1 - renderSettings.getAmbientLight()) * combinedLight + renderSettings.getAmbientLight();
+
+                    faceColor.set(face.color);
+                    if (face.tinted) {
+                        if (!tintCalculated) {
+                            blockColorCalculator.getBlockColor(block, tintColor);
+                            tintCalculated = true;
+                        }
+                        faceColor.multiply(tintColor);
+                    }
+
+                    faceColor.r *= combinedLight;
+                    faceColor.g *= combinedLight;
+                    faceColor.b *= combinedLight;
+
+                    if (faceColor.a > variantColorOpacity)
+                        variantColorOpacity = faceColor.a;
+
+                    variantColor.add(faceColor);
+                }
+
+                if (variantColor.a > 0) {
+                    variantColor.flatten().straight();
+                    variantColor.a = variantColorOpacity;
+                }
+
+                if (variantColor.a > blockColorOpacity)
+                    blockColorOpacity = variantColor.a;
+
+                blockColor.add(variantColor.premultiplied());
+            }
+
+            if (blockColor.a > 0) {
+                blockColor.flatten().straight();
+                blockColor.a = blockColorOpacity;
+            }
+        }
+
+    }
+
+    @SuppressWarnings("StringEquality")
+    private boolean isSameLiquid(BlockState liquid, ExtendedBlock<?> block){
+        if (block.getBlockState().getFormatted() == liquid.getFormatted()) return true;
+        return liquid.isWater() && (block.getBlockState().isWaterlogged() || block.getProperties().isAlwaysWaterlogged());
+    }
+
+    private TopFaces loadTopFaces(BlockState blockState) {
+        TopFaces topFaces = new TopFaces();
+
+        var stateResource = resourcePack.getBlockState(blockState);
+        if (stateResource == null) return topFaces;
+
+        List<Variant> variants = new ArrayList<>();
+        stateResource.forEach(blockState, 0, 0, 0, variants::add);
+
+        List<TopFace[]> variantFaces = new ArrayList<>(variants.size());
+        List<TopFace> faces = new ArrayList<>();
+        VectorM3f faceVector = new VectorM3f(0, 0, 0);
+        for (Variant variant : variants) {
+            BlockModel modelResource = variant.getModel().getResource(resourcePack::getBlockModel);
+            if (modelResource == null) continue;
+
+            if (modelResource.isLiquid()) {
+                TextureVariable stillVariable = modelResource.getTextures().get("still");
+                ResourcePath<Texture> stillTexturePath = stillVariable == null ? null : stillVariable
+                        .getTexturePath(modelResource.getTextures()::get);
+                Texture stillTexture = stillTexturePath == null ? null : stillTexturePath.getResource(resourcePack::getTexture);
+                if (stillTexture != null) topFaces.liquid = stillTexture.getColorPremultiplied();
+                break;
+            }
+
+            Element[] elements = modelResource.getElements();
+            if (elements == null) continue;
+
+            faces.clear();
+            for (Element element : elements) {
+                element.getFaces().forEach((faceDir, face) -> {
+                    Vector3i faceDirVector = faceDir.toVector();
+                    faceVector.set(faceDirVector.getX(), faceDirVector.getY(), faceDirVector.getZ());
+                    faceVector.rotateAndScale(element.getRotation().getMatrix());
+                    if (variant.isRotated()) faceVector.transform(variant.getRotationMatrix());
+
+                    // only faces pointing upwards contribute to the map-color
+                    if (faceVector.y <= 0.01) return;
+
+                    ResourcePath<Texture> texturePath = face.getTexture().getTexturePath(modelResource.getTextures()::get);
+                    Texture texture = texturePath == null ? null : texturePath.getResource(resourcePack::getTexture);
+                    if (texture == null) return;
+
+                    faces.add(new TopFace(
+                            texture.getColorPremultiplied(),
+                            face.getTintindex() >= 0,
+                            makeRotationRelative(variant, faceDir),
+                            face.getCullface() == null ? null : makeRotationRelative(variant, face.getCullface())
+                    ));
+                });
+            }
+
+            variantFaces.add(faces.toArray(TopFace[]::new));
+        }
+
+        topFaces.variants = variantFaces.toArray(TopFace[][]::new);
+        return topFaces;
+    }
+
+    private Vector3i makeRotationRelative(Variant variant, Direction direction) {
+        Vector3i directionVector = direction.toVector();
+        if (!variant.isRotated()) return directionVector;
+
+        VectorM3f rotated = new VectorM3f(directionVector.getX(), directionVector.getY(), directionVector.getZ());
+        rotated.transform(variant.getRotationMatrix());
+        return new Vector3i(Math.round(rotated.x), Math.round(rotated.y), Math.round(rotated.z));
+    }
+
+    private static class TopFaces {
+        private TopFace[][] variants = new TopFace[0][];
+        private Color liquid = null;
+
+        public boolean isEmpty() {
+            return variants.length == 0 && liquid == null;
+        }
+    }
+
+    private static class TopFace {
+        private final Color color;
+        private final boolean tinted;
+        private final Vector3i facing;
+        private final @Nullable Vector3i cullface;
+
+        public TopFace(Color color, boolean tinted, Vector3i facing, @Nullable Vector3i cullface) {
+            this.color = color;
+            this.tinted = tinted;
+            this.facing = facing;
+            this.cullface = cullface;
+        }
+    }
+
+}
@@ -26,7 +26,6 @@
 
 import com.flowpowered.math.TrigMath;
 import de.bluecolored.bluemap.core.util.InstancePool;
-import de.bluecolored.bluemap.core.util.MergeSort;
 import de.bluecolored.bluemap.core.util.math.MatrixM3f;
 import de.bluecolored.bluemap.core.util.math.MatrixM4f;
 
@@ -54,7 +53,15 @@ public class TileModel {
     float[] position;
     float[] color, uv, ao;
     byte[] sunlight, blocklight;
-    int[] materialIndex, materialIndexSort, materialIndexSortSupport;
+    int[] materialIndex;
+
+    // second set of attributes that faces are scattered into when sorting, swapped with the first set afterwards
+    private float[] bufferPosition;
+    private float[] bufferColor, bufferUv, bufferAo;
+    private byte[] bufferSunlight, bufferBlocklight;
+    private int[] bufferMaterialIndex;
+
+    private int[] materialIndexCounts = new int[0];
 
     float[] indexedPosition;
     int[] positionIndex;
@@ -381,96 +388,106 @@ private void setCapacity(int capacity) {
         sunlight =      new byte    [capacity * FI_SUNLIGHT];
         blocklight =    new byte    [capacity * FI_BLOCKLIGHT];
         materialIndex = new int     [capacity * FI_MATERIAL_INDEX];
-
-        materialIndexSort = new int[materialIndex.length];
-        materialIndexSortSupport = new int [materialIndex.length];
     }
 
-    public void sort() {
-        if (size <= 1) return; // nothing to sort
-
-        // initialize material-index-sort
-        for (int i = 0; i < size; i++) {
-            materialIndexSort[i] = i;
-            materialIndexSortSupport[i] = i;
-        }
-
-        // sort
-        MergeSort.mergeSortInt(materialIndexSort, 0, size, this::compareMaterialIndex, materialIndexSortSupport);
-
-        // move
-        int s, c;
-        for (int i = 0; i < size; i++) {
-            s = materialIndexSort[i]; c = 0;
-            while (s < i) {
-                s = materialIndexSort[s];
+    private void ensureBufferCapacity() {
+        if (bufferMaterialIndex != null && bufferMaterialIndex.length == materialIndex.length) return;
 
-                // should never happen, just making absolutely sure this can't get stuck in an endless loop
-                if (c++ > size) throw new IllegalStateException();
-            }
-            swap(i, s);
-        }
-    }
+        bufferPosition =        new float   [capacity * FI_POSITION];
+        bufferUv =              new float   [capacity * FI_UV];
+        bufferAo =              new float   [capacity * FI_AO];
 
-    private int compareMaterialIndex(int i1, int i2) {
-        return Integer.compare(materialIndex[i1], materialIndex[i2]);
+        bufferColor =           new float   [capacity * FI_COLOR];
+        bufferSunlight =        new byte    [capacity * FI_SUNLIGHT];
+        bufferBlocklight =      new byte    [capacity * FI_BLOCKLIGHT];
+        bufferMaterialIndex =   new int     [capacity * FI_MATERIAL_INDEX];
     }
 
-    private void swap(int face1, int face2) {
-        int i, if1, if2, vi;
-        float vf;
-        byte vb;
-
-        //swap positions
-        if1 = face1 * FI_POSITION;
-        if2 = face2 * FI_POSITION;
-        for (i = 0; i < FI_POSITION; i++){
-            vf = position[if1 + i];
-            position[if1 + i] = position[if2 + i];
-            position[if2 + i] = vf;
-        }
+    /**
+     * Sorts all faces (stable) by their material-index.<br>
+     * Material-indices are small and dense (see {@link de.bluecolored.bluemap.core.map.TextureGallery}),
+     * so this uses a counting-sort and scatters all faces into a second set of attribute-arrays in one pass.
+     */
+    public void sort() {
+        if (size <= 1) return; // nothing to sort
 
-        //swap uv
-        if1 = face1 * FI_UV;
-        if2 = face2 * FI_UV;
-        for (i = 0; i < FI_UV; i++){
-            vf = uv[if1 + i];
-            uv[if1 + i] = uv[if2 + i];
-            uv[if2 + i] = vf;
+        // find range and check if already sorted
+        int min = materialIndex[0], max = min, last = min, m;
+        boolean sorted = true;
+        for (int i = 1; i < size; i++) {
+            m = materialIndex[i];
+            if (m < last) sorted = false;
+            if (m < min) min = m;
+            if (m > max) max = m;
+            last = m;
         }
-
-        //swap ao
-        if1 = face1 * FI_AO;
-        if2 = face2 * FI_AO;
-        for (i = 0; i < FI_AO; i++){
-            vf = ao[if1 + i];
-            ao[if1 + i] = ao[if2 + i];
-            ao[if2 + i] = vf;
+        if (sorted) return;
+
+        // count faces per material-index
+        int range = max - min + 1;
+        if (materialIndexCounts.length < range) materialIndexCounts = new int[range];
+        int[] counts = materialIndexCounts;
+        for (int i = 0; i < range; i++) counts[i] = 0;
+        for (int i = 0; i < size; i++) counts[materialIndex[i] - min]++;
+
+        // counts -> start offsets
+        int offset = 0, count;
+        for (int i = 0; i < range; i++) {
+            count = counts[i];
+            counts[i] = offset;
+            offset += count;
         }
 
-        //swap color
-        if1 = face1 * FI_COLOR;
-        if2 = face2 * FI_COLOR;
-        for (i = 0; i < FI_COLOR; i++){
-            vf = color[if1 + i];
-            color[if1 + i] = color[if2 + i];
-            color[if2 + i] = vf;
+        // scatter
+        ensureBufferCapacity();
+        for (int face = 0; face < size; face++) {
+            copyFace(face, counts[materialIndex[face] - min]++);
         }
 
-        //swap sunlight (assuming FI_SUNLIGHT = 1)
-        vb = sunlight[face1];
-        sunlight[face1] = sunlight[face2];
-        sunlight[face2] = vb;
+        swapBuffers();
+    }
 
-        //swap blocklight (assuming FI_BLOCKLIGHT = 1)
-        vb = blocklight[face1];
-        blocklight[face1] = blocklight[face2];
-        blocklight[face2] = vb;
+    private void copyFace(int face, int target) {
+        int i, is, it;
+
+        is = face * FI_POSITION;
+        it = target * FI_POSITION;
+        for (i = 0; i < FI_POSITION; i++)
+            bufferPosition[it + i] = position[is + i];
+
+        is = face * FI_UV;
+        it = target * FI_UV;
+        for (i = 0; i < FI_UV; i++)
+            bufferUv[it + i] = uv[is + i];
+
+        is = face * FI_AO;
+        it = target * FI_AO;
+        for (i = 0; i < FI_AO; i++)
+            bufferAo[it + i] = ao[is + i];
+
+        is = face * FI_COLOR;
+        it = target * FI_COLOR;
+        for (i = 0; i < FI_COLOR; i++)
+            bufferColor[it + i] = color[is + i];
+
+        // assuming FI_SUNLIGHT, FI_BLOCKLIGHT and FI_MATERIAL_INDEX = 1
+        bufferSunlight[target] = sunlight[face];
+        bufferBlocklight[target] = blocklight[face];
+        bufferMaterialIndex[target] = materialIndex[face];
+    }
 
-        //swap material-index (assuming FI_MATERIAL_INDEX = 1)
-        vi = materialIndex[face1];
-        materialIndex[face1] = materialIndex[face2];
-        materialIndex[face2] = vi;
+    private void swapBuffers() {
+        float[] f;
+        byte[] b;
+        int[] i;
+
+        f = position; position = bufferPosition; bufferPosition = f;
+        f = uv; uv = bufferUv; bufferUv = f;
+        f = ao; ao = bufferAo; bufferAo = f;
+        f = color; color = bufferColor; bufferColor = f;
+        b = sunlight; sunlight = bufferSunlight; bufferSunlight = b;
+        b = blocklight; blocklight = bufferBlocklight; bufferBlocklight = b;
+        i = materialIndex; materialIndex = bufferMaterialIndex; bufferMaterialIndex = i;
     }
 
     public static InstancePool<TileModel> instancePool() {
@@ -45,7 +45,6 @@
 import de.bluecolored.bluemap.core.util.math.MatrixM4f;
 import de.bluecolored.bluemap.core.util.math.VectorM2f;
 import de.bluecolored.bluemap.core.util.math.VectorM3f;
-import de.bluecolored.bluemap.core.world.BlockProperties;
 import de.bluecolored.bluemap.core.world.LightData;
 import de.bluecolored.bluemap.core.world.block.BlockNeighborhood;
 import de.bluecolored.bluemap.core.world.block.ExtendedBlock;
@@ -204,11 +203,16 @@ private void createElementFace(Element element, Direction faceDir, VectorM3f c0,
 
         // face culling
         //if (faceRotationVector.y < 0.01) return;
-        if (face.getCullface() != null) {
-            ExtendedBlock<?> b = getRotationRelativeBlock(face.getCullface());
-            BlockProperties p = b.getProperties();
-            if (p.isCulling()) return;
-            if (p.getCullingIdentical() && b.getBlockState().equals(block.getBlockState())) return;
+        Direction cullface = face.getCullface();
+        if (cullface != null) {
+            Vector3i cullfaceVector = cullface.toVector();
+            if (isRotationRelativeCulling(cullfaceVector.getX(), cullfaceVector.getY(), cullfaceVector.getZ())) return;
+
+            // an identical block-state has identical properties, so we can test our own properties first
+            if (
+                    block.getProperties().getCullingIdentical() &&
+                    getRotationRelativeBlock(cullface).getBlockState().equals(block.getBlockState())
+            ) return;
         }
 
         // initialize the faces
@@ -373,6 +377,28 @@ private ExtendedBlock<?> getRotationRelativeBlock(int dx, int dy, int dz){
         );
     }
 
+    private boolean isRotationRelativeCulling(int dx, int dy, int dz){
+        rotationRelativeBlockDirection.set(dx, dy, dz);
+        makeRotationRelative(rotationRelativeBlockDirection);
+
+        return block.isNeighborCulling(
+                Math.round(rotationRelativeBlockDirection.x),
+                Math.round(rotationRelativeBlockDirection.y),
+                Math.round(rotationRelativeBlockDirection.z)
+        );
+    }
+
+    private boolean isRotationRelativeOccluding(int dx, int dy, int dz){
+        rotationRelativeBlockDirection.set(dx, dy, dz);
+        makeRotationRelative(rotationRelativeBlockDirection);
+
+        return block.isNeighborOccluding(
+                Math.round(rotationRelativeBlockDirection.x),
+                Math.round(rotationRelativeBlockDirection.y),
+                Math.round(rotationRelativeBlockDirection.z)
+        );
+    }
+
     private void makeRotationRelative(VectorM3f direction){
         if (variant.isRotated())
             direction.transform(variant.getRotationMatrix());
@@ -405,19 +431,19 @@ private float testAo(VectorM3f vertex, Direction dir){
 
 
         if (x * dirVec.getX() + y * dirVec.getY() > 0){
-            if (getRotationRelativeBlock(x, y, 0).getProperties().isOccluding()) occluding++;
+            if (isRotationRelativeOccluding(x, y, 0)) occluding++;
         }
 
         if (x * dirVec.getX() + z * dirVec.getZ() > 0){
-            if (getRotationRelativeBlock(x, 0, z).getProperties().isOccluding()) occluding++;
+            if (isRotationRelativeOccluding(x, 0, z)) occluding++;
         }
 
         if (y * dirVec.getY() + z * dirVec.getZ() > 0){
-            if (getRotationRelativeBlock(0, y, z).getProperties().isOccluding()) occluding++;
+            if (isRotationRelativeOccluding(0, y, z)) occluding++;
         }
 
         if (x * dirVec.getX() + y * dirVec.getY() + z * dirVec.getZ() > 0){
-            if (getRotationRelativeBlock(x, y, z).getProperties().isOccluding()) occluding++;
+            if (isRotationRelativeOccluding(x, y, z)) occluding++;
         }
 
         if (occluding > 3) occluding = 3;
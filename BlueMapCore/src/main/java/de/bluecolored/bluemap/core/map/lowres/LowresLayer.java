@@ -28,6 +28,9 @@
 import com.github.benmanes.caffeine.cache.*;
 import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.map.TileChangeLog;
+import de.bluecolored.bluemap.core.map.TileExistenceIndex;
+import de.bluecolored.bluemap.core.map.TileHashIndex;
 import de.bluecolored.bluemap.core.storage.Storage;
 import de.bluecolored.bluemap.core.util.Vector2iCache;
 import de.bluecolored.bluemap.core.util.math.Color;
@@ -35,6 +38,7 @@
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -52,12 +56,20 @@ public class LowresLayer {
     private final int lod;
     private final LoadingCache<Vector2i, LowresTile> tileCache;
     @Nullable private final LowresLayer nextLayer;
+    @Nullable private final TileHashIndex tileHashIndex;
+    @Nullable private final TileExistenceIndex tileExistenceIndex;
+    @Nullable private final TileChangeLog tileChangeLog;
 
     public LowresLayer(
             Storage.MapStorage mapStorage, Grid tileGrid, int lodCount, int lodFactor,
-            int lod, @Nullable LowresLayer nextLayer
+            int lod, @Nullable LowresLayer nextLayer,
+            @Nullable TileHashIndex tileHashIndex, @Nullable TileExistenceIndex tileExistenceIndex,
+            @Nullable TileChangeLog tileChangeLog
     ) {
         this.mapStorage = mapStorage;
+        this.tileHashIndex = tileHashIndex;
+        this.tileExistenceIndex = tileExistenceIndex;
+        this.tileChangeLog = tileChangeLog;
 
         this.tileGrid = tileGrid;
         this.lodFactor = lodFactor;
@@ -115,9 +127,22 @@ private void saveTile(Vector2i tilePos, @Nullable LowresTile tile, RemovalCause
         }
 
         // save the tile
-        try (OutputStream out = mapStorage.write(lod, tilePos)) {
-            tile.save(out);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            tile.save(bytes);
+            byte[] data = bytes.toByteArray();
+
+            // if the tile did not change, the next lod won't change either, so we can skip both
+            if (tileHashIndex != null && !tileHashIndex.update(lod, tilePos, data)) return;
+
+            try (OutputStream out = mapStorage.write(lod, tilePos)) {
+                out.write(data);
+            }
+
+            if (tileExistenceIndex != null) tileExistenceIndex.add(lod, tilePos);
+            if (tileChangeLog != null) tileChangeLog.add(lod, tilePos);
         } catch (IOException e) {
+            if (tileHashIndex != null) tileHashIndex.remove(lod, tilePos);
             Logger.global.logError("Failed to save tile " + tilePos + " (lod: " + lod + ")", e);
         }
 
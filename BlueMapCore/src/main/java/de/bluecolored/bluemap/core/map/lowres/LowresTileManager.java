@@ -24,10 +24,14 @@
  */
 package de.bluecolored.bluemap.core.map.lowres;
 
+import de.bluecolored.bluemap.core.map.TileChangeLog;
+import de.bluecolored.bluemap.core.map.TileExistenceIndex;
+import de.bluecolored.bluemap.core.map.TileHashIndex;
 import de.bluecolored.bluemap.core.map.TileMetaConsumer;
 import de.bluecolored.bluemap.core.storage.Storage;
 import de.bluecolored.bluemap.core.util.math.Color;
 import de.bluecolored.bluemap.core.util.Grid;
+import org.jetbrains.annotations.Nullable;
 
 public class LowresTileManager implements TileMetaConsumer {
 
@@ -37,6 +41,12 @@ public class LowresTileManager implements TileMetaConsumer {
     private final LowresLayer[] layers;
 
     public LowresTileManager(Storage.MapStorage mapStorage, Grid tileGrid, int lodCount, int lodFactor) {
+        this(mapStorage, tileGrid, lodCount, lodFactor, null, null, null);
+    }
+
+    public LowresTileManager(Storage.MapStorage mapStorage, Grid tileGrid, int lodCount, int lodFactor,
+                             @Nullable TileHashIndex tileHashIndex, @Nullable TileExistenceIndex tileExistenceIndex,
+                             @Nullable TileChangeLog tileChangeLog) {
         this.tileGrid = tileGrid;
         this.lodFactor = lodFactor;
         this.lodCount = lodCount;
@@ -44,7 +54,7 @@ public LowresTileManager(Storage.MapStorage mapStorage, Grid tileGrid, int lodCo
         this.layers = new LowresLayer[lodCount];
         for (int i = lodCount - 1; i >= 0; i--) {
             this.layers[i] = new LowresLayer(mapStorage, tileGrid, lodCount, lodFactor, i + 1,
-                    (i == lodCount - 1) ? null : layers[i + 1]);
+                    (i == lodCount - 1) ? null : layers[i + 1], tileHashIndex, tileExistenceIndex, tileChangeLog);
         }
     }
 
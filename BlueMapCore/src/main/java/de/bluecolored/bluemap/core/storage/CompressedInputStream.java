@@ -25,6 +25,7 @@
 package de.bluecolored.bluemap.core.storage;
 
 import de.bluecolored.bluemap.core.util.stream.DelegateInputStream;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -32,14 +33,20 @@
 public class CompressedInputStream extends DelegateInputStream {
 
     private final Compression compression;
+    @Nullable private final TileDictionary.Provider dictionaries;
 
     public CompressedInputStream(InputStream in, Compression compression) {
+        this(in, compression, null);
+    }
+
+    public CompressedInputStream(InputStream in, Compression compression, @Nullable TileDictionary.Provider dictionaries) {
         super(in);
         this.compression = compression;
+        this.dictionaries = dictionaries;
     }
 
     public InputStream decompress() throws IOException {
-        return compression.decompress(in);
+        return compression.decompress(in, dictionaries);
     }
 
     public Compression getCompression() {
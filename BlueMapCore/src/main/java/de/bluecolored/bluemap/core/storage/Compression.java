@@ -28,6 +28,7 @@
 import io.airlift.compress.zstd.ZstdOutputStream;
 import net.jpountz.lz4.LZ4FrameInputStream;
 import net.jpountz.lz4.LZ4FrameOutputStream;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -44,7 +45,10 @@ public enum Compression {
     GZIP("gzip", ".gz", GZIPOutputStream::new, GZIPInputStream::new),
     DEFLATE("deflate", ".deflate", DeflaterOutputStream::new, InflaterInputStream::new),
     ZSTD("zstd", ".zst", ZstdOutputStream::new, ZstdInputStream::new),
-    LZ4("lz4", ".lz4", LZ4FrameOutputStream::new, LZ4FrameInputStream::new);
+    LZ4("lz4", ".lz4", LZ4FrameOutputStream::new, LZ4FrameInputStream::new),
+    DEFLATE_DICTIONARY("deflate-dictionary", ".zdict",
+            out -> TileDictionary.compress(out, null),
+            in -> TileDictionary.decompress(in, null));
 
     private final String typeId;
     private final String fileSuffix;
@@ -76,6 +80,27 @@ public InputStream decompress(InputStream in) throws IOException {
         return decompressor.apply(in);
     }
 
+    /**
+     * Same as {@link #compress(OutputStream)}, but uses the given dictionary if this compression supports dictionaries
+     */
+    public OutputStream compress(OutputStream out, @Nullable TileDictionary dictionary) throws IOException {
+        if (this == DEFLATE_DICTIONARY) return TileDictionary.compress(out, dictionary);
+        return compress(out);
+    }
+
+    /**
+     * Same as {@link #decompress(InputStream)}, but can look up the dictionary that has been used to compress the data,
+     * if this compression supports dictionaries
+     */
+    public InputStream decompress(InputStream in, @Nullable TileDictionary.Provider dictionaries) throws IOException {
+        if (this == DEFLATE_DICTIONARY) return TileDictionary.decompress(in, dictionaries);
+        return decompress(in);
+    }
+
+    public boolean isDictionarySupported() {
+        return this == DEFLATE_DICTIONARY;
+    }
+
     public static Compression forTypeId(String id) {
         for (Compression compression : values()) {
             if (compression.typeId.equals(id)) return compression;
@@ -25,17 +25,33 @@
 package de.bluecolored.bluemap.core.storage;
 
 import com.flowpowered.math.vector.Vector2i;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.bluecolored.bluemap.core.BlueMap;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public abstract class Storage implements Closeable {
 
+    public static final String META_FILE_TILE_DICTIONARY = "tile-dictionary.bin";
+    private static final String META_FILE_TILE_DICTIONARIES = "tile-dictionaries/";
+
+    private final Cache<String, Optional<TileDictionary>> tileDictionaries = Caffeine.newBuilder()
+            .executor(BlueMap.THREAD_POOL)
+            .expireAfterWrite(1, TimeUnit.MINUTES)
+            .build();
+
     public abstract void initialize() throws IOException;
 
     public abstract OutputStream writeMapTile(String mapId, int lod, Vector2i tile) throws IOException;
@@ -58,6 +74,24 @@ public abstract class Storage implements Closeable {
 
     public abstract Collection<String> collectMapIds() throws IOException;
 
+    public abstract void collectMapTiles(String mapId, int lod, Consumer<Vector2i> tileConsumer) throws IOException;
+
+    public abstract Collection<String> collectMetaNames(String mapId) throws IOException;
+
+    /**
+     * Writes a map-tile from data that is already compressed, e.g. when copying tiles from a different storage.<br>
+     * Storages should store the data as it is if it has the compression they would use for this tile,
+     * by default the data is decompressed and written with {@link #writeMapTile(String, int, Vector2i)}.
+     */
+    public void writeCompressedMapTile(String mapId, int lod, Vector2i tile, CompressedInputStream data) throws IOException {
+        try (
+                OutputStream out = writeMapTile(mapId, lod, tile);
+                InputStream in = data.decompress()
+        ) {
+            in.transferTo(out);
+        }
+    }
+
     public MapStorage mapStorage(final String mapId) {
         return new MapStorage(mapId);
     }
@@ -66,8 +100,81 @@ public TileStorage tileStorage(final String mapId, final int lod) {
         return new TileStorage(mapId, lod);
     }
 
+    /**
+     * Returns the current tile-dictionary of the map, which is used to compress new hires-tiles
+     * if the compression supports dictionaries.
+     */
+    public @Nullable TileDictionary getTileDictionary(String mapId) throws IOException {
+        return loadTileDictionary(mapId, META_FILE_TILE_DICTIONARY, true);
+    }
+
+    public @Nullable TileDictionary getTileDictionary(String mapId, int dictionaryId) throws IOException {
+        return loadTileDictionary(mapId, META_FILE_TILE_DICTIONARIES + String.format("%08x", dictionaryId) + ".bin", false);
+    }
+
+    /**
+     * Stores the dictionary and makes it the current tile-dictionary of the map.<br>
+     * All previous dictionaries are kept, since the tiles that have been compressed with them still need them.
+     */
+    public void writeTileDictionary(String mapId, TileDictionary dictionary) throws IOException {
+        try (OutputStream out = writeMeta(mapId, META_FILE_TILE_DICTIONARIES + dictionary.getIdString() + ".bin")) {
+            out.write(dictionary.getData());
+        }
+        try (OutputStream out = writeMeta(mapId, META_FILE_TILE_DICTIONARY)) {
+            out.write(dictionary.getData());
+        }
+        invalidateTileDictionaries();
+    }
+
+    protected TileDictionary.Provider tileDictionaries(String mapId) {
+        return dictionaryId -> getTileDictionary(mapId, dictionaryId);
+    }
+
+    protected OutputStream compressMapTile(String mapId, Compression compression, OutputStream out) throws IOException {
+        if (!compression.isDictionarySupported()) return compression.compress(out);
+        return compression.compress(out, getTileDictionary(mapId));
+    }
+
+    protected void invalidateTileDictionaries() {
+        tileDictionaries.invalidateAll();
+    }
+
+    private @Nullable TileDictionary loadTileDictionary(String mapId, String metaName, boolean cacheMissing) throws IOException {
+        String key = mapId + "/" + metaName;
+
+        Optional<TileDictionary> cached = tileDictionaries.getIfPresent(key);
+        if (cached != null) return cached.orElse(null);
+
+        TileDictionary dictionary = null;
+        Optional<InputStream> optIn = readMeta(mapId, metaName);
+        if (optIn.isPresent()) {
+            try (InputStream in = optIn.get()) {
+                dictionary = new TileDictionary(in.readAllBytes());
+            }
+        }
+
+        if (dictionary != null || cacheMissing)
+            tileDictionaries.put(key, Optional.ofNullable(dictionary));
+
+        return dictionary;
+    }
+
+    /**
+     * Blocks until all map-tiles that have been written are actually stored.<br>
+     * Storages that don't write asynchronously don't need to do anything here.
+     */
+    public void flush() throws IOException {}
+
     public abstract boolean isClosed();
 
+    /**
+     * Identifies the way this storage stores map-tiles (e.g. its type and compression).<br>
+     * If this changes, tiles that have been written before might no longer be found.
+     */
+    public String getTileFormat() {
+        return getClass().getName();
+    }
+
     public class MapStorage {
 
         private final String mapId;
@@ -140,4 +247,24 @@ public static String escapeMetaName(String name) {
         return name.replaceAll("[^\\w\\d.\\-_/]", "_").replace("..", "_.");
     }
 
+    /**
+     * Calculates the (SHA-256) hash of some tile-data, used to identify tiles with identical data.
+     * @return The hash as a hex-string with a length of 64 characters
+     */
+    public static String calculateDataHash(byte[] data) {
+        byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM!", ex); // every JVM is required to support SHA-256
+        }
+
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
 }
@@ -0,0 +1,241 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.zip.*;
+
+/**
+ * A preset-dictionary for the {@link Compression#DEFLATE_DICTIONARY} compression.<br>
+ * Hires-tiles are small and very similar to each other, so compressing them with a dictionary that contains
+ * their most common byte-sequences is a lot more effective than compressing each of them on their own.<br>
+ * <br>
+ * Data compressed with this compression starts with a flag-byte (0: no dictionary, 1: dictionary) followed by the
+ * 4-byte dictionary-id if a dictionary was used, and then the raw deflate-stream.
+ */
+@DebugDump
+public class TileDictionary {
+
+    /**
+     * Deflate can only reference the last 32 KiB, so a bigger dictionary would be useless
+     */
+    public static final int MAX_SIZE = 32 * 1024;
+
+    private static final int KMER_SIZE = 8;
+    private static final int SEGMENT_SIZE = 256;
+    private static final int FREQUENCY_TABLE_BITS = 20;
+
+    private final byte[] data;
+    private final int id;
+
+    public TileDictionary(byte[] data) {
+        if (data.length > MAX_SIZE) data = Arrays.copyOfRange(data, data.length - MAX_SIZE, data.length);
+        this.data = data;
+
+        Adler32 adler = new Adler32();
+        adler.update(data);
+        this.id = (int) adler.getValue();
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getIdString() {
+        return String.format("%08x", id);
+    }
+
+    public OutputStream compress(OutputStream out) throws IOException {
+        return compress(out, this);
+    }
+
+    public static OutputStream compress(OutputStream out, @Nullable TileDictionary dictionary) throws IOException {
+        DataOutputStream dataOut = new DataOutputStream(out);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        if (dictionary != null) {
+            dataOut.writeByte(1);
+            dataOut.writeInt(dictionary.id);
+            deflater.setDictionary(dictionary.data);
+        } else {
+            dataOut.writeByte(0);
+        }
+
+        return new DeflaterOutputStream(dataOut, deflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Decompresses data that has been compressed with {@link #compress(OutputStream, TileDictionary)}.
+     * @param dictionaries Used to look up the dictionary with the id that the data has been compressed with
+     */
+    public static InputStream decompress(InputStream in, @Nullable Provider dictionaries) throws IOException {
+        DataInputStream dataIn = new DataInputStream(in);
+        Inflater inflater = new Inflater(true);
+
+        int flag = dataIn.readUnsignedByte();
+        if (flag == 1) {
+            int dictionaryId = dataIn.readInt();
+            TileDictionary dictionary = dictionaries != null ? dictionaries.getDictionary(dictionaryId) : null;
+            if (dictionary == null) {
+                inflater.end();
+                throw new IOException("Missing tile-dictionary: " + String.format("%08x", dictionaryId));
+            }
+            inflater.setDictionary(dictionary.data);
+        } else if (flag != 0) {
+            inflater.end();
+            throw new IOException("Invalid dictionary-flag: " + flag);
+        }
+
+        // raw inflate needs an extra dummy-byte at the end of the input
+        InputStream source = new SequenceInputStream(dataIn, new ByteArrayInputStream(new byte[1]));
+        return new InflaterInputStream(source, inflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Trains a dictionary on the given (uncompressed) samples.<br>
+     * The samples are split into as many epochs as segments fit into the dictionary, and from each epoch the segment
+     * containing the most frequent 8-byte sequences (counted once per sample) is picked.
+     * The best segments are placed at the end of the dictionary, where they can be referenced with the shortest distances.
+     */
+    public static TileDictionary train(Collection<byte[]> samples, int dictionarySize) {
+        dictionarySize = Math.min(dictionarySize, MAX_SIZE);
+
+        // count in how many samples each (hashed) k-mer occurs
+        int[] frequencies = new int[1 << FREQUENCY_TABLE_BITS];
+        int[] lastSample = new int[1 << FREQUENCY_TABLE_BITS];
+
+        int totalSize = 0;
+        int sampleIndex = 0;
+        for (byte[] sample : samples) {
+            sampleIndex++;
+            for (int i = 0; i + KMER_SIZE <= sample.length; i++) {
+                int hash = hashKmer(sample, i);
+                if (lastSample[hash] == sampleIndex) continue;
+                lastSample[hash] = sampleIndex;
+                frequencies[hash]++;
+            }
+            totalSize += sample.length;
+        }
+
+        byte[] content = new byte[totalSize];
+        int offset = 0;
+        for (byte[] sample : samples) {
+            System.arraycopy(sample, 0, content, offset, sample.length);
+            offset += sample.length;
+        }
+
+        // pick the best segment of each epoch
+        int segmentCount = dictionarySize / SEGMENT_SIZE;
+        int epochSize = Math.max(totalSize / Math.max(segmentCount, 1), SEGMENT_SIZE);
+        long[] segmentScores = new long[segmentCount];
+        int[] segmentPositions = new int[segmentCount];
+        int segments = 0;
+
+        for (int epochStart = 0; epochStart + SEGMENT_SIZE <= totalSize && segments < segmentCount; epochStart += epochSize) {
+            int epochEnd = Math.min(epochStart + epochSize, totalSize);
+
+            long score = 0, bestScore = 0;
+            int bestPosition = -1;
+            for (int i = epochStart; i + KMER_SIZE <= epochEnd; i++) {
+                score += frequencies[hashKmer(content, i)];
+
+                int segmentStart = i + KMER_SIZE - SEGMENT_SIZE;
+                if (segmentStart < epochStart) continue;
+                if (segmentStart > epochStart) score -= frequencies[hashKmer(content, segmentStart - 1)];
+
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestPosition = segmentStart;
+                }
+            }
+
+            if (bestPosition < 0) continue;
+
+            // don't count the selected k-mers again for other segments
+            for (int i = bestPosition; i + KMER_SIZE <= bestPosition + SEGMENT_SIZE; i++) {
+                frequencies[hashKmer(content, i)] = 0;
+            }
+
+            segmentScores[segments] = bestScore;
+            segmentPositions[segments] = bestPosition;
+            segments++;
+        }
+
+        // sort segments ascending by score, so the best ones end up last
+        Integer[] order = new Integer[segments];
+        for (int i = 0; i < segments; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(segmentScores[a], segmentScores[b]));
+
+        byte[] dictionary = new byte[segments * SEGMENT_SIZE];
+        for (int i = 0; i < segments; i++) {
+            System.arraycopy(content, segmentPositions[order[i]], dictionary, i * SEGMENT_SIZE, SEGMENT_SIZE);
+        }
+
+        return new TileDictionary(dictionary);
+    }
+
+    private static int hashKmer(byte[] data, int position) {
+        long kmer = 0;
+        for (int i = 0; i < KMER_SIZE; i++) {
+            kmer = kmer << 8 | (data[position + i] & 0xFF);
+        }
+        return (int) ((kmer * 0x9E3779B97F4A7C15L) >>> (64 - FREQUENCY_TABLE_BITS));
+    }
+
+    @FunctionalInterface
+    public interface Provider {
+
+        @Nullable TileDictionary getDictionary(int id) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,494 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.util.stream.OnCloseOutputStream;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A {@link Storage} that collects all map-tile writes in memory and writes them to the wrapped storage asynchronously,
+ * so the threads producing the tiles don't have to wait for the compression and the storage-io.<br>
+ * <br>
+ * If a tile is written again while the previous write is still pending, only the newest data is written.
+ * If more than the configured amount of data is pending, new writes block until enough data has been written.
+ * Reads of pending tiles return the pending data, so all writes are visible immediately.
+ * Use {@link #flush()} to wait until all pending writes are stored.<br>
+ * <br>
+ * A tile that failed to be written is reported to the {@link WriteFailureListener} of its map,
+ * and the failure is rethrown by the next call to {@link #flush()} or {@link #close()}.
+ */
+@DebugDump
+public class WriteBehindStorage extends Storage {
+
+    private final Storage storage;
+    private final int threadCount;
+    private final long maxPendingBytes;
+
+    private final ConcurrentHashMap<TileKey, PendingTile> pending;
+    private final BlockingQueue<TileKey> writeQueue;
+    private final Object pendingBytesLock;
+    private long pendingBytes;
+
+    private final Map<String, WriteFailureListener> writeFailureListeners;
+    private final AtomicReference<IOException> writeFailure;
+
+    private final Collection<Thread> writerThreads;
+    private volatile boolean running;
+
+    /**
+     * @param storage The storage that all writes and reads are passed to
+     * @param threadCount The amount of threads that write the pending tiles to the storage concurrently
+     * @param maxPendingBytes The maximum amount of (uncompressed) tile-data that is held in memory
+     */
+    public WriteBehindStorage(Storage storage, int threadCount, long maxPendingBytes) {
+        this.storage = Objects.requireNonNull(storage);
+        this.threadCount = Math.max(threadCount, 1);
+        this.maxPendingBytes = maxPendingBytes;
+
+        this.pending = new ConcurrentHashMap<>();
+        this.writeQueue = new LinkedBlockingQueue<>();
+        this.pendingBytesLock = new Object();
+        this.pendingBytes = 0;
+
+        this.writeFailureListeners = new ConcurrentHashMap<>();
+        this.writeFailure = new AtomicReference<>();
+
+        this.writerThreads = new ArrayList<>(this.threadCount);
+        this.running = false;
+    }
+
+    @Override
+    public synchronized void initialize() throws IOException {
+        storage.initialize();
+
+        if (running) return;
+        running = true;
+
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(this::writeLoop, "BlueMap-StorageWriter-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            writerThreads.add(thread);
+        }
+    }
+
+    @Override
+    public OutputStream writeMapTile(String mapId, int lod, Vector2i tile) throws IOException {
+        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+        return new OnCloseOutputStream(byteOut, () -> enqueue(new TileKey(mapId, lod, tile), byteOut.toByteArray()));
+    }
+
+    @Override
+    public Optional<CompressedInputStream> readMapTile(String mapId, int lod, Vector2i tile) throws IOException {
+        PendingTile pendingTile = pending.get(new TileKey(mapId, lod, tile));
+        if (pendingTile != null)
+            return Optional.of(new CompressedInputStream(new ByteArrayInputStream(pendingTile.data), Compression.NONE));
+
+        return storage.readMapTile(mapId, lod, tile);
+    }
+
+    @Override
+    public Optional<TileInfo> readMapTileInfo(String mapId, int lod, Vector2i tile) throws IOException {
+        PendingTile pendingTile = pending.get(new TileKey(mapId, lod, tile));
+        if (pendingTile != null) {
+            final byte[] data = pendingTile.data;
+            final long lastModified = pendingTile.lastModified;
+            return Optional.of(new TileInfo() {
+                @Override
+                public CompressedInputStream readMapTile() {
+                    return new CompressedInputStream(new ByteArrayInputStream(data), Compression.NONE);
+                }
+
+                @Override
+                public Compression getCompression() {
+                    return Compression.NONE;
+                }
+
+                @Override
+                public long getSize() {
+                    return data.length;
+                }
+
+                @Override
+                public long getLastModified() {
+                    return lastModified;
+                }
+            });
+        }
+
+        return storage.readMapTileInfo(mapId, lod, tile);
+    }
+
+    @Override
+    public void deleteMapTile(String mapId, int lod, Vector2i tile) throws IOException {
+        discard(new TileKey(mapId, lod, tile));
+        storage.deleteMapTile(mapId, lod, tile);
+    }
+
+    @Override
+    public OutputStream writeMeta(String mapId, String name) throws IOException {
+        return storage.writeMeta(mapId, name);
+    }
+
+    @Override
+    public Optional<InputStream> readMeta(String mapId, String name) throws IOException {
+        return storage.readMeta(mapId, name);
+    }
+
+    @Override
+    public Optional<MetaInfo> readMetaInfo(String mapId, String name) throws IOException {
+        return storage.readMetaInfo(mapId, name);
+    }
+
+    @Override
+    public void deleteMeta(String mapId, String name) throws IOException {
+        storage.deleteMeta(mapId, name);
+    }
+
+    @Override
+    public void purgeMap(String mapId, Function<ProgressInfo, Boolean> onProgress) throws IOException {
+        for (TileKey key : pending.keySet()) {
+            if (key.mapId.equals(mapId)) discard(key);
+        }
+
+        storage.purgeMap(mapId, onProgress);
+    }
+
+    @Override
+    public Collection<String> collectMapIds() throws IOException {
+        return storage.collectMapIds();
+    }
+
+    @Override
+    public void collectMapTiles(String mapId, int lod, Consumer<Vector2i> tileConsumer) throws IOException {
+        flush();
+        storage.collectMapTiles(mapId, lod, tileConsumer);
+    }
+
+    @Override
+    public Collection<String> collectMetaNames(String mapId) throws IOException {
+        return storage.collectMetaNames(mapId);
+    }
+
+    @Override
+    public void writeCompressedMapTile(String mapId, int lod, Vector2i tile, CompressedInputStream data) throws IOException {
+        discard(new TileKey(mapId, lod, tile));
+        storage.writeCompressedMapTile(mapId, lod, tile, data);
+    }
+
+    @Override
+    public @Nullable TileDictionary getTileDictionary(String mapId) throws IOException {
+        return storage.getTileDictionary(mapId);
+    }
+
+    @Override
+    public @Nullable TileDictionary getTileDictionary(String mapId, int dictionaryId) throws IOException {
+        return storage.getTileDictionary(mapId, dictionaryId);
+    }
+
+    @Override
+    public void writeTileDictionary(String mapId, TileDictionary dictionary) throws IOException {
+        storage.writeTileDictionary(mapId, dictionary);
+    }
+
+    /**
+     * Blocks until all tiles that have been written before this method was called are stored in the wrapped storage.
+     * @throws IOException if any tile failed to be written since the last flush
+     */
+    @Override
+    public void flush() throws IOException {
+        for (PendingTile pendingTile : new ArrayList<>(pending.values())) {
+            pendingTile.await();
+        }
+        storage.flush();
+
+        IOException failure = writeFailure.getAndSet(null);
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Sets the listener that is notified if a tile of the given map failed to be written.
+     * This replaces the previous listener of that map.
+     */
+    public void setWriteFailureListener(String mapId, WriteFailureListener listener) {
+        writeFailureListeners.put(mapId, listener);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return storage.isClosed();
+    }
+
+    @Override
+    public String getTileFormat() {
+        return storage.getTileFormat();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            running = false;
+
+            for (Thread thread : writerThreads) {
+                try {
+                    thread.join(TimeUnit.SECONDS.toMillis(30));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            storage.close();
+        }
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    private void enqueue(TileKey key, byte[] data) throws IOException {
+        if (!running) throw new IOException("Storage is closed or not initialized!");
+
+        // limit the memory that is used by pending tiles
+        synchronized (pendingBytesLock) {
+            try {
+                while (pendingBytes > 0 && pendingBytes + data.length > maxPendingBytes)
+                    pendingBytesLock.wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for pending tile-writes");
+            }
+            pendingBytes += data.length;
+        }
+
+        long now = System.currentTimeMillis();
+        long[] replacedBytes = {-1};
+        pending.compute(key, (k, pendingTile) -> {
+
+            // coalesce with the pending write if it has not been started yet
+            if (pendingTile != null && !pendingTile.writing) {
+                replacedBytes[0] = pendingTile.data.length;
+                pendingTile.data = data;
+                pendingTile.lastModified = now;
+                return pendingTile;
+            }
+
+            // the previous write has already been started, so this write needs to wait until it is done
+            return new PendingTile(data, now, pendingTile);
+        });
+
+        if (replacedBytes[0] >= 0) {
+            release(replacedBytes[0]);
+        } else {
+            writeQueue.add(key);
+
+            // make sure no write gets stuck in the queue if the storage got closed in the meantime
+            if (!running) writePending(key);
+        }
+    }
+
+    private void writeLoop() {
+        while (running || !writeQueue.isEmpty()) {
+            try {
+                TileKey key = writeQueue.poll(1, TimeUnit.SECONDS);
+                if (key != null) writePending(key);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void writePending(TileKey key) {
+        boolean[] claimed = new boolean[1];
+        PendingTile pendingTile = pending.computeIfPresent(key, (k, t) -> {
+            if (!t.writing) {
+                t.writing = true;
+                claimed[0] = true;
+            }
+            return t;
+        });
+
+        // the tile has already been written or discarded
+        if (pendingTile == null || !claimed[0]) return;
+
+        try {
+            PendingTile previous = pendingTile.previous;
+            if (previous != null) previous.await();
+
+            try (OutputStream out = storage.writeMapTile(key.mapId, key.lod, key.tile)) {
+                out.write(pendingTile.data);
+            }
+        } catch (IOException ex) {
+            Logger.global.logError("Failed to write map-tile " + key + "!", ex);
+            fail(key, ex);
+        } catch (Exception ex) {
+            Logger.global.logError("Unexpected error while writing map-tile " + key + "!", ex);
+            fail(key, new IOException(ex));
+        } finally {
+            complete(key, pendingTile);
+        }
+    }
+
+    /**
+     * Notifies the listener of the map and remembers the failure (before the pending tile is completed),
+     * so the next {@link #flush()} is guaranteed to see it.
+     */
+    private void fail(TileKey key, IOException ex) {
+        WriteFailureListener listener = writeFailureListeners.get(key.mapId);
+        if (listener != null) {
+            try {
+                listener.onWriteFailed(key.lod, key.tile);
+            } catch (Exception listenerEx) {
+                Logger.global.logError("Failed to handle the failed write of map-tile " + key + "!", listenerEx);
+            }
+        }
+
+        // only the first failure is kept, the others have been logged already
+        writeFailure.compareAndSet(null, ex);
+    }
+
+    /**
+     * Drops the pending write for this tile if it has not been started yet,
+     * and waits for writes that have already been started.
+     */
+    private void discard(TileKey key) throws IOException {
+        PendingTile[] discarded = new PendingTile[1];
+        PendingTile remaining = pending.computeIfPresent(key, (k, t) -> {
+            if (t.writing) return t;
+            discarded[0] = t;
+            return null;
+        });
+
+        if (discarded[0] != null) {
+            PendingTile previous = discarded[0].previous;
+            complete(key, discarded[0]);
+            if (previous != null) previous.await();
+        }
+
+        if (remaining != null) remaining.await();
+    }
+
+    private void complete(TileKey key, PendingTile pendingTile) {
+        pending.remove(key, pendingTile);
+        pendingTile.previous = null;
+        pendingTile.done.complete(null);
+        release(pendingTile.data.length);
+    }
+
+    private void release(long bytes) {
+        synchronized (pendingBytesLock) {
+            pendingBytes -= bytes;
+            pendingBytesLock.notifyAll();
+        }
+    }
+
+    @FunctionalInterface
+    public interface WriteFailureListener {
+
+        /**
+         * Called from a writer-thread if writing the tile failed.
+         */
+        void onWriteFailed(int lod, Vector2i tile);
+
+    }
+
+    private static class TileKey {
+
+        private final String mapId;
+        private final int lod;
+        private final Vector2i tile;
+
+        private TileKey(String mapId, int lod, Vector2i tile) {
+            this.mapId = mapId;
+            this.lod = lod;
+            this.tile = tile;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            TileKey tileKey = (TileKey) o;
+            return lod == tileKey.lod && mapId.equals(tileKey.mapId) && tile.equals(tileKey.tile);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mapId.hashCode();
+            result = 31 * result + lod;
+            result = 31 * result + tile.hashCode();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return mapId + "/" + lod + "/" + tile.getX() + "/" + tile.getY();
+        }
+
+    }
+
+    private static class PendingTile {
+
+        private volatile byte[] data;
+        private volatile long lastModified;
+        private volatile @Nullable PendingTile previous;
+        private volatile boolean writing;
+        private final CompletableFuture<Void> done;
+
+        private PendingTile(byte[] data, long lastModified, @Nullable PendingTile previous) {
+            this.data = data;
+            this.lastModified = lastModified;
+            this.previous = previous;
+            this.writing = false;
+            this.done = new CompletableFuture<>();
+        }
+
+        private void await() throws IOException {
+            try {
+                done.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a pending tile-write");
+            } catch (ExecutionException ex) {
+                throw new IOException(ex.getCause());
+            }
+        }
+
+    }
+
+}
@@ -25,34 +25,77 @@
 package de.bluecolored.bluemap.core.storage.file;
 
 import com.flowpowered.math.vector.Vector2i;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.storage.*;
 import de.bluecolored.bluemap.core.util.DeletingPathVisitor;
 import de.bluecolored.bluemap.core.util.FileHelper;
+import de.bluecolored.bluemap.core.util.stream.OnCloseOutputStream;
 
 import java.io.*;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @DebugDump
 public class FileStorage extends Storage {
 
+    private static final int PURGE_BATCH_SIZE = 256;
+    private static final int PURGE_MAX_PENDING_BATCHES = 16;
+    private static final Pattern TILE_FILE_NAME_PATTERN = Pattern.compile("x(-?\\d+)z(-?\\d+)");
+
     private final Path root;
     private final Compression hiresCompression;
+    private final boolean packTiles;
+    private final boolean deduplicateTiles;
+
+    private final Object[] blobLocks = new Object[64];
+    private final Object[] tileLocks = new Object[64];
+
+    private final LoadingCache<Path, TilePack> tilePacks = Caffeine.newBuilder()
+            .executor(BlueMap.THREAD_POOL)
+            .weakValues()
+            .build(TilePack::new);
 
     public FileStorage(FileStorageSettings config) {
-        this.root = config.getRoot();
-        this.hiresCompression = config.getCompression();
+        this(config.getRoot(), config.getCompression(), config.isPackTiles(), config.isDeduplicateTiles());
     }
 
     public FileStorage(Path root, Compression compression) {
+        this(root, compression, false, false);
+    }
+
+    public FileStorage(Path root, Compression compression, boolean packTiles, boolean deduplicateTiles) {
         this.root = root;
         this.hiresCompression = compression;
+        this.packTiles = packTiles;
+
+        // deduplication uses symbolic- and hard-links and needs the link-count of files to know when a blob is no longer used
+        if (deduplicateTiles && packTiles) {
+            Logger.global.logWarning("Tile-deduplication is not supported for packed tiles, it will be disabled for this storage.");
+            deduplicateTiles = false;
+        }
+        if (deduplicateTiles && !root.getFileSystem().supportedFileAttributeViews().contains("unix")) {
+            Logger.global.logWarning("Tile-deduplication is not supported on this file-system, it will be disabled for this storage.");
+            deduplicateTiles = false;
+        }
+        this.deduplicateTiles = deduplicateTiles;
+
+        for (int i = 0; i < blobLocks.length; i++) blobLocks[i] = new Object();
+        for (int i = 0; i < tileLocks.length; i++) tileLocks[i] = new Object();
     }
 
     @Override
@@ -63,38 +106,93 @@ public boolean isClosed() {
         return false;
     }
 
+    @Override
+    public String getTileFormat() {
+        return "file/" + hiresCompression.getTypeId() +
+                (packTiles ? "/packed" : "") +
+                (deduplicateTiles ? "/deduplicated" : "");
+    }
+
     @Override
     public void close() throws IOException {}
 
     @Override
     public OutputStream writeMapTile(String mapId, int lod, Vector2i tile) throws IOException {
         Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
+        return new BufferedOutputStream(compressMapTile(mapId, compression, writeCompressedMapTile(mapId, lod, tile)));
+    }
+
+    @Override
+    public void writeCompressedMapTile(String mapId, int lod, Vector2i tile, CompressedInputStream data) throws IOException {
+        Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
+        if (data.getCompression() != compression) {
+            super.writeCompressedMapTile(mapId, lod, tile, data);
+            return;
+        }
+
+        try (OutputStream out = new BufferedOutputStream(writeCompressedMapTile(mapId, lod, tile))) {
+            data.transferTo(out);
+        }
+    }
+
+    /**
+     * Returns an OutputStream that writes the already compressed data of the map-tile
+     */
+    private OutputStream writeCompressedMapTile(String mapId, int lod, Vector2i tile) throws IOException {
+        if (packTiles) {
+            TilePack tilePack = getTilePack(mapId, lod, tile);
+            ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+            return new OnCloseOutputStream(byteOut, () -> tilePack.write(tile, byteOut.toByteArray()));
+        }
+
         Path file = getFilePath(mapId, lod, tile);
 
-        OutputStream os = FileHelper.createFilepartOutputStream(file);
-        return new BufferedOutputStream(compression.compress(os));
+        if (deduplicateTiles) {
+            ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+            return new OnCloseOutputStream(byteOut, () -> writeDeduplicatedMapTile(mapId, lod, file, byteOut.toByteArray()));
+        }
+
+        return FileHelper.createFilepartOutputStream(file);
     }
 
     @Override
     public Optional<CompressedInputStream> readMapTile(String mapId, int lod, Vector2i tile) throws IOException {
         Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
+
+        if (packTiles) {
+            byte[] data = getTilePack(mapId, lod, tile).read(tile);
+            if (data == null) return Optional.empty();
+            return Optional.of(new CompressedInputStream(new ByteArrayInputStream(data), compression, tileDictionaries(mapId)));
+        }
+
         Path file = getFilePath(mapId, lod, tile);
 
         if (!Files.exists(file)) return Optional.empty();
 
         InputStream is = Files.newInputStream(file, StandardOpenOption.READ);
-        return Optional.of(new CompressedInputStream(is, compression));
+        return Optional.of(new CompressedInputStream(is, compression, tileDictionaries(mapId)));
     }
 
     @Override
     public Optional<TileInfo> readMapTileInfo(String mapId, int lod, Vector2i tile) throws IOException {
         Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
-        Path file = getFilePath(mapId, lod, tile);
 
-        if (!Files.exists(file)) return Optional.empty();
+        final long size, lastModified;
+        if (packTiles) {
+            TilePack.Entry entry = getTilePack(mapId, lod, tile).readEntry(tile);
+            if (entry == null) return Optional.empty();
 
-        final long size = Files.size(file);
-        final long lastModified = Files.getLastModifiedTime(file).toMillis();
+            size = entry.getLength();
+            lastModified = entry.getLastModified();
+        } else {
+            Path file = getFilePath(mapId, lod, tile);
+            if (!Files.exists(file)) return Optional.empty();
+
+            size = Files.size(file);
+
+            // deduplicated tiles are symbolic links, which keep the last-modified time of the tile itself
+            lastModified = Files.getLastModifiedTime(file, LinkOption.NOFOLLOW_LINKS).toMillis();
+        }
 
         return Optional.of(new TileInfo() {
             @Override
@@ -122,10 +220,99 @@ public long getLastModified() {
 
     @Override
     public void deleteMapTile(String mapId, int lod, Vector2i tile) throws IOException {
+        if (packTiles) {
+            getTilePack(mapId, lod, tile).delete(tile);
+            return;
+        }
+
         Path file = getFilePath(mapId, lod, tile);
+
+        if (deduplicateTiles) {
+            synchronized (getTileLock(file)) {
+                String oldHash = getLinkedBlobHash(file);
+                Files.deleteIfExists(file);
+                Files.deleteIfExists(getBlobRefPath(file));
+                if (oldHash != null) deleteUnusedBlob(getBlobPath(mapId, lod, oldHash), oldHash);
+            }
+            return;
+        }
+
         Files.deleteIfExists(file);
     }
 
+    /**
+     * Writes the tile-data as a blob named by the hash of the data (if it doesn't exist already)
+     * and creates the tile-file as a symbolic link to that blob.<br>
+     * Each tile also has a hard-link to the blob (the ".ref" file next to the tile), so the link-count of the blob
+     * tells if it is still used. The tile's own last-modified time is kept on the symbolic link,
+     * the shared blob is never touched after it has been written.<br>
+     * Writes and deletions of the same tile are serialized, so concurrent rewrites can't both miss the blob they replace.
+     */
+    private void writeDeduplicatedMapTile(String mapId, int lod, Path file, byte[] data) throws IOException {
+        String hash = calculateDataHash(data);
+        Path blob = getBlobPath(mapId, lod, hash);
+        Path refFile = getBlobRefPath(file);
+        Path partFile = file.resolveSibling(file.getFileName() + ".filepart");
+        Path refPartFile = refFile.resolveSibling(refFile.getFileName() + ".filepart");
+
+        FileHelper.createDirectories(file.getParent());
+        synchronized (getTileLock(file)) {
+            synchronized (getBlobLock(hash)) {
+                if (!Files.exists(blob)) {
+                    try (OutputStream out = FileHelper.createFilepartOutputStream(blob)) {
+                        out.write(data);
+                    }
+                }
+
+                Files.deleteIfExists(refPartFile);
+                Files.createLink(refPartFile, blob);
+            }
+
+            Files.deleteIfExists(partFile);
+            Files.createSymbolicLink(partFile, file.getParent().relativize(blob));
+
+            String oldHash = getLinkedBlobHash(file);
+            FileHelper.move(refPartFile, refFile);
+            FileHelper.move(partFile, file);
+
+            // renaming a hard-link onto another link of the same blob does nothing, so the part-file might still exist
+            Files.deleteIfExists(refPartFile);
+            if (oldHash != null && !oldHash.equals(hash)) deleteUnusedBlob(getBlobPath(mapId, lod, oldHash), oldHash);
+        }
+    }
+
+    /**
+     * Returns the hash of the blob that the file is linked to, taken from the blob's file-name,
+     * or null if the file does not exist or is not linked to a blob.
+     */
+    private String getLinkedBlobHash(Path file) throws IOException {
+        if (!Files.isSymbolicLink(file)) return null;
+
+        String blobName = Files.readSymbolicLink(file).getFileName().toString();
+        int extension = blobName.indexOf('.');
+        return extension > 0 ? blobName.substring(0, extension) : null;
+    }
+
+    private Path getBlobRefPath(Path file) {
+        return file.resolveSibling(file.getFileName() + ".ref");
+    }
+
+    private void deleteUnusedBlob(Path blob, String hash) throws IOException {
+        synchronized (getBlobLock(hash)) {
+            if (!Files.exists(blob)) return;
+            if (((Number) Files.getAttribute(blob, "unix:nlink")).intValue() > 1) return;
+            Files.deleteIfExists(blob);
+        }
+    }
+
+    private Object getBlobLock(String hash) {
+        return blobLocks[Math.floorMod(hash.hashCode(), blobLocks.length)];
+    }
+
+    private Object getTileLock(Path file) {
+        return tileLocks[Math.floorMod(file.hashCode(), tileLocks.length)];
+    }
+
     @Override
     public OutputStream writeMeta(String mapId, String name) throws IOException {
         Path file = getMetaFilePath(mapId, name);
@@ -175,34 +362,100 @@ public void deleteMeta(String mapId, String name) throws IOException {
 
     @Override
     public void purgeMap(String mapId, Function<ProgressInfo, Boolean> onProgress) throws IOException {
+        invalidateTileDictionaries();
+
         final Path directory = getFilePath(mapId);
         if (!Files.exists(directory)) return;
 
-        final int subFilesCount;
-        final LinkedList<Path> subFiles;
-
-        // collect sub-files to be able to provide progress-updates
+        // the sub-trees up to a depth of 3 (e.g. tiles/0/x1) are only used to report progress,
+        // their files are streamed and deleted in parallel batches
+        final List<Path> subTrees;
         try (Stream<Path> pathStream = Files.walk(directory, 3)) {
-            subFiles = pathStream.collect(Collectors.toCollection(LinkedList::new));
+            subTrees = pathStream
+                    .filter(path -> directory.relativize(path).getNameCount() == 3 || !Files.isDirectory(path))
+                    .collect(Collectors.toList());
         }
-        subFilesCount = subFiles.size();
 
-        // delete subFiles first to be able to track the progress and cancel
-        while (!subFiles.isEmpty()) {
-            Path subFile = subFiles.getLast();
-            Files.walkFileTree(subFile, DeletingPathVisitor.INSTANCE);
-            subFiles.removeLast();
+        Deque<CompletableFuture<Void>> pendingBatches = new ArrayDeque<>();
+        try {
+            List<Path> batch = new ArrayList<>(PURGE_BATCH_SIZE);
+            for (int i = 0; i < subTrees.size(); i++) {
+                try (Stream<Path> pathStream = Files.walk(subTrees.get(i))) {
+                    Iterator<Path> paths = pathStream.iterator();
+                    while (paths.hasNext()) {
+                        Path path = paths.next();
+                        if (Files.isDirectory(path)) continue;
+
+                        batch.add(path);
+                        if (batch.size() >= PURGE_BATCH_SIZE) {
+                            deleteFilesAsync(batch, pendingBatches);
+                            batch = new ArrayList<>(PURGE_BATCH_SIZE);
+                        }
+                    }
+                }
+
+                if (!onProgress.apply(
+                        new ProgressInfo((i + 1d) / subTrees.size())
+                )) return;
+            }
 
-            if (!onProgress.apply(
-                    new ProgressInfo(1d - (subFiles.size() / (double) subFilesCount))
-            )) return;
+            if (!batch.isEmpty()) deleteFilesAsync(batch, pendingBatches);
+        } finally {
+            while (!pendingBatches.isEmpty()) awaitBatch(pendingBatches.removeFirst());
         }
 
-        // make sure everything is deleted
+        // delete the remaining (empty) folders
         if (Files.exists(directory))
             Files.walkFileTree(directory, DeletingPathVisitor.INSTANCE);
     }
 
+    private void deleteFilesAsync(List<Path> files, Deque<CompletableFuture<Void>> pendingBatches) throws IOException {
+        pendingBatches.addLast(CompletableFuture.runAsync(() -> {
+            try {
+                for (Path file : files) Files.deleteIfExists(file);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, BlueMap.THREAD_POOL));
+
+        // limit the amount of batches waiting to be deleted
+        while (pendingBatches.size() > PURGE_MAX_PENDING_BATCHES)
+            awaitBatch(pendingBatches.removeFirst());
+    }
+
+    private void awaitBatch(CompletableFuture<Void> batch) throws IOException {
+        try {
+            batch.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) ex.getCause()).getCause();
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    @Override
+    public Collection<String> collectMetaNames(String mapId) throws IOException {
+        final Path directory = getFilePath(mapId);
+        if (!Files.exists(directory)) return Collections.emptyList();
+
+        try (Stream<Path> fileStream = Files.walk(directory)) {
+            return fileStream
+                    .filter(Files::isRegularFile)
+                    .map(directory::relativize)
+                    .filter(path -> {
+                        String folder = path.getName(0).toString();
+                        return path.getNameCount() == 1 || (!folder.equals("tiles") && !folder.equals("blobs"));
+                    })
+                    .filter(path -> !path.getFileName().toString().endsWith(".filepart"))
+                    .map(path -> {
+                        StringJoiner name = new StringJoiner("/");
+                        for (Path part : path) name.add(part.toString());
+                        return name.toString();
+                    })
+                    .collect(Collectors.toList());
+        }
+    }
+
     @Override
     public Collection<String> collectMapIds() throws IOException {
         try (Stream<Path> fileStream = Files.list(root)) {
@@ -213,6 +466,39 @@ public Collection<String> collectMapIds() throws IOException {
         }
     }
 
+    @Override
+    public void collectMapTiles(String mapId, int lod, Consumer<Vector2i> tileConsumer) throws IOException {
+        final Path directory = getFilePath(mapId).resolve("tiles").resolve(Integer.toString(lod));
+        if (!Files.exists(directory)) return;
+
+        String suffix = lod == 0 ? ".prbm" + hiresCompression.getFileSuffix() : ".png";
+        if (packTiles) suffix += ".pack";
+
+        try (Stream<Path> fileStream = Files.walk(directory)) {
+            Iterator<Path> files = fileStream.iterator();
+            while (files.hasNext()) {
+                Path file = files.next();
+
+                // the tile-position is split into multiple folders, e.g. tiles/0/x1/23/z-4/5.prbm
+                StringBuilder name = new StringBuilder();
+                for (Path part : directory.relativize(file)) name.append(part);
+                if (!name.toString().endsWith(suffix)) continue;
+
+                Matcher matcher = TILE_FILE_NAME_PATTERN.matcher(name.substring(0, name.length() - suffix.length()));
+                if (!matcher.matches()) continue;
+
+                Vector2i tile = new Vector2i(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+                if (packTiles) {
+                    tilePacks.get(file.normalize()).collectTiles(tile, tileConsumer);
+                } else {
+                    tileConsumer.accept(tile);
+                }
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
     public Path getFilePath(String mapId, int lod, Vector2i tile){
         String path = "x" + tile.getX() + "z" + tile.getY();
         char[] cs = path.toCharArray();
@@ -239,6 +525,32 @@ public Path getFilePath(String mapId, int lod, Vector2i tile){
         }
     }
 
+    public Path getTilePackPath(String mapId, int lod, Vector2i tile) {
+        Vector2i pack = TilePack.getPackPosition(tile);
+        Path p = getFilePath(mapId).resolve("tiles").resolve(Integer.toString(lod));
+        String fileName = "x" + pack.getX() + "z" + pack.getY();
+
+        if (lod == 0) {
+            return p.resolve(fileName + ".prbm" + hiresCompression.getFileSuffix() + ".pack");
+        } else {
+            return p.resolve(fileName + ".png.pack");
+        }
+    }
+
+    public Path getBlobPath(String mapId, int lod, String hash) {
+        Path p = getFilePath(mapId).resolve("blobs").resolve(hash.substring(0, 2));
+
+        if (lod == 0) {
+            return p.resolve(hash + ".prbm" + hiresCompression.getFileSuffix());
+        } else {
+            return p.resolve(hash + ".png");
+        }
+    }
+
+    private TilePack getTilePack(String mapId, int lod, Vector2i tile) {
+        return tilePacks.get(getTilePackPath(mapId, lod, tile).normalize());
+    }
+
     public Path getFilePath(String mapId) {
         return root.resolve(mapId);
     }
@@ -34,4 +34,8 @@ public interface FileStorageSettings {
 
     Compression getCompression();
 
+    boolean isPackTiles();
+
+    boolean isDeduplicateTiles();
+
 }
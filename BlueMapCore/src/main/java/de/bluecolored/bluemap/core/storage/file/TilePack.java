@@ -0,0 +1,324 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage.file;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.util.FileHelper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * A container-file that packs {@link #PACK_SIZE}x{@link #PACK_SIZE} tiles of the same lod into a single file.<br>
+ * <br>
+ * The file starts with a fixed-size index holding the offset, length and last-modified time of each tile, followed by
+ * the tile-data. Tile-data is always appended to the end of the file and the index-entry is only updated afterwards,
+ * so a reader never sees a partially written tile. Once the file contains more unused bytes (from overwritten or
+ * deleted tiles) than used bytes, it gets compacted into a new file that atomically replaces the old one.
+ */
+@DebugDump
+public class TilePack {
+
+    public static final int PACK_SIZE = 32;
+
+    private static final int ENTRY_SIZE = 20; // offset (long), length (int), lastModified (long)
+    private static final int INDEX_SIZE = PACK_SIZE * PACK_SIZE * ENTRY_SIZE;
+    private static final long COMPACT_THRESHOLD = 1024 * 1024; // don't compact for less than 1 MiB of unused data
+
+    private final Path file;
+    private final ReadWriteLock lock;
+
+    public TilePack(Path file) {
+        this.file = file;
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public Entry readEntry(Vector2i tile) throws IOException {
+        int entryIndex = getEntryIndex(tile);
+
+        lock.readLock().lock();
+        try {
+            if (!Files.exists(file)) return null;
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+                if (!readFully(channel, entry, (long) entryIndex * ENTRY_SIZE)) return null;
+                return Entry.read(entry, 0);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public byte[] read(Vector2i tile) throws IOException {
+        int entryIndex = getEntryIndex(tile);
+
+        lock.readLock().lock();
+        try {
+            if (!Files.exists(file)) return null;
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer entryBuffer = ByteBuffer.allocate(ENTRY_SIZE);
+                if (!readFully(channel, entryBuffer, (long) entryIndex * ENTRY_SIZE)) return null;
+
+                Entry entry = Entry.read(entryBuffer, 0);
+                if (entry == null) return null;
+
+                byte[] data = new byte[entry.length];
+                if (!readFully(channel, ByteBuffer.wrap(data), entry.offset))
+                    throw new IOException("Tile-pack '" + file + "' is corrupted: tile-data exceeds the file-size!");
+
+                return data;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Passes all tiles that are present in this pack to the consumer.
+     * @param packPosition The position of this pack, see {@link #getPackPosition(Vector2i)}
+     */
+    public void collectTiles(Vector2i packPosition, Consumer<Vector2i> tileConsumer) throws IOException {
+        ByteBuffer index;
+
+        lock.readLock().lock();
+        try {
+            if (!Files.exists(file)) return;
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                index = readIndex(channel);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        int minX = packPosition.getX() * PACK_SIZE, minZ = packPosition.getY() * PACK_SIZE;
+        for (int i = 0; i < PACK_SIZE * PACK_SIZE; i++) {
+            if (index.getInt(i * ENTRY_SIZE + 8) <= 0) continue;
+            tileConsumer.accept(new Vector2i(minX + i % PACK_SIZE, minZ + i / PACK_SIZE));
+        }
+    }
+
+    public void write(Vector2i tile, byte[] data) throws IOException {
+        int entryIndex = getEntryIndex(tile);
+
+        lock.writeLock().lock();
+        try {
+            FileHelper.createDirectories(file.getParent());
+
+            boolean compact;
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+
+                // append data
+                long offset = Math.max(channel.size(), INDEX_SIZE);
+                writeFully(channel, ByteBuffer.wrap(data), offset);
+
+                // update index
+                ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+                Entry.write(entry, 0, offset, data.length, System.currentTimeMillis());
+                writeFully(channel, entry, (long) entryIndex * ENTRY_SIZE);
+
+                compact = needsCompaction(channel, readIndex(channel));
+            }
+
+            if (compact) compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void delete(Vector2i tile) throws IOException {
+        int entryIndex = getEntryIndex(tile);
+
+        lock.writeLock().lock();
+        try {
+            if (!Files.exists(file)) return;
+
+            boolean empty, compact;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (channel.size() < INDEX_SIZE) return;
+
+                ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+                Entry.write(entry, 0, 0, 0, 0);
+                writeFully(channel, entry, (long) entryIndex * ENTRY_SIZE);
+
+                ByteBuffer index = readIndex(channel);
+                empty = isEmpty(index);
+                compact = !empty && needsCompaction(channel, index);
+            }
+
+            if (empty) Files.deleteIfExists(file);
+            else if (compact) compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the tile-pack into a new file only containing the used data,
+     * and then atomically replaces the old file with it.
+     * <p><i>Needs to be called while holding the write-lock.</i></p>
+     */
+    private void compact() throws IOException {
+        Path partFile = file.resolveSibling(file.getFileName() + ".filepart");
+
+        try (
+                FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+                FileChannel target = FileChannel.open(partFile,
+                        StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)
+        ) {
+            ByteBuffer index = readIndex(source);
+            ByteBuffer newIndex = ByteBuffer.allocate(INDEX_SIZE);
+
+            long offset = INDEX_SIZE;
+            for (int i = 0; i < PACK_SIZE * PACK_SIZE; i++) {
+                Entry entry = Entry.read(index, i * ENTRY_SIZE);
+                if (entry == null) continue;
+
+                long transferred = 0;
+                while (transferred < entry.length) {
+                    long count = source.transferTo(entry.offset + transferred, entry.length - transferred, target.position(offset + transferred));
+                    if (count <= 0) throw new IOException("Tile-pack '" + file + "' is corrupted: tile-data exceeds the file-size!");
+                    transferred += count;
+                }
+
+                Entry.write(newIndex, i * ENTRY_SIZE, offset, entry.length, entry.lastModified);
+                offset += entry.length;
+            }
+
+            newIndex.clear();
+            writeFully(target, newIndex, 0);
+        }
+
+        FileHelper.move(partFile, file);
+    }
+
+    private static boolean needsCompaction(FileChannel channel, ByteBuffer index) throws IOException {
+        long used = 0;
+        for (int i = 0; i < PACK_SIZE * PACK_SIZE; i++) {
+            used += index.getInt(i * ENTRY_SIZE + 8);
+        }
+
+        long unused = channel.size() - INDEX_SIZE - used;
+        return unused > COMPACT_THRESHOLD && unused > used;
+    }
+
+    private static boolean isEmpty(ByteBuffer index) {
+        for (int i = 0; i < PACK_SIZE * PACK_SIZE; i++) {
+            if (index.getInt(i * ENTRY_SIZE + 8) > 0) return false;
+        }
+        return true;
+    }
+
+    private static ByteBuffer readIndex(FileChannel channel) throws IOException {
+        ByteBuffer index = ByteBuffer.allocate(INDEX_SIZE);
+        readFully(channel, index, 0);
+        index.clear();
+        return index;
+    }
+
+    /**
+     * Reads from the channel at the given position until the buffer is full or the end of the channel is reached.
+     * @return true if the buffer has been filled completely
+     */
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) return false;
+            position += read;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Returns the position of the tile-pack containing the given tile
+     */
+    public static Vector2i getPackPosition(Vector2i tile) {
+        return new Vector2i(
+                Math.floorDiv(tile.getX(), PACK_SIZE),
+                Math.floorDiv(tile.getY(), PACK_SIZE)
+        );
+    }
+
+    private static int getEntryIndex(Vector2i tile) {
+        return Math.floorMod(tile.getY(), PACK_SIZE) * PACK_SIZE + Math.floorMod(tile.getX(), PACK_SIZE);
+    }
+
+    public static class Entry {
+
+        private final long offset;
+        private final int length;
+        private final long lastModified;
+
+        private Entry(long offset, int length, long lastModified) {
+            this.offset = offset;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        private static Entry read(ByteBuffer buffer, int position) {
+            int length = buffer.getInt(position + 8);
+            if (length <= 0) return null;
+            return new Entry(buffer.getLong(position), length, buffer.getLong(position + 12));
+        }
+
+        private static void write(ByteBuffer buffer, int position, long offset, int length, long lastModified) {
+            buffer.putLong(position, offset);
+            buffer.putInt(position + 8, length);
+            buffer.putLong(position + 12, lastModified);
+        }
+
+    }
+
+}
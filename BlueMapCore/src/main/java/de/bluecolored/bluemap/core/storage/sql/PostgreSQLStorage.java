@@ -25,8 +25,6 @@
 package de.bluecolored.bluemap.core.storage.sql;
 
 import com.flowpowered.math.vector.Vector2i;
-import de.bluecolored.bluemap.core.storage.CompressedInputStream;
-import de.bluecolored.bluemap.core.storage.Compression;
 import de.bluecolored.bluemap.core.storage.sql.dialect.Dialect;
 import de.bluecolored.bluemap.core.storage.sql.dialect.PostgresDialect;
 import de.bluecolored.bluemap.core.util.stream.OnCloseOutputStream;
@@ -48,24 +46,17 @@ public PostgreSQLStorage(Dialect dialect, SQLStorageSettings config) throws Malf
     }
 
     @Override
-    public OutputStream writeMapTile(String mapId, int lod, Vector2i tile) throws IOException {
-        Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
-        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-        return new OnCloseOutputStream(new BufferedOutputStream(compression.compress(byteOut)), () -> {
-            int mapFK = getMapFK(mapId);
-            int tileCompressionFK = getMapTileCompressionFK(compression);
-
-            recoveringConnection(connection -> {
-                executeUpdate(connection, this.dialect.writeMapTile(),
-                        mapFK,
-                        lod,
-                        tile.getX(),
-                        tile.getY(),
-                        tileCompressionFK,
-                        byteOut.toByteArray()
-                );
-            }, 2);
-        });
+    protected void writeMapTileData(int mapFK, int lod, Vector2i tile, int compressionFK, byte[] data) throws SQLException, IOException {
+        recoveringConnection(connection -> {
+            executeUpdate(connection, this.dialect.writeMapTile(),
+                    mapFK,
+                    lod,
+                    tile.getX(),
+                    tile.getY(),
+                    compressionFK,
+                    data
+            );
+        }, 2);
     }
 
     @Override
@@ -84,35 +75,8 @@ public OutputStream writeMeta(String mapId, String name) {
     }
 
     @Override
-    public Optional<CompressedInputStream> readMapTile(String mapId, int lod, Vector2i tile) throws IOException {
-        Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
-
-        try {
-            byte[] data = recoveringConnection(connection -> {
-                ResultSet result = executeQuery(connection, this.dialect.readMapTile(),
-                        mapId,
-                        lod,
-                        tile.getX(),
-                        tile.getY(),
-                        compression.getTypeId()
-                );
-
-                if (result.next()) {
-                    return result.getBytes(1);
-                } else {
-                    return null;
-                }
-            }, 2);
-
-            if (data == null) {
-                return Optional.empty();
-            }
-
-            InputStream inputStream = new ByteArrayInputStream(data);
-            return Optional.of(new CompressedInputStream(inputStream, compression));
-        } catch (SQLException ex) {
-            throw new IOException(ex);
-        }
+    protected byte[] readBytes(ResultSet result, String column) throws SQLException {
+        return result.getBytes(column);
     }
 
     @Override
@@ -48,6 +48,9 @@
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public abstract class SQLStorage extends Storage {
@@ -56,15 +59,22 @@ public abstract class SQLStorage extends Storage {
 
     protected final Dialect dialect;
     protected final Compression hiresCompression;
+    protected final boolean deduplicateTiles;
 
+    // expiring regularly, since the map might have been purged and re-created by a different process
+    // (not refreshing, since loading a key inserts a missing map and could re-create a map right after a purge)
     private final LoadingCache<String, Integer> mapFKs = Caffeine.newBuilder()
             .executor(BlueMap.THREAD_POOL)
+            .expireAfterWrite(1, TimeUnit.MINUTES)
             .build(this::loadMapFK);
     private final LoadingCache<Compression, Integer> mapTileCompressionFKs = Caffeine.newBuilder()
             .executor(BlueMap.THREAD_POOL)
             .build(this::loadMapTileCompressionFK);
 
+    private static final int PURGE_CHUNK_SIZE = 10000;
+
     private volatile boolean closed;
+    private final AtomicInteger mapPurgeCount = new AtomicInteger();
 
     public SQLStorage(Dialect dialect, SQLStorageSettings config) throws MalformedURLException, SQLDriverException {
         this.dialect = dialect;
@@ -101,6 +111,7 @@ public SQLStorage(Dialect dialect, SQLStorageSettings config) throws MalformedUR
         }
 
         this.hiresCompression = config.getCompression();
+        this.deduplicateTiles = config.isDeduplicateTiles();
     }
 
     @Override
@@ -108,86 +119,102 @@ public OutputStream writeMapTile(String mapId, int lod, Vector2i tile) throws IO
         Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
 
         ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-        return new OnCloseOutputStream(new BufferedOutputStream(compression.compress(byteOut)), () -> {
-            int mapFK = getMapFK(mapId);
-            int tileCompressionFK = getMapTileCompressionFK(compression);
-
-            recoveringConnection(connection -> {
-                Blob dataBlob = connection.createBlob();
-                try {
-                    try (OutputStream blobOut = dataBlob.setBinaryStream(1)) {
-                        byteOut.writeTo(blobOut);
-                    }
-
-                    executeUpdate(connection, this.dialect.writeMapTile(),
-                            mapFK,
-                            lod,
-                            tile.getX(),
-                            tile.getY(),
-                            tileCompressionFK,
-                            dataBlob
-                    );
-                } finally {
-                    dataBlob.free();
-                }
-            }, 2);
-        });
+        return new OnCloseOutputStream(new BufferedOutputStream(compressMapTile(mapId, compression, byteOut)),
+                () -> storeMapTile(mapId, lod, tile, compression, byteOut.toByteArray()));
     }
 
     @Override
-    public Optional<CompressedInputStream> readMapTile(String mapId, int lod, Vector2i tile) throws IOException {
+    public void writeCompressedMapTile(String mapId, int lod, Vector2i tile, CompressedInputStream data) throws IOException {
         Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
+        if (data.getCompression() != compression) {
+            super.writeCompressedMapTile(mapId, lod, tile, data);
+            return;
+        }
 
         try {
-            byte[] data = recoveringConnection(connection -> {
-                    ResultSet result = executeQuery(connection,
-                            this.dialect.readMapTile(),
-                            mapId,
-                            lod,
-                            tile.getX(),
-                            tile.getY(),
-                            compression.getTypeId()
-                    );
-
-                    if (result.next()) {
-                        Blob dataBlob = result.getBlob("data");
-                        return dataBlob.getBytes(1, (int) dataBlob.length());
-                    } else {
-                        return null;
-                    }
-            }, 2);
-
-            if (data == null) return Optional.empty();
-            return Optional.of(new CompressedInputStream(new ByteArrayInputStream(data), compression));
+            storeMapTile(mapId, lod, tile, compression, data.readAllBytes());
         } catch (SQLException ex) {
             throw new IOException(ex);
         }
     }
 
+    private void storeMapTile(String mapId, int lod, Vector2i tile, Compression compression, byte[] data) throws SQLException, IOException {
+        int mapFK = getMapFK(mapId);
+        int tileCompressionFK = getMapTileCompressionFK(compression);
+
+        if (deduplicateTiles) {
+            writeDeduplicatedMapTile(mapFK, lod, tile, tileCompressionFK, data);
+            return;
+        }
+
+        writeMapTileData(mapFK, lod, tile, tileCompressionFK, data);
+    }
+
+    /**
+     * Writes the (already compressed) data of a map-tile into the map-tile table.
+     */
+    protected void writeMapTileData(int mapFK, int lod, Vector2i tile, int compressionFK, byte[] data) throws SQLException, IOException {
+        recoveringConnection(connection -> {
+            Blob dataBlob = connection.createBlob();
+            try {
+                try (OutputStream blobOut = dataBlob.setBinaryStream(1)) {
+                    blobOut.write(data);
+                }
+
+                executeUpdate(connection, this.dialect.writeMapTile(),
+                        mapFK,
+                        lod,
+                        tile.getX(),
+                        tile.getY(),
+                        compressionFK,
+                        dataBlob
+                );
+            } finally {
+                dataBlob.free();
+            }
+        }, 2);
+    }
+
+    @Override
+    public Optional<CompressedInputStream> readMapTile(String mapId, int lod, Vector2i tile) throws IOException {
+        Optional<TileInfo> tileInfo = readMapTileInfo(mapId, lod, tile);
+        if (tileInfo.isEmpty()) return Optional.empty();
+        return Optional.of(tileInfo.get().readMapTile());
+    }
+
     @Override
     public Optional<TileInfo> readMapTileInfo(final String mapId, int lod, final Vector2i tile) throws IOException {
         Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
 
         try {
+            OptionalInt mapFK = findMapFK(mapId);
+            OptionalInt tileCompressionFK = findMapTileCompressionFK(compression);
+            if (mapFK.isEmpty() || tileCompressionFK.isEmpty()) return Optional.empty();
+
+            // the meta-data and the data are read with the same query, so serving a tile only needs one round-trip
             TileInfo tileInfo = recoveringConnection(connection -> {
                 ResultSet result = executeQuery(connection,
-                        this.dialect.readMapTileInfo(),
-                        mapId,
+                        this.dialect.readMapTile(),
+                        mapFK.getAsInt(),
                         lod,
                         tile.getX(),
                         tile.getY(),
-                        compression.getTypeId()
+                        tileCompressionFK.getAsInt()
                 );
 
                 if (result.next()) {
+                    // a deduplicated tile whose blob is missing must not be served as an empty tile
+                    String dataHash = result.getString("data_hash");
+                    if (dataHash != null && result.getString("blob_hash") == null)
+                        throw new IOException("The data (" + dataHash + ") of tile " + tile + " (lod: " + lod + ") of map '" + mapId + "' is missing!");
+
                     final long lastModified = result.getTimestamp("changed").getTime();
-                    final long size = result.getLong("size");
+                    final byte[] data = readBytes(result, "data");
 
                     return new TileInfo() {
                         @Override
-                        public CompressedInputStream readMapTile() throws IOException {
-                            return SQLStorage.this.readMapTile(mapId, lod, tile)
-                                    .orElseThrow(() -> new IOException("Tile no longer present!"));
+                        public CompressedInputStream readMapTile() {
+                            return new CompressedInputStream(new ByteArrayInputStream(data), compression, tileDictionaries(mapId));
                         }
 
                         @Override
@@ -197,7 +224,7 @@ public Compression getCompression() {
 
                         @Override
                         public long getSize() {
-                            return size;
+                            return data.length;
                         }
 
                         @Override
@@ -219,6 +246,28 @@ public long getLastModified() {
     @Override
     public void deleteMapTile(String mapId, int lod, Vector2i tile) throws IOException {
         try {
+            if (deduplicateTiles) {
+                OptionalInt mapFK = findMapFK(mapId);
+                if (mapFK.isEmpty()) return;
+
+                String oldHash = recoveringConnection(connection -> {
+                    String hash = readMapTileHash(connection, mapFK.getAsInt(), lod, tile);
+
+                    executeUpdate(connection,this.dialect.deleteMapTile(),
+                            mapId,
+                            lod,
+                            tile.getX(),
+                            tile.getY()
+                    );
+
+                    return hash;
+                }, 2);
+
+                if (oldHash != null)
+                    recoveringConnection(connection -> deleteUnusedMapTileBlob(connection, oldHash), 2);
+                return;
+            }
+
             recoveringConnection(connection ->
                 executeUpdate(connection,this.dialect.deleteMapTile(),
                         mapId,
@@ -335,31 +384,81 @@ public void deleteMeta(String mapId, String name) throws IOException {
 
     @Override
     public void purgeMap(String mapId, Function<ProgressInfo, Boolean> onProgress) throws IOException {
-        synchronized (mapFKs) {
-            try {
-                recoveringConnection(connection -> {
-                    executeUpdate(connection,
-                            this.dialect.purgeMapTile(),
-                            mapId
-                    );
-
-                    executeUpdate(connection,
-                            this.dialect.purgeMapMeta(),
-                            mapId
-                    );
+        invalidateTileDictionaries();
 
+        // a new purge-generation keeps lookups that are still in flight from caching the old key again,
+        // no lock is held during the purge itself so reads and writes are never blocked by it
+        mapPurgeCount.incrementAndGet();
+        mapFKs.invalidate(mapId);
 
-                    executeUpdate(connection,
-                            this.dialect.purgeMap(),
-                            mapId
-                    );
-                }, 2);
+        try {
+            OptionalInt optionalMapFK = findMapFK(mapId);
+            if (optionalMapFK.isEmpty()) return;
+            int mapFK = optionalMapFK.getAsInt();
 
-                mapFKs.invalidate(mapId);
+            List<TileRange> tileRanges = recoveringConnection(connection -> {
+                ResultSet result = executeQuery(connection,
+                        this.dialect.selectMapTileRanges(),
+                        mapFK
+                );
+                List<TileRange> ranges = new ArrayList<>();
+                while (result.next()) {
+                    ranges.add(new TileRange(
+                            result.getInt("lod"),
+                            result.getInt("min_x"),
+                            result.getInt("max_x"),
+                            result.getLong("tile_count")
+                    ));
+                }
+                return ranges;
+            }, 2);
 
-            } catch (SQLException ex) {
-                throw new IOException(ex);
+            // delete the tiles in chunks of x-coordinates with a short transaction each,
+            // so the table is never locked for a long time and the purge can report progress and be cancelled
+            long totalTiles = 0, deletedTiles = 0;
+            for (TileRange range : tileRanges) totalTiles += range.tileCount;
+
+            for (TileRange range : tileRanges) {
+                long width = (long) range.maxX - range.minX + 1;
+                long step = Math.max(1, width * PURGE_CHUNK_SIZE / Math.max(range.tileCount, 1));
+
+                for (long x = range.minX; x <= range.maxX; x += step) {
+                    final int fromX = (int) x, toX = (int) Math.min(x + step - 1, range.maxX);
+                    deletedTiles += recoveringConnection(connection -> {
+                        return executeUpdate(connection,
+                                this.dialect.purgeMapTileRange(),
+                                mapFK,
+                                range.lod,
+                                fromX,
+                                toX
+                        );
+                    }, 2);
+
+                    if (!onProgress.apply(
+                            new ProgressInfo(Math.min(deletedTiles / (double) totalTiles, 1d))
+                    )) return;
+                }
             }
+
+            recoveringConnection(connection -> {
+                executeUpdate(connection,
+                        this.dialect.purgeMapMeta(),
+                        mapId
+                );
+
+                executeUpdate(connection,
+                        this.dialect.purgeMap(),
+                        mapId
+                );
+            }, 2);
+
+            purgeUnusedMapTileBlobs();
+
+            mapPurgeCount.incrementAndGet();
+            mapFKs.invalidate(mapId);
+
+        } catch (SQLException ex) {
+            throw new IOException(ex);
         }
     }
 
@@ -381,6 +480,50 @@ public Collection<String> collectMapIds() throws IOException {
         }
     }
 
+    @Override
+    public Collection<String> collectMetaNames(String mapId) throws IOException {
+        try {
+            return recoveringConnection(connection -> {
+                ResultSet result = executeQuery(connection,
+                        this.dialect.selectMetaKeys(),
+                        mapId
+                );
+                Collection<String> names = new ArrayList<>();
+                while (result.next()) {
+                    names.add(result.getString("key"));
+                }
+                return names;
+            }, 2);
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public void collectMapTiles(String mapId, int lod, Consumer<Vector2i> tileConsumer) throws IOException {
+        Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
+
+        try {
+            OptionalInt mapFK = findMapFK(mapId);
+            OptionalInt tileCompressionFK = findMapTileCompressionFK(compression);
+            if (mapFK.isEmpty() || tileCompressionFK.isEmpty()) return;
+
+            recoveringConnection(connection -> {
+                ResultSet result = executeQuery(connection,
+                        this.dialect.selectMapTiles(),
+                        mapFK.getAsInt(),
+                        lod,
+                        tileCompressionFK.getAsInt()
+                );
+                while (result.next()) {
+                    tileConsumer.accept(new Vector2i(result.getInt("x"), result.getInt("z")));
+                }
+            }, 2);
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
     @SuppressWarnings("UnusedAssignment")
     public void initialize() throws IOException {
         try {
@@ -414,7 +557,7 @@ public void initialize() throws IOException {
             }
 
             // validate schema version
-            if (schemaVersion < 0 || schemaVersion > 3)
+            if (schemaVersion < 0 || schemaVersion > 5)
                 throw new IOException("Unknown schema-version: " + schemaVersion);
 
             // update schema to current version
@@ -485,6 +628,50 @@ public void initialize() throws IOException {
                 schemaVersion = 3;
             }
 
+            if (schemaVersion == 3) {
+                Logger.global.logInfo("Updating database schema: Adding table for deduplicated tile-data...");
+                recoveringConnection(connection -> {
+
+                    connection.createStatement().executeUpdate(
+                            this.dialect.initializeMapTileBlob()
+                    );
+
+                    connection.createStatement().executeUpdate(
+                            this.dialect.updateMapTileAddDataHash()
+                    );
+
+                    connection.createStatement().executeUpdate(
+                            this.dialect.initializeMapTileDataHashIndex()
+                    );
+
+                    // update schemaVersion
+                    executeUpdate(connection,
+                            this.dialect.updateStorageMeta(),
+                            "4", "schema_version"
+                    );
+                }, 2);
+
+                schemaVersion = 4;
+            }
+
+            if (schemaVersion == 4) {
+                Logger.global.logInfo("Updating database schema: Adding index for listing the tiles of a map...");
+                recoveringConnection(connection -> {
+
+                    connection.createStatement().executeUpdate(
+                            this.dialect.initializeMapTileLodIndex()
+                    );
+
+                    // update schemaVersion
+                    executeUpdate(connection,
+                            this.dialect.updateStorageMeta(),
+                            "5", "schema_version"
+                    );
+                }, 2);
+
+                schemaVersion = 5;
+            }
+
         } catch (SQLException ex) {
             throw new IOException(ex);
         }
@@ -495,6 +682,11 @@ public boolean isClosed() {
         return closed;
     }
 
+    @Override
+    public String getTileFormat() {
+        return "sql/" + hiresCompression.getTypeId();
+    }
+
     @Override
     public void close() throws IOException {
         this.closed = true;
@@ -507,6 +699,102 @@ public void close() throws IOException {
         }
     }
 
+    /**
+     * Writes a tile that only references its data by the data's hash.
+     * The data itself is stored only once in the blob-table and shared by all tiles with the exact same data.<br>
+     * The blob and the tile are written in the same transaction.
+     */
+    protected void writeDeduplicatedMapTile(int mapFK, int lod, Vector2i tile, int tileCompressionFK, byte[] data) throws SQLException, IOException {
+        String hash = calculateDataHash(data);
+
+        String oldHash = recoveringConnection(connection -> {
+            String previousHash = readMapTileHash(connection, mapFK, lod, tile);
+
+            // write the blob first (if it does not exist yet), so the tile never references missing data
+            adoptMapTileBlob(connection, hash, data);
+
+            executeUpdate(connection, this.dialect.writeMapTileHash(),
+                    mapFK,
+                    lod,
+                    tile.getX(),
+                    tile.getY(),
+                    tileCompressionFK,
+                    new byte[0],
+                    hash
+            );
+
+            return previousHash;
+        }, 2);
+
+        // using a separate transaction, since holding the exclusive lock on the old blob
+        // together with the shared lock on the new one could deadlock with another writer
+        if (oldHash != null && !oldHash.equals(hash))
+            recoveringConnection(connection -> deleteUnusedMapTileBlob(connection, oldHash), 2);
+    }
+
+    /**
+     * Makes sure the blob exists and holds a shared lock on it until the transaction ends,
+     * so it can not be deleted as unused before the tile referencing it is committed.
+     */
+    private void adoptMapTileBlob(Connection connection, String hash, byte[] data) throws SQLException {
+        for (int i = 0; i < 3; i++) {
+            executeUpdate(connection, this.dialect.writeMapTileBlob(),
+                    hash,
+                    data
+            );
+
+            // the insert is ignored if the blob exists, but it might be deleted right before we get the lock
+            if (executeQuery(connection, this.dialect.lockMapTileBlobShared(), hash).next()) return;
+        }
+
+        throw new SQLException("Failed to store the tile-blob " + hash + ", it keeps being deleted concurrently.");
+    }
+
+    /**
+     * Deletes the blob if it is no longer referenced by any tile.
+     */
+    private void deleteUnusedMapTileBlob(Connection connection, String hash) throws SQLException {
+        // the exclusive lock waits for all writers that are about to reference this blob (see adoptMapTileBlob)
+        if (!executeQuery(connection, this.dialect.lockMapTileBlobExclusive(), hash).next()) return;
+        if (executeQuery(connection, this.dialect.findMapTileBlobReference(), hash).next()) return;
+
+        executeUpdate(connection, this.dialect.deleteMapTileBlob(), hash);
+    }
+
+    /**
+     * Deletes all blobs that are no longer referenced by any tile, in batches with a short transaction each.
+     */
+    private void purgeUnusedMapTileBlobs() throws SQLException, IOException {
+        int found;
+        do {
+            found = recoveringConnection(connection -> {
+                ResultSet result = executeQuery(connection,
+                        this.dialect.selectUnusedMapTileBlobs(),
+                        PURGE_CHUNK_SIZE
+                );
+                List<String> hashes = new ArrayList<>();
+                while (result.next()) hashes.add(result.getString(1));
+
+                for (String hash : hashes)
+                    deleteUnusedMapTileBlob(connection, hash);
+
+                return hashes.size();
+            }, 2);
+        } while (found >= PURGE_CHUNK_SIZE);
+    }
+
+    private String readMapTileHash(Connection connection, int mapFK, int lod, Vector2i tile) throws SQLException {
+        ResultSet result = executeQuery(connection, this.dialect.readMapTileHash(),
+                mapFK,
+                lod,
+                tile.getX(),
+                tile.getY()
+        );
+
+        if (!result.next()) return null;
+        return result.getString(1);
+    }
+
    protected ResultSet executeQuery(Connection connection, @Language("sql") String sql, Object... parameters) throws SQLException {
         return prepareStatement(connection, sql, parameters).executeQuery();
     }
@@ -560,6 +848,22 @@ protected <R> R recoveringConnection(ConnectionFunction<R> action, int tries) th
         throw sqlException;
     }
 
+    /**
+     * SQL-statements that are executed on each new connection, e.g. to configure the connection.<br>
+     * <i>This is called from the constructor, so it can not depend on any fields of a subclass.</i>
+     */
+    protected Collection<String> getConnectionInitSql() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Reads the binary data of a column, this can be overwritten for drivers that don't support reading it as {@link Blob}
+     */
+    protected byte[] readBytes(ResultSet result, String column) throws SQLException {
+        Blob dataBlob = result.getBlob(column);
+        return dataBlob.getBytes(1, (int) dataBlob.length());
+    }
+
     protected int getMapFK(String mapId) throws SQLException {
         try {
             return Objects.requireNonNull(mapFKs.get(mapId));
@@ -586,16 +890,57 @@ int getMapTileCompressionFK(Compression compression) throws SQLException {
         }
     }
 
+    /**
+     * Same as {@link #getMapFK(String)}, but does not create the map if it does not exist yet.
+     * This is used on all reading paths, so reading never inserts anything.
+     */
+    protected OptionalInt findMapFK(String mapId) throws SQLException, IOException {
+        Integer cached = mapFKs.getIfPresent(mapId);
+        if (cached != null) return OptionalInt.of(cached);
+
+        int purgeCount = mapPurgeCount.get();
+
+        OptionalInt key = lookupExistingFK("bluemap_map", "id", "map_id", mapId);
+        if (key.isEmpty()) return key;
+
+        // only cache the key if the map has not been purged while we were looking it up
+        if (purgeCount == mapPurgeCount.get()) mapFKs.put(mapId, key.getAsInt());
+        return key;
+    }
+
+    /**
+     * Same as {@link #getMapTileCompressionFK(Compression)}, but does not create the compression if it does not exist yet.
+     */
+    OptionalInt findMapTileCompressionFK(Compression compression) throws SQLException, IOException {
+        Integer cached = mapTileCompressionFKs.getIfPresent(compression);
+        if (cached != null) return OptionalInt.of(cached);
+
+        OptionalInt key = lookupExistingFK("bluemap_map_tile_compression", "id", "compression", compression.getTypeId());
+        if (key.isPresent()) mapTileCompressionFKs.put(compression, key.getAsInt());
+        return key;
+    }
+
     private int loadMapFK(String mapId) throws SQLException, IOException {
-        synchronized (mapFKs) {
-            return lookupFK("bluemap_map", "id", "map_id", mapId);
-        }
+        return lookupFK("bluemap_map", "id", "map_id", mapId);
     }
 
     private int loadMapTileCompressionFK(Compression compression) throws SQLException, IOException {
         return lookupFK("bluemap_map_tile_compression", "id", "compression", compression.getTypeId());
     }
 
+    @SuppressWarnings({"SameParameterValue", "SqlResolve"})
+    private OptionalInt lookupExistingFK(String table, String idField, String valueField, String value) throws SQLException, IOException {
+        return recoveringConnection(connection -> {
+            ResultSet result = executeQuery(connection,
+                    this.dialect.lookupFK(table,idField,valueField),
+                    value
+            );
+
+            if (result.next()) return OptionalInt.of(result.getInt("id"));
+            return OptionalInt.empty();
+        }, 2);
+    }
+
     @SuppressWarnings({"SameParameterValue", "SqlResolve"})
     private int lookupFK(String table, String idField, String valueField, String value) throws SQLException, IOException {
         return recoveringConnection(connection -> {
@@ -657,6 +1002,10 @@ private DataSource createDataSource(ConnectionFactory connectionFactory, int max
         poolableConnectionFactory.setRollbackOnReturn(true);
         poolableConnectionFactory.setFastFailValidation(true);
 
+        Collection<String> connectionInitSql = getConnectionInitSql();
+        if (!connectionInitSql.isEmpty())
+            poolableConnectionFactory.setConnectionInitSql(connectionInitSql);
+
         GenericObjectPoolConfig<PoolableConnection> objectPoolConfig = new GenericObjectPoolConfig<>();
         objectPoolConfig.setTestWhileIdle(true);
         objectPoolConfig.setTimeBetweenEvictionRuns(Duration.ofSeconds(10));
@@ -680,6 +1029,20 @@ public static SQLStorage create(SQLStorageSettings settings) throws Exception {
         return DialectType.getStorage(provider,settings);
     }
 
+    private static class TileRange {
+
+        private final int lod, minX, maxX;
+        private final long tileCount;
+
+        private TileRange(int lod, int minX, int maxX, long tileCount) {
+            this.lod = lod;
+            this.minX = minX;
+            this.maxX = maxX;
+            this.tileCount = tileCount;
+        }
+
+    }
+
     @FunctionalInterface
     public interface ConnectionConsumer extends ConnectionFunction<Void> {
 
@@ -45,4 +45,6 @@ public interface SQLStorageSettings {
 
     Compression getCompression();
 
+    boolean isDeduplicateTiles();
+
 }
@@ -24,14 +24,205 @@
  */
 package de.bluecolored.bluemap.core.storage.sql;
 
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.storage.sql.dialect.SqliteDialect;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
 
+/**
+ * SQLite only allows one writer at a time, so instead of letting all render-threads compete for the database-lock,
+ * all tile-writes are handed to a single writer-thread which commits them in batches.
+ * The database uses WAL-journaling, so the web-server can keep reading while tiles are written.
+ */
 public class SQLiteStorage extends PostgreSQLStorage {
 
+    private static final int MAX_BATCH_SIZE = 512;
+    private static final long VACUUM_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+    private static final int VACUUM_PAGES = 4096;
+
+    private static final List<String> CONNECTION_INIT_SQL = List.of(
+            "PRAGMA busy_timeout = 10000",
+            "PRAGMA synchronous = NORMAL",
+            "PRAGMA mmap_size = 268435456" // 256 MiB
+    );
+
+    private final BlockingQueue<TileWrite> writeQueue;
+    private final Thread writerThread;
+    private volatile boolean writerRunning;
+    private long lastVacuum;
+
     public SQLiteStorage(SQLStorageSettings config) throws MalformedURLException, SQLDriverException {
         super(SqliteDialect.INSTANCE, config);
+
+        this.writeQueue = new LinkedBlockingQueue<>();
+        this.writerRunning = true;
+        this.lastVacuum = System.currentTimeMillis();
+
+        this.writerThread = new Thread(this::writeLoop, "BlueMap-SQLite-Writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    @Override
+    public void initialize() throws IOException {
+        try {
+            recoveringConnection(connection -> {
+                // auto_vacuum can only be changed before the first table is created (or with a full VACUUM)
+                connection.setAutoCommit(true);
+                try {
+                    connection.createStatement().execute("PRAGMA auto_vacuum = INCREMENTAL");
+                    connection.createStatement().execute("PRAGMA journal_mode = WAL");
+                } finally {
+                    connection.setAutoCommit(false);
+                }
+
+                ResultSet result = connection.createStatement().executeQuery("PRAGMA auto_vacuum");
+                if (result.next() && result.getInt(1) != 2) {
+                    Logger.global.logDebug("SQLite database has no incremental auto-vacuum enabled, " +
+                            "run a full 'VACUUM' on the database once to enable it.");
+                }
+            }, 2);
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+
+        super.initialize();
+    }
+
+    @Override
+    protected Collection<String> getConnectionInitSql() {
+        return CONNECTION_INIT_SQL;
+    }
+
+    @Override
+    protected void writeMapTileData(int mapFK, int lod, Vector2i tile, int compressionFK, byte[] data) throws IOException {
+        TileWrite write = new TileWrite(mapFK, lod, tile, compressionFK, data);
+
+        synchronized (writeQueue) {
+            if (!writerRunning) throw new IOException("Storage is closed!");
+            writeQueue.add(write);
+        }
+
+        // wait until the batch containing this tile is committed, so the tile can be read immediately after
+        write.await();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writeQueue) {
+            writerRunning = false;
+        }
+
+        // let the writer-thread finish all pending writes
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        super.close();
+    }
+
+    private void writeLoop() {
+        List<TileWrite> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (writerRunning || !writeQueue.isEmpty()) {
+            try {
+                TileWrite first = writeQueue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    vacuumIfNeeded();
+                    continue;
+                }
+
+                batch.add(first);
+                writeQueue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+                recoveringConnection(connection -> {
+                    for (TileWrite write : batch) {
+                        executeUpdate(connection, this.dialect.writeMapTile(),
+                                write.mapFK,
+                                write.lod,
+                                write.tile.getX(),
+                                write.tile.getY(),
+                                write.compressionFK,
+                                write.data
+                        );
+                    }
+                }, 2);
+
+                for (TileWrite write : batch) write.result.complete(null);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception ex) {
+                for (TileWrite write : batch) write.result.completeExceptionally(ex);
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // fail everything that could not be written anymore
+        TileWrite write;
+        while ((write = writeQueue.poll()) != null) {
+            write.result.completeExceptionally(new IOException("Storage is closed!"));
+        }
+    }
+
+    private void vacuumIfNeeded() {
+        long now = System.currentTimeMillis();
+        if (now - lastVacuum < VACUUM_INTERVAL) return;
+        lastVacuum = now;
+
+        try {
+            recoveringConnection(connection -> {
+                connection.setAutoCommit(true);
+                try {
+                    connection.createStatement().execute("PRAGMA incremental_vacuum(" + VACUUM_PAGES + ")");
+                } finally {
+                    connection.setAutoCommit(false);
+                }
+            }, 1);
+        } catch (SQLException | IOException ex) {
+            Logger.global.logDebug("Failed to run incremental vacuum on SQLite database: " + ex);
+        }
+    }
+
+    private static class TileWrite {
+
+        private final int mapFK, lod, compressionFK;
+        private final Vector2i tile;
+        private final byte[] data;
+        private final CompletableFuture<Void> result;
+
+        private TileWrite(int mapFK, int lod, Vector2i tile, int compressionFK, byte[] data) {
+            this.mapFK = mapFK;
+            this.lod = lod;
+            this.tile = tile;
+            this.compressionFK = compressionFK;
+            this.data = data;
+            this.result = new CompletableFuture<>();
+        }
+
+        private void await() throws IOException {
+            try {
+                result.get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                throw new IOException(cause);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the tile to be written", ex);
+            }
+        }
+
     }
 
 }
@@ -34,10 +34,31 @@ public interface Dialect {
     String readMapTile();
 
     @Language("sql")
-    String readMapTileInfo();
+    String deleteMapTile();
 
     @Language("sql")
-    String deleteMapTile();
+    String writeMapTileHash();
+
+    @Language("sql")
+    String readMapTileHash();
+
+    @Language("sql")
+    String writeMapTileBlob();
+
+    @Language("sql")
+    String lockMapTileBlobShared();
+
+    @Language("sql")
+    String lockMapTileBlobExclusive();
+
+    @Language("sql")
+    String findMapTileBlobReference();
+
+    @Language("sql")
+    String deleteMapTileBlob();
+
+    @Language("sql")
+    String selectUnusedMapTileBlobs();
 
     @Language("sql")
     String writeMeta();
@@ -52,7 +73,10 @@ public interface Dialect {
     String deleteMeta();
 
     @Language("sql")
-    String purgeMapTile();
+    String selectMapTileRanges();
+
+    @Language("sql")
+    String purgeMapTileRange();
 
     @Language("sql")
     String purgeMapMeta();
@@ -63,6 +87,12 @@ public interface Dialect {
     @Language("sql")
     String selectMapIds();
 
+    @Language("sql")
+    String selectMapTiles();
+
+    @Language("sql")
+    String selectMetaKeys();
+
     @Language("sql")
     String initializeStorageMeta();
 
@@ -84,6 +114,18 @@ public interface Dialect {
     @Language("sql")
     String initializeMapTile();
 
+    @Language("sql")
+    String initializeMapTileBlob();
+
+    @Language("sql")
+    String updateMapTileAddDataHash();
+
+    @Language("sql")
+    String initializeMapTileDataHashIndex();
+
+    @Language("sql")
+    String initializeMapTileLodIndex();
+
     @Language("sql")
     String updateStorageMeta(); // can be use twice in init
 
@@ -42,48 +42,106 @@ public String writeMapTile() {
     @Override
     @Language("MySQL")
     public String readMapTile() {
-        return "SELECT t.`data` " +
+        return "SELECT t.`changed`, t.`data_hash`, b.`hash` as 'blob_hash', COALESCE(b.`data`, t.`data`) as 'data' " +
                 "FROM `bluemap_map_tile` t " +
-                " INNER JOIN `bluemap_map` m " +
-                "  ON t.`map` = m.`id` " +
-                " INNER JOIN `bluemap_map_tile_compression` c " +
-                "  ON t.`compression` = c.`id` " +
-                "WHERE m.`map_id` = ? " +
+                " LEFT JOIN `bluemap_map_tile_blob` b " +
+                "  ON t.`data_hash` = b.`hash` " +
+                "WHERE t.`map` = ? " +
                 "AND t.`lod` = ? " +
                 "AND t.`x` = ? " +
                 "AND t.`z` = ? " +
-                "AND c.`compression` = ?";
+                "AND t.`compression` = ?";
     }
 
     @Override
     @Language("MySQL")
-    public String readMapTileInfo() {
-        return "SELECT t.`changed`, LENGTH(t.`data`) as 'size' " +
+    public String deleteMapTile() {
+        return "DELETE t " +
                 "FROM `bluemap_map_tile` t " +
                 " INNER JOIN `bluemap_map` m " +
                 "  ON t.`map` = m.`id` " +
-                " INNER JOIN `bluemap_map_tile_compression` c " +
-                "  ON t.`compression` = c.`id` " +
                 "WHERE m.`map_id` = ? " +
                 "AND t.`lod` = ? " +
                 "AND t.`x` = ? " +
-                "AND t.`z` = ? " +
-                "AND c.`compression` = ?";
+                "AND t.`z` = ?";
     }
 
     @Override
     @Language("MySQL")
-    public String deleteMapTile() {
-        return "DELETE t " +
+    public String writeMapTileHash() {
+        return "REPLACE INTO `bluemap_map_tile` (`map`, `lod`, `x`, `z`, `compression`, `data`, `data_hash`) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String readMapTileHash() {
+        return "SELECT t.`data_hash` " +
                 "FROM `bluemap_map_tile` t " +
-                " INNER JOIN `bluemap_map` m " +
-                "  ON t.`map` = m.`id` " +
-                "WHERE m.`map_id` = ? " +
+                "WHERE t.`map` = ? " +
                 "AND t.`lod` = ? " +
                 "AND t.`x` = ? " +
                 "AND t.`z` = ?";
     }
 
+    @Override
+    @Language("MySQL")
+    public String writeMapTileBlob() {
+        return "INSERT IGNORE INTO `bluemap_map_tile_blob` (`hash`, `data`) " +
+                "VALUES (?, ?)";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String lockMapTileBlobShared() {
+        return "SELECT b.`hash` " +
+                "FROM `bluemap_map_tile_blob` b " +
+                "WHERE b.`hash` = ? " +
+                "LOCK IN SHARE MODE";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String lockMapTileBlobExclusive() {
+        return "SELECT b.`hash` " +
+                "FROM `bluemap_map_tile_blob` b " +
+                "WHERE b.`hash` = ? " +
+                "FOR UPDATE";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String findMapTileBlobReference() {
+        // a locking read, so the latest committed state is read and not the snapshot of the transaction
+        return "SELECT 1 " +
+                "FROM `bluemap_map_tile` t " +
+                "WHERE t.`data_hash` = ? " +
+                "LIMIT 1 " +
+                "LOCK IN SHARE MODE";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String deleteMapTileBlob() {
+        return "DELETE " +
+                "FROM `bluemap_map_tile_blob` " +
+                "WHERE `hash` = ?";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String selectUnusedMapTileBlobs() {
+        return "SELECT b.`hash` " +
+                "FROM `bluemap_map_tile_blob` b " +
+                "WHERE NOT EXISTS (" +
+                " SELECT 1 " +
+                " FROM `bluemap_map_tile` t " +
+                " WHERE t.`data_hash` = b.`hash`" +
+                ") " +
+                "ORDER BY b.`hash` " +
+                "LIMIT ?";
+    }
+
     @Override
     @Language("MySQL")
     public String writeMeta() {
@@ -126,12 +184,22 @@ public String deleteMeta() {
 
     @Override
     @Language("MySQL")
-    public String purgeMapTile() {
-        return "DELETE t " +
-                "FROM `bluemap_map_tile` t " +
-                " INNER JOIN `bluemap_map` m " +
-                "  ON t.`map` = m.`id` " +
-                "WHERE m.`map_id` = ?";
+    public String selectMapTileRanges() {
+        return "SELECT `lod`, MIN(`x`) as 'min_x', MAX(`x`) as 'max_x', COUNT(*) as 'tile_count' " +
+                "FROM `bluemap_map_tile` " +
+                "WHERE `map` = ? " +
+                "GROUP BY `lod`";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String purgeMapTileRange() {
+        return "DELETE " +
+                "FROM `bluemap_map_tile` " +
+                "WHERE `map` = ? " +
+                "AND `lod` = ? " +
+                "AND `x` >= ? " +
+                "AND `x` <= ?";
     }
 
     @Override
@@ -158,6 +226,26 @@ public String selectMapIds() {
         return "SELECT `map_id` FROM `bluemap_map`";
     }
 
+    @Override
+    @Language("MySQL")
+    public String selectMapTiles() {
+        return "SELECT `x`, `z` " +
+                "FROM `bluemap_map_tile` " +
+                "WHERE `map` = ? " +
+                "AND `lod` = ? " +
+                "AND `compression` = ?";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String selectMetaKeys() {
+        return "SELECT t.`key` " +
+                "FROM `bluemap_map_meta` t " +
+                " INNER JOIN `bluemap_map` m " +
+                "  ON t.`map` = m.`id` " +
+                "WHERE m.`map_id` = ?";
+    }
+
     @Override
     @Language("MySQL")
     public String initializeStorageMeta() {
@@ -233,6 +321,37 @@ public String initializeMapTile() {
                 ") COLLATE 'utf8mb4_bin';";
     }
 
+    @Override
+    @Language("MySQL")
+    public String initializeMapTileBlob() {
+        return "CREATE TABLE `bluemap_map_tile_blob` (" +
+                "`hash` CHAR(64) NOT NULL," +
+                "`data` LONGBLOB NOT NULL," +
+                "PRIMARY KEY (`hash`)" +
+                ") COLLATE 'utf8mb4_bin';";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String updateMapTileAddDataHash() {
+        return "ALTER TABLE `bluemap_map_tile` " +
+                "ADD COLUMN `data_hash` CHAR(64) NULL DEFAULT NULL";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String initializeMapTileDataHashIndex() {
+        return "CREATE INDEX `bluemap_map_tile_data_hash` " +
+                "ON `bluemap_map_tile` (`data_hash`)";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String initializeMapTileLodIndex() {
+        return "CREATE INDEX `bluemap_map_tile_lod` " +
+                "ON `bluemap_map_tile` (`map`, `lod`, `compression`, `x`, `z`)";
+    }
+
     @Override
     @Language("MySQL")
     public String updateStorageMeta() {
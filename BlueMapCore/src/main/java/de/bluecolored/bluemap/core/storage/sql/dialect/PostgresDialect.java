@@ -37,53 +37,110 @@ public class PostgresDialect implements Dialect {
     public String writeMapTile() {
         return "INSERT INTO bluemap_map_tile (map, lod, x, z, compression, data) " +
                 "VALUES (?, ?, ?, ?, ?, ?) " +
-                "ON CONFLICT (map, lod, x, z) DO UPDATE SET compression = EXCLUDED.compression, data = EXCLUDED.data";
+                "ON CONFLICT (map, lod, x, z) DO UPDATE SET compression = EXCLUDED.compression, data = EXCLUDED.data, data_hash = NULL";
     }
 
     @Override
     @Language("PostgreSQL")
     public String readMapTile() {
-        return "SELECT t.data " +
+        return "SELECT t.changed, t.data_hash, b.hash as blob_hash, COALESCE(b.data, t.data) as data " +
                 "FROM bluemap_map_tile t " +
-                " INNER JOIN bluemap_map m " +
-                "  ON t.map = m.id " +
-                " INNER JOIN bluemap_map_tile_compression c " +
-                "  ON t.compression = c.id " +
-                "WHERE m.map_id = ? " +
+                " LEFT JOIN bluemap_map_tile_blob b " +
+                "  ON t.data_hash = b.hash " +
+                "WHERE t.map = ? " +
                 "AND t.lod = ? " +
                 "AND t.x = ? " +
                 "AND t.z = ? " +
-                "AND c.compression = ?";
+                "AND t.compression = ?";
     }
 
     @Override
     @Language("PostgreSQL")
-    public String readMapTileInfo() {
-        return "SELECT t.changed, OCTET_LENGTH(t.data) as size " +
-                "FROM bluemap_map_tile t " +
-                " INNER JOIN bluemap_map m " +
-                "  ON t.map = m.id " +
-                " INNER JOIN bluemap_map_tile_compression c " +
-                "  ON t.compression = c.id " +
-                "WHERE m.map_id = ? " +
+    public String deleteMapTile() {
+        return "DELETE FROM bluemap_map_tile t " +
+                "USING bluemap_map m " +
+                "WHERE t.map = m.id " +
+                "AND m.map_id = ? " +
                 "AND t.lod = ? " +
                 "AND t.x = ? " +
-                "AND t.z = ? " +
-                "AND c.compression = ?";
+                "AND t.z = ?";
     }
 
     @Override
     @Language("PostgreSQL")
-    public String deleteMapTile() {
-        return "DELETE FROM bluemap_map_tile t " +
-                "USING bluemap_map m " +
-                "WHERE t.map = m.id " +
-                "AND m.map_id = ? " +
+    public String writeMapTileHash() {
+        return "INSERT INTO bluemap_map_tile (map, lod, x, z, compression, data, data_hash) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+                "ON CONFLICT (map, lod, x, z) DO UPDATE SET compression = EXCLUDED.compression, data = EXCLUDED.data, data_hash = EXCLUDED.data_hash";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String readMapTileHash() {
+        return "SELECT t.data_hash " +
+                "FROM bluemap_map_tile t " +
+                "WHERE t.map = ? " +
                 "AND t.lod = ? " +
                 "AND t.x = ? " +
                 "AND t.z = ?";
     }
 
+    @Override
+    @Language("PostgreSQL")
+    public String writeMapTileBlob() {
+        return "INSERT INTO bluemap_map_tile_blob (hash, data) " +
+                "VALUES (?, ?) " +
+                "ON CONFLICT (hash) DO NOTHING";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String lockMapTileBlobShared() {
+        return "SELECT b.hash " +
+                "FROM bluemap_map_tile_blob b " +
+                "WHERE b.hash = ? " +
+                "FOR SHARE";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String lockMapTileBlobExclusive() {
+        return "SELECT b.hash " +
+                "FROM bluemap_map_tile_blob b " +
+                "WHERE b.hash = ? " +
+                "FOR UPDATE";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String findMapTileBlobReference() {
+        return "SELECT 1 " +
+                "FROM bluemap_map_tile t " +
+                "WHERE t.data_hash = ? " +
+                "LIMIT 1";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String deleteMapTileBlob() {
+        return "DELETE FROM bluemap_map_tile_blob " +
+                "WHERE hash = ?";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String selectUnusedMapTileBlobs() {
+        return "SELECT b.hash " +
+                "FROM bluemap_map_tile_blob b " +
+                "WHERE NOT EXISTS (" +
+                " SELECT 1 " +
+                " FROM bluemap_map_tile t " +
+                " WHERE t.data_hash = b.hash" +
+                ") " +
+                "ORDER BY b.hash " +
+                "LIMIT ?";
+    }
+
     @Override
     @Language("PostgreSQL")
     public String writeMeta() {
@@ -126,11 +183,21 @@ public String deleteMeta() {
 
     @Override
     @Language("PostgreSQL")
-    public String purgeMapTile() {
-        return "DELETE FROM bluemap_map_tile t " +
-                "USING bluemap_map m " +
-                "WHERE t.map = m.id " +
-                "AND m.map_id = ?";
+    public String selectMapTileRanges() {
+        return "SELECT lod, MIN(x) as min_x, MAX(x) as max_x, COUNT(*) as tile_count " +
+                "FROM bluemap_map_tile " +
+                "WHERE map = ? " +
+                "GROUP BY lod";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String purgeMapTileRange() {
+        return "DELETE FROM bluemap_map_tile " +
+                "WHERE map = ? " +
+                "AND lod = ? " +
+                "AND x >= ? " +
+                "AND x <= ?";
     }
 
     @Override
@@ -155,6 +222,26 @@ public String selectMapIds() {
         return "SELECT map_id FROM bluemap_map";
     }
 
+    @Override
+    @Language("PostgreSQL")
+    public String selectMapTiles() {
+        return "SELECT x, z " +
+                "FROM bluemap_map_tile " +
+                "WHERE map = ? " +
+                "AND lod = ? " +
+                "AND compression = ?";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String selectMetaKeys() {
+        return "SELECT t.key " +
+                "FROM bluemap_map_meta t " +
+                " INNER JOIN bluemap_map m " +
+                "  ON t.map = m.id " +
+                "WHERE m.map_id = ?";
+    }
+
     @Override
     @Language("PostgreSQL")
     public String initializeStorageMeta() {
@@ -223,6 +310,36 @@ public String initializeMapTile() {
                 ")";
     }
 
+    @Override
+    @Language("PostgreSQL")
+    public String initializeMapTileBlob() {
+        return "CREATE TABLE IF NOT EXISTS bluemap_map_tile_blob (" +
+                "hash CHAR(64) PRIMARY KEY, " +
+                "data BYTEA NOT NULL" +
+                ")";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String updateMapTileAddDataHash() {
+        return "ALTER TABLE bluemap_map_tile " +
+                "ADD COLUMN IF NOT EXISTS data_hash CHAR(64)";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String initializeMapTileDataHashIndex() {
+        return "CREATE INDEX IF NOT EXISTS bluemap_map_tile_data_hash " +
+                "ON bluemap_map_tile (data_hash)";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String initializeMapTileLodIndex() {
+        return "CREATE INDEX IF NOT EXISTS bluemap_map_tile_lod " +
+                "ON bluemap_map_tile (map, lod, compression, x, z)";
+    }
+
     @Override
     @Language("PostgreSQL")
     public String updateStorageMeta() {
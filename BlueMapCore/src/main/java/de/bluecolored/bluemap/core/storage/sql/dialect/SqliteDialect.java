@@ -42,33 +42,15 @@ public String writeMapTile() {
     @Override
     @Language("sqlite")
     public String readMapTile() {
-        return "SELECT t.`data` " +
+        return "SELECT t.`changed`, t.`data_hash`, b.`hash` as 'blob_hash', COALESCE(b.`data`, t.`data`) as 'data' " +
                 "FROM `bluemap_map_tile` t " +
-                " INNER JOIN `bluemap_map` m " +
-                "  ON t.`map` = m.`id` " +
-                " INNER JOIN `bluemap_map_tile_compression` c " +
-                "  ON t.`compression` = c.`id` " +
-                "WHERE m.`map_id` = ? " +
-                "AND t.`lod` = ? " +
-                "AND t.`x` = ? " +
-                "AND t.`z` = ? " +
-                "AND c.`compression` = ?";
-    }
-
-    @Override
-    @Language("sqlite")
-    public String readMapTileInfo() {
-        return "SELECT t.`changed`, LENGTH(t.`data`) as 'size' " +
-                "FROM `bluemap_map_tile` t " +
-                " INNER JOIN `bluemap_map` m " +
-                "  ON t.`map` = m.`id` " +
-                " INNER JOIN `bluemap_map_tile_compression` c " +
-                "  ON t.`compression` = c.`id` " +
-                "WHERE m.`map_id` = ? " +
+                " LEFT JOIN `bluemap_map_tile_blob` b " +
+                "  ON t.`data_hash` = b.`hash` " +
+                "WHERE t.`map` = ? " +
                 "AND t.`lod` = ? " +
                 "AND t.`x` = ? " +
                 "AND t.`z` = ? " +
-                "AND c.`compression` = ?";
+                "AND t.`compression` = ?";
     }
 
     @Override
@@ -86,6 +68,78 @@ public String deleteMapTile() {
                 "AND `z` = ? ";
     }
 
+    @Override
+    @Language("sqlite")
+    public String writeMapTileHash() {
+        return "REPLACE INTO `bluemap_map_tile` (`map`, `lod`, `x`, `z`, `compression`, `data`, `data_hash`) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    }
+
+    @Override
+    @Language("sqlite")
+    public String readMapTileHash() {
+        return "SELECT t.`data_hash` " +
+                "FROM `bluemap_map_tile` t " +
+                "WHERE t.`map` = ? " +
+                "AND t.`lod` = ? " +
+                "AND t.`x` = ? " +
+                "AND t.`z` = ?";
+    }
+
+    @Override
+    @Language("sqlite")
+    public String writeMapTileBlob() {
+        return "INSERT OR IGNORE INTO `bluemap_map_tile_blob` (`hash`, `data`) " +
+                "VALUES (?, ?)";
+    }
+
+    @Override
+    @Language("sqlite")
+    public String lockMapTileBlobShared() {
+        // sqlite has no row-locks, all writing transactions are serialized anyway
+        return "SELECT b.`hash` " +
+                "FROM `bluemap_map_tile_blob` b " +
+                "WHERE b.`hash` = ?";
+    }
+
+    @Override
+    @Language("sqlite")
+    public String lockMapTileBlobExclusive() {
+        return "SELECT b.`hash` " +
+                "FROM `bluemap_map_tile_blob` b " +
+                "WHERE b.`hash` = ?";
+    }
+
+    @Override
+    @Language("sqlite")
+    public String findMapTileBlobReference() {
+        return "SELECT 1 " +
+                "FROM `bluemap_map_tile` t " +
+                "WHERE t.`data_hash` = ? " +
+                "LIMIT 1";
+    }
+
+    @Override
+    @Language("sqlite")
+    public String deleteMapTileBlob() {
+        return "DELETE FROM `bluemap_map_tile_blob` " +
+                "WHERE `hash` = ?";
+    }
+
+    @Override
+    @Language("sqlite")
+    public String selectUnusedMapTileBlobs() {
+        return "SELECT b.`hash` " +
+                "FROM `bluemap_map_tile_blob` b " +
+                "WHERE NOT EXISTS (" +
+                " SELECT 1 " +
+                " FROM `bluemap_map_tile` t " +
+                " WHERE t.`data_hash` = b.`hash`" +
+                ") " +
+                "ORDER BY b.`hash` " +
+                "LIMIT ?";
+    }
+
     @Override
     @Language("sqlite")
     public String writeMeta() {
@@ -130,14 +184,21 @@ public String deleteMeta() {
 
     @Override
     @Language("sqlite")
-    public String purgeMapTile() {
+    public String selectMapTileRanges() {
+        return "SELECT `lod`, MIN(`x`) as 'min_x', MAX(`x`) as 'max_x', COUNT(*) as 'tile_count' " +
+                "FROM `bluemap_map_tile` " +
+                "WHERE `map` = ? " +
+                "GROUP BY `lod`";
+    }
+
+    @Override
+    @Language("sqlite")
+    public String purgeMapTileRange() {
         return "DELETE FROM `bluemap_map_tile` " +
-                "WHERE `map` IN( " +
-                " SELECT `id` " +
-                " FROM `bluemap_map` " +
-                " WHERE `map_id` = ? " +
-                " LIMIT 1 " +
-                ")";
+                "WHERE `map` = ? " +
+                "AND `lod` = ? " +
+                "AND `x` >= ? " +
+                "AND `x` <= ?";
     }
 
     @Override
@@ -166,6 +227,26 @@ public String selectMapIds() {
         return "SELECT `map_id` FROM `bluemap_map`";
     }
 
+    @Override
+    @Language("sqlite")
+    public String selectMapTiles() {
+        return "SELECT `x`, `z` " +
+                "FROM `bluemap_map_tile` " +
+                "WHERE `map` = ? " +
+                "AND `lod` = ? " +
+                "AND `compression` = ?";
+    }
+
+    @Override
+    @Language("sqlite")
+    public String selectMetaKeys() {
+        return "SELECT t.`key` " +
+                "FROM `bluemap_map_meta` t " +
+                " INNER JOIN `bluemap_map` m " +
+                "  ON t.`map` = m.`id` " +
+                "WHERE m.`map_id` = ?";
+    }
+
     @Override
     @Language("sqlite")
     public String initializeStorageMeta() {
@@ -239,6 +320,37 @@ public String initializeMapTile() {
                 ");";
     }
 
+    @Override
+    @Language("sqlite")
+    public String initializeMapTileBlob() {
+        return "CREATE TABLE `bluemap_map_tile_blob` (" +
+                "`hash` CHAR(64) NOT NULL," +
+                "`data` LONGBLOB NOT NULL," +
+                "PRIMARY KEY (`hash`)" +
+                ")";
+    }
+
+    @Override
+    @Language("sqlite")
+    public String updateMapTileAddDataHash() {
+        return "ALTER TABLE `bluemap_map_tile` " +
+                "ADD COLUMN `data_hash` CHAR(64) DEFAULT NULL";
+    }
+
+    @Override
+    @Language("sqlite")
+    public String initializeMapTileDataHashIndex() {
+        return "CREATE INDEX `bluemap_map_tile_data_hash` " +
+                "ON `bluemap_map_tile` (`data_hash`)";
+    }
+
+    @Override
+    @Language("sqlite")
+    public String initializeMapTileLodIndex() {
+        return "CREATE INDEX `bluemap_map_tile_lod` " +
+                "ON `bluemap_map_tile` (`map`, `lod`, `compression`, `x`, `z`)";
+    }
+
     @Override
     @Language("sqlite")
     public String updateStorageMeta() {
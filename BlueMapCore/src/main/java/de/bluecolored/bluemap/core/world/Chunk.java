@@ -27,6 +27,8 @@
 import de.bluecolored.bluemap.core.world.block.entity.BlockEntity;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.function.Predicate;
+
 public interface Chunk {
 
     Chunk EMPTY_CHUNK = new Chunk() {};
@@ -75,5 +77,13 @@ default boolean hasOceanFloorHeights() {
 
     default int getOceanFloorY(int x, int z) { return 0; }
 
+    /**
+     * Returns <code>true</code> if it is known that <b>every</b> block in the 16x16x16 section with the given section-y
+     * matches the given predicate.<br>
+     * Sections that are not present in this chunk are treated as if they are only containing AIR.<br>
+     * Implementations only need to be conservative: returning <code>false</code> is always valid.
+     */
+    default boolean isSectionMatching(int sectionY, Predicate<BlockState> predicate) { return false; }
+
     default @Nullable BlockEntity getBlockEntity(int x, int y, int z) { return null; };
 }
@@ -28,6 +28,9 @@
 import de.bluecolored.bluemap.core.resources.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.world.World;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class BlockNeighborhood<T extends BlockNeighborhood<T>> extends ExtendedBlock<T> {
 
     private static final int DIAMETER = 8;
@@ -38,6 +41,10 @@
 
     private int thisIndex;
 
+    private final Map<Long, SectionPropertyMask> propertyMasks = new HashMap<>();
+    private World propertyMasksWorld;
+    private SectionPropertyMask propertyMask;
+
     public BlockNeighborhood(ExtendedBlock<?> center) {
         super(center.getResourcePack(), center.getRenderSettings(), null, 0, 0, 0);
         copy(center);
@@ -88,6 +95,54 @@ public ExtendedBlock<?> getNeighborBlock(int dx, int dy, int dz) {
         );
     }
 
+    /**
+     * Tests if the neighbor-block at the given offset is culling, using the {@link SectionPropertyMask} of the current section
+     * instead of looking up the block.
+     */
+    public boolean isNeighborCulling(int dx, int dy, int dz) {
+        int x = getX() + dx, y = getY() + dy, z = getZ() + dz;
+
+        SectionPropertyMask mask = getPropertyMask();
+        if (!mask.contains(x, y, z)) return getBlock(x, y, z).getProperties().isCulling();
+        return mask.isCulling(x, y, z);
+    }
+
+    /**
+     * Tests if the neighbor-block at the given offset is occluding, using the {@link SectionPropertyMask} of the current section
+     * instead of looking up the block.
+     */
+    public boolean isNeighborOccluding(int dx, int dy, int dz) {
+        int x = getX() + dx, y = getY() + dy, z = getZ() + dz;
+
+        SectionPropertyMask mask = getPropertyMask();
+        if (!mask.contains(x, y, z)) return getBlock(x, y, z).getProperties().isOccluding();
+        return mask.isOccluding(x, y, z);
+    }
+
+    private SectionPropertyMask getPropertyMask() {
+        int sectionX = getX() >> 4, sectionY = getY() >> 4, sectionZ = getZ() >> 4;
+
+        if (
+                propertyMask != null &&
+                propertyMask.getSectionX() == sectionX &&
+                propertyMask.getSectionY() == sectionY &&
+                propertyMask.getSectionZ() == sectionZ &&
+                propertyMasksWorld == getWorld()
+        ) return propertyMask;
+
+        if (propertyMasksWorld != getWorld()) {
+            propertyMasks.clear();
+            propertyMasksWorld = getWorld();
+        }
+
+        long key = (long) (sectionX & 0x3FFFFF) << 42 | (long) (sectionZ & 0x3FFFFF) << 20 | sectionY & 0xFFFFF;
+        propertyMask = propertyMasks.computeIfAbsent(key, k -> SectionPropertyMask.create(
+                getResourcePack(), getRenderSettings(), getWorld(),
+                sectionX, sectionY, sectionZ
+        ));
+        return propertyMask;
+    }
+
     private ExtendedBlock<?> getBlock(int x, int y, int z) {
         int i = index(x, y, z);
         if (i == thisIndex()) return this;
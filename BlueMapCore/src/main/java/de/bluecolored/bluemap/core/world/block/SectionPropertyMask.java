@@ -0,0 +1,163 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world.block;
+
+import de.bluecolored.bluemap.core.map.hires.RenderSettings;
+import de.bluecolored.bluemap.core.resources.resourcepack.ResourcePack;
+import de.bluecolored.bluemap.core.world.BlockProperties;
+import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.Chunk;
+import de.bluecolored.bluemap.core.world.World;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Holds the "culling" and "occluding" {@link BlockProperties} of all blocks in a 16x16x16 section
+ * <i>and</i> a one block wide border around it as bitsets.<br>
+ * This way the properties of all direct neighbors of a block in this section can be tested
+ * without looking up the neighbor-blocks.
+ */
+public class SectionPropertyMask {
+
+    private static final int SIZE = 16 + 2;
+    private static final int SIZE_SQUARED = SIZE * SIZE;
+    private static final int LENGTH = SIZE * SIZE * SIZE;
+
+    private final int sectionX, sectionY, sectionZ;
+
+    private final long[] culling = new long[(LENGTH + 63) >> 6];
+    private final long[] occluding = new long[(LENGTH + 63) >> 6];
+
+    private SectionPropertyMask(int sectionX, int sectionY, int sectionZ) {
+        this.sectionX = sectionX;
+        this.sectionY = sectionY;
+        this.sectionZ = sectionZ;
+    }
+
+    public int getSectionX() {
+        return sectionX;
+    }
+
+    public int getSectionY() {
+        return sectionY;
+    }
+
+    public int getSectionZ() {
+        return sectionZ;
+    }
+
+    /**
+     * Tests if the block at the given world-position is culling.<br>
+     * The position has to be inside this section or its one block wide border.
+     */
+    public boolean isCulling(int x, int y, int z) {
+        return get(culling, index(x, y, z));
+    }
+
+    /**
+     * Tests if the block at the given world-position is occluding.<br>
+     * The position has to be inside this section or its one block wide border.
+     */
+    public boolean isOccluding(int x, int y, int z) {
+        return get(occluding, index(x, y, z));
+    }
+
+    /**
+     * Tests if the given world-position is inside this section or its one block wide border.
+     */
+    public boolean contains(int x, int y, int z) {
+        int lx = x - (sectionX << 4);
+        int ly = y - (sectionY << 4);
+        int lz = z - (sectionZ << 4);
+
+        return
+                lx >= -1 && lx <= 16 &&
+                ly >= -1 && ly <= 16 &&
+                lz >= -1 && lz <= 16;
+    }
+
+    private int index(int x, int y, int z) {
+        return
+                (x - (sectionX << 4) + 1) * SIZE_SQUARED +
+                (y - (sectionY << 4) + 1) * SIZE +
+                (z - (sectionZ << 4) + 1);
+    }
+
+    private static boolean get(long[] bits, int index) {
+        return (bits[index >> 6] & (1L << index)) != 0;
+    }
+
+    private static void set(long[] bits, int index) {
+        bits[index >> 6] |= 1L << index;
+    }
+
+    /**
+     * Creates the mask for the section at the given section-position (section-coordinates are block-coordinates / 16).<br>
+     * Blocks outside the render-boundaries are treated like AIR if {@link RenderSettings#isRenderEdges()} is enabled,
+     * just like {@link ExtendedBlock#getBlockState()} does.
+     */
+    public static SectionPropertyMask create(
+            ResourcePack resourcePack,
+            RenderSettings renderSettings,
+            World world,
+            int sectionX, int sectionY, int sectionZ
+    ) {
+        SectionPropertyMask mask = new SectionPropertyMask(sectionX, sectionY, sectionZ);
+
+        // the same few block-states are showing up over and over again in a section
+        Map<BlockState, BlockProperties> propertiesCache = new IdentityHashMap<>();
+
+        boolean renderEdges = renderSettings.isRenderEdges();
+        int minX = (sectionX << 4) - 1, minY = (sectionY << 4) - 1, minZ = (sectionZ << 4) - 1;
+        int x, y, z, index;
+        for (int dx = 0; dx < SIZE; dx++) {
+            x = minX + dx;
+            for (int dz = 0; dz < SIZE; dz++) {
+                z = minZ + dz;
+
+                Chunk chunk = world.getChunkAtBlock(x, z);
+                for (int dy = 0; dy < SIZE; dy++) {
+                    y = minY + dy;
+
+                    BlockState blockState;
+                    if (renderEdges && !renderSettings.isInsideRenderBoundaries(x, y, z))
+                        blockState = BlockState.AIR;
+                    else
+                        blockState = chunk.getBlockState(x, y, z);
+
+                    BlockProperties properties = propertiesCache.computeIfAbsent(blockState, resourcePack::getBlockProperties);
+
+                    index = dx * SIZE_SQUARED + dy * SIZE + dz;
+                    if (properties.isCulling()) set(mask.culling, index);
+                    if (properties.isOccluding()) set(mask.occluding, index);
+                }
+            }
+        }
+
+        return mask;
+    }
+
+}
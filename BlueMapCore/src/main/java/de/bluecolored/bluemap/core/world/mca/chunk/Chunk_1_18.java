@@ -40,6 +40,7 @@
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class Chunk_1_18 extends MCAChunk {
@@ -193,6 +194,14 @@ public int getOceanFloorY(int x, int z) {
         return oceanFloorHeights.get((z & 0xF) << 4 | x & 0xF) + worldMinY;
     }
 
+    @Override
+    public boolean isSectionMatching(int sectionY, Predicate<BlockState> predicate) {
+        Section section = getSection(sectionY);
+        if (section == null) return predicate.test(BlockState.AIR);
+
+        return section.isMatching(predicate);
+    }
+
     @Override
     public @Nullable BlockEntity getBlockEntity(int x, int y, int z) {
         return blockEntities.get((long) y << 8 | (x & 0xF) << 4 | z & 0xF);
@@ -266,6 +275,16 @@ public LightData getLightData(int x, int y, int z, LightData target) {
             );
         }
 
+        public boolean isMatching(Predicate<BlockState> predicate) {
+            if (blockPalette.length == 0) return predicate.test(BlockState.AIR);
+
+            for (BlockState blockState : blockPalette) {
+                if (!predicate.test(blockState)) return false;
+            }
+
+            return true;
+        }
+
         public int getSectionY() {
             return sectionY;
         }
@@ -0,0 +1,116 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import com.flowpowered.math.vector.Vector2i;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TileChangeLogTest {
+
+    @Test
+    public void testCollectChanges() {
+        TileChangeLog log = new TileChangeLog(8);
+        assertEquals(0, log.getNextSequence());
+
+        log.add(0, new Vector2i(1, 2));
+        log.add(1, new Vector2i(-3, 4));
+        assertEquals(2, log.getNextSequence());
+
+        List<Vector2i> tiles = new ArrayList<>();
+        List<Integer> lods = new ArrayList<>();
+        assertTrue(log.collectChanges(0, (lod, x, z, timestamp) -> {
+            lods.add(lod);
+            tiles.add(new Vector2i(x, z));
+        }));
+        assertEquals(List.of(0, 1), lods);
+        assertEquals(List.of(new Vector2i(1, 2), new Vector2i(-3, 4)), tiles);
+
+        tiles.clear();
+        assertTrue(log.collectChanges(1, (lod, x, z, timestamp) -> tiles.add(new Vector2i(x, z))));
+        assertEquals(List.of(new Vector2i(-3, 4)), tiles);
+
+        tiles.clear();
+        assertTrue(log.collectChanges(2, (lod, x, z, timestamp) -> tiles.add(new Vector2i(x, z))));
+        assertTrue(tiles.isEmpty());
+
+        assertFalse(log.collectChanges(3, (lod, x, z, timestamp) -> fail()));
+        assertFalse(log.collectChanges(-1, (lod, x, z, timestamp) -> fail()));
+    }
+
+    @Test
+    public void testCoalesceRewrites() {
+        TileChangeLog log = new TileChangeLog(4);
+
+        // rewriting the same tiles over and over never overflows the log
+        for (int i = 0; i < 100; i++) {
+            log.add(0, new Vector2i(i % 3, 0));
+        }
+        log.add(1, new Vector2i(0, 0));
+        assertEquals(101, log.getNextSequence());
+        assertTrue(log.getIncompleteLods(0).isEmpty());
+
+        List<Vector2i> tiles = new ArrayList<>();
+        List<Integer> lods = new ArrayList<>();
+        assertTrue(log.collectChanges(0, (lod, x, z, timestamp) -> {
+            lods.add(lod);
+            tiles.add(new Vector2i(x, z));
+        }));
+        assertEquals(List.of(0, 0, 0, 1), lods);
+        assertEquals(List.of(new Vector2i(1, 0), new Vector2i(2, 0), new Vector2i(0, 0), new Vector2i(0, 0)), tiles);
+
+        // only the tiles written since then, each once
+        tiles.clear();
+        assertTrue(log.collectChanges(98, (lod, x, z, timestamp) -> tiles.add(new Vector2i(x, z))));
+        assertEquals(List.of(new Vector2i(2, 0), new Vector2i(0, 0), new Vector2i(0, 0)), tiles);
+    }
+
+    @Test
+    public void testOverflow() {
+        TileChangeLog log = new TileChangeLog(8);
+        log.add(1, new Vector2i(0, 0));
+        for (int i = 0; i < 20; i++) {
+            log.add(0, new Vector2i(i, 0));
+        }
+
+        // the lod 1 tile (sequence 0) and lod 0 tiles 0 to 11 (sequence 1 to 12) have been dropped
+        assertEquals(List.of(0, 1), List.copyOf(log.getIncompleteLods(0)));
+        assertEquals(List.of(0), List.copyOf(log.getIncompleteLods(1)));
+        assertEquals(List.of(0), List.copyOf(log.getIncompleteLods(12)));
+        assertTrue(log.getIncompleteLods(13).isEmpty());
+
+        // changes of incomplete lods are not listed
+        assertTrue(log.collectChanges(12, (lod, x, z, timestamp) -> fail()));
+
+        List<Integer> xs = new ArrayList<>();
+        assertTrue(log.collectChanges(13, (lod, x, z, timestamp) -> xs.add(x)));
+        assertEquals(List.of(12, 13, 14, 15, 16, 17, 18, 19), xs);
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import com.flowpowered.math.vector.Vector2i;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TileHashIndexTest {
+
+    @Test
+    public void testUpdate() {
+        TileHashIndex index = new TileHashIndex();
+        byte[] data1 = {1, 2, 3};
+        byte[] data2 = {1, 2, 4};
+
+        assertTrue(index.update(0, new Vector2i(0, 0), data1));
+        assertFalse(index.update(0, new Vector2i(0, 0), data1));
+        assertTrue(index.update(1, new Vector2i(0, 0), data1));
+        assertTrue(index.update(0, new Vector2i(-1, 0), data1));
+        assertTrue(index.update(0, new Vector2i(0, 0), data2));
+        assertFalse(index.update(0, new Vector2i(0, 0), data2));
+
+        index.remove(0, new Vector2i(0, 0));
+        assertTrue(index.update(0, new Vector2i(0, 0), data2));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void testGrowAndRemove() {
+        TileHashIndex index = new TileHashIndex();
+        byte[] data = {42};
+
+        for (int x = -50; x < 50; x++) {
+            for (int z = -50; z < 50; z++) {
+                assertTrue(index.update(0, new Vector2i(x, z), data));
+            }
+        }
+        assertEquals(10000, index.size());
+
+        for (int x = -50; x < 50; x += 2) {
+            for (int z = -50; z < 50; z++) {
+                index.remove(0, new Vector2i(x, z));
+            }
+        }
+        assertEquals(5000, index.size());
+
+        for (int x = -50; x < 50; x++) {
+            for (int z = -50; z < 50; z++) {
+                assertEquals(x % 2 == 0, index.update(0, new Vector2i(x, z), data));
+            }
+        }
+    }
+
+    @Test
+    public void testSaveLoad() throws IOException {
+        TileHashIndex index = new TileHashIndex();
+        for (int i = 0; i < 2000; i++) {
+            index.update(i % 3, new Vector2i(i, -i), new byte[]{(byte) i});
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.save(out, "file/gzip");
+
+        TileHashIndex loaded = new TileHashIndex();
+        assertTrue(loaded.load(new ByteArrayInputStream(out.toByteArray()), "file/gzip"));
+
+        assertEquals(2000, loaded.size());
+        for (int i = 0; i < 2000; i++) {
+            assertFalse(loaded.update(i % 3, new Vector2i(i, -i), new byte[]{(byte) i}));
+        }
+    }
+
+    @Test
+    public void testLoadDifferentTileFormat() throws IOException {
+        TileHashIndex index = new TileHashIndex();
+        index.update(0, new Vector2i(0, 0), new byte[]{1});
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.save(out, "file/gzip");
+
+        // the tiles would no longer be found with a different compression, so none of them must be skipped
+        TileHashIndex loaded = new TileHashIndex();
+        loaded.update(1, new Vector2i(0, 0), new byte[]{1});
+        assertFalse(loaded.load(new ByteArrayInputStream(out.toByteArray()), "file/zstd"));
+        assertEquals(0, loaded.size());
+        assertTrue(loaded.update(0, new Vector2i(0, 0), new byte[]{1}));
+    }
+
+}
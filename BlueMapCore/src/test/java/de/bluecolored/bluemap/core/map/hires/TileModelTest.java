@@ -0,0 +1,86 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.hires;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TileModelTest {
+
+    @Test
+    public void testSort() {
+        int[] materials = {3, 1, 2, 1, 0, 3, 2, 1, 0};
+
+        TileModel model = new TileModel(2);
+        for (int i = 0; i < materials.length; i++) {
+            int face = model.add(1);
+            model.setMaterialIndex(face, materials[i]);
+            model.setPositions(face, i, i, i, i, i, i, i, i, i);
+            model.setSunlight(face, i);
+        }
+
+        model.sort();
+
+        assertEquals(materials.length, model.size());
+
+        int lastMaterial = -1, lastFace = -1;
+        for (int face = 0; face < model.size(); face++) {
+            int material = model.materialIndex[face];
+            int originalFace = (int) model.position[face * TileModel.FI_POSITION];
+
+            // faces are sorted by material
+            assertEquals(materials[originalFace], material);
+            assertTrue(material >= lastMaterial);
+
+            // and the sort is stable
+            if (material == lastMaterial) assertTrue(originalFace > lastFace);
+
+            // all attributes have been moved together
+            assertEquals(originalFace, model.sunlight[face]);
+            assertEquals(originalFace, (int) model.position[face * TileModel.FI_POSITION + 8]);
+
+            lastMaterial = material;
+            lastFace = originalFace;
+        }
+    }
+
+    @Test
+    public void testSortAfterGrow() {
+        TileModel model = new TileModel(1);
+        model.setMaterialIndex(model.add(1), 1);
+        model.setMaterialIndex(model.add(1), 0);
+        model.sort();
+
+        for (int i = 0; i < 10; i++) model.setMaterialIndex(model.add(1), 10 - i);
+        model.sort();
+
+        for (int face = 1; face < model.size(); face++) {
+            assertTrue(model.materialIndex[face - 1] <= model.materialIndex[face]);
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TileDictionaryTest {
+
+    @Test
+    public void testRoundTripWithoutDictionary() throws IOException {
+        byte[] data = createSample(new Random(0));
+        assertArrayEquals(data, decompress(compress(data, null), null));
+    }
+
+    @Test
+    public void testRoundTripWithDictionary() throws IOException {
+        Random random = new Random(1);
+        TileDictionary dictionary = TileDictionary.train(createSamples(random, 200), TileDictionary.MAX_SIZE);
+        assertTrue(dictionary.getData().length > 0);
+        assertTrue(dictionary.getData().length <= TileDictionary.MAX_SIZE);
+
+        byte[] data = createSample(random);
+        byte[] compressed = compress(data, dictionary);
+        assertArrayEquals(data, decompress(compressed, id -> id == dictionary.getId() ? dictionary : null));
+
+        // the dictionary should improve the compression of similar data
+        assertTrue(compressed.length < compress(data, null).length);
+    }
+
+    @Test
+    public void testMissingDictionary() throws IOException {
+        Random random = new Random(2);
+        TileDictionary dictionary = TileDictionary.train(createSamples(random, 50), TileDictionary.MAX_SIZE);
+        byte[] compressed = compress(createSample(random), dictionary);
+
+        assertThrows(IOException.class, () -> decompress(compressed, id -> null));
+    }
+
+    private static byte[] compress(byte[] data, TileDictionary dictionary) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = TileDictionary.compress(bytes, dictionary)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] data, TileDictionary.Provider dictionaries) throws IOException {
+        try (InputStream in = TileDictionary.decompress(new ByteArrayInputStream(data), dictionaries)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static List<byte[]> createSamples(Random random, int count) {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < count; i++) samples.add(createSample(random));
+        return samples;
+    }
+
+    /**
+     * Creates some data with a lot of common sequences, similar to a tile-model
+     */
+    private static byte[] createSample(Random random) {
+        byte[][] parts = new byte[16][];
+        Random partRandom = new Random(42);
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new byte[24 + partRandom.nextInt(40)];
+            partRandom.nextBytes(parts[i]);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < 40; i++) {
+            out.writeBytes(parts[random.nextInt(parts.length)]);
+            out.write(random.nextInt(256));
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage.file;
+
+import com.flowpowered.math.vector.Vector2i;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TilePackTest {
+
+    @Test
+    public void testWriteRead(@TempDir Path dir) throws IOException {
+        TilePack pack = new TilePack(dir.resolve("tiles").resolve("x0z0.pack"));
+
+        Vector2i tile1 = new Vector2i(0, 0);
+        Vector2i tile2 = new Vector2i(-1, 31);
+        assertNull(pack.read(tile1));
+        assertNull(pack.readEntry(tile1));
+
+        pack.write(tile1, new byte[]{1, 2, 3});
+        pack.write(tile2, new byte[]{4, 5});
+        assertArrayEquals(new byte[]{1, 2, 3}, pack.read(tile1));
+        assertArrayEquals(new byte[]{4, 5}, pack.read(tile2));
+        assertEquals(3, pack.readEntry(tile1).getLength());
+
+        pack.write(tile1, new byte[]{6});
+        assertArrayEquals(new byte[]{6}, pack.read(tile1));
+        assertArrayEquals(new byte[]{4, 5}, pack.read(tile2));
+
+        pack.delete(tile1);
+        assertNull(pack.read(tile1));
+        assertArrayEquals(new byte[]{4, 5}, pack.read(tile2));
+
+        pack.delete(tile2);
+        assertFalse(Files.exists(pack.getFile()));
+    }
+
+    @Test
+    public void testCompaction(@TempDir Path dir) throws IOException {
+        TilePack pack = new TilePack(dir.resolve("x0z0.pack"));
+
+        Vector2i tile1 = new Vector2i(3, 4);
+        Vector2i tile2 = new Vector2i(5, 6);
+        pack.write(tile2, new byte[]{7, 8, 9});
+
+        byte[] data = new byte[512 * 1024];
+        for (int i = 0; i < 10; i++) {
+            data[0] = (byte) i;
+            pack.write(tile1, data);
+        }
+
+        // without compaction the file would contain 10 copies of the data
+        assertTrue(Files.size(pack.getFile()) < 4L * data.length);
+        assertEquals(9, pack.read(tile1)[0]);
+        assertEquals(data.length, pack.read(tile1).length);
+        assertArrayEquals(new byte[]{7, 8, 9}, pack.read(tile2));
+    }
+
+    @Test
+    public void testPackPosition() {
+        assertEquals(new Vector2i(0, 0), TilePack.getPackPosition(new Vector2i(31, 0)));
+        assertEquals(new Vector2i(1, -1), TilePack.getPackPosition(new Vector2i(32, -1)));
+        assertEquals(new Vector2i(-2, -1), TilePack.getPackPosition(new Vector2i(-33, -32)));
+    }
+
+}
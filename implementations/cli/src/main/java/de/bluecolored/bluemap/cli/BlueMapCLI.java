@@ -188,6 +188,34 @@ public void run() {
         }
     }
 
+    public void migrateStorage(BlueMapService blueMap, String sourceStorageId, String targetStorageId,
+                               @Nullable String mapsToMigrate) throws ConfigurationException, IOException, InterruptedException {
+
+        if (sourceStorageId.equals(targetStorageId))
+            throw new ConfigurationException("The source- and target-storage of a migration need to be different!");
+
+        Storage source = blueMap.getOrLoadStorage(sourceStorageId);
+        Storage target = blueMap.getOrLoadStorage(targetStorageId);
+
+        Collection<String> mapIds = new ArrayList<>(source.collectMapIds());
+        if (mapsToMigrate != null) {
+            Set<String> mapsToMigrateSet = Set.of(mapsToMigrate.split(","));
+            mapIds.removeIf(mapId -> !mapsToMigrateSet.contains(mapId));
+        }
+
+        Path checkpointFile = blueMap.getConfig().getCoreConfig().getData()
+                .resolve("migration-" + sourceStorageId + "-" + targetStorageId + ".properties");
+
+        Logger.global.logInfo("Migrating " + mapIds.size() + " maps from storage '" + sourceStorageId +
+                "' to storage '" + targetStorageId + "' ...");
+
+        StorageMigration migration = new StorageMigration(source, target, checkpointFile,
+                blueMap.getConfig().getCoreConfig().resolveRenderThreadCount());
+        migration.migrate(mapIds);
+
+        Logger.global.logInfo("Migration finished!");
+    }
+
     public void startWebserver(BlueMapService blueMap, boolean verbose) throws IOException, ConfigurationException, InterruptedException {
         Logger.global.logInfo("Starting webserver ...");
 
@@ -221,6 +249,7 @@ public void startWebserver(BlueMapService blueMap, boolean verbose) throws IOExc
         }
 
         HttpRequestHandler handler = new BlueMapResponseModifier(routingRequestHandler);
+        handler = config.getRateLimit().applyTo(handler);
         handler = new LoggingRequestHandler(
                 handler,
                 config.getLog().getFormat(),
@@ -230,6 +259,7 @@ public void startWebserver(BlueMapService blueMap, boolean verbose) throws IOExc
         try {
             //noinspection resource
             HttpServer webServer = new HttpServer(handler);
+            config.applyTo(webServer);
             webServer.bind(new InetSocketAddress(
                     config.resolveIp(),
                     config.getPort()
@@ -317,6 +347,14 @@ public static void main(String[] args) {
             blueMap = new BlueMapService(configs);
             boolean noActions = true;
 
+            if (cmd.hasOption("M")) {
+                noActions = false;
+
+                String[] storages = cmd.getOptionValues("M");
+                String mapsToMigrate = cmd.getOptionValue("m", null);
+                cli.migrateStorage(blueMap, storages[0], storages[1], mapsToMigrate);
+            }
+
             if (cmd.hasOption("w")) {
                 noActions = false;
 
@@ -431,6 +469,15 @@ private static Options createOptions() {
 
         options.addOption("u", "watch", false, "Watches for file-changes after rendering and updates the map");
 
+        options.addOption(
+                Option.builder("M")
+                .longOpt("migrate")
+                .numberOfArgs(2)
+                .argName("source-storage> <target-storage")
+                .desc("Copies all maps (or only the maps selected with -m) from one configured storage to another. An interrupted migration continues where it stopped.")
+                .build()
+            );
+
         options.addOption("V", "version", false, "Print the current BlueMap version");
 
         return options;
@@ -452,6 +499,8 @@ private static void printHelp() {
         footer.append("Start only the webserver without doing anything else\n\n");
         footer.append(command).append(" -ru\n");
         footer.append("Render the configured maps and then keeps watching the world-files and updates the map once something changed.\n\n");
+        footer.append(command).append(" -M file sql -m world\n");
+        footer.append("Copies the map 'world' from the storage 'file' to the storage 'sql'\n\n");
 
         formatter.printHelp(command + " [options]", "\nOptions:", createOptions(), "\n" + footer);
     }
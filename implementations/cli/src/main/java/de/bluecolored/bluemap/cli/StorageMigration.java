@@ -0,0 +1,267 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.cli;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.storage.CompressedInputStream;
+import de.bluecolored.bluemap.core.storage.Storage;
+import de.bluecolored.bluemap.core.util.FileHelper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies maps with all their tiles and meta-data from one storage to another.<br>
+ * <br>
+ * The tiles of each lod are sorted and copied in chunks by multiple threads, each reading the tiles from the source
+ * and writing them to the target storage. Tiles are only decompressed and compressed again if the target storage
+ * uses a different compression than the source storage.<br>
+ * Regularly the position of the last copied tile is saved to a checkpoint-file (after flushing the target storage),
+ * so an interrupted migration continues where it stopped instead of starting over.
+ */
+public class StorageMigration {
+
+    private static final int CHUNK_SIZE = 1024;
+    private static final long CHECKPOINT_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+    private static final long PROGRESS_LOG_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+    private static final String CHECKPOINT_DONE = "done";
+
+    private final Storage source;
+    private final Storage target;
+    private final Path checkpointFile;
+    private final int threadCount;
+
+    private final Properties checkpoint;
+    private long lastCheckpointSave;
+    private long lastProgressLog;
+
+    public StorageMigration(Storage source, Storage target, Path checkpointFile, int threadCount) {
+        this.source = source;
+        this.target = target;
+        this.checkpointFile = checkpointFile;
+        this.threadCount = Math.max(threadCount, 1);
+
+        this.checkpoint = new Properties();
+        this.lastCheckpointSave = 0;
+        this.lastProgressLog = 0;
+    }
+
+    public void migrate(Collection<String> mapIds) throws IOException, InterruptedException {
+        loadCheckpoint();
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "BlueMap-Migration-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // if the migration fails, the checkpoint is intentionally not saved again:
+        // only checkpoints that were saved right after a successful flush are known to be durable
+        try {
+            for (String mapId : mapIds) {
+                Logger.global.logInfo("Migrating map '" + mapId + "' ...");
+                migrateMeta(mapId);
+
+                // hires-tiles might not be saved, but all lowres-lods are present until the last one
+                int lod = 0;
+                while (migrateTiles(executor, mapId, lod) || lod == 0) lod++;
+
+                target.flush();
+                Logger.global.logInfo("Migrated map '" + mapId + "'.");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // the migration is complete, no need to keep the checkpoint
+        Files.deleteIfExists(checkpointFile);
+    }
+
+    private void migrateMeta(String mapId) throws IOException {
+        String checkpointKey = mapId + "/meta";
+        if (CHECKPOINT_DONE.equals(checkpoint.getProperty(checkpointKey))) return;
+
+        for (String name : source.collectMetaNames(mapId)) {
+            Optional<InputStream> optIn = source.readMeta(mapId, name);
+            if (optIn.isEmpty()) continue;
+
+            try (
+                    InputStream in = optIn.get();
+                    OutputStream out = target.writeMeta(mapId, name)
+            ) {
+                in.transferTo(out);
+            }
+        }
+
+        checkpoint.setProperty(checkpointKey, CHECKPOINT_DONE);
+        saveCheckpoint();
+    }
+
+    /**
+     * Copies all tiles of the lod that have not been copied already.
+     * @return false if the source storage has no tiles for this lod
+     */
+    private boolean migrateTiles(ExecutorService executor, String mapId, int lod) throws IOException, InterruptedException {
+        String checkpointKey = mapId + "/" + lod;
+        String checkpointValue = checkpoint.getProperty(checkpointKey);
+        if (CHECKPOINT_DONE.equals(checkpointValue)) return true;
+
+        // the tiles are sorted by their packed position, so the checkpoint can simply remember the last copied tile
+        long[] tiles = collectTiles(mapId, lod);
+        if (tiles.length == 0) return false;
+        Arrays.sort(tiles);
+
+        int start = 0;
+        if (checkpointValue != null) {
+            long lastTile = Long.parseLong(checkpointValue);
+            start = Arrays.binarySearch(tiles, lastTile);
+            start = start >= 0 ? start + 1 : -(start + 1);
+        }
+
+        Deque<Chunk> pendingChunks = new ArrayDeque<>();
+        try {
+            for (int from = start; from < tiles.length; from += CHUNK_SIZE) {
+                int to = Math.min(from + CHUNK_SIZE, tiles.length);
+                final int chunkFrom = from;
+                pendingChunks.addLast(new Chunk(tiles[to - 1], executor.submit(() -> {
+                    for (int i = chunkFrom; i < to; i++) copyTile(mapId, lod, unpack(tiles[i]));
+                    return null;
+                })));
+
+                // limit the amount of chunks waiting to be copied
+                while (pendingChunks.size() > threadCount * 2)
+                    completeChunk(pendingChunks.removeFirst(), checkpointKey);
+
+                logProgress(mapId, lod, from - start, tiles.length - start);
+            }
+
+            while (!pendingChunks.isEmpty())
+                completeChunk(pendingChunks.removeFirst(), checkpointKey);
+        } finally {
+            for (Chunk chunk : pendingChunks) chunk.future.cancel(true);
+        }
+
+        checkpoint.setProperty(checkpointKey, CHECKPOINT_DONE);
+        saveCheckpoint();
+        return true;
+    }
+
+    private void copyTile(String mapId, int lod, Vector2i tile) throws IOException {
+        Optional<CompressedInputStream> optIn = source.readMapTile(mapId, lod, tile);
+        if (optIn.isEmpty()) return;
+
+        try (CompressedInputStream in = optIn.get()) {
+            target.writeCompressedMapTile(mapId, lod, tile, in);
+        }
+    }
+
+    private void completeChunk(Chunk chunk, String checkpointKey) throws IOException, InterruptedException {
+        try {
+            chunk.future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause);
+        }
+
+        checkpoint.setProperty(checkpointKey, Long.toString(chunk.lastTile));
+
+        long now = System.currentTimeMillis();
+        if (now - lastCheckpointSave > CHECKPOINT_INTERVAL) saveCheckpoint();
+    }
+
+    private long[] collectTiles(String mapId, int lod) throws IOException {
+        long[][] tiles = { new long[1024] };
+        int[] count = { 0 };
+        source.collectMapTiles(mapId, lod, tile -> {
+            if (count[0] == tiles[0].length) tiles[0] = Arrays.copyOf(tiles[0], tiles[0].length * 2);
+            tiles[0][count[0]++] = pack(tile);
+        });
+        return Arrays.copyOf(tiles[0], count[0]);
+    }
+
+    private void logProgress(String mapId, int lod, int done, int total) {
+        long now = System.currentTimeMillis();
+        if (now - lastProgressLog < PROGRESS_LOG_INTERVAL) return;
+        lastProgressLog = now;
+
+        Logger.global.logInfo("Migrating map '" + mapId + "' (lod " + lod + "): " +
+                (Math.round(done * 1000.0 / total) / 10.0) + "%");
+    }
+
+    private void loadCheckpoint() throws IOException {
+        if (!Files.exists(checkpointFile)) return;
+
+        try (InputStream in = Files.newInputStream(checkpointFile)) {
+            checkpoint.load(in);
+        }
+
+        Logger.global.logInfo("Resuming the migration from the checkpoint in " + checkpointFile);
+    }
+
+    /**
+     * Flushes the target storage and saves the checkpoint.<br>
+     * The checkpoint claims that all tiles up to it are copied, so it is only saved if the flush confirmed
+     * that all of them are actually stored (flushing throws if any pending write failed).
+     */
+    private void saveCheckpoint() throws IOException {
+        target.flush();
+        lastCheckpointSave = System.currentTimeMillis();
+
+        FileHelper.createDirectories(checkpointFile.toAbsolutePath().normalize().getParent());
+        try (OutputStream out = FileHelper.createFilepartOutputStream(checkpointFile)) {
+            checkpoint.store(out, "BlueMap storage-migration checkpoint");
+        }
+    }
+
+    private static long pack(Vector2i tile) {
+        return (long) tile.getX() << 32 | (tile.getY() & 0xFFFFFFFFL);
+    }
+
+    private static Vector2i unpack(long tile) {
+        return new Vector2i((int) (tile >> 32), (int) tile);
+    }
+
+    private static class Chunk {
+
+        private final long lastTile;
+        private final Future<?> future;
+
+        private Chunk(long lastTile, Future<?> future) {
+            this.lastTile = lastTile;
+            this.future = future;
+        }
+
+    }
+
+}
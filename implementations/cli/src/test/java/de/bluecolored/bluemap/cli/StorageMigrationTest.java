@@ -0,0 +1,196 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.cli;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.storage.CompressedInputStream;
+import de.bluecolored.bluemap.core.storage.Compression;
+import de.bluecolored.bluemap.core.storage.Storage;
+import de.bluecolored.bluemap.core.storage.file.FileStorage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StorageMigrationTest {
+
+    private static final String MAP_ID = "world";
+
+    // more than two chunks of tiles, so lod 1 is copied in multiple chunks
+    private static final int LOD_1_TILES = 2 * 1024 + 5;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testMigrate() throws IOException, InterruptedException {
+        Storage source = createSource();
+        Storage target = new FileStorage(dir.resolve("target"), Compression.NONE);
+        Path checkpointFile = dir.resolve("migration.checkpoint");
+
+        new StorageMigration(source, target, checkpointFile, 3).migrate(List.of(MAP_ID));
+
+        assertEquals("settings", readMeta(target, "settings.json"));
+        assertEquals("textures", readMeta(target, "textures.json"));
+
+        assertEquals(collectTiles(source, 0), collectTiles(target, 0));
+        assertEquals(collectTiles(source, 1), collectTiles(target, 1));
+        assertEquals(collectTiles(source, 2), collectTiles(target, 2));
+        assertEquals(LOD_1_TILES, collectTiles(target, 1).size());
+
+        // the tiles are re-compressed for the target storage, but their data stays the same
+        Vector2i tile = new Vector2i(3, 7);
+        assertEquals(tileData(0, tile), readTile(target, 0, tile));
+        assertEquals(tileData(1, tile), readTile(target, 1, tile));
+        assertEquals(tileData(2, new Vector2i(-1, -1)), readTile(target, 2, new Vector2i(-1, -1)));
+
+        assertFalse(Files.exists(checkpointFile));
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws IOException, InterruptedException {
+        Storage source = createSource();
+        Storage target = new FileStorage(dir.resolve("target"), Compression.NONE);
+        Path checkpointFile = dir.resolve("migration.checkpoint");
+
+        // meta and lod 0 are done, lod 1 is done up to the tile x=10 z=5
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty(MAP_ID + "/meta", "done");
+        checkpoint.setProperty(MAP_ID + "/0", "done");
+        checkpoint.setProperty(MAP_ID + "/1", Long.toString(pack(new Vector2i(10, 5))));
+        try (OutputStream out = Files.newOutputStream(checkpointFile)) {
+            checkpoint.store(out, null);
+        }
+
+        new StorageMigration(source, target, checkpointFile, 2).migrate(List.of(MAP_ID));
+
+        assertTrue(target.readMeta(MAP_ID, "settings.json").isEmpty());
+        assertTrue(collectTiles(target, 0).isEmpty());
+
+        Set<Vector2i> expected = new HashSet<>();
+        for (Vector2i tile : collectTiles(source, 1)) {
+            if (pack(tile) > pack(new Vector2i(10, 5))) expected.add(tile);
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, collectTiles(target, 1));
+        assertEquals(collectTiles(source, 2), collectTiles(target, 2));
+
+        assertFalse(Files.exists(checkpointFile));
+    }
+
+    @Test
+    public void testNoCheckpointWithoutSuccessfulFlush() throws IOException, InterruptedException {
+        Storage source = createSource();
+        Path checkpointFile = dir.resolve("migration.checkpoint");
+
+        Storage failingTarget = new FileStorage(dir.resolve("target"), Compression.NONE) {
+            @Override
+            public void flush() throws IOException {
+                throw new IOException("Flush failed");
+            }
+        };
+
+        StorageMigration migration = new StorageMigration(source, failingTarget, checkpointFile, 2);
+        assertThrows(IOException.class, () -> migration.migrate(List.of(MAP_ID)));
+        assertFalse(Files.exists(checkpointFile));
+
+        // without a checkpoint a second migration copies everything
+        Storage target = new FileStorage(dir.resolve("target"), Compression.NONE);
+        new StorageMigration(source, target, checkpointFile, 2).migrate(List.of(MAP_ID));
+
+        assertEquals("settings", readMeta(target, "settings.json"));
+        assertEquals(collectTiles(source, 1), collectTiles(target, 1));
+        assertFalse(Files.exists(checkpointFile));
+    }
+
+    private Storage createSource() throws IOException {
+        Storage source = new FileStorage(dir.resolve("source"), Compression.GZIP);
+
+        writeMeta(source, "settings.json", "settings");
+        writeMeta(source, "textures.json", "textures");
+
+        for (int x = 0; x < 4; x++) {
+            for (int z = 0; z < 8; z++) writeTile(source, 0, new Vector2i(x, z));
+        }
+
+        for (int i = 0; i < LOD_1_TILES; i++) writeTile(source, 1, new Vector2i(i / 64, i % 64 - 32));
+
+        for (int x = -1; x <= 1; x++) {
+            for (int z = -1; z <= 1; z++) writeTile(source, 2, new Vector2i(x, z));
+        }
+
+        return source;
+    }
+
+    private static void writeMeta(Storage storage, String name, String value) throws IOException {
+        try (OutputStream out = storage.writeMeta(MAP_ID, name)) {
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String readMeta(Storage storage, String name) throws IOException {
+        try (InputStream in = storage.readMeta(MAP_ID, name).orElseThrow()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void writeTile(Storage storage, int lod, Vector2i tile) throws IOException {
+        try (OutputStream out = storage.writeMapTile(MAP_ID, lod, tile)) {
+            out.write(tileData(lod, tile).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String readTile(Storage storage, int lod, Vector2i tile) throws IOException {
+        try (
+                CompressedInputStream compressed = storage.readMapTile(MAP_ID, lod, tile).orElseThrow();
+                InputStream in = compressed.decompress()
+        ) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String tileData(int lod, Vector2i tile) {
+        return "tile " + lod + " " + tile.getX() + " " + tile.getY();
+    }
+
+    private static Set<Vector2i> collectTiles(Storage storage, int lod) throws IOException {
+        Set<Vector2i> tiles = new HashSet<>();
+        storage.collectMapTiles(MAP_ID, lod, tiles::add);
+        return tiles;
+    }
+
+    private static long pack(Vector2i tile) {
+        return (long) tile.getX() << 32 | (tile.getY() & 0xFFFFFFFFL);
+    }
+
+}